@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares ways to get the sizes of the payload files of a DVE with many small files: a lookup per file in the ZIP file system, as DataFileMetadataReader used to do, versus
+ * one pass over the central directory. The complete {@link DataFileMetadataReader#readDataFileAttributes(Path)} is included for reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataFileSizesBenchmark {
+    @Param({ "200000" })
+    public int fileCount;
+
+    private Path workDir;
+    private Path dve;
+    private List<String> payloadPaths;
+
+    @Setup(Level.Trial)
+    public void createDve() throws IOException {
+        workDir = Files.createTempDirectory("data-file-sizes-benchmark");
+        var syntheticDve = SyntheticDve.builder().fileCount(fileCount).fileSize(64).build();
+        dve = syntheticDve.writeTo(workDir.resolve("dve.zip"));
+        payloadPaths = syntheticDve.getPayloadPaths();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDve() throws IOException {
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    @Benchmark
+    public void zipFileSystemLookupPerFile(Blackhole blackhole) throws IOException {
+        try (var fileSystem = FileSystems.newFileSystem(dve)) {
+            var baseFolder = fileSystem.getPath("/" + SyntheticDve.BASE_FOLDER);
+            for (var path : payloadPaths) {
+                blackhole.consume(Files.readAttributes(baseFolder.resolve(path), BasicFileAttributes.class).size());
+            }
+        }
+    }
+
+    @Benchmark
+    public void centralDirectoryPass(Blackhole blackhole) throws IOException {
+        try (var zipFile = new ZipFile(dve.toFile())) {
+            var entryIndex = new ZipEntryIndex(zipFile);
+            for (var path : payloadPaths) {
+                blackhole.consume(entryIndex.find(path).map(ZipEntry::getSize).orElse(-1L));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<DataFileMetadata> readDataFileAttributes() throws IOException {
+        return new DataFileMetadataReader(new FileServiceImpl()).readDataFileAttributes(dve);
+    }
+}
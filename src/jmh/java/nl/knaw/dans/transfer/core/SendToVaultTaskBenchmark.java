@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.DataSize;
+import nl.knaw.dans.lib.util.healthcheck.DependenciesReadyCheck;
+import nl.knaw.dans.transfer.client.DataVaultClient;
+import nl.knaw.dans.transfer.client.LobStoreClient;
+import nl.knaw.dans.transfer.config.CustomPropertyConfig;
+import nl.knaw.dans.transfer.config.DatasetVersionCustomPropertyConfig;
+import nl.knaw.dans.transfer.config.DeaccessionedCustomPropertyConfig;
+import nl.knaw.dans.transfer.config.FixedValueCustomPropertyConfig;
+import org.apache.commons.io.FileUtils;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steps of {@link SendToVaultTask} that are on the path of every DVE, each in isolation: extracting a synthetic DVE into the current batch
+ * ({@link SendToVaultTask#addToObjectImportDirectory(Path, int, Path)}), writing the version info JSON ({@link SendToVaultTask#createVersionInfoJson(Path, String, String, String)})
+ * and checking the batch seal policy, both when the batch is not yet due and when it is sealed and handed to the dispatcher
+ * ({@link SendToVaultTask#importIfBatchThresholdReached()}).
+ * <p>
+ * Each benchmark gets a fresh batch, journal and {@link TransferItem} per invocation, with the DVE index already opened and the NBN read, as is the case when
+ * {@link SendToVaultTask#processItem(Path)} reaches these steps. The Data Vault, LOB store and health checks are mocked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SendToVaultTaskBenchmark {
+    @Param({ "1000" })
+    public int fileCount;
+
+    @Param({ "16384" })
+    public int fileSize;
+
+    @Param({ "0.5" })
+    public double storedFraction;
+
+    @Param({ "4" })
+    public int parallelism;
+
+    private final FileService fileService = new FileServiceImpl();
+    private Path workDir;
+    private Path dve;
+    private Path currentBatchWorkDir;
+    private Path dataVaultBatchRoot;
+    private BatchDispatcher batchDispatcher;
+    private ZipExtractor zipExtractor;
+    private List<CustomPropertyConfig> customProperties;
+
+    @Setup(Level.Trial)
+    public void createDve() throws Exception {
+        workDir = Files.createTempDirectory("send-to-vault-task-benchmark");
+        dve = SyntheticDve.builder().fileCount(fileCount).fileSize(fileSize).storedFraction(storedFraction).build().writeTo(workDir.resolve("dve.zip"));
+        currentBatchWorkDir = workDir.resolve("batch").resolve("current");
+        dataVaultBatchRoot = workDir.resolve("data-vault-inbox");
+        Files.createDirectories(currentBatchWorkDir.getParent());
+        batchDispatcher = new BatchDispatcher(workDir.resolve("pending-dispatch"), Mockito.mock(DataVaultClient.class), fileService, 10,
+            Duration.ofSeconds(1), Duration.ofSeconds(1), 1);
+        batchDispatcher.start();
+        zipExtractor = new ZipExtractor(fileService, parallelism, 8L * 1024 * 1024);
+        customProperties = List.of(packagingFormat(), datasetVersion(), deaccessioned());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDve() throws Exception {
+        batchDispatcher.stop();
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    /**
+     * An empty current batch, and a task that is about to add the DVE to it.
+     */
+    @State(Scope.Thread)
+    public static class EmptyBatch {
+        SendToVaultTask task;
+        TransferItem transferItem;
+        Path objectImportDirectory;
+
+        @Setup(Level.Invocation)
+        public void setUp(SendToVaultTaskBenchmark benchmark) throws Exception {
+            var batchJournal = benchmark.newBatchJournal();
+            task = benchmark.newTask(batchJournal, new LimitsBatchSealPolicy(DataSize.gigabytes(100), null, null, null));
+            transferItem = benchmark.openTransferItem(task);
+            objectImportDirectory = benchmark.currentBatchWorkDir.resolve(transferItem.getNbn());
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            transferItem.close();
+        }
+    }
+
+    /**
+     * A task that has extracted the DVE and is about to write the version info JSON.
+     */
+    @State(Scope.Thread)
+    public static class ExtractedVersion {
+        SendToVaultTask task;
+        TransferItem transferItem;
+        Path versionDirectory;
+
+        @Setup(Level.Invocation)
+        public void setUp(SendToVaultTaskBenchmark benchmark) throws Exception {
+            task = benchmark.newTask(benchmark.newBatchJournal(), new LimitsBatchSealPolicy(DataSize.gigabytes(100), null, null, null));
+            transferItem = benchmark.openTransferItem(task);
+            versionDirectory = Files.createDirectories(benchmark.currentBatchWorkDir.resolve(transferItem.getNbn()).resolve("v1"));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            transferItem.close();
+        }
+    }
+
+    /**
+     * A current batch with one small version in it, and two tasks: one with a seal policy that is not yet reached, and one with a policy that is.
+     */
+    @State(Scope.Thread)
+    public static class FilledBatch {
+        SendToVaultTask notDueTask;
+        SendToVaultTask dueTask;
+        private SendToVaultTaskBenchmark benchmark;
+
+        @Setup(Level.Invocation)
+        public void setUp(SendToVaultTaskBenchmark benchmark) throws Exception {
+            this.benchmark = benchmark;
+            var batchJournal = benchmark.newBatchJournal();
+            var versionDirectory = Files.createDirectories(benchmark.currentBatchWorkDir.resolve("urn:nbn:nl:ui:13-synthetic").resolve("v1"));
+            Files.writeString(versionDirectory.resolve("file.txt"), "content");
+            batchJournal.startExtraction("dve.zip", "urn:nbn:nl:ui:13-synthetic", 1);
+            batchJournal.completeExtraction("dve.zip", "urn:nbn:nl:ui:13-synthetic", 1, 7, 1);
+            notDueTask = benchmark.newTask(batchJournal, new LimitsBatchSealPolicy(DataSize.gigabytes(100), null, null, null));
+            dueTask = benchmark.newTask(batchJournal, new LimitsBatchSealPolicy(DataSize.bytes(1), null, null, null));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(benchmark.dataVaultBatchRoot.toFile());
+        }
+    }
+
+    @Benchmark
+    public void addToObjectImportDirectory(EmptyBatch state) throws IOException {
+        state.task.addToObjectImportDirectory(dve, 1, state.objectImportDirectory);
+    }
+
+    @Benchmark
+    public void createVersionInfoJson(ExtractedVersion state) throws IOException {
+        state.task.createVersionInfoJson(state.versionDirectory, state.transferItem.getContactName(), state.transferItem.getContactEmail(), "Benchmark version");
+    }
+
+    @Benchmark
+    public void importIfBatchThresholdReachedNotDue(FilledBatch state) throws IOException {
+        state.notDueTask.importIfBatchThresholdReached();
+    }
+
+    @Benchmark
+    public void importIfBatchThresholdReachedSealing(FilledBatch state) throws IOException {
+        state.dueTask.importIfBatchThresholdReached();
+    }
+
+    private BatchJournal newBatchJournal() throws IOException {
+        FileUtils.deleteDirectory(currentBatchWorkDir.toFile());
+        Files.deleteIfExists(currentBatchWorkDir.resolveSibling(currentBatchWorkDir.getFileName() + BatchJournal.FILE_NAME_SUFFIX));
+        Files.createDirectories(currentBatchWorkDir);
+        return new BatchJournal(currentBatchWorkDir, fileService);
+    }
+
+    private SendToVaultTask newTask(BatchJournal batchJournal, BatchSealPolicy batchSealPolicy) {
+        var currentBatchLock = new CurrentBatchLock(1);
+        var batchSealer = new BatchSealer(currentBatchWorkDir, dataVaultBatchRoot, batchJournal, batchDispatcher, fileService, new MetricRegistry(), currentBatchLock);
+        return new SendToVaultTask(workDir, currentBatchWorkDir, batchSealPolicy, batchJournal, batchSealer, currentBatchLock, workDir.resolve("processed"),
+            workDir.resolve("failed"), "Benchmark version", customProperties, fileService, zipExtractor, Mockito.mock(DveMetadataReader.class),
+            Mockito.mock(LobStoreClient.class), "benchmark", Mockito.mock(DependenciesReadyCheck.class), 100);
+    }
+
+    /**
+     * Opens the DVE and sets it as the current transfer item of the task, in the state in which {@link SendToVaultTask#processItem(Path)} leaves it before adding it to the batch.
+     */
+    private TransferItem openTransferItem(SendToVaultTask task) throws Exception {
+        var transferItem = new TransferItem(dve, fileService);
+        transferItem.getNbn();
+        var field = SendToVaultTask.class.getDeclaredField("currentTransferItem");
+        field.setAccessible(true);
+        field.set(task, transferItem);
+        return transferItem;
+    }
+
+    private static CustomPropertyConfig packagingFormat() {
+        var config = new FixedValueCustomPropertyConfig();
+        config.setName("packaging-format");
+        config.setValue("DANS RDA BagPack Profile/1.0.0");
+        return config;
+    }
+
+    private static CustomPropertyConfig datasetVersion() {
+        var config = new DatasetVersionCustomPropertyConfig();
+        config.setName("dataset-version");
+        config.setSource("dansDataversePidVersion");
+        config.setFailIfMissing(false);
+        return config;
+    }
+
+    private static CustomPropertyConfig deaccessioned() {
+        var config = new DeaccessionedCustomPropertyConfig();
+        config.setName("deaccessioned");
+        return config;
+    }
+}
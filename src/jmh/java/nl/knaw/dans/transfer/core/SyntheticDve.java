@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a synthetic BagPack DVE for benchmarks: a bag in a single base folder with bag-info.txt, manifest-sha1.txt, metadata/pid-mapping.txt, metadata/oai-ore.jsonld and
+ * the given number of payload files. The content is pseudo-random, but the same for the same parameters.
+ */
+@Builder
+public class SyntheticDve {
+    public static final String BASE_FOLDER = "bag";
+
+    @Builder.Default
+    private final int fileCount = 1000;
+
+    @Builder.Default
+    private final int fileSize = 1024;
+
+    /**
+     * The fraction of the payload files that is STORED rather than DEFLATED, from 0.0 to 1.0.
+     */
+    @Builder.Default
+    private final double storedFraction = 0.0;
+
+    /**
+     * The paths of the payload files relative to the bag, e.g. <code>data/dir-0001/file-000001.bin</code>.
+     */
+    @Getter
+    private final List<String> payloadPaths = new ArrayList<>();
+
+    /**
+     * Writes the DVE.
+     *
+     * @param zip the ZIP file to write
+     * @return the ZIP file
+     * @throws IOException if the file cannot be written
+     */
+    public Path writeTo(Path zip) throws IOException {
+        payloadPaths.clear();
+        var random = new Random(fileCount * 31L + fileSize);
+        var content = new byte[fileSize];
+        var manifest = new StringBuilder();
+        var pidMapping = new StringBuilder("https://doi.org/10.5072/FK2/SYNTHETIC data/\n");
+        var storedEvery = storedFraction <= 0.0 ? Integer.MAX_VALUE : (int) Math.round(1.0 / storedFraction);
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (var i = 0; i < fileCount; i++) {
+                var path = "data/dir-%04d/file-%06d.bin".formatted(i / 1000, i);
+                payloadPaths.add(path);
+                // Half random bytes, half zeros, so that DEFLATED entries actually get smaller
+                random.nextBytes(content);
+                Arrays.fill(content, fileSize / 2, fileSize, (byte) 0);
+
+                var entry = new ZipEntry(BASE_FOLDER + "/" + path);
+                if (i % storedEvery == 0) {
+                    var crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(fileSize);
+                    entry.setCompressedSize(fileSize);
+                    entry.setCrc(crc.getValue());
+                }
+                zos.putNextEntry(entry);
+                zos.write(content);
+                zos.closeEntry();
+
+                manifest.append(HexFormat.of().formatHex(sha1(content))).append("  ").append(path).append('\n');
+                pidMapping.append("https://ds.example.org/file.xhtml?fileId=").append(i + 1).append(' ').append(path).append('\n');
+            }
+            writeTagFile(zos, "bagit.txt", "BagIt-Version: 1.0\nTag-File-Character-Encoding: UTF-8\n");
+            writeTagFile(zos, "bag-info.txt", "Contact-Name: Benchmark\nContact-Email: benchmark@example.org\nPayload-Oxum: %d.%d\n".formatted((long) fileCount * fileSize, fileCount));
+            writeTagFile(zos, "manifest-sha1.txt", manifest.toString());
+            writeTagFile(zos, "metadata/pid-mapping.txt", pidMapping.toString());
+            writeTagFile(zos, "metadata/oai-ore.jsonld", """
+                {
+                  "@context": {
+                    "ore": "http://www.openarchives.org/ore/terms/",
+                    "dansDataVaultMetadata": "https://schemas.dans.knaw.nl/metadatablock/dansDataVaultMetadata#"
+                  },
+                  "@type": "ore:ResourceMap",
+                  "ore:describes": {
+                    "@type": "ore:Aggregation",
+                    "dansDataVaultMetadata:dansBagId": "urn:uuid:00000000-0000-0000-0000-000000000001",
+                    "dansDataVaultMetadata:dansNbn": "urn:nbn:nl:ui:13-synthetic"
+                  }
+                }
+                """);
+        }
+        return zip;
+    }
+
+    private static byte[] sha1(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeTagFile(ZipOutputStream zos, String path, String content) throws IOException {
+        zos.putNextEntry(new ZipEntry(BASE_FOLDER + "/" + path));
+        zos.write(content.getBytes(StandardCharsets.UTF_8));
+        zos.closeEntry();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link ZipExtractor} on a DVE with a mix of STORED and DEFLATED payload files, with the STORED entries copied with
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} versus streamed through the heap like the DEFLATED ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZipExtractionBenchmark {
+    @Param({ "200" })
+    public int fileCount;
+
+    @Param({ "4194304" })
+    public int fileSize;
+
+    @Param({ "0.5" })
+    public double storedFraction;
+
+    @Param({ "4" })
+    public int parallelism;
+
+    private Path workDir;
+    private Path dve;
+    private Path targetDir;
+    private ZipExtractor transferringExtractor;
+    private ZipExtractor streamingExtractor;
+
+    @Setup(Level.Trial)
+    public void createDve() throws IOException {
+        workDir = Files.createTempDirectory("zip-extraction-benchmark");
+        targetDir = workDir.resolve("extracted");
+        dve = SyntheticDve.builder().fileCount(fileCount).fileSize(fileSize).storedFraction(storedFraction).build().writeTo(workDir.resolve("dve.zip"));
+        transferringExtractor = new ZipExtractor(new FileServiceImpl(), parallelism, 8L * 1024 * 1024, true);
+        streamingExtractor = new ZipExtractor(new FileServiceImpl(), parallelism, 8L * 1024 * 1024, false);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTargetDir() throws IOException {
+        FileUtils.deleteDirectory(targetDir.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDve() throws IOException {
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    @Benchmark
+    public void transferStoredEntries() throws IOException {
+        transferringExtractor.extract(dve, targetDir);
+    }
+
+    @Benchmark
+    public void streamStoredEntries() throws IOException {
+        streamingExtractor.extract(dve, targetDir);
+    }
+}
@@ -33,20 +33,32 @@ import nl.knaw.dans.transfer.client.ValidateBagPackClientImpl;
 import nl.knaw.dans.transfer.client.VaultCatalogClient;
 import nl.knaw.dans.transfer.client.VaultCatalogClientImpl;
 import nl.knaw.dans.transfer.config.DdTransferToVaultConfiguration;
+import nl.knaw.dans.transfer.core.BatchDispatcher;
+import nl.knaw.dans.transfer.core.BatchJournal;
+import nl.knaw.dans.transfer.core.BatchSealTimer;
+import nl.knaw.dans.transfer.core.BatchSealer;
 import nl.knaw.dans.transfer.core.CollectDveTaskFactory;
 import nl.knaw.dans.transfer.core.CreationTimeComparator;
+import nl.knaw.dans.transfer.core.CurrentBatchLock;
 import nl.knaw.dans.transfer.core.DataFileMetadataReader;
 import nl.knaw.dans.transfer.core.DveFileFilter;
 import nl.knaw.dans.transfer.core.DveMetadataReader;
 import nl.knaw.dans.transfer.core.ExtractMetadataTaskFactory;
+import nl.knaw.dans.transfer.core.FileCopier;
+import nl.knaw.dans.transfer.core.FileNameAllocator;
 import nl.knaw.dans.transfer.core.FileService;
 import nl.knaw.dans.transfer.core.FileServiceImpl;
+import nl.knaw.dans.transfer.core.FileSystemIdentityCache;
+import nl.knaw.dans.transfer.core.LimitsBatchSealPolicy;
 import nl.knaw.dans.transfer.core.NbnDirectoryFilter;
+import nl.knaw.dans.transfer.core.PayloadChecksumVerifier;
 import nl.knaw.dans.transfer.core.RemoveEmptyTargetDirsTask;
 import nl.knaw.dans.transfer.core.RemoveXmlFilesTask;
 import nl.knaw.dans.transfer.core.SendToVaultFlushTaskFactory;
 import nl.knaw.dans.transfer.core.SendToVaultTaskFactory;
 import nl.knaw.dans.transfer.core.SequencedTasks;
+import nl.knaw.dans.transfer.core.TargetDirIndex;
+import nl.knaw.dans.transfer.core.ZipExtractor;
 import nl.knaw.dans.transfer.core.oaiore.OaiOreMetadataReader;
 import nl.knaw.dans.transfer.health.FileSystemPermissionsHealthCheck;
 import nl.knaw.dans.transfer.health.HealthChecks;
@@ -76,23 +88,75 @@ public class DdTransferToVaultApplication extends Application<DdTransferToVaultC
 
     @Override
     public void run(final DdTransferToVaultConfiguration configuration, final Environment environment) {
-        FileService fileService = new FileServiceImpl();
+        var fileSystemIdentityCacheConfig = configuration.getTransfer().getFileSystemIdentityCache();
+        var copyConfig = configuration.getTransfer().getCopy();
+        FileService fileService = new FileServiceImpl(
+            configuration.getTransfer().getFsync().getMode(),
+            configuration.getTransfer().getFsync().getGroupCommitWindow().toJavaDuration(),
+            new FileSystemIdentityCache(
+                fileSystemIdentityCacheConfig.getTtl().toJavaDuration(),
+                fileSystemIdentityCacheConfig.getMountTableCheckInterval().toJavaDuration(),
+                environment.metrics()),
+            new TargetDirIndex(configuration.getTransfer().getTargetDirIndex().getReconcileInterval().toJavaDuration()),
+            new FileNameAllocator(configuration.getTransfer().getFileNameAllocator().getRelistInterval().toJavaDuration()),
+            new FileCopier(
+                (int) copyConfig.getBufferSize().toBytes(),
+                copyConfig.getParallelThreshold().toBytes(),
+                copyConfig.getParallelism(),
+                environment.lifecycle().executorService("file-copier-%d").minThreads(copyConfig.getParallelism()).maxThreads(copyConfig.getParallelism()).build(),
+                environment.metrics()));
 
         checkReadyCheckConfig(configuration.getReadyCheck());
         var healthCheckReadyCheck = new HealthChecksDependenciesReadyCheck(environment, configuration.getReadyCheck());
         environment.lifecycle().manage(healthCheckReadyCheck);
 
         var dataVaultProxy = createDataVaultProxy(configuration);
-        // Single-threaded executor to coordinate batch threshold checks
-        var sendToVaultExecutorService = environment.lifecycle().executorService("send-to-vault-worker").minThreads(1).maxThreads(1).build();
+        var zipExtractor = new ZipExtractor(fileService,
+            configuration.getTransfer().getSendToVault().getExtraction().getParallelism(),
+            configuration.getTransfer().getSendToVault().getExtraction().getLargeFileThreshold().toBytes());
+        // Managed before the send-to-vault workers, so that its pool is shut down after they have stopped
+        environment.lifecycle().manage(zipExtractor);
+        // Each worker processes the DVEs of one NBN directory at a time; the CurrentBatchLock coordinates them with the sealing of the batch
+        var sendToVaultWorkers = configuration.getTransfer().getSendToVault().getWorkers();
+        var sendToVaultExecutorService = environment.lifecycle().executorService("send-to-vault-worker-%d").minThreads(sendToVaultWorkers).maxThreads(sendToVaultWorkers).build();
+        var currentBatchLock = new CurrentBatchLock(sendToVaultWorkers * 4);
         var datavaultClient = new DataVaultClient(dataVaultProxy);
 
         var lobStoreProxy = createLobStoreProxy(configuration);
         var lobStoreClient = new LobStoreClient(lobStoreProxy);
 
+        var currentBatchWorkingDir = configuration.getTransfer().getSendToVault().getDataVault().getCurrentBatchWorkingDir();
+        var dispatchConfig = configuration.getTransfer().getSendToVault().getDataVault().getDispatch();
+        var batchDispatcher = new BatchDispatcher(
+            currentBatchWorkingDir.resolveSibling(currentBatchWorkingDir.getFileName() + ".pending-dispatch"),
+            datavaultClient,
+            fileService,
+            dispatchConfig.getQueueCapacity(),
+            dispatchConfig.getInitialRetryDelay().toJavaDuration(),
+            dispatchConfig.getMaxRetryDelay().toJavaDuration(),
+            dispatchConfig.getMaxAttempts());
+        // Started before the send-to-vault inbox, so that batches left pending by an earlier run are dispatched before new ones
+        environment.lifecycle().manage(batchDispatcher);
+        var batchJournal = new BatchJournal(currentBatchWorkingDir, fileService);
+        var batchSealer = new BatchSealer(
+            currentBatchWorkingDir,
+            configuration.getTransfer().getSendToVault().getDataVault().getBatchRoot(),
+            batchJournal,
+            batchDispatcher,
+            fileService,
+            environment.metrics(),
+            currentBatchLock);
+        var sealPolicyConfig = configuration.getTransfer().getSendToVault().getDataVault().getSealPolicy();
+        var batchSealPolicy = new LimitsBatchSealPolicy(
+            configuration.getTransfer().getSendToVault().getDataVault().getBatchThreshold(),
+            sealPolicyConfig.getMaxFiles(),
+            sealPolicyConfig.getMaxDves(),
+            sealPolicyConfig.getMaxAge() == null ? null : sealPolicyConfig.getMaxAge().toJavaDuration());
+        environment.lifecycle().manage(new BatchSealTimer(batchSealer, batchJournal, batchSealPolicy, sealPolicyConfig.getCheckInterval().toJavaDuration()));
+
         var dveMetadataReader = new DveMetadataReader(
             fileService,
-            new OaiOreMetadataReader(),
+            new OaiOreMetadataReader(configuration.getTransfer().getOaiOreReaderMode()),
             new DataFileMetadataReader(fileService));
 
         environment.lifecycle().manage(Inbox.builder()
@@ -102,14 +166,16 @@ public class DdTransferToVaultApplication extends Application<DdTransferToVaultC
             .interval(Math.toIntExact(configuration.getTransfer().getSendToVault().getInbox().getPollingInterval().toMilliseconds()))
             .taskFactory(SendToVaultTaskFactory.builder()
                 .currentBatchWorkDir(configuration.getTransfer().getSendToVault().getDataVault().getCurrentBatchWorkingDir())
-                .batchThreshold(configuration.getTransfer().getSendToVault().getDataVault().getBatchThreshold())
+                .batchSealPolicy(batchSealPolicy)
+                .batchJournal(batchJournal)
+                .batchSealer(batchSealer)
+                .currentBatchLock(currentBatchLock)
                 .outboxProcessed(configuration.getTransfer().getSendToVault().getOutbox().getProcessed())
                 .outboxFailed(configuration.getTransfer().getSendToVault().getOutbox().getFailed())
-                .dataVaultBatchRoot(configuration.getTransfer().getSendToVault().getDataVault().getBatchRoot())
-                .dataVaultClient(datavaultClient)
                 .defaultMessage(configuration.getTransfer().getSendToVault().getDefaultMessage())
                 .customProperties(configuration.getTransfer().getSendToVault().getCustomProperties())
                 .fileService(fileService)
+                .zipExtractor(zipExtractor)
                 .dveMetadataReader(dveMetadataReader)
                 .lobStoreClient(lobStoreClient)
                 .datastationName(configuration.getTransfer().getDatastationName())
@@ -120,8 +186,7 @@ public class DdTransferToVaultApplication extends Application<DdTransferToVaultC
 
         var sendToVaultFlushTaskFactory = SendToVaultFlushTaskFactory.builder()
             .currentBatchWorkDir(configuration.getTransfer().getSendToVault().getDataVault().getCurrentBatchWorkingDir())
-            .dataVaultBatchRoot(configuration.getTransfer().getSendToVault().getDataVault().getBatchRoot())
-            .dataVaultClient(datavaultClient)
+            .batchSealer(batchSealer)
             .readyCheck(healthCheckReadyCheck)
             .build();
         environment.jersey().register(new SendToVaultApiResource(sendToVaultExecutorService,
@@ -133,6 +198,13 @@ public class DdTransferToVaultApplication extends Application<DdTransferToVaultC
 
         ValidateBagPackClient validateBagPackClient = new ValidateBagPackClientImpl(validateBagPackProxy, configuration.getValidateBagPack().getPollInterval().toJavaDuration());
         CountDownLatch startCollectInbox = new CountDownLatch(1);
+        var payloadVerificationConfig = configuration.getTransfer().getExtractMetadata().getPayloadVerification();
+        PayloadChecksumVerifier payloadChecksumVerifier = null;
+        if (payloadVerificationConfig.isEnabled()) {
+            payloadChecksumVerifier = new PayloadChecksumVerifier(payloadVerificationConfig.getParallelism());
+            // Managed before the extract-metadata inbox, so that its pool is shut down after the inbox has stopped
+            environment.lifecycle().manage(payloadChecksumVerifier);
+        }
         environment.lifecycle().manage(
             Inbox.builder()
                 .onPollingHandler(new SequencedTasks(
@@ -150,11 +222,12 @@ public class DdTransferToVaultApplication extends Application<DdTransferToVaultC
                         .fileService(fileService)
                         .dveMetadataReader(new DveMetadataReader(
                             fileService,
-                            new OaiOreMetadataReader(),
+                            new OaiOreMetadataReader(configuration.getTransfer().getOaiOreReaderMode()),
                             new DataFileMetadataReader(fileService)))
                         .vaultCatalogClient(vaultCatalogClient)
                         .validateBagPackClient(validateBagPackClient)
                         .readyCheck(healthCheckReadyCheck)
+                        .payloadChecksumVerifier(payloadChecksumVerifier)
                         .delayBetweenProcessingRounds(configuration.getTransfer().getExtractMetadata().getDelayBetweenProcessingRounds().toMilliseconds())
                         .build())
                 .inbox(configuration.getTransfer().getExtractMetadata().getInbox().getPath())
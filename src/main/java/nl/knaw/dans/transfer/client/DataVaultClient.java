@@ -18,6 +18,7 @@ package nl.knaw.dans.transfer.client;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.datavault.client.api.ImportCommandDto;
+import nl.knaw.dans.datavault.client.invoker.ApiException;
 import nl.knaw.dans.datavault.client.resources.DefaultApi;
 
 import java.nio.file.Path;
@@ -27,12 +28,26 @@ import java.nio.file.Path;
 public class DataVaultClient {
     private final DefaultApi vaultApi;
 
+    /**
+     * Asks the Data Vault to import the batch.
+     *
+     * @param batchPath the batch directory in the Data Vault inbox
+     * @throws IllegalArgumentException if the Data Vault rejected the request, so that repeating it is pointless
+     * @throws RuntimeException         if the request failed otherwise
+     */
     public void sendBatchToVault(Path batchPath) {
         try {
             var importCommand = new ImportCommandDto()
                 .path(batchPath.toAbsolutePath().toString());
             vaultApi.importsPost(importCommand);
         }
+        catch (ApiException e) {
+            // 408 and 429 are client errors that may go away by themselves
+            if (e.getCode() >= 400 && e.getCode() < 500 && e.getCode() != 408 && e.getCode() != 429) {
+                throw new IllegalArgumentException("Data Vault rejected import of batch " + batchPath + " with status " + e.getCode() + ": " + e.getResponseBody(), e);
+            }
+            throw new RuntimeException("Import call to Data Vault failed for batch " + batchPath, e);
+        }
         catch (Exception e) {
             throw new RuntimeException("Import call to Data Vault failed for batch " + batchPath, e);
         }
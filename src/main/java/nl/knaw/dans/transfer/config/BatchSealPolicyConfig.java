@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Limits, besides the batch threshold, on which the current batch is sealed. A limit that is not set is not checked.
+ */
+@Data
+public class BatchSealPolicyConfig {
+    @Min(1)
+    private Long maxFiles;
+
+    @Min(1)
+    private Integer maxDves;
+
+    private Duration maxAge;
+
+    @NotNull
+    private Duration checkInterval = Duration.minutes(1);
+}
@@ -15,14 +15,15 @@
  */
 package nl.knaw.dans.transfer.config;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.JsonTypeInfo.As;
 import lombok.Data;
-import nl.knaw.dans.transfer.core.TransferItem;
+import nl.knaw.dans.transfer.core.DveView;
 
-import java.io.IOException;
 import java.util.Optional;
+import java.util.Set;
 
 @Data
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = As.EXISTING_PROPERTY, property = "name", visible = true)
@@ -33,5 +34,14 @@ import java.util.Optional;
 })
 public abstract class CustomPropertyConfig {
     private String name;
-    public abstract Optional<Object> getValue(TransferItem transferItem) throws IOException;
+
+    /**
+     * Returns the fields of the DVE that this property is computed from. These fields are read into the {@link DveView} that is passed to {@link #getValue(DveView)}.
+     *
+     * @return the fields needed by this property
+     */
+    @JsonIgnore
+    public abstract Set<DveView.Field> getRequiredFields();
+
+    public abstract Optional<Object> getValue(DveView dve);
 }
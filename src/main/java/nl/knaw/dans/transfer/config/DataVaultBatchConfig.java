@@ -18,6 +18,7 @@ package nl.knaw.dans.transfer.config;
 import io.dropwizard.util.DataSize;
 import lombok.Data;
 
+import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
 
@@ -30,4 +31,12 @@ public class DataVaultBatchConfig {
     private Path batchRoot;
 
     private DataSize batchThreshold = DataSize.mebibytes(100);
+
+    @Valid
+    @NotNull
+    private BatchSealPolicyConfig sealPolicy = new BatchSealPolicyConfig();
+
+    @Valid
+    @NotNull
+    private BatchDispatchConfig dispatch = new BatchDispatchConfig();
 }
@@ -17,10 +17,10 @@ package nl.knaw.dans.transfer.config;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
-import nl.knaw.dans.transfer.core.TransferItem;
+import nl.knaw.dans.transfer.core.DveView;
 
-import java.io.IOException;
 import java.util.Optional;
+import java.util.Set;
 
 @Data
 @EqualsAndHashCode(callSuper = false)
@@ -29,10 +29,19 @@ public class DatasetVersionCustomPropertyConfig extends CustomPropertyConfig {
     private Boolean failIfMissing;
 
     @Override
-    public Optional<Object> getValue(TransferItem transferItem) throws IOException {
+    public Set<DveView.Field> getRequiredFields() {
+        return switch (source) {
+            case "dansDataversePidVersion" -> Set.of(DveView.Field.DATAVERSE_PID_VERSION);
+            case "Has-Organizational-Identifier-Version" -> Set.of(DveView.Field.HAS_ORGANIZATIONAL_IDENTIFIER_VERSION);
+            default -> throw new IllegalArgumentException("Unknown custom property source: " + source);
+        };
+    }
+
+    @Override
+    public Optional<Object> getValue(DveView dve) {
         var value = switch (source) {
-            case "dansDataversePidVersion" -> transferItem.getDataversePidVersion().map(v -> (Object) v);
-            case "Has-Organizational-Identifier-Version" -> transferItem.getHasOrganizationalIdentifierVersion().map(v -> (Object) v);
+            case "dansDataversePidVersion" -> dve.getDataversePidVersion().map(v -> (Object) v);
+            case "Has-Organizational-Identifier-Version" -> dve.getHasOrganizationalIdentifierVersion().map(v -> (Object) v);
             default -> throw new IllegalArgumentException("Unknown custom property source: " + source);
         };
 
@@ -17,18 +17,23 @@ package nl.knaw.dans.transfer.config;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
-import nl.knaw.dans.transfer.core.TransferItem;
+import nl.knaw.dans.transfer.core.DveView;
 
-import java.io.IOException;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Data
 @EqualsAndHashCode(callSuper = true)
 public class DeaccessionedCustomPropertyConfig extends CustomPropertyConfig {
     @Override
-    public Optional<Object> getValue(TransferItem transferItem) throws IOException {
-        return transferItem.getDeaccessionedReason().map(reason ->
+    public Set<DveView.Field> getRequiredFields() {
+        return Set.of(DveView.Field.DEACCESSIONED_REASON);
+    }
+
+    @Override
+    public Optional<Object> getValue(DveView dve) {
+        return dve.getDeaccessionedReason().map(reason ->
             Map.of("reason", reason));
     }
 }
@@ -38,4 +38,8 @@ public class ExtractMetadataConfig {
 
     @NotNull
     private Duration delayBetweenProcessingRounds = Duration.seconds(2);
+
+    @Valid
+    @NotNull
+    private PayloadVerificationConfig payloadVerification = new PayloadVerificationConfig();
 }
@@ -17,10 +17,10 @@ package nl.knaw.dans.transfer.config;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
-import nl.knaw.dans.transfer.core.TransferItem;
+import nl.knaw.dans.transfer.core.DveView;
 
-import java.io.IOException;
 import java.util.Optional;
+import java.util.Set;
 
 @Data
 @EqualsAndHashCode(callSuper = false)
@@ -28,7 +28,12 @@ public class FixedValueCustomPropertyConfig extends CustomPropertyConfig {
     private String value;
 
     @Override
-    public Optional<Object> getValue(TransferItem transferItem) throws IOException {
+    public Set<DveView.Field> getRequiredFields() {
+        return Set.of();
+    }
+
+    @Override
+    public Optional<Object> getValue(DveView dve) {
         return Optional.ofNullable(value);
     }
 }
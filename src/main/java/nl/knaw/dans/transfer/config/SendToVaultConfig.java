@@ -19,6 +19,7 @@ import io.dropwizard.util.Duration;
 import lombok.Data;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.List;
 
@@ -45,4 +46,11 @@ public class SendToVaultConfig {
     @NotNull
     private Duration delayBetweenProcessingRounds = Duration.seconds(2);
 
+    @Min(1)
+    private int workers = 1;
+
+    @Valid
+    @NotNull
+    private ExtractionConfig extraction = new ExtractionConfig();
+
 }
@@ -17,6 +17,7 @@ package nl.knaw.dans.transfer.config;
 
 import lombok.Data;
 import io.dropwizard.util.DataSize;
+import nl.knaw.dans.transfer.core.oaiore.OaiOreReaderMode;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -29,6 +30,29 @@ public class TransferConfig {
     @NotNull
     private DataSize workspaceFreeSpaceThreshold;
 
+    @NotNull
+    private OaiOreReaderMode oaiOreReaderMode = OaiOreReaderMode.STREAMING;
+
+    @Valid
+    @NotNull
+    private FsyncConfig fsync = new FsyncConfig();
+
+    @Valid
+    @NotNull
+    private FileSystemIdentityCacheConfig fileSystemIdentityCache = new FileSystemIdentityCacheConfig();
+
+    @Valid
+    @NotNull
+    private TargetDirIndexConfig targetDirIndex = new TargetDirIndexConfig();
+
+    @Valid
+    @NotNull
+    private FileNameAllocatorConfig fileNameAllocator = new FileNameAllocatorConfig();
+
+    @Valid
+    @NotNull
+    private CopyConfig copy = new CopyConfig();
+
     @Valid
     @NotNull
     private CollectDveConfig collectDve;
@@ -15,6 +15,8 @@
  */
 package nl.knaw.dans.transfer.core;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -22,17 +24,28 @@ import java.util.Map;
 
 public class BagInfoReader {
 
-    public Map<String, List<String>> readBagInfo(String bagInfoContent) {
+    public Map<String, List<String>> readBagInfo(BufferedReader reader) throws IOException {
         var bagInfoMap = new HashMap<String, List<String>>();
-        var lines = bagInfoContent.split("\n");
+        List<String> lastValues = null;
 
-        for (var line : lines) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (lastValues != null && !line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                // Continuation of the value on the previous line
+                var last = lastValues.size() - 1;
+                lastValues.set(last, lastValues.get(last) + " " + line.trim());
+                continue;
+            }
             var parts = line.split(":", 2);
             if (parts.length == 2) {
                 var key = parts[0].trim();
                 var value = parts[1].trim();
 
-                bagInfoMap.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+                lastValues = bagInfoMap.computeIfAbsent(key, k -> new ArrayList<>());
+                lastValues.add(value);
+            }
+            else {
+                lastValues = null;
             }
         }
 
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.transfer.client.DataVaultClient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Asks the Data Vault to import sealed batches, on a thread of its own, so that the assembly of the next batch does not wait for the Data Vault. The batches are queued in a
+ * bounded queue; when it is full, {@link #submit(Path)} blocks, so that the assembly cannot run arbitrarily far ahead of the Data Vault.
+ *
+ * For each submitted batch a "pending dispatch" marker file is written to the pending directory, before it is queued, and removed after the Data Vault has accepted the import
+ * request. At startup the batches of the remaining markers are queued again, in the order of their names, without waiting for room in the queue: those that do not fit are
+ * queued by the dispatcher thread when the queue has run empty, so that starting the service never waits for the Data Vault. Until they have all been queued,
+ * {@link #submit(Path)} waits, so that newly sealed batches are not dispatched before them. If a request fails, it is retried, with a delay that doubles after each failure up
+ * to a maximum. Batches are dispatched in the order in which they were submitted.
+ *
+ * A batch that the Data Vault rejects (see {@link DataVaultClient#sendBatchToVault(Path)}), or for which the request failed the maximum number of times, is parked: its marker is
+ * renamed to end in {@value #FAILED_SUFFIX} instead of {@value #MARKER_SUFFIX} and the next batch is dispatched. Parked batches are not dispatched again at startup; renaming the
+ * marker back makes them pending again.
+ */
+@Slf4j
+public class BatchDispatcher implements Managed {
+    public static final String MARKER_SUFFIX = ".pending";
+    public static final String FAILED_SUFFIX = ".failed";
+
+    private final Path pendingDir;
+    private final DataVaultClient dataVaultClient;
+    private final FileService fileService;
+    private final BlockingQueue<Path> queue;
+    private final Duration initialRetryDelay;
+    private final Duration maxRetryDelay;
+    private final int maxAttempts;
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    // Pending batches found at startup that did not fit in the queue; guarded by this
+    private final Queue<Path> overflow = new ArrayDeque<>();
+
+    private Thread thread;
+
+    public BatchDispatcher(@NonNull Path pendingDir, @NonNull DataVaultClient dataVaultClient, @NonNull FileService fileService, int queueCapacity,
+        @NonNull Duration initialRetryDelay, @NonNull Duration maxRetryDelay, int maxAttempts) {
+        this.pendingDir = pendingDir;
+        this.dataVaultClient = dataVaultClient;
+        this.fileService = fileService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.initialRetryDelay = initialRetryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Records that the batch must be dispatched, without queuing it. This does not block, so it can be done while the current batch is locked; the batch is dispatched after it
+     * has been submitted, or after a restart.
+     *
+     * @param batch the batch directory in the Data Vault inbox
+     * @throws IOException if the marker cannot be written
+     */
+    public void markPending(@NonNull Path batch) throws IOException {
+        var name = batch.getFileName().toString();
+        var marker = pendingDir.resolve(name + MARKER_SUFFIX);
+        if (!fileService.exists(marker)) {
+            fileService.ensureDirectoryExists(pendingDir);
+            var temp = pendingDir.resolve(name + MARKER_SUFFIX + ".tmp");
+            fileService.writeString(temp, batch.toAbsolutePath().toString());
+            fileService.fsyncFile(temp);
+            fileService.move(temp, marker);
+        }
+    }
+
+    /**
+     * Records that the batch must be dispatched and queues it. Submitting a batch that is already queued has no effect, so a submission that was interrupted may be repeated.
+     *
+     * @param batch the batch directory in the Data Vault inbox
+     * @throws IOException if the marker cannot be written, or the thread is interrupted while waiting for room in the queue
+     */
+    public void submit(@NonNull Path batch) throws IOException {
+        markPending(batch);
+        enqueue(batch.getFileName().toString(), batch);
+    }
+
+    /**
+     * @return the number of batches that were submitted but not yet accepted by the Data Vault
+     */
+    public int getPendingCount() {
+        return queued.size();
+    }
+
+    @Override
+    public void start() throws Exception {
+        fileService.ensureDirectoryExists(pendingDir);
+        try (var markers = fileService.list(pendingDir)) {
+            for (var marker : markers.filter(p -> p.getFileName().toString().endsWith(MARKER_SUFFIX)).sorted(Comparator.comparing(Path::getFileName)).toList()) {
+                var name = marker.getFileName().toString();
+                var batch = Path.of(readMarker(marker));
+                log.info("Found pending dispatch of batch {}", batch);
+                if (queued.add(name.substring(0, name.length() - MARKER_SUFFIX.length()))) {
+                    queueOrKeepInOverflow(batch);
+                }
+            }
+        }
+        thread = new Thread(this::dispatchUntilInterrupted, "batch-dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    private void enqueue(String name, Path batch) throws IOException {
+        if (queued.add(name)) {
+            try {
+                awaitOverflowQueued();
+                queue.put(batch);
+            }
+            catch (InterruptedException e) {
+                queued.remove(name);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to queue batch " + batch);
+            }
+        }
+    }
+
+    private String readMarker(Path marker) throws IOException {
+        try (var is = fileService.newInputStream(marker)) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    private void dispatchUntilInterrupted() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                var batch = queue.poll();
+                if (batch == null) {
+                    queueOverflow();
+                    batch = queue.take();
+                }
+                dispatch(batch);
+            }
+        }
+        catch (InterruptedException e) {
+            log.info("Batch dispatcher stopped; {} batches are still pending", queued.size());
+        }
+    }
+
+    private synchronized void queueOrKeepInOverflow(Path batch) {
+        if (!overflow.isEmpty() || !queue.offer(batch)) {
+            if (overflow.isEmpty()) {
+                log.info("Pending batches from {} on do not fit in the dispatch queue; they are queued when it has room", batch);
+            }
+            overflow.add(batch);
+        }
+    }
+
+    private synchronized void queueOverflow() {
+        while (!overflow.isEmpty() && queue.offer(overflow.peek())) {
+            overflow.remove();
+        }
+        if (overflow.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    // The overflow is only filled at startup, so once it is empty it stays empty
+    private synchronized void awaitOverflowQueued() throws InterruptedException {
+        while (!overflow.isEmpty()) {
+            wait();
+        }
+    }
+
+    private void dispatch(Path batch) throws InterruptedException {
+        var name = batch.getFileName().toString();
+        var marker = pendingDir.resolve(name + MARKER_SUFFIX);
+        var delay = initialRetryDelay;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                log.info("Calling Data Vault to process batch {}", batch);
+                dataVaultClient.sendBatchToVault(batch);
+                break;
+            }
+            catch (IllegalArgumentException e) {
+                park(name, marker, batch, e);
+                return;
+            }
+            catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    park(name, marker, batch, e);
+                    return;
+                }
+                log.warn("Import request for batch {} failed (attempt {} of {}), retrying in {}: {}", batch, attempt, maxAttempts, delay, e.getMessage());
+                Thread.sleep(delay.toMillis());
+                var doubled = delay.multipliedBy(2);
+                delay = doubled.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : doubled;
+            }
+        }
+        try {
+            fileService.delete(marker);
+            fileService.fsyncDirectory(pendingDir);
+        }
+        catch (IOException e) {
+            // The batch will be dispatched once more after a restart
+            log.error("Unable to remove pending dispatch marker of batch {}", batch, e);
+        }
+        queued.remove(name);
+    }
+
+    private void park(String name, Path marker, Path batch, RuntimeException e) {
+        var failedMarker = pendingDir.resolve(name + FAILED_SUFFIX);
+        log.error("Import request for batch {} failed permanently; not dispatching it again. Rename {} to {} to dispatch it again after the cause has been fixed",
+            batch, failedMarker, marker, e);
+        try {
+            fileService.move(marker, failedMarker);
+            fileService.fsyncDirectory(pendingDir);
+        }
+        catch (IOException ioException) {
+            // The batch will be dispatched once more after a restart
+            log.error("Unable to mark dispatch of batch {} as failed", batch, ioException);
+        }
+        queued.remove(name);
+    }
+}
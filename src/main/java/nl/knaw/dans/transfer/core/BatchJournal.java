@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Write-ahead journal of the current batch. Every step that changes the current batch work directory is appended to the journal, as a line of JSON, and forced to disk before
+ * (for the start of a step) or after (for its completion) the step itself. This way the state of the batch can be recovered after a crash by reading the journal, instead of
+ * walking the work directory:
+ * <ul>
+ *     <li>the running totals of bytes and files in the batch, kept in a {@link CurrentBatchSize}, and the number of DVEs;</li>
+ *     <li>the DVEs that are in the batch, and therefore already in the processed outbox, but have not been handed to the Data Vault yet;</li>
+ *     <li>the version directories that were extracted completely, so that a DVE that is processed again, because the service stopped before it was moved to the processed
+ *     outbox, is not extracted again;</li>
+ *     <li>version directories of which the extraction was started but not completed; these are deleted when the journal is recovered, so that the DVE can be extracted again;</li>
+ *     <li>a batch that was sealed, but of which it is not known whether it was moved to the Data Vault inbox and queued for dispatch; see {@link BatchSealer}.</li>
+ * </ul>
+ * The journal is kept in a file next to the work directory (not in it, because everything in it is sent to the Data Vault). It is started afresh when the batch has been queued for dispatch,
+ * so it never holds more than the entries of one batch. If there is no journal, but the work directory is not empty, as after an upgrade from a version without a journal,
+ * the totals are rebuilt once by walking the work directory (see {@link CurrentBatchSize#measure(Path, FileService)}).
+ *
+ * The journal is recovered on its first use, so that it is only read once after startup.
+ */
+@Slf4j
+public class BatchJournal {
+    public static final String FILE_NAME_SUFFIX = ".journal";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public enum EntryType {
+        // A DVE is about to be extracted into the batch
+        EXTRACTING,
+        // The DVE was extracted completely, including its version info file
+        EXTRACTED,
+        // The extraction failed and what was extracted has been removed
+        ABORTED,
+        // The totals were rebuilt from the contents of the work directory, because there was no journal
+        REBUILT,
+        // The batch is about to be moved to the Data Vault inbox under the given name
+        SEALED,
+        // The batch was queued for dispatch to the Data Vault; the journal starts afresh after this entry
+        QUEUED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private EntryType type;
+        private long timestamp;
+        private String dve;
+        private String nbn;
+        private Integer version;
+        private Long bytes;
+        private Long files;
+        private String batch;
+    }
+
+    private final Path currentBatchWorkDir;
+    private final Path journalFile;
+    private final FileService fileService;
+
+    private boolean recovered;
+    private final CurrentBatchSize size = new CurrentBatchSize();
+    private final List<String> dves = new ArrayList<>();
+    private long startTime;
+    private final Map<String, Entry> extracting = new LinkedHashMap<>();
+    private final Map<String, Entry> extracted = new LinkedHashMap<>();
+    private String sealedBatch;
+
+    public BatchJournal(@NonNull Path currentBatchWorkDir, @NonNull FileService fileService) {
+        this.currentBatchWorkDir = currentBatchWorkDir;
+        this.journalFile = currentBatchWorkDir.resolveSibling(currentBatchWorkDir.getFileName().toString() + FILE_NAME_SUFFIX);
+        this.fileService = fileService;
+    }
+
+    /**
+     * Records that a DVE is about to be extracted into the batch, in <code>&lt;work dir&gt;/&lt;nbn&gt;/v&lt;version&gt;</code>.
+     *
+     * @param dve     the file name of the DVE
+     * @param nbn     the NBN, which is the name of the object import directory
+     * @param version the OCFL object version number
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void startExtraction(@NonNull String dve, @NonNull String nbn, int version) throws IOException {
+        append(new Entry(EntryType.EXTRACTING, System.currentTimeMillis(), dve, nbn, version, null, null, null));
+    }
+
+    /**
+     * Records that a DVE was extracted completely.
+     *
+     * @param dve     the file name of the DVE
+     * @param nbn     the NBN, which is the name of the object import directory
+     * @param version the OCFL object version number
+     * @param bytes   the number of bytes extracted
+     * @param files   the number of files extracted
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void completeExtraction(@NonNull String dve, @NonNull String nbn, int version, long bytes, long files) throws IOException {
+        append(new Entry(EntryType.EXTRACTED, System.currentTimeMillis(), dve, nbn, version, bytes, files, null));
+    }
+
+    /**
+     * Records that the extraction of a DVE failed, and that what was extracted has been removed.
+     *
+     * @param dve     the file name of the DVE
+     * @param nbn     the NBN, which is the name of the object import directory
+     * @param version the OCFL object version number
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void abortExtraction(@NonNull String dve, @NonNull String nbn, int version) throws IOException {
+        append(new Entry(EntryType.ABORTED, System.currentTimeMillis(), dve, nbn, version, null, null, null));
+    }
+
+    /**
+     * Returns whether a DVE was extracted completely into the current batch. This is the case if the service stopped after the extraction, but before the DVE was moved to the
+     * processed outbox, so that the DVE is processed again.
+     *
+     * @param dve     the file name of the DVE
+     * @param nbn     the NBN, which is the name of the object import directory
+     * @param version the OCFL object version number
+     * @return true if there is an entry for the completed extraction of this DVE into this version
+     * @throws IOException if the journal has to be recovered and that fails
+     */
+    public synchronized boolean isExtracted(@NonNull String dve, @NonNull String nbn, int version) throws IOException {
+        recover();
+        var entry = extracted.get(nbn + "/v" + version);
+        return entry != null && entry.getDve().equals(dve);
+    }
+
+    /**
+     * Records that the batch is about to be moved to the Data Vault inbox under the given name.
+     *
+     * @param batch the name of the batch directory in the Data Vault inbox
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void seal(@NonNull String batch) throws IOException {
+        if (getSealedBatch().isPresent()) {
+            throw new IllegalStateException("Batch " + sealedBatch + " is already sealed");
+        }
+        append(new Entry(EntryType.SEALED, System.currentTimeMillis(), null, null, null, null, null, batch));
+    }
+
+    /**
+     * Records that the sealed batch was queued for dispatch to the Data Vault (see {@link BatchDispatcher}), and starts the journal afresh for the next batch.
+     *
+     * @param batch the name of the batch directory in the Data Vault inbox
+     * @throws IOException if the entry cannot be written, or the journal cannot be started afresh
+     */
+    public synchronized void markQueued(@NonNull String batch) throws IOException {
+        if (!batch.equals(getSealedBatch().orElse(null))) {
+            throw new IllegalStateException("Batch " + batch + " is not the sealed batch");
+        }
+        append(new Entry(EntryType.QUEUED, System.currentTimeMillis(), null, null, null, null, null, batch));
+        var temp = journalFile.resolveSibling(journalFile.getFileName().toString() + ".tmp");
+        fileService.writeString(temp, "");
+        fileService.fsyncFile(temp);
+        fileService.move(temp, journalFile);
+    }
+
+    /**
+     * @return the number of bytes extracted into the current batch
+     * @throws IOException if the journal has to be recovered and that fails
+     */
+    public synchronized long getBytes() throws IOException {
+        recover();
+        return size.getBytes();
+    }
+
+    /**
+     * @return the number of files extracted into the current batch
+     * @throws IOException if the journal has to be recovered and that fails
+     */
+    public synchronized long getFiles() throws IOException {
+        recover();
+        return size.getFiles();
+    }
+
+    /**
+     * @return the file names of the DVEs that were extracted into the current batch, in the order in which they were extracted
+     * @throws IOException if the journal has to be recovered and that fails
+     */
+    public synchronized List<String> getDves() throws IOException {
+        recover();
+        return Collections.unmodifiableList(new ArrayList<>(dves));
+    }
+
+    /**
+     * @return the time of the first entry of the current batch, in milliseconds since the epoch, or 0 if the batch is empty
+     * @throws IOException if the journal has to be recovered and that fails
+     */
+    public synchronized long getStartTime() throws IOException {
+        recover();
+        return startTime;
+    }
+
+    /**
+     * @return the name of the batch that was sealed but not yet queued for dispatch, if any
+     * @throws IOException if the journal has to be recovered and that fails
+     */
+    public synchronized Optional<String> getSealedBatch() throws IOException {
+        recover();
+        return Optional.ofNullable(sealedBatch);
+    }
+
+    private void append(Entry entry) throws IOException {
+        recover();
+        var line = MAPPER.writeValueAsString(entry) + "\n";
+        var created = !fileService.exists(journalFile);
+        try (var channel = fileService.newFileChannel(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            var buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        fileService.fsyncFile(journalFile);
+        if (created) {
+            fileService.fsyncDirectory(journalFile.getParent());
+        }
+        apply(entry);
+    }
+
+    private void apply(Entry entry) {
+        if (startTime == 0 && entry.getType() != EntryType.QUEUED) {
+            startTime = entry.getTimestamp();
+        }
+        switch (entry.getType()) {
+            case EXTRACTING -> extracting.put(key(entry), entry);
+            case EXTRACTED -> {
+                extracting.remove(key(entry));
+                extracted.put(key(entry), entry);
+                size.add(entry.getBytes(), entry.getFiles());
+                dves.add(entry.getDve());
+            }
+            case ABORTED -> {
+                extracting.remove(key(entry));
+                // The version directory was removed, so if it had been extracted completely before, it no longer counts
+                var completed = extracted.remove(key(entry));
+                if (completed != null) {
+                    size.subtract(completed.getBytes(), completed.getFiles());
+                    dves.remove(completed.getDve());
+                }
+            }
+            case REBUILT -> size.add(entry.getBytes(), entry.getFiles());
+            case SEALED -> sealedBatch = entry.getBatch();
+            case QUEUED -> {
+                size.reset();
+                dves.clear();
+                startTime = 0;
+                extracting.clear();
+                extracted.clear();
+                sealedBatch = null;
+            }
+        }
+    }
+
+    private static String key(Entry entry) {
+        return entry.getNbn() + "/v" + entry.getVersion();
+    }
+
+    private void recover() throws IOException {
+        if (recovered) {
+            return;
+        }
+        recovered = true;
+        if (!fileService.exists(journalFile)) {
+            rebuild();
+            return;
+        }
+        byte[] content;
+        try (var in = fileService.newInputStream(journalFile)) {
+            content = in.readAllBytes();
+        }
+        var end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            // The last entry was cut off by a crash; it belongs to a step that was not started or not completed. Remove it, so that the next entry starts on a new line.
+            log.warn("Removing incomplete last entry of journal {}", journalFile);
+            try (var channel = fileService.newFileChannel(journalFile, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+            fileService.fsyncFile(journalFile);
+        }
+        var lines = new String(content, 0, end, StandardCharsets.UTF_8).split("\n");
+        for (var i = 0; i < lines.length; i++) {
+            if (lines[i].isBlank()) {
+                continue;
+            }
+            try {
+                apply(MAPPER.readValue(lines[i], Entry.class));
+            }
+            catch (JsonProcessingException e) {
+                log.warn("Ignoring entry {} of journal {} that cannot be parsed: {}", i + 1, journalFile, e.getMessage());
+            }
+        }
+        log.info("Recovered batch journal {}: {} bytes in {} files from {} DVEs{}", journalFile, size.getBytes(), size.getFiles(), dves.size(),
+            sealedBatch == null ? "" : "; batch " + sealedBatch + " was sealed but not queued for dispatch");
+        if (!dves.isEmpty()) {
+            log.info("DVEs in the current batch that have not been handed to the Data Vault yet: {}", dves);
+        }
+        for (var entry : new ArrayList<>(extracting.values())) {
+            removeIncompleteVersion(entry);
+        }
+    }
+
+    private void removeIncompleteVersion(Entry entry) throws IOException {
+        var objectImportDirectory = currentBatchWorkDir.resolve(entry.getNbn());
+        var versionDirectory = objectImportDirectory.resolve("v" + entry.getVersion());
+        log.warn("Extraction of DVE {} into {} was not completed, removing it", entry.getDve(), versionDirectory);
+        fileService.deleteDirectory(versionDirectory);
+        var versionInfoFile = objectImportDirectory.resolve("v" + entry.getVersion() + ".json");
+        if (fileService.exists(versionInfoFile)) {
+            fileService.delete(versionInfoFile);
+        }
+        if (fileService.isDirectory(objectImportDirectory)) {
+            try (var remaining = fileService.list(objectImportDirectory)) {
+                if (remaining.findAny().isEmpty()) {
+                    fileService.delete(objectImportDirectory);
+                }
+            }
+        }
+        append(new Entry(EntryType.ABORTED, System.currentTimeMillis(), entry.getDve(), entry.getNbn(), entry.getVersion(), null, null, null));
+    }
+
+    private void rebuild() throws IOException {
+        if (!fileService.isDirectory(currentBatchWorkDir)) {
+            return;
+        }
+        log.info("No batch journal found, rebuilding the totals from the contents of {}", currentBatchWorkDir);
+        var measured = CurrentBatchSize.measure(currentBatchWorkDir, fileService);
+        if (measured.getFiles() > 0) {
+            append(new Entry(EntryType.REBUILT, System.currentTimeMillis(), null, null, null, measured.getBytes(), measured.getFiles(), null));
+        }
+        log.info("Current batch contains {} bytes in {} files", size.getBytes(), size.getFiles());
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Decides when the current batch must be sealed and handed to the Data Vault. The policy is evaluated after each DVE that is added to the batch, and periodically, so that a
+ * batch is also sealed when no DVEs arrive.
+ */
+public interface BatchSealPolicy {
+
+    /**
+     * Evaluates the policy against the current batch.
+     *
+     * @param batchJournal the journal of the current batch
+     * @return the reason to seal the batch now, or an empty Optional if it can stay open
+     * @throws IOException if the state of the batch cannot be read from the journal
+     */
+    Optional<BatchSealReason> evaluate(BatchJournal batchJournal) throws IOException;
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+/**
+ * The reason why the current batch was sealed.
+ */
+public enum BatchSealReason {
+    // The total size of the extracted files exceeded the limit
+    BYTES,
+    // The number of extracted files reached the limit
+    FILES,
+    // The number of DVEs reached the limit
+    DVES,
+    // The first DVE was added longer ago than the maximum age
+    AGE,
+    // A flush was requested through the API
+    FLUSH
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates the {@link BatchSealPolicy} at a fixed interval, so that a batch is sealed when one of its limits, typically the maximum age, is reached while no DVEs arrive. The
+ * policy is first evaluated without taking the current-batch lock; only when a limit is reached is {@link BatchSealer#sealIfDue(BatchSealPolicy)} called, which waits for the DVEs
+ * that are being added to the batch and evaluates the policy again before sealing.
+ */
+@Slf4j
+public class BatchSealTimer implements Managed {
+    private final BatchSealer batchSealer;
+    private final BatchJournal batchJournal;
+    private final BatchSealPolicy batchSealPolicy;
+    private final Duration interval;
+
+    private ScheduledExecutorService scheduler;
+
+    public BatchSealTimer(@NonNull BatchSealer batchSealer, @NonNull BatchJournal batchJournal, @NonNull BatchSealPolicy batchSealPolicy, @NonNull Duration interval) {
+        this.batchSealer = batchSealer;
+        this.batchJournal = batchJournal;
+        this.batchSealPolicy = batchSealPolicy;
+        this.interval = interval;
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "batch-seal-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sealIfDue, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void sealIfDue() {
+        try {
+            // Checked without the lock first, because sealIfDue waits for the workers that are adding DVEs to the batch
+            if (batchSealPolicy.evaluate(batchJournal).isPresent()) {
+                batchSealer.sealIfDue(batchSealPolicy);
+            }
+        }
+        catch (Exception e) {
+            log.error("Unable to evaluate batch seal policy or seal current batch", e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.codahale.metrics.MetricRegistry;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.apache.commons.io.FileUtils.moveDirectory;
+
+/**
+ * Seals the current batch: the batch is sealed in the {@link BatchJournal} under a new name, moved to the Data Vault inbox, the work directory is recreated, and the batch is
+ * handed to the {@link BatchDispatcher}, which asks the Data Vault to import it in the background. Because the name is recorded before anything is moved, the sequence can be
+ * retried after a failure or a crash: each step checks whether it was already done.
+ *
+ * The Data Vault may be asked to import the same batch twice, if the service stops after the dispatch was requested but before the import request was completed.
+ *
+ * Sealing takes the exclusive lock of the {@link CurrentBatchLock}, so that the batch is never sealed while a worker is adding a DVE to it. The dispatch of the batch is recorded
+ * while the lock is held, but the batch is queued after it has been released, so that workers can add DVEs to the next batch while the dispatch queue is full.
+ *
+ * For each reason to seal a batch (see {@link BatchSealReason}) the number of batches sealed for that reason is counted in the metric
+ * <code>nl.knaw.dans.transfer.core.BatchSealer.sealed.&lt;reason&gt;</code>.
+ */
+@Slf4j
+public class BatchSealer {
+    private final Path currentBatchWorkDir;
+    private final Path dataVaultBatchRoot;
+    private final BatchJournal batchJournal;
+    private final BatchDispatcher batchDispatcher;
+    private final FileService fileService;
+    private final MetricRegistry metricRegistry;
+    private final CurrentBatchLock currentBatchLock;
+
+    public BatchSealer(@NonNull Path currentBatchWorkDir, @NonNull Path dataVaultBatchRoot, @NonNull BatchJournal batchJournal, @NonNull BatchDispatcher batchDispatcher,
+        @NonNull FileService fileService, @NonNull MetricRegistry metricRegistry, @NonNull CurrentBatchLock currentBatchLock) {
+        this.currentBatchWorkDir = currentBatchWorkDir;
+        this.dataVaultBatchRoot = dataVaultBatchRoot;
+        this.batchJournal = batchJournal;
+        this.batchDispatcher = batchDispatcher;
+        this.fileService = fileService;
+        this.metricRegistry = metricRegistry;
+        this.currentBatchLock = currentBatchLock;
+    }
+
+    /**
+     * Seals the current batch and submits it for dispatch to the Data Vault. If a batch was sealed earlier but not submitted, that batch is submitted instead. An empty batch is
+     * not sealed. This blocks while DVEs are being added to the batch, and while the dispatch queue is full.
+     *
+     * @param reason the reason to seal the batch
+     * @throws IOException if the batch cannot be moved, the journal cannot be written or the batch cannot be submitted
+     */
+    public void sealCurrentBatch(@NonNull BatchSealReason reason) throws IOException {
+        submit(currentBatchLock.sealing(() -> seal(reason)));
+    }
+
+    /**
+     * Evaluates the policy and seals the current batch if it says so. The evaluation and the seal are done under the same lock, so that a batch is sealed only once when several
+     * workers find that it is due at the same time.
+     *
+     * @param policy the policy
+     * @return the reason why the batch was sealed, or an empty Optional if it was not sealed
+     * @throws IOException if the journal cannot be read, or the batch cannot be sealed
+     */
+    public Optional<BatchSealReason> sealIfDue(@NonNull BatchSealPolicy policy) throws IOException {
+        var sealed = currentBatchLock.sealing(() -> {
+            var reason = policy.evaluate(batchJournal);
+            if (reason.isEmpty()) {
+                return new Sealed(null, null);
+            }
+            log.info("Batch seal policy {} reached ({}), sealing current batch", policy, reason.get());
+            return new Sealed(reason.get(), seal(reason.get()));
+        });
+        submit(sealed.batch());
+        return Optional.ofNullable(sealed.reason());
+    }
+
+    // Returns the batch to submit, or null if the current batch was empty
+    private Path seal(BatchSealReason reason) throws IOException {
+        var batch = batchJournal.getSealedBatch().orElse(null);
+        if (batch == null) {
+            if (!isNotEmpty(currentBatchWorkDir)) {
+                log.info("Current batch is empty; nothing to seal");
+                return null;
+            }
+            batch = "batch-" + System.currentTimeMillis();
+            batchJournal.seal(batch);
+            log.info("Sealed current batch as {}; reason: {}", batch, reason);
+            metricRegistry.counter(MetricRegistry.name(BatchSealer.class, "sealed", reason.name().toLowerCase())).inc();
+        }
+        return complete(batch);
+    }
+
+    /**
+     * Completes the sealing of a batch that was sealed but not submitted, e.g., because the service stopped while moving it. This must be done before anything is added to the
+     * current batch.
+     *
+     * @return whether there was such a batch
+     * @throws IOException if the batch cannot be moved, the journal cannot be written or the batch cannot be submitted
+     */
+    public boolean resumeSealedBatch() throws IOException {
+        // Checked without the lock first, because this is called for every DVE
+        if (batchJournal.getSealedBatch().isEmpty()) {
+            return false;
+        }
+        var batch = currentBatchLock.sealing(() -> {
+            var sealedBatch = batchJournal.getSealedBatch();
+            if (sealedBatch.isEmpty()) {
+                return null;
+            }
+            log.info("Resuming sealing of batch {}", sealedBatch.get());
+            return complete(sealedBatch.get());
+        });
+        submit(batch);
+        return batch != null;
+    }
+
+    /*
+     * Moves the batch and records that it must be dispatched. It is queued for dispatch by submit, after the lock has been released, because queuing blocks while the dispatch
+     * queue is full. If the service stops in between, the dispatcher finds the batch at startup.
+     */
+    private Path complete(String batchName) throws IOException {
+        var batch = dataVaultBatchRoot.resolve(batchName);
+        if (!fileService.exists(batch)) {
+            log.info("Moving current batch directory {} to {}", currentBatchWorkDir, batch);
+            moveDirectory(currentBatchWorkDir.toFile(), batch.toFile());
+        }
+        else if (isNotEmpty(currentBatchWorkDir)) {
+            // A move between file systems is a copy followed by a delete; it cannot be told which of the two was interrupted
+            throw new IllegalStateException("Both the current batch directory " + currentBatchWorkDir + " and the sealed batch " + batch
+                + " have content. The move of the batch was interrupted and must be completed manually.");
+        }
+        else {
+            log.info("Sealed batch {} was already moved to {}", batchName, batch);
+        }
+        log.info("Recreating empty current batch directory");
+        fileService.ensureDirectoryExists(currentBatchWorkDir);
+        batchDispatcher.markPending(batch);
+        batchJournal.markQueued(batchName);
+        return batch;
+    }
+
+    private void submit(Path batch) throws IOException {
+        if (batch != null) {
+            batchDispatcher.submit(batch);
+        }
+    }
+
+    private boolean isNotEmpty(Path dir) throws IOException {
+        if (!fileService.isDirectory(dir)) {
+            return false;
+        }
+        try (var entries = fileService.list(dir)) {
+            return entries.findAny().isPresent();
+        }
+    }
+
+    private record Sealed(BatchSealReason reason, Path batch) {
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.google.common.util.concurrent.Striped;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Coordinates the send-to-vault workers that add DVEs to the current batch concurrently with the sealing of that batch:
+ * <ul>
+ *     <li>any number of workers can add DVEs at the same time, but only one DVE per object (NBN) at a time; the objects are mapped onto a fixed number of lock stripes;</li>
+ *     <li>sealing the batch waits until all DVEs that are being added have been completed, and no DVE is added until the batch has been sealed. The lock is fair, so that a
+ *     seal that is waiting is not starved by workers that keep adding DVEs.</li>
+ * </ul>
+ * Together with a worker that processes the DVEs of an NBN in order, this preserves the order of the versions of each object.
+ */
+public class CurrentBatchLock {
+    @FunctionalInterface
+    public interface IOAction<T> {
+        T run() throws IOException;
+    }
+
+    private final ReadWriteLock sealLock = new ReentrantReadWriteLock(true);
+    private final Striped<Lock> objectLocks;
+
+    /**
+     * @param stripes the number of locks that the objects are mapped onto
+     */
+    public CurrentBatchLock(int stripes) {
+        this.objectLocks = Striped.lock(stripes);
+    }
+
+    /**
+     * Runs an action that adds to the directory of an object in the current batch. The batch is not sealed while the action is running.
+     *
+     * @param nbn    the NBN of the object
+     * @param action the action
+     * @param <T>    the type of the result
+     * @return the result of the action
+     * @throws IOException if the action throws one
+     */
+    public <T> T addingTo(@NonNull String nbn, @NonNull IOAction<T> action) throws IOException {
+        sealLock.readLock().lock();
+        try {
+            var objectLock = objectLocks.get(nbn);
+            objectLock.lock();
+            try {
+                return action.run();
+            }
+            finally {
+                objectLock.unlock();
+            }
+        }
+        finally {
+            sealLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs an action that seals the current batch, after all actions that add to it have been completed. No actions that add to the batch are started until it is done.
+     *
+     * @param action the action
+     * @param <T>    the type of the result
+     * @return the result of the action
+     * @throws IOException if the action throws one
+     */
+    public <T> T sealing(@NonNull IOAction<T> action) throws IOException {
+        sealLock.writeLock().lock();
+        try {
+            return action.run();
+        }
+        finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+}
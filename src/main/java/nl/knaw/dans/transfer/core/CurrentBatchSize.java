@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Running total of the bytes and files in the current batch work directory, so that the batch threshold can be checked without walking the directory after every DVE. The
+ * total is kept by the {@link BatchJournal}, which updates it from the sizes of the extracted entries and makes it durable; it is rebuilt from the journal after a restart. The
+ * work directory is only walked, with {@link #measure(Path, FileService)}, when there is no journal yet.
+ */
+public class CurrentBatchSize {
+    private long bytes;
+    private long files;
+
+    /**
+     * Walks the work directory and adds up the sizes of the files in it.
+     *
+     * @param currentBatchWorkDir the current batch work directory; it does not need to exist
+     * @param fileService         the file service
+     * @return the size of the files in the work directory
+     * @throws IOException if the work directory cannot be walked
+     */
+    public static CurrentBatchSize measure(@NonNull Path currentBatchWorkDir, @NonNull FileService fileService) throws IOException {
+        var measured = new CurrentBatchSize();
+        if (!fileService.isDirectory(currentBatchWorkDir)) {
+            return measured;
+        }
+        try (var paths = fileService.walk(currentBatchWorkDir)) {
+            paths.forEach(path -> {
+                try {
+                    var attributes = fileService.readAttributes(path, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        measured.add(attributes.size(), 1);
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return measured;
+    }
+
+    /**
+     * @return the number of bytes in the current batch
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of files in the current batch
+     */
+    public synchronized long getFiles() {
+        return files;
+    }
+
+    /**
+     * Adds files that were written to the current batch work directory.
+     *
+     * @param bytes the number of bytes written
+     * @param files the number of files written
+     */
+    public synchronized void add(long bytes, long files) {
+        this.bytes += bytes;
+        this.files += files;
+    }
+
+    /**
+     * Subtracts files that were removed from the current batch work directory.
+     *
+     * @param bytes the number of bytes removed
+     * @param files the number of files removed
+     */
+    public synchronized void subtract(long bytes, long files) {
+        this.bytes -= bytes;
+        this.files -= files;
+    }
+
+    /**
+     * Resets the total to zero, after the current batch work directory has been moved away and recreated empty.
+     */
+    public synchronized void reset() {
+        bytes = 0;
+        files = 0;
+    }
+}
@@ -16,104 +16,62 @@
 package nl.knaw.dans.transfer.core;
 
 import lombok.AllArgsConstructor;
-import nl.knaw.dans.bagit.domain.Bag;
-import nl.knaw.dans.bagit.domain.FetchItem;
-import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
-import nl.knaw.dans.bagit.reader.BagReader;
-import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
-import java.net.URI;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystem;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.ProviderNotFoundException;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
 
 @AllArgsConstructor
 public class DataFileMetadataReader {
     private final FileService fileService;
 
     public List<DataFileMetadata> readDataFileAttributes(Path dveZip) throws IOException {
-        try (var zipFs = fileService.newFileSystem(dveZip)) {
-            if (zipFs == null) {
-                throw new IOException("Failed to open file system for " + dveZip);
-            }
-            var rootDir = zipFs.getRootDirectories().iterator().next();
-            try (var topLevelDirStream = fileService.list(rootDir)) {
-                var topLevelDir = topLevelDirStream
-                    .filter(fileService::isDirectory)
-                    .findFirst() // This relies on bag validation having rejected any packages with multiple toplevel dirs.
-                    .orElseThrow(() -> new IllegalStateException("No top-level directory found in DVE"));
-
-                String pidMapping;
-                try (var pidMappingContent = fileService.newInputStream(topLevelDir.resolve("metadata/pid-mapping.txt"))) {
-                    pidMapping = IOUtils.toString(pidMappingContent, StandardCharsets.UTF_8);
-                }
-                var pathToPidMap = readPathToPidMapping(pidMapping);
-
-                BagReader reader = new BagReader();
-                Bag bag = reader.read(topLevelDir);
-
-                var pathToSha1Map = bag.getPayLoadManifests().stream()
-                    .filter(m -> m.getAlgorithm() == StandardSupportedAlgorithms.SHA1)
-                    .findFirst()
-                    .map(m -> m.getFileToChecksumMap().entrySet().stream()
-                        .collect(Collectors.toMap(entry -> topLevelDir.relativize(entry.getKey()).toString(), Map.Entry::getValue)))
-                    .orElse(Map.of());
-
-                var pathToFetchItemMap = bag.getItemsToFetch().stream()
-                    .collect(Collectors.toMap(item -> topLevelDir.relativize(item.getPath()).toString(), item -> item));
-
-                return pathToPidMap.entrySet().stream()
-                    .filter(e -> pathToSha1Map.containsKey(e.getKey()))
-                    .map(entry -> {
-                        var path = entry.getKey();
-                        var pid = entry.getValue();
-                        var sha1 = pathToSha1Map.get(path);
-                        var fetchItem = pathToFetchItemMap.get(path);
-                        long size;
-                        if (fetchItem != null) {
-                            size = fetchItem.length == null ? -1L : fetchItem.length;
-                        }
-                        else {
-                            try {
-                                size = fileService.readAttributes(topLevelDir.resolve(path), BasicFileAttributes.class).size();
-                            }
-                            catch (IOException e) {
-                                size = -1L;
-                            }
-                        }
-                        return new DataFileMetadata(path, pid, sha1, size);
-                    })
-                    .toList();
-            }
-        }
-        catch (ProviderNotFoundException e) {
-            throw new RuntimeException("The file system provider is not found. Probably not a ZIP file: " + dveZip, e);
-        }
-        catch (Exception e) {
-            throw new IOException("Error reading data file attributes from " + dveZip, e);
+        try (var dveIndex = new DveIndex(dveZip, fileService)) {
+            return readDataFileAttributes(dveIndex);
         }
     }
 
-    Map<String, URI> readPathToPidMapping(String pidToPathMapping) throws IOException {
-        var pathToPidMap = new HashMap<String, URI>();
-        try (var lines = pidToPathMapping.lines()) {
-            lines.map(line -> line.split("\\s+", 2))
-                .forEach(parts -> {
-                    if (parts[1].equals("data/")) {
-                        return; // Entry for the complete dataset can be ignored
+    /**
+     * Reads the metadata of the data files in the DVE. pid-mapping.txt is read line by line and each line is joined with the payload manifest and with the lengths in fetch.txt,
+     * which are both held in maps. Only files that are in both pid-mapping.txt and the manifest are included. Memory use is therefore proportional to the size of the manifest:
+     * besides the compact result table, the whole manifest is kept by the index, which shares it with the other readers of the DVE, and the fetch lengths are kept while reading.
+     * Only the lines of pid-mapping.txt and the {@link DataFileMetadata} objects are not. If pid-mapping.txt lists a path more than once, its last PID is used.
+     *
+     * @param dveIndex the index over the DVE
+     * @return the data files, sorted by path
+     * @throws IOException if the DVE does not contain pid-mapping.txt, or one of the tag files cannot be read or parsed
+     */
+    public List<DataFileMetadata> readDataFileAttributes(DveIndex dveIndex) throws IOException {
+        try {
+            var pathToSha1Map = dveIndex.getManifestSha1();
+            var pathToFetchLengthMap = new HashMap<String, Long>();
+            for (var fetchEntry : dveIndex.getFetchEntries()) {
+                pathToFetchLengthMap.put(fetchEntry.getPath(), fetchEntry.getLength() == null ? -1L : fetchEntry.getLength());
+            }
+
+            var table = DataFileTable.builder();
+            try (var pidMapping = dveIndex.openTagFile(DveIndex.PID_MAPPING_TXT)
+                .orElseThrow(() -> new NoSuchFileException(DveIndex.PID_MAPPING_TXT))) {
+                new TagFileReader().readPidMapping(pidMapping, (path, pid) -> {
+                    var sha1 = pathToSha1Map.get(path);
+                    if (sha1 == null) {
+                        return;
+                    }
+                    var size = pathToFetchLengthMap.get(path);
+                    if (size == null) {
+                        // The uncompressed size is recorded in the central directory; -1 if unknown
+                        size = dveIndex.findEntry(path).map(ZipEntry::getSize).orElse(-1L);
                     }
-                    var pathStr = parts[1];
-                    pathToPidMap.put(pathStr, URI.create(parts[0]));
+                    table.add(path, pid, sha1, size);
                 });
-
+            }
+            return table.buildKeepingLastPerPath();
+        }
+        catch (Exception e) {
+            throw new IOException("Error reading data file attributes from " + dveIndex.getDve(), e);
         }
-        return pathToPidMap;
     }
-}
\ No newline at end of file
+}
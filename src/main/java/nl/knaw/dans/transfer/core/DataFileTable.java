@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+
+import java.net.URI;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * A compact, immutable list of the data files of a DVE. Datasets can have millions of files, so instead of keeping a {@link DataFileMetadata} object per file, the values are kept
+ * in a few arrays:
+ * <ul>
+ *     <li>paths are sorted and front-coded: within each block of {@value #BLOCK_SIZE} paths, only the part that differs from the previous path is stored;</li>
+ *     <li>SHA-1 checksums are stored as 20 bytes each;</li>
+ *     <li>PIDs of the form <code>...?fileId=123</code> are stored as the number plus a shared prefix, and <code>urn:uuid:</code> PIDs as two longs.</li>
+ * </ul>
+ * Values that do not fit these forms are kept as they are. The {@link DataFileMetadata} objects are created when the list is accessed. Iterating is the cheapest way to do so, as
+ * each path is then decoded from the previous one.
+ */
+public class DataFileTable extends AbstractList<DataFileMetadata> implements RandomAccess {
+    private static final int BLOCK_SIZE = 16;
+    private static final int SHA1_LENGTH = 20;
+    private static final int PID_OTHER = -1;
+    private static final int PID_UUID = -2;
+    private static final String UUID_PREFIX = "urn:uuid:";
+    private static final String FILE_ID_PARAMETER = "fileId=";
+
+    private final int size;
+
+    private final String pathSuffixes;
+    private final int[] pathSuffixStarts;
+    private final int[] sharedPrefixLengths;
+
+    private final byte[] sha1s;
+    private final Map<Integer, String> otherSha1s = new HashMap<>();
+
+    private final int[] pidKinds;
+    private final long[] pidValues;
+    private final long[] pidUuidLeastSignificantBits;
+    private final List<String> pidPrefixes = new ArrayList<>();
+    private final Map<Integer, URI> otherPids = new HashMap<>();
+
+    private final long[] sizes;
+
+    private DataFileTable(Builder builder, int[] order) {
+        size = order.length;
+        pathSuffixStarts = new int[size + 1];
+        sharedPrefixLengths = new int[size];
+        sha1s = new byte[size * SHA1_LENGTH];
+        pidKinds = new int[size];
+        pidValues = new long[size];
+        pidUuidLeastSignificantBits = builder.pidUuidLeastSignificantBits == null ? null : new long[size];
+        pidPrefixes.addAll(builder.pidPrefixes);
+        sizes = new long[size];
+
+        var suffixes = new StringBuilder();
+        String previousPath = "";
+        for (var i = 0; i < size; i++) {
+            var from = order[i];
+
+            var path = builder.paths.get(from);
+            var shared = i % BLOCK_SIZE == 0 ? 0 : sharedPrefixLength(previousPath, path);
+            sharedPrefixLengths[i] = shared;
+            pathSuffixStarts[i] = suffixes.length();
+            suffixes.append(path, shared, path.length());
+            previousPath = path;
+
+            System.arraycopy(builder.sha1s, from * SHA1_LENGTH, sha1s, i * SHA1_LENGTH, SHA1_LENGTH);
+            if (builder.otherSha1s.containsKey(from)) {
+                otherSha1s.put(i, builder.otherSha1s.get(from));
+            }
+
+            pidKinds[i] = builder.pidKinds[from];
+            pidValues[i] = builder.pidValues[from];
+            if (pidKinds[i] == PID_UUID) {
+                pidUuidLeastSignificantBits[i] = builder.pidUuidLeastSignificantBits[from];
+            }
+            else if (pidKinds[i] == PID_OTHER) {
+                otherPids.put(i, builder.otherPids.get(from));
+            }
+
+            sizes[i] = builder.sizes[from];
+        }
+        pathSuffixStarts[size] = suffixes.length();
+        pathSuffixes = suffixes.toString();
+    }
+
+    /**
+     * Creates a table from the given files. The table is sorted by path.
+     *
+     * @param files the files
+     * @return the table
+     */
+    public static DataFileTable of(@NonNull List<DataFileMetadata> files) {
+        var builder = builder();
+        files.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Returns a builder to which files can be added one at a time, in any order. The builder encodes the PID and checksum of each file when it is added, so that only the paths
+     * are kept as strings until the table is built.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final List<String> paths = new ArrayList<>();
+        private byte[] sha1s = new byte[INITIAL_CAPACITY * SHA1_LENGTH];
+        private final Map<Integer, String> otherSha1s = new HashMap<>();
+        private int[] pidKinds = new int[INITIAL_CAPACITY];
+        private long[] pidValues = new long[INITIAL_CAPACITY];
+        private long[] pidUuidLeastSignificantBits;
+        private final List<String> pidPrefixes = new ArrayList<>();
+        private final Map<String, Integer> prefixIndexes = new HashMap<>();
+        private final Map<Integer, URI> otherPids = new HashMap<>();
+        private long[] sizes = new long[INITIAL_CAPACITY];
+
+        private Builder() {
+        }
+
+        public Builder add(@NonNull DataFileMetadata file) {
+            return add(file.getFilepath(), file.getUri() == null ? null : file.getUri().toString(), file.getSha1Checksum(), file.getSize());
+        }
+
+        /**
+         * Adds a file.
+         *
+         * @param path the path of the file relative to the bag
+         * @param pid  the PID of the file, or null if it has none
+         * @param sha1 the SHA-1 checksum of the file
+         * @param size the size of the file, or -1 if unknown
+         * @return this builder
+         * @throws IllegalArgumentException if the PID is not a valid URI
+         */
+        public Builder add(@NonNull String path, String pid, String sha1, long size) {
+            var i = paths.size();
+            ensureCapacity(i + 1);
+            paths.add(path);
+
+            if (!encodeSha1(sha1, sha1s, i * SHA1_LENGTH)) {
+                otherSha1s.put(i, sha1);
+            }
+
+            var uuid = pid == null ? null : parseUuidPid(pid);
+            var fileIdStart = pid == null ? -1 : pid.lastIndexOf(FILE_ID_PARAMETER) + FILE_ID_PARAMETER.length();
+            if (uuid != null) {
+                if (pidUuidLeastSignificantBits == null) {
+                    pidUuidLeastSignificantBits = new long[pidKinds.length];
+                }
+                pidKinds[i] = PID_UUID;
+                pidValues[i] = uuid.getMostSignificantBits();
+                pidUuidLeastSignificantBits[i] = uuid.getLeastSignificantBits();
+            }
+            else if (fileIdStart >= FILE_ID_PARAMETER.length() && isCanonicalNumber(pid, fileIdStart)) {
+                pidKinds[i] = prefixIndexes.computeIfAbsent(pid.substring(0, fileIdStart), prefix -> {
+                    pidPrefixes.add(prefix);
+                    return pidPrefixes.size() - 1;
+                });
+                pidValues[i] = Long.parseLong(pid, fileIdStart, pid.length(), 10);
+            }
+            else {
+                pidKinds[i] = PID_OTHER;
+                if (pid != null) {
+                    otherPids.put(i, URI.create(pid));
+                }
+            }
+
+            sizes[i] = size;
+            return this;
+        }
+
+        /**
+         * Builds the table, sorted by path. Files with the same path keep the order in which they were added.
+         *
+         * @return the table
+         */
+        public DataFileTable build() {
+            var order = IntStream.range(0, paths.size())
+                .boxed()
+                .sorted(Comparator.comparing(paths::get))
+                .mapToInt(Integer::intValue)
+                .toArray();
+            return new DataFileTable(this, order);
+        }
+
+        /**
+         * Builds the table, sorted by path. Of the files with the same path only the one that was added last is kept, as when the files are collected in a map keyed by path.
+         *
+         * @return the table
+         */
+        public DataFileTable buildKeepingLastPerPath() {
+            var sorted = IntStream.range(0, paths.size())
+                .boxed()
+                .sorted(Comparator.comparing(paths::get))
+                .mapToInt(Integer::intValue)
+                .toArray();
+            // The sort is stable, so the file that was added last is the last one of its run
+            var order = IntStream.range(0, sorted.length)
+                .filter(i -> i == sorted.length - 1 || !paths.get(sorted[i]).equals(paths.get(sorted[i + 1])))
+                .map(i -> sorted[i])
+                .toArray();
+            return new DataFileTable(this, order);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= pidKinds.length) {
+                return;
+            }
+            var newCapacity = Math.max(capacity, pidKinds.length + (pidKinds.length >> 1));
+            sha1s = Arrays.copyOf(sha1s, newCapacity * SHA1_LENGTH);
+            pidKinds = Arrays.copyOf(pidKinds, newCapacity);
+            pidValues = Arrays.copyOf(pidValues, newCapacity);
+            if (pidUuidLeastSignificantBits != null) {
+                pidUuidLeastSignificantBits = Arrays.copyOf(pidUuidLeastSignificantBits, newCapacity);
+            }
+            sizes = Arrays.copyOf(sizes, newCapacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public DataFileMetadata get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        var path = new StringBuilder();
+        for (var i = index - index % BLOCK_SIZE; i <= index; i++) {
+            appendPath(path, i);
+        }
+        return create(index, path.toString());
+    }
+
+    /**
+     * Returns an iterator that decodes each path from the previous one.
+     */
+    @Override
+    public Iterator<DataFileMetadata> iterator() {
+        return new Iterator<>() {
+            private final StringBuilder path = new StringBuilder();
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public DataFileMetadata next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                appendPath(path, next);
+                return create(next++, path.toString());
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator over {@link #iterator()}, so that streams also decode each path from the previous one.
+     */
+    @Override
+    public Spliterator<DataFileMetadata> spliterator() {
+        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+    }
+
+    /**
+     * Returns the SHA-1 checksum of the file at the given index, without creating a {@link DataFileMetadata} object.
+     *
+     * @param index the index
+     * @return the checksum
+     */
+    public String getSha1Checksum(int index) {
+        var other = otherSha1s.get(index);
+        if (other != null || otherSha1s.containsKey(index)) {
+            return other;
+        }
+        var hex = new char[SHA1_LENGTH * 2];
+        for (var i = 0; i < SHA1_LENGTH; i++) {
+            var b = sha1s[index * SHA1_LENGTH + i];
+            hex[2 * i] = Character.forDigit((b >> 4) & 0xf, 16);
+            hex[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    private DataFileMetadata create(int index, String path) {
+        return new DataFileMetadata(path, getUri(index), getSha1Checksum(index), sizes[index]);
+    }
+
+    private void appendPath(StringBuilder path, int index) {
+        path.setLength(sharedPrefixLengths[index]);
+        path.append(pathSuffixes, pathSuffixStarts[index], pathSuffixStarts[index + 1]);
+    }
+
+    private URI getUri(int index) {
+        var kind = pidKinds[index];
+        if (kind == PID_OTHER) {
+            return otherPids.get(index);
+        }
+        if (kind == PID_UUID) {
+            return URI.create(UUID_PREFIX + new UUID(pidValues[index], pidUuidLeastSignificantBits[index]));
+        }
+        return URI.create(pidPrefixes.get(kind) + pidValues[index]);
+    }
+
+    private static boolean encodeSha1(String sha1, byte[] target, int offset) {
+        if (sha1 == null || sha1.length() != SHA1_LENGTH * 2) {
+            return false;
+        }
+        for (var i = 0; i < SHA1_LENGTH; i++) {
+            var high = lowerCaseHexDigit(sha1.charAt(2 * i));
+            var low = lowerCaseHexDigit(sha1.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            target[offset + i] = (byte) ((high << 4) | low);
+        }
+        return true;
+    }
+
+    private static int lowerCaseHexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static UUID parseUuidPid(String pid) {
+        if (!pid.startsWith(UUID_PREFIX)) {
+            return null;
+        }
+        var value = pid.substring(UUID_PREFIX.length());
+        try {
+            var uuid = UUID.fromString(value);
+            // Only if it can be restored exactly
+            return uuid.toString().equals(value) ? uuid : null;
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Digits only, no leading zeros, and small enough for a long
+    private static boolean isCanonicalNumber(String s, int start) {
+        var length = s.length() - start;
+        if (length == 0 || length > 18 || (s.charAt(start) == '0' && length > 1)) {
+            return false;
+        }
+        for (var i = start; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int sharedPrefixLength(String a, String b) {
+        var max = Math.min(a.length(), b.length());
+        var i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -138,4 +138,14 @@ public class DveFileName {
             index
         );
     }
+
+    public DveFileName withoutIndex() {
+        return new DveFileName(
+            this.path,
+            this.baseName,
+            this.creationTime,
+            this.ocflObjectVersion,
+            null
+        );
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.Getter;
+import lombok.NonNull;
+import nl.knaw.dans.transfer.core.oaiore.OaiOreDocument;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Index over an opened Dataset Version Export (DVE). The central directory of the ZIP file is read once, when the index is created. Tag files are only read when they are asked
+ * for, and at most once. The tag files with key-value or per-file lines (bag-info.txt, manifest-sha1.txt, fetch.txt) are streamed and only their parsed form is kept;
+ * other tag files, such as oai-ore.jsonld, are cached as a whole. One index is meant to be shared by all readers that need information from the DVE during one processing stage.
+ *
+ * The index keeps the ZIP file open, so it must be released by calling {@link #close()}.
+ */
+public class DveIndex implements Closeable {
+    public static final String OAI_ORE_JSONLD = "metadata/oai-ore.jsonld";
+    public static final String PID_MAPPING_TXT = "metadata/pid-mapping.txt";
+    public static final String BAG_INFO_TXT = "bag-info.txt";
+    public static final String MANIFEST_SHA1_TXT = "manifest-sha1.txt";
+    public static final String FETCH_TXT = "fetch.txt";
+
+    @Getter
+    private final Path dve;
+
+    @Getter
+    private final ZipFile zipFile;
+
+    private final ZipEntryIndex entryIndex;
+    private final Map<String, Optional<String>> tagFiles = new HashMap<>();
+
+    private OaiOreDocument oaiOre;
+    private Map<String, List<String>> bagInfo;
+    private Map<String, String> manifestSha1;
+    private List<FetchEntry> fetchEntries;
+
+    /**
+     * Opens the DVE and reads its central directory.
+     *
+     * @param dve         the DVE ZIP file
+     * @param fileService the file service to open the ZIP file with
+     * @throws IOException if the file cannot be opened as a ZIP file
+     */
+    public DveIndex(@NonNull Path dve, @NonNull FileService fileService) throws IOException {
+        this.dve = dve;
+        try {
+            this.zipFile = fileService.openZipFile(dve);
+        }
+        catch (ZipException e) {
+            throw new IOException("Unable to open DVE. Probably not a ZIP file: " + dve, e);
+        }
+        try {
+            this.entryIndex = fileService.getEntryIndex(zipFile);
+            if (!entryIndex.hasBaseFolder()) {
+                throw new IllegalStateException("No top-level directory found in DVE");
+            }
+        }
+        catch (RuntimeException e) {
+            zipFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the file entry with the given path relative to the base folder of the DVE.
+     *
+     * @param path the path relative to the base folder, e.g. <code>metadata/oai-ore.jsonld</code>
+     * @return the entry, or an empty Optional if there is no such file
+     * @throws IllegalArgumentException if more than one entry matches the path
+     */
+    public Optional<ZipEntry> findEntry(@NonNull String path) {
+        return entryIndex.find(path);
+    }
+
+    /**
+     * Reads a tag file as a UTF-8 string. The content is cached, so the file is read at most once.
+     *
+     * @param path the path relative to the base folder, e.g. <code>bag-info.txt</code>
+     * @return the content, or an empty Optional if the DVE does not contain the file
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized Optional<String> readTagFile(@NonNull String path) throws IOException {
+        var cached = tagFiles.get(path);
+        if (cached != null) {
+            return cached;
+        }
+        var entry = findEntry(path);
+        Optional<String> content = Optional.empty();
+        if (entry.isPresent()) {
+            try (var is = zipFile.getInputStream(entry.get())) {
+                content = Optional.of(IOUtils.toString(is, StandardCharsets.UTF_8));
+            }
+        }
+        tagFiles.put(path, content);
+        return content;
+    }
+
+    /**
+     * Opens a tag file for reading line by line, without caching its content. Use this for tag files that have a line per payload file, which can be large. The caller must close
+     * the reader.
+     *
+     * @param path the path relative to the base folder, e.g. <code>metadata/pid-mapping.txt</code>
+     * @return a reader for the UTF-8 content, or an empty Optional if the DVE does not contain the file
+     * @throws IOException if the file cannot be opened
+     */
+    public Optional<BufferedReader> openTagFile(@NonNull String path) throws IOException {
+        var entry = findEntry(path);
+        if (entry.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new BufferedReader(new InputStreamReader(zipFile.getInputStream(entry.get()), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the parsed oai-ore.jsonld. The document is parsed at most once.
+     *
+     * @return the document, or an empty Optional if the DVE does not contain oai-ore.jsonld
+     * @throws IOException if oai-ore.jsonld cannot be read
+     */
+    public synchronized Optional<OaiOreDocument> getOaiOre() throws IOException {
+        if (oaiOre == null) {
+            oaiOre = readTagFile(OAI_ORE_JSONLD).map(OaiOreDocument::parse).orElse(null);
+        }
+        return Optional.ofNullable(oaiOre);
+    }
+
+    /**
+     * Returns the bag-info.txt elements. An absent bag-info.txt yields an empty map.
+     *
+     * @return the values per key; values for the same key are in the order in which they appear in bag-info.txt
+     * @throws IOException if bag-info.txt cannot be read
+     */
+    public synchronized Map<String, List<String>> getBagInfo() throws IOException {
+        if (bagInfo == null) {
+            var reader = openTagFile(BAG_INFO_TXT);
+            if (reader.isEmpty()) {
+                bagInfo = Map.of();
+            }
+            else {
+                try (var r = reader.get()) {
+                    bagInfo = Collections.unmodifiableMap(new BagInfoReader().readBagInfo(r));
+                }
+            }
+        }
+        return bagInfo;
+    }
+
+    public Optional<String> getBagInfoFirstValue(@NonNull String key) throws IOException {
+        var values = getBagInfo().get(key);
+        if (values == null || values.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(values.get(0));
+    }
+
+    /**
+     * Returns the SHA-1 payload manifest. An absent manifest-sha1.txt yields an empty map.
+     *
+     * @return the checksums keyed by path relative to the bag, e.g. <code>data/file.txt</code>
+     * @throws IOException if manifest-sha1.txt cannot be read
+     */
+    public synchronized Map<String, String> getManifestSha1() throws IOException {
+        if (manifestSha1 == null) {
+            var reader = openTagFile(MANIFEST_SHA1_TXT);
+            if (reader.isEmpty()) {
+                manifestSha1 = Map.of();
+            }
+            else {
+                try (var r = reader.get()) {
+                    manifestSha1 = Collections.unmodifiableMap(new TagFileReader().readManifest(r, MANIFEST_SHA1_TXT));
+                }
+            }
+        }
+        return manifestSha1;
+    }
+
+    /**
+     * Returns the items in fetch.txt. An absent fetch.txt yields an empty list.
+     *
+     * @return the fetch entries, in the order in which they appear in fetch.txt
+     * @throws IOException if fetch.txt cannot be read
+     */
+    public synchronized List<FetchEntry> getFetchEntries() throws IOException {
+        if (fetchEntries == null) {
+            var reader = openTagFile(FETCH_TXT);
+            if (reader.isEmpty()) {
+                fetchEntries = List.of();
+            }
+            else {
+                try (var r = reader.get()) {
+                    fetchEntries = Collections.unmodifiableList(new TagFileReader().readFetch(r));
+                }
+            }
+        }
+        return fetchEntries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
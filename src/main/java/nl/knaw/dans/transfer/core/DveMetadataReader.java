@@ -17,12 +17,9 @@ package nl.knaw.dans.transfer.core;
 
 import lombok.AllArgsConstructor;
 import nl.knaw.dans.transfer.core.oaiore.OaiOreMetadataReader;
-import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.List;
 
 @AllArgsConstructor
 public class DveMetadataReader {
@@ -31,14 +28,27 @@ public class DveMetadataReader {
     private final DataFileMetadataReader dataFileMetadataReader;
 
     public DveMetadata readDveMetadata(Path path) {
+        try (var dveIndex = new DveIndex(path, fileService)) {
+            return readDveMetadata(dveIndex);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("unable to read metadata from file", e);
+        }
+    }
 
+    /**
+     * Reads the metadata of the DVE from an index that is already open. The index is not closed.
+     *
+     * @param dveIndex the index over the DVE
+     * @return the metadata
+     */
+    public DveMetadata readDveMetadata(DveIndex dveIndex) {
         try {
-            var datasetVersionExport = fileService.openZipFile(path);
-            var metadataInputstream = fileService.getEntryUnderBaseFolder(datasetVersionExport, Path.of("metadata/oai-ore.jsonld"));
-            var oaiOre = IOUtils.toString(metadataInputstream, StandardCharsets.UTF_8);
+            var oaiOre = dveIndex.getOaiOre()
+                .orElseThrow(() -> new IllegalArgumentException("No entry found for path: " + DveIndex.OAI_ORE_JSONLD));
             var dveMetadata = oaiOreMetadataReader.readMetadata(oaiOre);
-            dveMetadata.setCreationTime(new DveFileName(path).getCreationTime());
-            var dataFileAttributes = dataFileMetadataReader.readDataFileAttributes(path);
+            dveMetadata.setCreationTime(new DveFileName(dveIndex.getDve()).getCreationTime());
+            var dataFileAttributes = dataFileMetadataReader.readDataFileAttributes(dveIndex);
             dveMetadata.setDataFileAttributes(dataFileAttributes);
 
             return dveMetadata;
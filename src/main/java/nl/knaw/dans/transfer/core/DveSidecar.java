@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The properties of a DVE that are needed after the extract-metadata stage, written by {@link ExtractMetadataTask} to a file next to the DVE. The sidecar travels with the DVE
+ * through the outboxes, so that later stages do not have to open the DVE again to read them.
+ * <p>
+ * A sidecar is only used if it has the current format version and was written for a DVE of the same size and last-modified time. Otherwise it is considered stale, and the DVE
+ * itself must be read. Moves and renames keep the last-modified time of the DVE, but replacing it with another file, even one of the same size, does not.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Slf4j
+public class DveSidecar {
+    public static final int FORMAT_VERSION = 2;
+    public static final String FILE_NAME_SUFFIX = "-metadata.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private int formatVersion;
+    private long dveSize;
+    private long dveLastModified;
+    private String nbn;
+    private String contactName;
+    private String contactEmail;
+    private String dataversePidVersion;
+    private String hasOrganizationalIdentifierVersion;
+    private String deaccessionedReason;
+    private boolean payloadChecksumsVerified;
+    private List<String> fetchSha1s;
+    private List<LobFile> lobFiles;
+
+    /**
+     * A data file that is not included in the DVE, but must be transferred from the LOB store.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LobFile {
+        private long dataverseFileId;
+        private String sha1Checksum;
+    }
+
+    /**
+     * Returns the location of the sidecar for the given DVE.
+     *
+     * @param dve the DVE
+     * @return the path of the sidecar; the file may not exist
+     */
+    public static Path pathFor(@NonNull Path dve) {
+        return dve.resolveSibling(dve.getFileName().toString() + FILE_NAME_SUFFIX);
+    }
+
+    /**
+     * Reads the sidecar of the given DVE. A sidecar that cannot be parsed is treated as stale.
+     *
+     * @param dve         the DVE
+     * @param fileService the file service to read the files with
+     * @return the sidecar, or an empty Optional if there is no sidecar or if it is stale
+     * @throws IOException if the sidecar exists but cannot be read
+     */
+    public static Optional<DveSidecar> read(@NonNull Path dve, @NonNull FileService fileService) throws IOException {
+        var path = pathFor(dve);
+        if (!fileService.exists(path)) {
+            return Optional.empty();
+        }
+        DveSidecar sidecar;
+        try (var is = fileService.newInputStream(path)) {
+            sidecar = MAPPER.readValue(is, DveSidecar.class);
+        }
+        catch (JsonProcessingException e) {
+            log.warn("Ignoring sidecar that cannot be parsed: {}", path, e);
+            return Optional.empty();
+        }
+        if (sidecar.getFormatVersion() != FORMAT_VERSION) {
+            log.info("Ignoring sidecar with format version {} (expected {}): {}", sidecar.getFormatVersion(), FORMAT_VERSION, path);
+            return Optional.empty();
+        }
+        var attributes = fileService.readAttributes(dve, BasicFileAttributes.class);
+        if (sidecar.getDveSize() != attributes.size()) {
+            log.info("Ignoring stale sidecar, written for a DVE of {} bytes, but DVE is {} bytes: {}", sidecar.getDveSize(), attributes.size(), path);
+            return Optional.empty();
+        }
+        if (sidecar.getDveLastModified() != attributes.lastModifiedTime().toMillis()) {
+            log.info("Ignoring stale sidecar, written for a DVE last modified at {}, but DVE was last modified at {}: {}", sidecar.getDveLastModified(),
+                attributes.lastModifiedTime().toMillis(), path);
+            return Optional.empty();
+        }
+        return Optional.of(sidecar);
+    }
+
+    /**
+     * Writes this sidecar next to the given DVE, replacing an existing sidecar. The format version, DVE size and DVE last-modified time are set before writing.
+     *
+     * @param dve         the DVE
+     * @param fileService the file service to write the file with
+     * @throws IOException if the sidecar cannot be written
+     */
+    public void write(@NonNull Path dve, @NonNull FileService fileService) throws IOException {
+        formatVersion = FORMAT_VERSION;
+        var attributes = fileService.readAttributes(dve, BasicFileAttributes.class);
+        dveSize = attributes.size();
+        dveLastModified = attributes.lastModifiedTime().toMillis();
+        var path = pathFor(dve);
+        fileService.writeString(path, MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(this));
+        fileService.fsyncFile(path);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The properties of a DVE that are used to build the object version properties in the version info JSON. The view is read once per DVE, and only the fields that are requested
+ * are read, so that a configuration that does not need the metadata of the DVE does not cause it to be parsed.
+ */
+@Slf4j
+public class DveView {
+
+    /**
+     * The fields of a DVE that can be read into a view.
+     */
+    public enum Field {
+        DATAVERSE_PID_VERSION,
+        HAS_ORGANIZATIONAL_IDENTIFIER_VERSION,
+        DEACCESSIONED_REASON,
+        FETCH_SHA1S
+    }
+
+    @Getter
+    private final Set<Field> fields;
+    private final String dataversePidVersion;
+    private final String hasOrganizationalIdentifierVersion;
+    private final String deaccessionedReason;
+    private final List<String> fetchSha1s;
+
+    DveView(Set<Field> fields, String dataversePidVersion, String hasOrganizationalIdentifierVersion, String deaccessionedReason, List<String> fetchSha1s) {
+        this.fields = fields.isEmpty() ? EnumSet.noneOf(Field.class) : EnumSet.copyOf(fields);
+        this.dataversePidVersion = dataversePidVersion;
+        this.hasOrganizationalIdentifierVersion = hasOrganizationalIdentifierVersion;
+        this.deaccessionedReason = deaccessionedReason;
+        this.fetchSha1s = fetchSha1s;
+    }
+
+    /**
+     * Reads the requested fields from the transfer item. A failure to read the fetch SHA-1s is logged and results in an empty list, because the external large objects are an
+     * optional part of the version info.
+     *
+     * @param transferItem the transfer item to read from
+     * @param fields       the fields to read
+     * @return the view
+     * @throws IOException if a field other than the fetch SHA-1s cannot be read
+     */
+    public static DveView read(TransferItem transferItem, Set<Field> fields) throws IOException {
+        String dataversePidVersion = null;
+        String hasOrganizationalIdentifierVersion = null;
+        String deaccessionedReason = null;
+        List<String> fetchSha1s = List.of();
+
+        if (fields.contains(Field.DATAVERSE_PID_VERSION)) {
+            dataversePidVersion = transferItem.getDataversePidVersion().orElse(null);
+        }
+        if (fields.contains(Field.HAS_ORGANIZATIONAL_IDENTIFIER_VERSION)) {
+            hasOrganizationalIdentifierVersion = transferItem.getHasOrganizationalIdentifierVersion().orElse(null);
+        }
+        if (fields.contains(Field.DEACCESSIONED_REASON)) {
+            deaccessionedReason = transferItem.getDeaccessionedReason().orElse(null);
+        }
+        if (fields.contains(Field.FETCH_SHA1S)) {
+            try {
+                var lobs = transferItem.getFetchSha1s();
+                if (lobs != null) {
+                    fetchSha1s = lobs;
+                }
+            }
+            catch (IOException e) {
+                log.error("Failed to read fetch SHA-1s from DVE", e);
+            }
+        }
+        return new DveView(fields, dataversePidVersion, hasOrganizationalIdentifierVersion, deaccessionedReason, fetchSha1s);
+    }
+
+    public Optional<String> getDataversePidVersion() {
+        return Optional.ofNullable(require(Field.DATAVERSE_PID_VERSION, dataversePidVersion));
+    }
+
+    public Optional<String> getHasOrganizationalIdentifierVersion() {
+        return Optional.ofNullable(require(Field.HAS_ORGANIZATIONAL_IDENTIFIER_VERSION, hasOrganizationalIdentifierVersion));
+    }
+
+    public Optional<String> getDeaccessionedReason() {
+        return Optional.ofNullable(require(Field.DEACCESSIONED_REASON, deaccessionedReason));
+    }
+
+    public List<String> getFetchSha1s() {
+        return require(Field.FETCH_SHA1S, fetchSha1s);
+    }
+
+    private <T> T require(Field field, T value) {
+        if (!fields.contains(field)) {
+            throw new IllegalStateException("Field " + field + " was not read into this view");
+        }
+        return value;
+    }
+}
@@ -38,6 +38,7 @@ public class ExtractMetadataTask extends SourceDirItemProcessor implements Runna
     private final VaultCatalogClient vaultCatalogClient;
     private final ValidateBagPackClient validateBagPackClient;
     private final DependenciesReadyCheck readyCheck;
+    private final PayloadChecksumVerifier payloadChecksumVerifier;
 
     private TransferItem currentTransferItem;
 
@@ -45,7 +46,7 @@ public class ExtractMetadataTask extends SourceDirItemProcessor implements Runna
         Path nbnRegistrationInbox, URI vaultCatalogBaseUri, DveMetadataReader dveMetadataReader,
         FileService fileService, VaultCatalogClient vaultCatalogClient,
         ValidateBagPackClient validateBagPackClient, DependenciesReadyCheck readyCheck,
-        long delayBetweenProcessingRounds) {
+        PayloadChecksumVerifier payloadChecksumVerifier, long delayBetweenProcessingRounds) {
         super(srcDir, "DVE", new DveFileFilter().toPredicate(), CreationTimeComparator.getInstance(), fileService, delayBetweenProcessingRounds);
         this.targetNbnDir = srcDir;
         this.datastationName = datastationName;
@@ -58,6 +59,7 @@ public class ExtractMetadataTask extends SourceDirItemProcessor implements Runna
         this.vaultCatalogClient = vaultCatalogClient;
         this.validateBagPackClient = validateBagPackClient;
         this.readyCheck = readyCheck;
+        this.payloadChecksumVerifier = payloadChecksumVerifier;
     }
 
     @Override
@@ -73,6 +75,12 @@ public class ExtractMetadataTask extends SourceDirItemProcessor implements Runna
     protected void processItem(Path item) throws IOException {
         currentTransferItem = createTransferItem(item);
 
+        if (payloadChecksumVerifier != null) {
+            log.debug("Verifying payload checksums of DVE {}...", item);
+            payloadChecksumVerifier.verify(currentTransferItem.getDveIndex());
+            currentTransferItem.setPayloadChecksumsVerified(true);
+        }
+
         log.debug("Validating DVE {} as BagPack...", item);
         var result = validateBagPackClient.validateBagPack(item);
         if (result.getIsCompliant()) {
@@ -84,7 +92,7 @@ public class ExtractMetadataTask extends SourceDirItemProcessor implements Runna
         }
 
         log.debug("Reading metadata from dve");
-        var dveMetadata = dveMetadataReader.readDveMetadata(item);
+        var dveMetadata = dveMetadataReader.readDveMetadata(currentTransferItem.getDveIndex());
 
         if (!currentTransferItem.getFetchSha1s().isEmpty() && datastationName == null) {
             throw new IllegalArgumentException("Holey bags (with fetch.txt) are not supported for VaaS customers yet.");
@@ -100,6 +108,8 @@ public class ExtractMetadataTask extends SourceDirItemProcessor implements Runna
             scheduleNbnRegistration(currentTransferItem);
         }
 
+        saveSidecar(currentTransferItem, dveMetadata);
+
         log.debug("Moving DVE to processed outbox");
         currentTransferItem.moveToTargetDirIn(outboxProcessed);
 
@@ -149,6 +159,17 @@ public class ExtractMetadataTask extends SourceDirItemProcessor implements Runna
         }
     }
 
+    private void saveSidecar(TransferItem transferItem, DveMetadata dveMetadata) {
+        log.debug("Writing metadata sidecar");
+        try {
+            transferItem.saveSidecar(dveMetadata);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // Not fatal: without a sidecar, SendToVaultTask reads the metadata from the DVE itself
+            log.warn("Unable to write metadata sidecar for DVE; it will be read again when sending it to the vault", e);
+        }
+    }
+
     private void scheduleNbnRegistration(TransferItem transferItem) {
         try {
             new RegistrationToken(transferItem.getNbn(), URI.create(vaultCatalogBaseUri + transferItem.getNbn()))
@@ -49,12 +49,14 @@ public class ExtractMetadataTaskFactory implements InboxTaskFactory {
     private final ValidateBagPackClient validateBagPackClient;
     @NonNull
     private final DependenciesReadyCheck readyCheck;
+    // Null if the payload checksums are not verified locally
+    private final PayloadChecksumVerifier payloadChecksumVerifier;
     private final long delayBetweenProcessingRounds;
 
     @Override
     public Runnable createInboxTask(Path targetNbnDir) {
         return new ExtractMetadataTask(targetNbnDir, datastationName, outboxProcessed, outboxFailed, outboxRejected,
             nbnRegistrationInbox, vaultCatalogBaseUri, dveMetadataReader, fileService,
-            vaultCatalogClient, validateBagPackClient, readyCheck, delayBetweenProcessingRounds);
+            vaultCatalogClient, validateBagPackClient, readyCheck, payloadChecksumVerifier, delayBetweenProcessingRounds);
     }
 }
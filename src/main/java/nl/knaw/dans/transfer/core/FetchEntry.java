@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.Value;
+
+/**
+ * One line of the fetch.txt of a bag. The path is relative to the bag, e.g. <code>data/file.txt</code>.
+ */
+@Value
+public class FetchEntry {
+    String url;
+    /**
+     * The length of the file in bytes, or <code>null</code> if the fetch.txt specified it as unknown ("-").
+     */
+    Long length;
+    String path;
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+
+/**
+ * The checksum of a DVE, computed by {@link FileCopier} while the DVE was copied to another file system, and stored in a file next to it. The checksum file travels with the
+ * DVE when it is moved by the {@link FileService}, so that a later copy can be verified against the checksum of the original without hashing it separately. It is the plain
+ * {@value FileCopier#ALGORITHM} digest of the whole file, as used in the manifests of the bags, so it can also be checked with standard tools.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Slf4j
+public class FileChecksum {
+    public static final String FILE_NAME_SUFFIX = "-checksum.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private String algorithm;
+    private long size;
+    private String value;
+
+    /**
+     * Returns whether a checksum file is kept for the given file. This is only the case for DVEs, so that companion files such as the {@link DveSidecar} do not get checksum
+     * files of their own.
+     *
+     * @param file the file
+     * @return true if the file is a DVE
+     */
+    public static boolean isKeptFor(@NonNull Path file) {
+        return file.getFileName().toString().endsWith(".zip");
+    }
+
+    /**
+     * Returns the location of the checksum file for the given file.
+     *
+     * @param file the file
+     * @return the path of the checksum file; the file may not exist
+     */
+    public static Path pathFor(@NonNull Path file) {
+        return file.resolveSibling(file.getFileName().toString() + FILE_NAME_SUFFIX);
+    }
+
+    /**
+     * Returns whether this checksum can be compared with the other one, i.e. whether they were computed with the same algorithm.
+     *
+     * @param other the other checksum
+     * @return true if the checksums are comparable
+     */
+    public boolean isComparableWith(@NonNull FileChecksum other) {
+        return algorithm.equals(other.algorithm);
+    }
+
+    /**
+     * Reads the checksum of the given file. A checksum file that cannot be parsed, or that was written for a file of another size, is ignored.
+     *
+     * @param file        the file
+     * @param fileService the file service to read the checksum file with
+     * @return the checksum, or an empty Optional if there is no checksum file or if it is ignored
+     * @throws IOException if the checksum file exists but cannot be read
+     */
+    public static Optional<FileChecksum> read(@NonNull Path file, @NonNull FileService fileService) throws IOException {
+        var path = pathFor(file);
+        if (!fileService.exists(path)) {
+            return Optional.empty();
+        }
+        FileChecksum checksum;
+        try (var is = fileService.newInputStream(path)) {
+            checksum = MAPPER.readValue(is, FileChecksum.class);
+        }
+        catch (JsonProcessingException e) {
+            log.warn("Ignoring checksum file that cannot be parsed: {}", path, e);
+            return Optional.empty();
+        }
+        if (checksum.getAlgorithm() == null || checksum.getValue() == null || checksum.getSize() != fileService.readAttributes(file, BasicFileAttributes.class).size()) {
+            log.info("Ignoring stale checksum file: {}", path);
+            return Optional.empty();
+        }
+        return Optional.of(checksum);
+    }
+
+    /**
+     * Writes this checksum next to the given file, replacing an existing checksum file, and forces it to storage. The caller must make the change to the directory durable.
+     *
+     * @param file        the file
+     * @param fileService the file service to write the checksum file with
+     * @throws IOException if the checksum file cannot be written
+     */
+    public void write(@NonNull Path file, @NonNull FileService fileService) throws IOException {
+        var path = pathFor(file);
+        try (var os = fileService.newOutputStream(path)) {
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(os, this);
+        }
+        fileService.fsyncFile(path);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies files to another file system and computes their SHA-1 checksums while copying (see {@link FileChecksum}). The file is copied in chunks of the buffer size through
+ * direct byte buffers from a pool of at most twice the parallelism buffers, shared by all copies; a copy waits for a buffer when all of them are in use. The chunks of files larger than the parallel threshold are read and written by the threads of an executor,
+ * each with positional reads and writes, while the calling thread hashes the chunks in file order as they come in. At most twice the parallelism chunks are in flight, so
+ * memory use does not depend on the size of the file.
+ * <p>
+ * The metric <code>nl.knaw.dans.transfer.core.FileCopier.bytes</code> counts the bytes copied, and <code>.throughput</code> holds the throughput of each copy in bytes per second.
+ */
+@Slf4j
+public class FileCopier {
+    public static final String ALGORITHM = "SHA-1";
+
+    private final int bufferSize;
+    private final long parallelThreshold;
+    private final Executor executor;
+    private final int maxBuffers;
+    private final BlockingQueue<ByteBuffer> freeBuffers = new LinkedBlockingQueue<>();
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+    private final Meter bytes;
+    private final Histogram throughput;
+
+    /**
+     * @param bufferSize        the size of the chunks in which a file is copied
+     * @param parallelThreshold the size above which the chunks of a file are copied in parallel
+     * @param parallelism       the number of threads of the executor
+     * @param executor          the executor to copy chunks in parallel on; it is not used for files up to the parallel threshold
+     * @param metricRegistry    the registry to report the copied bytes and throughput to
+     */
+    public FileCopier(int bufferSize, long parallelThreshold, int parallelism, @NonNull Executor executor, @NonNull MetricRegistry metricRegistry) {
+        if (bufferSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("bufferSize and parallelism must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.parallelThreshold = parallelThreshold;
+        this.executor = executor;
+        this.maxBuffers = 2 * parallelism;
+        this.bytes = metricRegistry.meter(MetricRegistry.name(FileCopier.class, "bytes"));
+        this.throughput = metricRegistry.histogram(MetricRegistry.name(FileCopier.class, "throughput"));
+    }
+
+    /**
+     * Copies a file, replacing the target if it exists, and forces the copy to storage.
+     *
+     * @param from the file to copy
+     * @param to   the copy
+     * @return the checksum of the file, as read from the original while copying
+     * @throws IOException if the file cannot be copied
+     */
+    public FileChecksum copy(@NonNull Path from, @NonNull Path to) throws IOException {
+        long start = System.nanoTime();
+        var digest = newDigest();
+        long size;
+        try (var source = FileChannel.open(from, StandardOpenOption.READ);
+            var target = FileChannel.open(to, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            size = source.size();
+            if (size <= parallelThreshold) {
+                copySerially(source, target, size, digest, from);
+            }
+            else {
+                copyInParallel(source, target, size, digest, from);
+            }
+            target.force(true);
+        }
+        long nanos = Math.max(System.nanoTime() - start, 1);
+        bytes.mark(size);
+        throughput.update(size * 1_000_000_000L / nanos);
+        log.debug("Copied {} bytes from {} to {} in {} ms", size, from, to, nanos / 1_000_000);
+        return new FileChecksum(ALGORITHM, size, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private void copySerially(FileChannel source, FileChannel target, long size, MessageDigest digest, Path file) throws IOException {
+        var buffer = takeBuffer(file);
+        try {
+            for (long position = 0; position < size; position += bufferSize) {
+                copyChunk(source, target, buffer, position, Math.min(position + bufferSize, size));
+                digest.update(buffer);
+            }
+        }
+        finally {
+            freeBuffers.add(buffer);
+        }
+    }
+
+    private void copyInParallel(FileChannel source, FileChannel target, long size, MessageDigest digest, Path file) throws IOException {
+        // Only the first buffer is waited for, so that copies that each hold some buffers never wait for each other
+        var held = new ArrayList<ByteBuffer>();
+        held.add(takeBuffer(file));
+        for (ByteBuffer extra; held.size() < maxBuffers && (extra = pollBuffer()) != null; ) {
+            held.add(extra);
+        }
+        var inFlight = new ArrayDeque<CompletableFuture<ByteBuffer>>();
+        var free = new ArrayDeque<>(held);
+        long position = 0;
+        try {
+            while (position < size || !inFlight.isEmpty()) {
+                if (position < size && !free.isEmpty()) {
+                    var buffer = free.poll();
+                    long chunkStart = position;
+                    long chunkEnd = Math.min(position + bufferSize, size);
+                    inFlight.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            copyChunk(source, target, buffer, chunkStart, chunkEnd);
+                            return buffer;
+                        }
+                        catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor));
+                    position = chunkEnd;
+                }
+                else {
+                    // The chunks are hashed in the order in which they were submitted, which is the order in the file
+                    var buffer = inFlight.poll().get();
+                    digest.update(buffer);
+                    free.add(buffer);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying " + file, e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException uioe) {
+                throw uioe.getCause();
+            }
+            throw new IOException("Unable to copy " + file, e.getCause());
+        }
+        finally {
+            // The channels are closed by the caller, so the chunks that are still being copied must have finished by then
+            for (var future : inFlight) {
+                try {
+                    future.join();
+                }
+                catch (RuntimeException e) {
+                    // Already failing
+                }
+            }
+            freeBuffers.addAll(held);
+        }
+    }
+
+    // Leaves the buffer with the chunk between its position and limit
+    private static void copyChunk(FileChannel source, FileChannel target, ByteBuffer buffer, long start, long end) throws IOException {
+        buffer.clear();
+        buffer.limit((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at position " + (start + buffer.position()) + "; was the file changed while it was being copied?");
+            }
+        }
+        buffer.flip();
+        var data = buffer.duplicate();
+        while (data.hasRemaining()) {
+            target.write(data, start + data.position());
+        }
+    }
+
+    private ByteBuffer takeBuffer(Path file) throws IOException {
+        var buffer = pollBuffer();
+        if (buffer != null) {
+            return buffer;
+        }
+        try {
+            return freeBuffers.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a buffer to copy " + file, e);
+        }
+    }
+
+    // Returns a free buffer, allocating one as long as the pool is not full, or null if all buffers are in use
+    private ByteBuffer pollBuffer() {
+        var buffer = freeBuffers.poll();
+        if (buffer == null && allocatedBuffers.getAndUpdate(n -> n < maxBuffers ? n + 1 : n) < maxBuffers) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " not supported", e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allocates free DVE file names in target directories, so that {@link FileService#findFreeName(Path, String)} does not have to check every candidate name with a separate
+ * stat call. A name is free if no DVE with the same name, apart from the index, is present in the directory; otherwise the allocated name gets the next index after the
+ * highest one in use, e.g. <code>dataset-3.zip</code> if <code>dataset.zip</code> and <code>dataset-2.zip</code> are present.
+ * <p>
+ * A directory is listed when a name is first allocated in it, and again when the relist interval has passed since the last listing. An allocated name is reserved in-process
+ * until the next listing, so that concurrent workers never get the same name. Files that are created by others in the meantime are not noticed; the move to the allocated name
+ * must therefore not replace an existing file (see {@link FileService#moveToFreeName(Path, Path, String, String)}), and allocate the next name if it fails.
+ */
+@Slf4j
+public class FileNameAllocator {
+    private static final String DVE_EXTENSION = ".zip";
+
+    private static class Directory {
+        // Per name without index: the lowest index that has not been allocated and is not in use; 0 stands for the name without index
+        private Map<String, Integer> nextIndexes = new HashMap<>();
+        // Names without index for which an index was allocated since the last listing, i.e. the reservations that the next listing may not show yet
+        private Map<String, Integer> reserved = new HashMap<>();
+        private long listedAt;
+        private boolean listed;
+    }
+
+    private final Duration relistInterval;
+    private final Clock clock;
+    private final Map<Path, Directory> directories = new ConcurrentHashMap<>();
+
+    public FileNameAllocator(@NonNull Duration relistInterval) {
+        this(relistInterval, Clock.systemUTC());
+    }
+
+    FileNameAllocator(Duration relistInterval, Clock clock) {
+        this.relistInterval = relistInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether names like the given one can be allocated. Only DVE file names (ending in <code>.zip</code>) can.
+     *
+     * @param fileName the file name
+     * @return true if the file name is a DVE file name, false otherwise
+     */
+    public static boolean canAllocate(@NonNull String fileName) {
+        return fileName.endsWith(DVE_EXTENSION);
+    }
+
+    /**
+     * Allocates a free name in the directory, based on the desired file name. The desired file name itself is returned if it is free.
+     *
+     * @param dir      the directory
+     * @param fileName the desired file name; must be a DVE file name
+     * @return the allocated file name
+     * @throws IllegalArgumentException if the file name is not a DVE file name
+     * @throws IllegalStateException    if the directory cannot be listed
+     */
+    public String allocate(@NonNull Path dir, @NonNull String fileName) {
+        if (!canAllocate(fileName)) {
+            throw new IllegalArgumentException("Not a DVE file name: " + fileName);
+        }
+        var dveFileName = new DveFileName(dir.resolve(fileName));
+        var key = dveFileName.withoutIndex().getFileName();
+        var state = directories.computeIfAbsent(key(dir), d -> new Directory());
+        synchronized (state) {
+            if (!state.listed || clock.millis() - state.listedAt >= relistInterval.toMillis()) {
+                relist(dir, state);
+            }
+            int nextIndex = state.nextIndexes.getOrDefault(key, 0);
+            String allocated;
+            int newNextIndex;
+            if (nextIndex == 0) {
+                allocated = fileName;
+                newNextIndex = indexOf(dveFileName) + 1;
+            }
+            else {
+                allocated = dveFileName.withIndex(nextIndex).getFileName();
+                newNextIndex = nextIndex + 1;
+            }
+            state.nextIndexes.put(key, newNextIndex);
+            state.reserved.put(key, newNextIndex);
+            return allocated;
+        }
+    }
+
+    /**
+     * Forgets the directory, e.g. because it was deleted. Does nothing if no names were allocated in it.
+     *
+     * @param dir the directory
+     */
+    public void forget(@NonNull Path dir) {
+        directories.remove(key(dir));
+    }
+
+    private void relist(Path dir, Directory state) {
+        var nextIndexes = new HashMap<String, Integer>();
+        try (var files = Files.list(dir)) {
+            files.map(f -> f.getFileName().toString())
+                .filter(FileNameAllocator::canAllocate)
+                .forEach(name -> {
+                    var dveFileName = new DveFileName(dir.resolve(name));
+                    nextIndexes.merge(dveFileName.withoutIndex().getFileName(), indexOf(dveFileName) + 1, Math::max);
+                });
+        }
+        catch (NoSuchFileException e) {
+            // Nothing is in use; the move into the directory will fail and tell the caller
+            log.debug("Directory {} does not exist", dir);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to list directory: " + dir, e);
+        }
+        // Reservations made since the previous listing may not have been moved into the directory yet
+        state.reserved.forEach((key, nextIndex) -> nextIndexes.merge(key, nextIndex, Math::max));
+        log.debug("Listed {}: {} distinct DVE names", dir, nextIndexes.size());
+        state.nextIndexes = nextIndexes;
+        state.reserved = new HashMap<>();
+        state.listedAt = clock.millis();
+        state.listed = true;
+    }
+
+    private static int indexOf(DveFileName dveFileName) {
+        return dveFileName.getIndex() == null ? 0 : dveFileName.getIndex();
+    }
+
+    private static Path key(Path dir) {
+        return dir.toAbsolutePath().normalize();
+    }
+}
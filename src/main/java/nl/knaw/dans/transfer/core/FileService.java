@@ -20,7 +20,9 @@ import lombok.NonNull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
@@ -50,6 +52,15 @@ public interface FileService {
      */
     InputStream getEntryUnderBaseFolder(ZipFile zipFile, Path subpath) throws IOException;
 
+    /**
+     * Returns the index of the entries under the base folder of the given zip file. The index is built on the first call for a zip file and reused for later calls with the same
+     * zip file.
+     *
+     * @param zipFile the zip file
+     * @return the entry index
+     */
+    ZipEntryIndex getEntryIndex(ZipFile zipFile);
+
     /**
      * Opens a file, returning an input stream to read from the file.
      *
@@ -68,6 +79,15 @@ public interface FileService {
      */
     Stream<Path> list(Path dir) throws IOException;
 
+    /**
+     * Returns a lazily populated Stream of the directory and all files and directories below it.
+     *
+     * @param dir the path to the directory
+     * @return the Stream of the directory and everything in it
+     * @throws IOException if an I/O error occurs
+     */
+    Stream<Path> walk(Path dir) throws IOException;
+
     /**
      * Write a String to a file.
      *
@@ -100,6 +120,20 @@ public interface FileService {
      */
     Path move(Path from, Path to) throws IOException;
 
+    /**
+     * Moves a file, and its companion file if there is one, to a free name in the target directory (see {@link #findFreeName(Path, String)}). The companion file is moved
+     * first, so that the file is never seen at its new location without it. Neither move replaces an existing file; if the free name turns out to be taken after all, e.g.
+     * because another process created a file with that name, the next free name is tried.
+     *
+     * @param file            the file to move
+     * @param targetDir       the target directory
+     * @param fileName        the desired file name
+     * @param companionSuffix the suffix of the companion file, or null
+     * @return the new location of the file
+     * @throws IOException if the file cannot be moved
+     */
+    Path moveToFreeName(Path file, Path targetDir, String fileName, String companionSuffix) throws IOException;
+
     /**
      * Moves a file from oldLocation to newLocation and writes an error log at the new location if an exception occurs during the move.
      *
@@ -117,6 +151,14 @@ public interface FileService {
      */
     void delete(Path path) throws IOException;
 
+    /**
+     * Deletes a directory and everything in it, if it exists.
+     *
+     * @param dir the path to the directory to delete
+     * @throws IOException if the directory cannot be deleted
+     */
+    void deleteDirectory(Path dir) throws IOException;
+
     /**
      * Flushes the file system buffers for the given file, ensuring that all changes are written to the storage device.
      *
@@ -151,6 +193,16 @@ public interface FileService {
      */
     OutputStream newOutputStream(Path path) throws IOException;
 
+    /**
+     * Opens a file channel.
+     *
+     * @param path    the path to the file
+     * @param options how to open the file, as for {@link FileChannel#open(Path, OpenOption...)}
+     * @return a new file channel
+     * @throws IOException if an I/O error occurs
+     */
+    FileChannel newFileChannel(Path path, OpenOption... options) throws IOException;
+
     /**
      * Creates a new directory.
      *
@@ -244,9 +296,22 @@ public interface FileService {
      */
     void moveToTargetFor(Path dve, Path outbox, String targetNbn, boolean addTimestampToFileName);
 
+    /**
+     * Moves the given DVE to the subdirectory of the outbox for the given target NBN, together with the companion file that has the file name of the DVE plus the given suffix, if
+     * that file exists. The companion file is moved first and is named after the file name that the DVE gets in the target directory, so that the DVE is never seen in the target
+     * directory without its companion file.
+     *
+     * @param dve                    the DVE to move
+     * @param outbox                 the outbox directory
+     * @param targetNbn              the target NBN
+     * @param addTimestampToFileName whether to add a timestamp to the file name
+     * @param companionSuffix        the suffix of the companion file
+     */
+    void moveToTargetFor(Path dve, Path outbox, String targetNbn, boolean addTimestampToFileName, String companionSuffix);
+
     /**
      * Finds a free name for the given DVE in the target directory. If a file with the same name as the DVE already exists in the target directory, a suffix is added to the file name to make it
-     * unique.
+     * unique. The name is reserved for the caller, so that concurrent calls for the same directory return different names.
      *
      * @param targetDir the target directory
      * @param fileName  the desired file name
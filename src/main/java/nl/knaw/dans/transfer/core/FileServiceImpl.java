@@ -15,8 +15,10 @@
  */
 package nl.knaw.dans.transfer.core;
 
+import com.codahale.metrics.MetricRegistry;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.annotation.Nullable;
@@ -25,20 +27,26 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileStore;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.stream.Stream;
 import java.util.zip.ZipFile;
 
@@ -46,6 +54,53 @@ import java.util.zip.ZipFile;
 public class FileServiceImpl implements FileService {
     private static final String ERROR_LOG_SUFFIX = "-error.log";
 
+    // Weak keys, so that the index is dropped together with the zip file
+    private final Map<ZipFile, ZipEntryIndex> entryIndexes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Coalesces directory fsyncs in {@link FsyncMode#GROUP_COMMIT} mode; null in {@link FsyncMode#STRICT} mode.
+     */
+    @Nullable
+    private final GroupCommitDirectorySync groupCommitDirectorySync;
+
+    private final FileSystemIdentityCache fileSystemIdentityCache;
+
+    private final TargetDirIndex targetDirIndex;
+
+    private final FileNameAllocator fileNameAllocator;
+
+    private final FileCopier fileCopier;
+
+    /**
+     * Creates a file service that fsyncs in {@link FsyncMode#STRICT} mode, does not cache file system identities and lists the outbox or target directory for every move to
+     * a target directory or free name. Files are copied to other file systems in 1 MiB chunks by the calling thread.
+     */
+    public FileServiceImpl() {
+        this(FsyncMode.STRICT, Duration.ZERO, new FileSystemIdentityCache(Duration.ZERO, Duration.ZERO, new MetricRegistry()), new TargetDirIndex(Duration.ZERO),
+            new FileNameAllocator(Duration.ZERO), new FileCopier(1024 * 1024, Long.MAX_VALUE, 1, Runnable::run, new MetricRegistry()));
+    }
+
+    /**
+     * Creates a file service with the given fsync mode.
+     *
+     * @param fsyncMode               how changes to directories are made durable
+     * @param groupCommitWindow       in {@link FsyncMode#GROUP_COMMIT} mode, how long to wait for other operations on the same directory to join an fsync
+     * @param fileSystemIdentityCache the cache used by {@link #isSameFileSystem(Collection)}
+     * @param targetDirIndex          the index used by {@link #moveToTargetFor(Path, Path, String, boolean, String)}
+     * @param fileNameAllocator       the allocator used by {@link #findFreeName(Path, String)}
+     * @param fileCopier              the copier used by {@link #move(Path, Path)} if the target is on another file system
+     */
+    public FileServiceImpl(@NonNull FsyncMode fsyncMode, @NonNull Duration groupCommitWindow, @NonNull FileSystemIdentityCache fileSystemIdentityCache,
+        @NonNull TargetDirIndex targetDirIndex, @NonNull FileNameAllocator fileNameAllocator, @NonNull FileCopier fileCopier) {
+        this.groupCommitDirectorySync = fsyncMode == FsyncMode.GROUP_COMMIT
+            ? new GroupCommitDirectorySync(FileServiceImpl::forceDirectory, groupCommitWindow)
+            : null;
+        this.fileSystemIdentityCache = fileSystemIdentityCache;
+        this.targetDirIndex = targetDirIndex;
+        this.fileNameAllocator = fileNameAllocator;
+        this.fileCopier = fileCopier;
+    }
+
     @Override
     public ZipFile openZipFile(@NonNull Path path) throws IOException {
         log.debug("Opening zip file '{}'", path);
@@ -54,21 +109,15 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public InputStream getEntryUnderBaseFolder(@NonNull ZipFile zipFile, @NonNull Path path) throws IOException {
-        var entries = zipFile.stream()
-            .filter(e -> {
-                var p = Path.of(e.getName());
-                return p.getNameCount() != 1 && p.subpath(1, p.getNameCount()).equals(path);
-            })
-            .toList();
-        if (entries.isEmpty()) {
-            throw new IllegalArgumentException("No entry found for path: " + path);
-        }
-        else if (entries.size() > 1) {
-            throw new IllegalArgumentException("Multiple entries found for path: " + path);
-        }
-        var entry = entries.get(0);
+        var entry = getEntryIndex(zipFile).find(path.toString())
+            .orElseThrow(() -> new IllegalArgumentException("No entry found for path: " + path));
         log.debug("Requested entry for path '{}', found match on '{}'", path, entry.getName());
-        return zipFile.getInputStream(entries.get(0));
+        return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public ZipEntryIndex getEntryIndex(@NonNull ZipFile zipFile) {
+        return entryIndexes.computeIfAbsent(zipFile, ZipEntryIndex::new);
     }
 
     @Override
@@ -81,6 +130,11 @@ public class FileServiceImpl implements FileService {
         return Files.list(dir);
     }
 
+    @Override
+    public Stream<Path> walk(@NonNull Path dir) throws IOException {
+        return Files.walk(dir);
+    }
+
     @Override
     public void writeString(@NonNull Path path, @NonNull String content) throws IOException {
         Files.writeString(path, content, StandardCharsets.UTF_8);
@@ -93,38 +147,159 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public Path move(@NonNull Path from, @NonNull Path to) throws IOException {
-        if (isSameFileSystem(List.of(from, to.getParent()))) {
+        // The parent of 'from' is on the same file system as 'from', unless 'from' is a mount point, which cannot be moved anyway
+        if (isSameFileSystem(List.of(from.getParent(), to.getParent()))) {
             Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
-            // Ensure durability and visibility
-            if (Files.isRegularFile(to)) {
-                fsyncFile(to);
-            }
-            fsyncDirectory(to.getParent());
-            if (!from.getParent().equals(to.getParent())) {
-                try {
-                    fsyncDirectory(from.getParent());
-                }
-                catch (NoSuchFileException e) {
-                    // parent dir of 'from' no longer exists, nothing to fsync
-                }
-            }
-            return to;
+            moveChecksumAlong(from, to);
+            syncRenamed(from, to);
         }
         else {
-            var targetDir = to.getParent();
-            var temp = targetDir.resolve(to.getFileName().toString() + ".tmp");
-            Files.copy(from, temp, StandardCopyOption.REPLACE_EXISTING);
-            fsyncFile(temp);
-            Files.move(temp, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-            fsyncDirectory(targetDir);
-            Files.delete(from);
+            copyAndDelete(from, to, true);
+        }
+        return to;
+    }
+
+    /*
+     * Like move, but fails with FileAlreadyExistsException if 'to' exists. Within one file system this is still a single rename; Files.move only checks for the target
+     * itself if REPLACE_EXISTING is not given. Across file systems the copy is published with a hard link, which fails if the target exists.
+     */
+    private void moveNoReplace(Path from, Path to) throws IOException {
+        if (isSameFileSystem(List.of(from.getParent(), to.getParent()))) {
+            Files.move(from, to);
+            moveChecksumAlong(from, to);
+            syncRenamed(from, to);
+        }
+        else {
+            copyAndDelete(from, to, false);
+        }
+    }
+
+    // The checksum file is moved after the file, so that it never replaces the checksum of another file if the move of the file fails
+    private void moveChecksumAlong(Path from, Path to) throws IOException {
+        if (!FileChecksum.isKeptFor(from)) {
+            return;
+        }
+        var checksumFile = FileChecksum.pathFor(from);
+        if (Files.exists(checksumFile)) {
+            Files.move(checksumFile, FileChecksum.pathFor(to), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void syncRenamed(Path from, Path to) throws IOException {
+        // Ensure durability and visibility
+        if (Files.isRegularFile(to)) {
+            fsyncFile(to);
+        }
+        fsyncDirectory(to.getParent());
+        if (!from.getParent().equals(to.getParent())) {
             try {
                 fsyncDirectory(from.getParent());
             }
             catch (NoSuchFileException e) {
                 // parent dir of 'from' no longer exists, nothing to fsync
             }
-            return to;
+        }
+    }
+
+    private void copyAndDelete(Path from, Path to, boolean replaceExisting) throws IOException {
+        if (Files.isDirectory(from)) {
+            throw new IOException("Cannot move a directory to another file system: " + from);
+        }
+        var targetDir = to.getParent();
+        var temp = targetDir.resolve(to.getFileName().toString() + ".tmp");
+        var keepChecksum = FileChecksum.isKeptFor(from) && FileChecksum.isKeptFor(to);
+        var recorded = keepChecksum ? FileChecksum.read(from, this) : Optional.<FileChecksum> empty();
+        var checksum = fileCopier.copy(from, temp);
+        // A DVE's sidecar is only trusted as long as the DVE keeps its last-modified time
+        Files.setLastModifiedTime(temp, Files.getLastModifiedTime(from));
+        if (recorded.isPresent() && recorded.get().isComparableWith(checksum) && !recorded.get().equals(checksum)) {
+            Files.delete(temp);
+            throw new IOException("Checksum of " + from + " (" + checksum.getValue() + ") differs from the one recorded when it was copied before (" + recorded.get().getValue()
+                + ")");
+        }
+        if (replaceExisting) {
+            if (keepChecksum) {
+                // Written before the file appears at its new location, so that it is never seen there without its checksum
+                checksum.write(to, this);
+            }
+            Files.move(temp, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        else {
+            publishNoReplace(temp, to, keepChecksum ? checksum : null);
+        }
+        fsyncDirectory(targetDir);
+        Files.delete(from);
+        if (FileChecksum.isKeptFor(from)) {
+            Files.deleteIfExists(FileChecksum.pathFor(from));
+        }
+        try {
+            fsyncDirectory(from.getParent());
+        }
+        catch (NoSuchFileException e) {
+            // parent dir of 'from' no longer exists, nothing to fsync
+        }
+    }
+
+    /*
+     * Makes 'temp' appear as 'to' without replacing an existing file: the link fails with FileAlreadyExistsException if 'to' exists, also if it was created after the copy
+     * started. The checksum is written next to 'temp' and only moved next to 'to' after the link succeeded, so that it never replaces the checksum of the existing file.
+     * Until then 'to' has no checksum, which only means that a later copy of it is not verified.
+     */
+    private void publishNoReplace(Path temp, Path to, FileChecksum checksum) throws IOException {
+        if (checksum != null) {
+            checksum.write(temp, this);
+        }
+        try {
+            Files.createLink(to, temp);
+        }
+        catch (FileAlreadyExistsException e) {
+            Files.delete(temp);
+            if (checksum != null) {
+                Files.deleteIfExists(FileChecksum.pathFor(temp));
+            }
+            throw e;
+        }
+        if (checksum != null) {
+            Files.move(FileChecksum.pathFor(temp), FileChecksum.pathFor(to), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.delete(temp);
+    }
+
+    @Override
+    public Path moveToFreeName(@NonNull Path file, @NonNull Path targetDir, @NonNull String fileName, String companionSuffix) throws IOException {
+        String takenName = null;
+        while (true) {
+            var freeName = findFreeName(targetDir, fileName);
+            if (freeName.equals(takenName)) {
+                throw new FileAlreadyExistsException(targetDir.resolve(freeName).toString(), null, "no free name found for " + fileName);
+            }
+            var target = targetDir.resolve(freeName);
+            try {
+                moveNoReplaceWithCompanion(file, target, companionSuffix);
+                return target;
+            }
+            catch (FileAlreadyExistsException e) {
+                log.warn("{} was taken after it was found to be free, trying the next free name", e.getFile());
+                takenName = freeName;
+            }
+        }
+    }
+
+    private void moveNoReplaceWithCompanion(Path file, Path target, String companionSuffix) throws IOException {
+        var companion = companionSuffix == null ? null : file.resolveSibling(file.getFileName().toString() + companionSuffix);
+        if (companion == null || !Files.exists(companion)) {
+            moveNoReplace(file, target);
+            return;
+        }
+        var targetCompanion = target.resolveSibling(target.getFileName().toString() + companionSuffix);
+        moveNoReplace(companion, targetCompanion);
+        try {
+            moveNoReplace(file, target);
+        }
+        catch (FileAlreadyExistsException e) {
+            // Put the companion back, so that it moves along with the file to the next free name
+            move(targetCompanion, companion);
+            throw e;
         }
     }
 
@@ -146,9 +321,23 @@ public class FileServiceImpl implements FileService {
     @Override
     public void delete(@NonNull Path path) throws IOException {
         Files.delete(path);
+        if (FileChecksum.isKeptFor(path)) {
+            Files.deleteIfExists(FileChecksum.pathFor(path));
+        }
+        targetDirIndex.remove(path);
+        fileNameAllocator.forget(path);
         fsyncDirectory(path.getParent());
     }
 
+    @Override
+    public void deleteDirectory(@NonNull Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        FileUtils.deleteDirectory(dir.toFile());
+        fsyncDirectory(dir.getParent());
+    }
+
     @Override
     public void fsyncFile(@NonNull Path file) throws IOException {
         try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
@@ -158,6 +347,15 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public void fsyncDirectory(@NonNull Path dir) throws IOException {
+        if (groupCommitDirectorySync != null) {
+            groupCommitDirectorySync.fsync(dir);
+        }
+        else {
+            forceDirectory(dir);
+        }
+    }
+
+    private static void forceDirectory(Path dir) throws IOException {
         // Works on Unix-like systems. On some platforms/filesystems this can throw; if it does,
         // propagate (safer) or change to best-effort depending on your needs.
         try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
@@ -175,6 +373,11 @@ public class FileServiceImpl implements FileService {
         return Files.newOutputStream(path);
     }
 
+    @Override
+    public FileChannel newFileChannel(@NonNull Path path, OpenOption... options) throws IOException {
+        return FileChannel.open(path, options);
+    }
+
     @Override
     public void createDirectory(@NonNull Path dir) throws IOException {
         Files.createDirectory(dir);
@@ -221,20 +424,20 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public boolean isSameFileSystem(@NonNull Collection<Path> paths) {
-        var fileStores = new HashSet<FileStore>();
+        var identities = new HashSet<>();
         var result = true;
         for (var path : paths) {
-            FileStore fileStore = null;
+            Object identity = null;
             try {
-                fileStore = Files.getFileStore(path);
+                identity = fileSystemIdentityCache.getIdentity(path);
             }
             catch (IOException e) {
                 result = false;
             }
-            fileStores.add(fileStore);
+            identities.add(identity);
         }
 
-        return result && fileStores.size() == 1;
+        return result && identities.size() == 1;
     }
 
     @Override
@@ -280,22 +483,14 @@ public class FileServiceImpl implements FileService {
         fsyncDirectory(dir.getParent());
     }
 
-    @Nullable
-    private Path findExistingTargetDir(@NonNull String targetNbn, @NonNull Path destinationRoot) {
-        try (var stream = Files.list(destinationRoot)) {
-            return stream.filter(Files::isDirectory)
-                .filter(dir -> dir.getFileName().toString().startsWith(targetNbn + "-"))
-                .findFirst()
-                .orElse(null);
-        }
-        catch (IOException e) {
-            throw new IllegalStateException("Unable to list directories in destination root: " + destinationRoot, e);
-        }
+    @Override
+    public void moveToTargetFor(@NonNull Path dve, @NonNull Path outbox, @NonNull String targetNbn, boolean addTimestampToFileName) {
+        moveToTargetFor(dve, outbox, targetNbn, addTimestampToFileName, null);
     }
 
     @Override
-    public void moveToTargetFor(@NonNull Path dve, @NonNull Path outbox, @NonNull String targetNbn, boolean addTimestampToFileName) {
-        var existingDir = findExistingTargetDir(targetNbn, outbox);
+    public void moveToTargetFor(@NonNull Path dve, @NonNull Path outbox, @NonNull String targetNbn, boolean addTimestampToFileName, String companionSuffix) {
+        var existingDir = targetDirIndex.find(outbox, targetNbn).orElse(null);
         String fileName = addTimestampToFileName
             ? new DveFileName(dve)
             .withCreationTime(getCreationTimeFromFilesystem(dve))
@@ -304,23 +499,37 @@ public class FileServiceImpl implements FileService {
 
         try {
             if (existingDir != null) {
-                move(dve, existingDir.resolve(findFreeName(existingDir, fileName)));
+                moveToFreeName(dve, existingDir, fileName, companionSuffix);
             }
             else {
-                createAndMoveSafe(dve,
-                    outbox.resolve(targetNbn + "-" + generateRandomString(6, "ABCDEFGHIJKLMNOPQRSTUVWXYZ")), fileName);
+                var newDir = outbox.resolve(targetNbn + "-" + generateRandomString(6, "ABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+                createAndMoveSafe(dve, newDir, fileName, companionSuffix);
+                targetDirIndex.put(outbox, targetNbn, newDir);
             }
         }
         catch (NoSuchFileException e) {
             log.debug("Existing directory for target NBN was deleted: {}, creating new directory", targetNbn);
+            targetDirIndex.remove(existingDir);
+            fileNameAllocator.forget(existingDir);
             var newDir = outbox.resolve(targetNbn + "-" + generateRandomString(6, "ABCDEFGHIJKLMNOPQRSTUVWXYZ"));
-            createAndMoveSafe(dve, newDir, fileName);
+            createAndMoveSafe(dve, newDir, fileName, companionSuffix);
+            targetDirIndex.put(outbox, targetNbn, newDir);
         }
         catch (IOException e) {
             throw new IllegalStateException("Unable to move file to existing directory: " + existingDir, e);
         }
     }
 
+    private void moveWithCompanion(Path file, Path target, String companionSuffix) throws IOException {
+        if (companionSuffix != null) {
+            var companion = file.resolveSibling(file.getFileName().toString() + companionSuffix);
+            if (Files.exists(companion)) {
+                move(companion, target.resolveSibling(target.getFileName().toString() + companionSuffix));
+            }
+        }
+        move(file, target);
+    }
+
     private String generateRandomString(int length, @NonNull String alphabet) {
         StringBuilder sb = new StringBuilder(length);
         for (int i = 0; i < length; i++) {
@@ -346,6 +555,9 @@ public class FileServiceImpl implements FileService {
         if (fileName.contains("/") || fileName.contains("\\") || fileName.contains(FileSystems.getDefault().getSeparator())) {
             throw new IllegalArgumentException("fileName must not contain path separators: " + fileName);
         }
+        if (FileNameAllocator.canAllocate(fileName)) {
+            return fileNameAllocator.allocate(targetDir, fileName);
+        }
         var dveFileName = new DveFileName(targetDir.resolve(fileName));
         int sequenceNumber = 1;
         while (exists(dveFileName.getPath())) {
@@ -357,14 +569,16 @@ public class FileServiceImpl implements FileService {
     /**
      * Creates outdir.tmp then moves file into it with move, then renames outdir.tmp to outdir.
      *
-     * @param file   the file to move
-     * @param outdir the directory to create
+     * @param file            the file to move
+     * @param outdir          the directory to create
+     * @param fileName        the name of the file in outdir
+     * @param companionSuffix the suffix of the companion file to move along, or null
      */
-    private void createAndMoveSafe(@NonNull Path file, @NonNull Path outdir, @NonNull String fileName) {
+    private void createAndMoveSafe(@NonNull Path file, @NonNull Path outdir, @NonNull String fileName, String companionSuffix) {
         try {
             var tmpOutDir = outdir.resolveSibling(outdir.getFileName() + ".tmp");
             createDirectory(tmpOutDir);
-            move(file, tmpOutDir.resolve(fileName));
+            moveWithCompanion(file, tmpOutDir.resolve(fileName), companionSuffix);
             move(tmpOutDir, outdir);
         }
         catch (IOException e) {
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the identity of the file system that a directory is on, so that {@link FileService#isSameFileSystem(java.util.Collection)} does not have to look up the file store of
+ * every path on every call. On NFS, such a lookup is a round trip to the server.
+ * <p>
+ * The identity is the device id of the directory if the file system provides it, and otherwise its {@link java.nio.file.FileStore}. Two directories are on the same file system
+ * if their identities are equal. An entry expires after the time-to-live. All entries are dropped when the mount table (<code>/proc/self/mountinfo</code>, if it exists) changes,
+ * which is checked at most once per check interval. A time-to-live of zero disables the cache.
+ * <p>
+ * The hits and misses are counted in the metrics <code>nl.knaw.dans.transfer.core.FileSystemIdentityCache.hits</code> and <code>...misses</code>.
+ */
+@Slf4j
+public class FileSystemIdentityCache {
+    private static final Path MOUNT_TABLE = Path.of("/proc/self/mountinfo");
+
+    private record Entry(Object identity, long expiresAt) {
+    }
+
+    private final Duration ttl;
+    private final Duration mountTableCheckInterval;
+    private final Clock clock;
+    private final Path mountTable;
+    private final Counter hits;
+    private final Counter misses;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    private long nextMountTableCheck;
+    private int mountTableHash;
+
+    public FileSystemIdentityCache(@NonNull Duration ttl, @NonNull Duration mountTableCheckInterval, @NonNull MetricRegistry metricRegistry) {
+        this(ttl, mountTableCheckInterval, metricRegistry, Clock.systemUTC(), MOUNT_TABLE);
+    }
+
+    FileSystemIdentityCache(Duration ttl, Duration mountTableCheckInterval, MetricRegistry metricRegistry, Clock clock, Path mountTable) {
+        this.ttl = ttl;
+        this.mountTableCheckInterval = mountTableCheckInterval;
+        this.clock = clock;
+        this.mountTable = mountTable;
+        this.hits = metricRegistry.counter(MetricRegistry.name(FileSystemIdentityCache.class, "hits"));
+        this.misses = metricRegistry.counter(MetricRegistry.name(FileSystemIdentityCache.class, "misses"));
+        this.mountTableHash = readMountTableHash();
+        this.nextMountTableCheck = clock.millis() + mountTableCheckInterval.toMillis();
+    }
+
+    /**
+     * Returns the identity of the file system that the directory is on.
+     *
+     * @param dir the directory
+     * @return an object that is equal to the identity of any other directory on the same file system
+     * @throws IOException if the identity cannot be determined, e.g., because the directory does not exist
+     */
+    public Object getIdentity(@NonNull Path dir) throws IOException {
+        if (ttl.isZero()) {
+            misses.inc();
+            return readIdentity(dir);
+        }
+        checkMountTable();
+        var key = dir.toAbsolutePath().normalize();
+        var now = clock.millis();
+        var entry = entries.get(key);
+        if (entry != null && now < entry.expiresAt()) {
+            hits.inc();
+            return entry.identity();
+        }
+        misses.inc();
+        var identity = readIdentity(dir);
+        entries.put(key, new Entry(identity, now + ttl.toMillis()));
+        return identity;
+    }
+
+    /**
+     * Drops all entries.
+     */
+    public void invalidate() {
+        entries.clear();
+    }
+
+    private static Object readIdentity(Path dir) throws IOException {
+        try {
+            var device = Files.getAttribute(dir, "unix:dev");
+            if (device != null) {
+                return device;
+            }
+        }
+        catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // No unix attribute view on this file system
+        }
+        return Files.getFileStore(dir);
+    }
+
+    private synchronized void checkMountTable() {
+        var now = clock.millis();
+        if (now < nextMountTableCheck) {
+            return;
+        }
+        nextMountTableCheck = now + mountTableCheckInterval.toMillis();
+        var hash = readMountTableHash();
+        if (hash != mountTableHash) {
+            log.info("Mount table changed; dropping {} cached file system identities", entries.size());
+            mountTableHash = hash;
+            invalidate();
+        }
+    }
+
+    private int readMountTableHash() {
+        try {
+            if (Files.isReadable(mountTable)) {
+                return Arrays.hashCode(Files.readAllBytes(mountTable));
+            }
+        }
+        catch (IOException e) {
+            log.debug("Unable to read mount table {}", mountTable, e);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces fsyncs of the same directory that are requested by different threads at about the same time.
+ * <p>
+ * At most one fsync per directory runs at a time. Requests that arrive while it runs form a group; the first member of the group waits until the running fsync has completed, and
+ * then for the window, if any, to let more members join. It then closes the group and performs one fsync for all of its members. Since a thread only requests the fsync after it
+ * changed the directory, and the fsync is started after the group was closed, the fsync covers the changes of all members of the group. Each caller returns only when its change
+ * is durable, or with the exception of the fsync if it failed. A request for a directory that is not being synced is served right away, apart from the window.
+ */
+@Slf4j
+public class GroupCommitDirectorySync {
+
+    /**
+     * Performs the actual fsync of a directory.
+     */
+    @FunctionalInterface
+    public interface DirectorySync {
+        void fsync(Path dir) throws IOException;
+    }
+
+    private static class Group {
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private int members = 1;
+    }
+
+    private static class DirectoryState {
+        private boolean syncing;
+        private Group pending;
+    }
+
+    private final DirectorySync directorySync;
+    private final Duration window;
+    private final Map<Path, DirectoryState> states = new HashMap<>();
+
+    public GroupCommitDirectorySync(@NonNull DirectorySync directorySync, @NonNull Duration window) {
+        this.directorySync = directorySync;
+        this.window = window;
+    }
+
+    /**
+     * Makes the changes to the directory that were made by the calling thread durable, sharing the fsync with other threads that request it at about the same time.
+     *
+     * @param dir the directory
+     * @throws IOException if the fsync fails
+     */
+    public void fsync(@NonNull Path dir) throws IOException {
+        DirectoryState state;
+        Group group;
+        boolean leader;
+        synchronized (states) {
+            state = states.computeIfAbsent(dir, d -> new DirectoryState());
+            // The first member leads the group
+            leader = state.pending == null;
+            if (leader) {
+                state.pending = new Group();
+            }
+            else {
+                state.pending.members++;
+            }
+            group = state.pending;
+        }
+        if (leader) {
+            lead(dir, state, group);
+        }
+        else {
+            follow(group);
+        }
+    }
+
+    private void lead(Path dir, DirectoryState state, Group group) throws IOException {
+        var interrupted = false;
+        synchronized (states) {
+            while (state.syncing) {
+                try {
+                    states.wait();
+                }
+                catch (InterruptedException e) {
+                    // The members depend on the leader, so it keeps waiting
+                    interrupted = true;
+                }
+            }
+        }
+        if (!window.isZero() && !interrupted) {
+            try {
+                Thread.sleep(window.toMillis(), window.toNanosPart() % 1_000_000);
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        int members;
+        synchronized (states) {
+            state.syncing = true;
+            state.pending = null;
+            members = group.members;
+        }
+        try {
+            directorySync.fsync(dir);
+            log.trace("Synced directory {} for {} operation(s)", dir, members);
+            group.done.complete(null);
+        }
+        catch (IOException | RuntimeException e) {
+            group.done.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            synchronized (states) {
+                state.syncing = false;
+                if (state.pending == null) {
+                    states.remove(dir);
+                }
+                states.notifyAll();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    private void follow(Group group) throws IOException {
+        try {
+            group.done.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for directory fsync", e);
+        }
+        catch (ExecutionException e) {
+            // Rethrown as a new exception for this thread, of the same type where callers depend on it
+            if (e.getCause() instanceof NoSuchFileException noSuchFileException) {
+                var exception = new NoSuchFileException(noSuchFileException.getFile());
+                exception.initCause(noSuchFileException);
+                throw exception;
+            }
+            if (e.getCause() instanceof IOException ioException) {
+                throw new IOException(ioException.getMessage(), ioException);
+            }
+            throw new IllegalStateException("Directory fsync failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import io.dropwizard.util.DataSize;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Seals the batch when one of its limits is reached: the total size of the extracted files, the number of extracted files, the number of DVEs, or the age of the batch,
+ * counted from the first entry in its journal. A limit that is <code>null</code> is not checked. An empty batch is never sealed.
+ */
+@ToString
+public class LimitsBatchSealPolicy implements BatchSealPolicy {
+    private final DataSize maxBytes;
+    private final Long maxFiles;
+    private final Integer maxDves;
+    private final Duration maxAge;
+    @ToString.Exclude
+    private final Clock clock;
+
+    /**
+     * @param maxBytes the batch is sealed when its size exceeds this threshold
+     * @param maxFiles the batch is sealed when it contains this many files
+     * @param maxDves  the batch is sealed when it contains this many DVEs
+     * @param maxAge   the batch is sealed when its first journal entry was written this long ago
+     */
+    public LimitsBatchSealPolicy(DataSize maxBytes, Long maxFiles, Integer maxDves, Duration maxAge) {
+        this(maxBytes, maxFiles, maxDves, maxAge, Clock.systemUTC());
+    }
+
+    LimitsBatchSealPolicy(DataSize maxBytes, Long maxFiles, Integer maxDves, Duration maxAge, @NonNull Clock clock) {
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.maxDves = maxDves;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    @Override
+    public Optional<BatchSealReason> evaluate(@NonNull BatchJournal batchJournal) throws IOException {
+        if (batchJournal.getDves().isEmpty() && batchJournal.getFiles() == 0) {
+            return Optional.empty();
+        }
+        if (maxBytes != null && batchJournal.getBytes() > maxBytes.toBytes()) {
+            return Optional.of(BatchSealReason.BYTES);
+        }
+        if (maxFiles != null && batchJournal.getFiles() >= maxFiles) {
+            return Optional.of(BatchSealReason.FILES);
+        }
+        if (maxDves != null && batchJournal.getDves().size() >= maxDves) {
+            return Optional.of(BatchSealReason.DVES);
+        }
+        if (maxAge != null && clock.millis() - batchJournal.getStartTime() >= maxAge.toMillis()) {
+            return Optional.of(BatchSealReason.AGE);
+        }
+        return Optional.empty();
+    }
+}
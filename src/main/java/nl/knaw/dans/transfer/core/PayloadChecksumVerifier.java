@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+
+/**
+ * Verifies the SHA-1 checksums of the payload files in a DVE against manifest-sha1.txt, before the DVE is sent to the remote BagPack validator. The entries are read from the ZIP
+ * file by random access and their checksums are computed in parallel on a fork-join pool. Files that are listed in fetch.txt are not in the DVE and are skipped.
+ * <p>
+ * One verifier, and thus one pool, is meant to be shared by all extract-metadata tasks, so that the number of threads used for verification is bounded by the parallelism of
+ * the pool. The pool is shut down when the verifier is stopped as a Dropwizard managed object.
+ */
+@Slf4j
+public class PayloadChecksumVerifier implements Managed {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a verifier with its own fork-join pool.
+     *
+     * @param parallelism the number of threads of the pool
+     */
+    public PayloadChecksumVerifier(int parallelism) {
+        this(new ForkJoinPool(parallelism));
+    }
+
+    PayloadChecksumVerifier(@NonNull ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+        pool.shutdown();
+    }
+
+    /**
+     * Verifies the checksums of all payload files in manifest-sha1.txt.
+     *
+     * @param dveIndex the index over the DVE
+     * @return the verified checksums keyed by path relative to the bag, e.g. <code>data/file.txt</code>; files that are only in fetch.txt are not included
+     * @throws IllegalArgumentException if a payload file is missing from the DVE, or if its checksum does not match manifest-sha1.txt
+     * @throws IOException              if the DVE cannot be read
+     */
+    public Map<String, String> verify(@NonNull DveIndex dveIndex) throws IOException {
+        var manifest = dveIndex.getManifestSha1();
+        var fetchPaths = new HashSet<String>();
+        for (var fetchEntry : dveIndex.getFetchEntries()) {
+            fetchPaths.add(fetchEntry.getPath());
+        }
+
+        var entries = new ArrayList<PayloadEntry>();
+        var verified = new HashMap<String, String>();
+        for (var item : manifest.entrySet()) {
+            var entry = dveIndex.findEntry(item.getKey());
+            if (entry.isPresent()) {
+                entries.add(new PayloadEntry(item.getKey(), entry.get(), item.getValue()));
+                verified.put(item.getKey(), item.getValue());
+            }
+            else if (!fetchPaths.contains(item.getKey())) {
+                throw new IllegalArgumentException("Payload file in " + DveIndex.MANIFEST_SHA1_TXT + " not found in DVE: " + item.getKey());
+            }
+        }
+        // Start with the largest files, so that no single large file is left to be verified when the other threads have run out of work
+        entries.sort(Comparator.comparingLong((PayloadEntry e) -> e.getEntry().getSize()).reversed());
+
+        log.debug("Verifying SHA-1 checksums of {} payload files in {}", entries.size(), dveIndex.getDve());
+        try {
+            pool.submit(() -> entries.parallelStream().forEach(entry -> verifyEntry(dveIndex, entry))).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying payload checksums of " + dveIndex.getDve(), e);
+        }
+        catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IllegalArgumentException iae) {
+                throw iae;
+            }
+            if (cause instanceof UncheckedIOException uioe) {
+                throw uioe.getCause();
+            }
+            throw new IOException("Unable to verify payload checksums of " + dveIndex.getDve(), cause);
+        }
+        return Collections.unmodifiableMap(verified);
+    }
+
+    private void verifyEntry(DveIndex dveIndex, PayloadEntry payloadEntry) {
+        var actual = computeSha1(dveIndex, payloadEntry.getEntry());
+        if (!actual.equalsIgnoreCase(payloadEntry.getExpectedSha1())) {
+            throw new IllegalArgumentException("SHA-1 checksum mismatch for " + payloadEntry.getPath() + ": expected " + payloadEntry.getExpectedSha1() + ", found " + actual);
+        }
+    }
+
+    private String computeSha1(DveIndex dveIndex, ZipEntry entry) {
+        try (var is = dveIndex.getZipFile().getInputStream(entry)) {
+            var digest = MessageDigest.getInstance("SHA-1");
+            var buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + entry.getName(), e);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported", e);
+        }
+    }
+
+    @Value
+    private static class PayloadEntry {
+        String path;
+        ZipEntry entry;
+        String expectedSha1;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+
+/**
+ * Finds payload files of earlier versions of an object in the current batch that are identical to payload files of the DVE that is being extracted, so that the
+ * {@link ZipExtractor} can create hard links to them instead of writing the same content again.
+ *
+ * Files are matched by their SHA-1 checksums. Those of the DVE come from its manifest-sha1.txt; those of the earlier versions from the manifest-sha1.txt files that were
+ * extracted with them, so that nothing has to be kept in memory between DVEs and the index is also correct after a restart. A file is only linked to if its size equals the
+ * uncompressed size of the ZIP entry.
+ *
+ * The manifest of the DVE is only trusted as it is if its payload checksums were verified in the extract-metadata stage (see {@link PayloadChecksumVerifier}). Otherwise the
+ * SHA-1 of an entry is computed from the DVE before it is linked to an earlier file, so that a wrong manifest line cannot replace the content of the entry with that of
+ * another file. This still saves writing the file, but not reading it.
+ */
+@Slf4j
+public class PayloadDeduplicator {
+    /**
+     * Supplies the SHA-1 manifest of the DVE that is being extracted. It is only called if there are earlier versions to deduplicate against.
+     */
+    @FunctionalInterface
+    public interface ManifestSupplier {
+        Map<String, String> get() throws IOException;
+    }
+
+    /**
+     * Opens an entry of the DVE that is being extracted, so that its SHA-1 can be checked against the manifest.
+     */
+    @FunctionalInterface
+    public interface EntryOpener {
+        InputStream open(ZipEntry entry) throws IOException;
+    }
+
+    public static final PayloadDeduplicator NONE = new PayloadDeduplicator(Map.of(), Map.of(), null, null);
+
+    private static final Pattern VERSION_DIR = Pattern.compile("v\\d+");
+
+    private final Map<String, String> sha1ByPath;
+    private final Map<String, Path> extractedBySha1;
+    // Null if the manifest of the DVE was verified
+    private final EntryOpener unverifiedEntries;
+    private final FileService fileService;
+
+    private PayloadDeduplicator(Map<String, String> sha1ByPath, Map<String, Path> extractedBySha1, EntryOpener unverifiedEntries, FileService fileService) {
+        this.sha1ByPath = sha1ByPath;
+        this.extractedBySha1 = extractedBySha1;
+        this.unverifiedEntries = unverifiedEntries;
+        this.fileService = fileService;
+    }
+
+    /**
+     * Indexes the payload files of the versions that were already extracted to the object directory, for a DVE of which the payload checksums were verified against its
+     * manifest. The manifest of the DVE is only requested if there are such files, so that the first version of an object does not require the DVE's manifest to be read.
+     *
+     * @param objectDirectory the directory of the object in the current batch; it does not need to exist
+     * @param manifestSha1    supplies the verified SHA-1 manifest of the DVE that is being extracted, keyed by path relative to the bag
+     * @param fileService     the file service
+     * @return the deduplicator; if there are no earlier versions, it never finds a file
+     * @throws IOException if the object directory or the manifest cannot be read
+     */
+    public static PayloadDeduplicator forObject(@NonNull Path objectDirectory, @NonNull ManifestSupplier manifestSha1, @NonNull FileService fileService)
+        throws IOException {
+        return forObject(objectDirectory, manifestSha1, null, fileService);
+    }
+
+    /**
+     * As {@link #forObject(Path, ManifestSupplier, FileService)}, for a DVE of which the payload checksums were not verified. Before an entry is linked to an earlier file, its
+     * SHA-1 is computed from the content that the opener returns and compared with the manifest.
+     *
+     * @param objectDirectory the directory of the object in the current batch; it does not need to exist
+     * @param manifestSha1    supplies the SHA-1 manifest of the DVE that is being extracted, keyed by path relative to the bag
+     * @param entryOpener     opens the entries of the DVE
+     * @param fileService     the file service
+     * @return the deduplicator; if there are no earlier versions, it never finds a file
+     * @throws IOException if the object directory or the manifest cannot be read
+     */
+    public static PayloadDeduplicator forUnverifiedObject(@NonNull Path objectDirectory, @NonNull ManifestSupplier manifestSha1, @NonNull EntryOpener entryOpener,
+        @NonNull FileService fileService) throws IOException {
+        return forObject(objectDirectory, manifestSha1, entryOpener, fileService);
+    }
+
+    private static PayloadDeduplicator forObject(Path objectDirectory, ManifestSupplier manifestSha1, EntryOpener unverifiedEntries, FileService fileService)
+        throws IOException {
+        if (!fileService.isDirectory(objectDirectory)) {
+            return NONE;
+        }
+        var extractedBySha1 = new HashMap<String, Path>();
+        try (var versions = fileService.list(objectDirectory)) {
+            for (var version : versions.filter(p -> VERSION_DIR.matcher(p.getFileName().toString()).matches() && fileService.isDirectory(p)).toList()) {
+                try (var bags = fileService.list(version)) {
+                    for (var bag : bags.filter(fileService::isDirectory).toList()) {
+                        indexExtractedBag(bag, extractedBySha1, fileService);
+                    }
+                }
+            }
+        }
+        if (extractedBySha1.isEmpty()) {
+            return NONE;
+        }
+        var sha1ByPath = manifestSha1.get();
+        if (sha1ByPath.isEmpty()) {
+            return NONE;
+        }
+        log.debug("Found {} distinct payload files in earlier versions in {}", extractedBySha1.size(), objectDirectory);
+        return new PayloadDeduplicator(sha1ByPath, extractedBySha1, unverifiedEntries, fileService);
+    }
+
+    private static void indexExtractedBag(Path bag, Map<String, Path> extractedBySha1, FileService fileService) throws IOException {
+        var manifest = bag.resolve(DveIndex.MANIFEST_SHA1_TXT);
+        if (!fileService.isRegularFile(manifest)) {
+            return;
+        }
+        try (var reader = new BufferedReader(new InputStreamReader(fileService.newInputStream(manifest), StandardCharsets.UTF_8))) {
+            new TagFileReader().readManifest(reader, DveIndex.MANIFEST_SHA1_TXT).forEach((path, sha1) -> extractedBySha1.putIfAbsent(sha1, bag.resolve(path)));
+        }
+        catch (IllegalArgumentException e) {
+            log.warn("Not deduplicating against {}: {}", bag, e.getMessage());
+        }
+    }
+
+    /**
+     * Finds an already extracted file with the same content as the entry.
+     *
+     * @param entry an entry of the DVE; its name includes the base folder
+     * @return the file to link to, or an empty Optional if the entry must be extracted
+     */
+    public Optional<Path> findIdenticalFile(@NonNull ZipEntry entry) {
+        if (extractedBySha1.isEmpty() || entry.getSize() < 0) {
+            return Optional.empty();
+        }
+        var name = entry.getName();
+        var sha1 = sha1ByPath.get(name.substring(name.indexOf('/') + 1));
+        var extracted = sha1 == null ? null : extractedBySha1.get(sha1);
+        if (extracted == null) {
+            return Optional.empty();
+        }
+        try {
+            var attributes = fileService.readAttributes(extracted, BasicFileAttributes.class);
+            if (!attributes.isRegularFile() || attributes.size() != entry.getSize()) {
+                return Optional.empty();
+            }
+            if (unverifiedEntries != null && !sha1.equalsIgnoreCase(computeSha1(entry))) {
+                log.warn("Entry {} does not match its SHA-1 in {}, extracting it instead of linking it to {}", name, DveIndex.MANIFEST_SHA1_TXT, extracted);
+                return Optional.empty();
+            }
+            return Optional.of(extracted);
+        }
+        catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private String computeSha1(ZipEntry entry) throws IOException {
+        try (var is = unverifiedEntries.open(entry)) {
+            var digest = MessageDigest.getInstance("SHA-1");
+            var buffer = new byte[64 * 1024];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported", e);
+        }
+    }
+}
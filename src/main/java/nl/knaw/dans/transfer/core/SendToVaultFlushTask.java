@@ -18,9 +18,7 @@ package nl.knaw.dans.transfer.core;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.lib.util.healthcheck.DependenciesReadyCheck;
-import nl.knaw.dans.transfer.client.DataVaultClient;
 import nl.knaw.dans.transfer.health.HealthChecks;
-import org.apache.commons.io.FileUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -30,8 +28,7 @@ import java.nio.file.Path;
 @Slf4j
 public class SendToVaultFlushTask implements Runnable {
     private final Path currentBatchWorkDir;
-    private final Path dataVaultBatchRoot;
-    private final DataVaultClient dataVaultClient;
+    private final BatchSealer batchSealer;
     private final DependenciesReadyCheck readyCheck;
 
     @Override
@@ -40,36 +37,26 @@ public class SendToVaultFlushTask implements Runnable {
         readyCheck.waitUntilReady(HealthChecks.FILESYSTEM_PERMISSIONS, HealthChecks.DATA_VAULT);
         log.debug("Readycheck complete");
 
-        if (isDirEmpty(currentBatchWorkDir)) {
-            log.info("FLUSH: current batch is empty; nothing to do...");
-        }
-        else {
-            sendWorkToVault();
-        }
-    }
-
-    private boolean isDirEmpty(Path dir) {
-        try (var stream = Files.list(dir)) {
-            return stream.findAny().isEmpty();
+        try {
+            if (batchSealer.resumeSealedBatch()) {
+                log.info("FLUSH: completed sealing of batch that was sealed earlier");
+            }
+            if (isDirEmpty(currentBatchWorkDir)) {
+                log.info("FLUSH: current batch is empty; nothing to do...");
+            }
+            else {
+                log.info("FLUSH: sealing current batch {} for dispatch to Data Vault", currentBatchWorkDir);
+                batchSealer.sealCurrentBatch(BatchSealReason.FLUSH);
+            }
         }
         catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
-    private void sendWorkToVault() {
-        try {
-            var batch = dataVaultBatchRoot.resolve("batch-" + System.currentTimeMillis());
-            log.info("FLUSH: Moving current batch directory {} to {}", currentBatchWorkDir, batch);
-            FileUtils.moveDirectory(currentBatchWorkDir.toFile(), batch.toFile());
-            log.info("FLUSH: Calling dd-data-vault to ingest batch {}", batch);
-            dataVaultClient.sendBatchToVault(batch);
-            log.info("FLUSH: Recreating empty current batch directory");
-            Files.createDirectories(this.currentBatchWorkDir);
-        }
-        catch (IOException e) {
-            throw new IllegalStateException(e);
+    private boolean isDirEmpty(Path dir) throws IOException {
+        try (var stream = Files.list(dir)) {
+            return stream.findAny().isEmpty();
         }
     }
-
 }
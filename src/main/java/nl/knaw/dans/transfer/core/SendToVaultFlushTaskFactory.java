@@ -18,7 +18,6 @@ package nl.knaw.dans.transfer.core;
 import lombok.Builder;
 import lombok.NonNull;
 import nl.knaw.dans.lib.util.healthcheck.DependenciesReadyCheck;
-import nl.knaw.dans.transfer.client.DataVaultClient;
 
 import java.nio.file.Path;
 
@@ -27,13 +26,11 @@ public class SendToVaultFlushTaskFactory {
     @NonNull
     private final Path currentBatchWorkDir;
     @NonNull
-    private final Path dataVaultBatchRoot;
-    @NonNull
-    private final DataVaultClient dataVaultClient;
+    private final BatchSealer batchSealer;
     @NonNull
     private final DependenciesReadyCheck readyCheck;
 
     public Runnable create() {
-        return new SendToVaultFlushTask(currentBatchWorkDir, dataVaultBatchRoot, dataVaultClient, readyCheck);
+        return new SendToVaultFlushTask(currentBatchWorkDir, batchSealer, readyCheck);
     }
 }
@@ -15,14 +15,11 @@
  */
 package nl.knaw.dans.transfer.core;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.dropwizard.util.DataSize;
 import lombok.NonNull;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import nl.knaw.dans.lib.util.ZipUtil;
 import nl.knaw.dans.lib.util.healthcheck.DependenciesReadyCheck;
-import nl.knaw.dans.transfer.client.DataVaultClient;
+import nl.knaw.dans.lobstore.client.api.TransferRequestDto;
 import nl.knaw.dans.transfer.client.LobStoreClient;
 import nl.knaw.dans.transfer.config.CustomPropertyConfig;
 import nl.knaw.dans.transfer.health.HealthChecks;
@@ -31,27 +28,23 @@ import org.apache.commons.io.FileUtils;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-
-import static org.apache.commons.io.FileUtils.moveDirectory;
-import static org.apache.commons.io.FileUtils.sizeOfDirectory;
 
 @Slf4j
 @ToString
 public class SendToVaultTask extends SourceDirItemProcessor implements Runnable {
-    public static final String NEWLINE_TAB_REGEX = "[\\n\\t\\r]";
     private final Path targetNbnDir;
     private final Path currentBatchWorkDir;
-    private final Path dataVaultBatchRoot;
-    private final DataSize batchThreshold;
+    private final BatchSealPolicy batchSealPolicy;
+    private final BatchJournal batchJournal;
+    private final BatchSealer batchSealer;
+    private final CurrentBatchLock currentBatchLock;
     private final Path outboxProcessed;
     private final Path outboxFailed;
-    private final DataVaultClient dataVaultClient;
     private final String defaultMessage;
-    private final List<CustomPropertyConfig> customProperties;
+    private final VersionInfoWriter versionInfoWriter;
     private final FileService fileService;
+    private final ZipExtractor zipExtractor;
     private final DveMetadataReader dveMetadataReader;
     private final LobStoreClient lobStoreClient;
     private final String datastationName;
@@ -59,9 +52,12 @@ public class SendToVaultTask extends SourceDirItemProcessor implements Runnable
 
     private TransferItem currentTransferItem;
 
-    public SendToVaultTask(@NonNull Path srcDir, @NonNull Path currentBatchWorkDir, @NonNull Path dataVaultBatchRoot, @NonNull DataSize batchThreshold, @NonNull Path outboxProcessed,
+    public SendToVaultTask(@NonNull Path srcDir, @NonNull Path currentBatchWorkDir, @NonNull BatchSealPolicy batchSealPolicy,
+        @NonNull BatchJournal batchJournal, @NonNull BatchSealer batchSealer,
+        @NonNull CurrentBatchLock currentBatchLock, @NonNull Path outboxProcessed,
         @NonNull Path outboxFailed,
-        @NonNull DataVaultClient dataVaultClient, @NonNull String defaultMessage, @NonNull List<CustomPropertyConfig> customProperties, @NonNull FileService fileService,
+        @NonNull String defaultMessage, @NonNull List<CustomPropertyConfig> customProperties, @NonNull FileService fileService,
+        @NonNull ZipExtractor zipExtractor,
         @NonNull DveMetadataReader dveMetadataReader,
         @NonNull LobStoreClient lobStoreClient,
         @NonNull String datastationName,
@@ -70,14 +66,16 @@ public class SendToVaultTask extends SourceDirItemProcessor implements Runnable
         super(srcDir, "DVE", new DveFileFilter().toPredicate(), CreationTimeComparator.getInstance(), fileService, delayBetweenProcessingRounds);
         this.targetNbnDir = srcDir;
         this.currentBatchWorkDir = currentBatchWorkDir;
-        this.dataVaultBatchRoot = dataVaultBatchRoot;
-        this.batchThreshold = batchThreshold;
+        this.batchSealPolicy = batchSealPolicy;
+        this.batchJournal = batchJournal;
+        this.batchSealer = batchSealer;
+        this.currentBatchLock = currentBatchLock;
         this.outboxProcessed = outboxProcessed;
         this.outboxFailed = outboxFailed;
-        this.dataVaultClient = dataVaultClient;
         this.defaultMessage = defaultMessage;
-        this.customProperties = customProperties;
+        this.versionInfoWriter = new VersionInfoWriter(customProperties, fileService);
         this.fileService = fileService;
+        this.zipExtractor = zipExtractor;
         this.dveMetadataReader = dveMetadataReader;
         this.lobStoreClient = lobStoreClient;
         this.datastationName = datastationName;
@@ -99,8 +97,15 @@ public class SendToVaultTask extends SourceDirItemProcessor implements Runnable
         currentTransferItem = createTransferItem(item);
         addToObjectImportDirectory(item, currentTransferItem.getOcflObjectVersion(), this.currentBatchWorkDir.resolve(currentTransferItem.getNbn()));
 
-        var dveMetadata = dveMetadataReader.readDveMetadata(item);
-        var lobRequests = currentTransferItem.getLobRequests(dveMetadata, this.datastationName);
+        List<TransferRequestDto> lobRequests;
+        if (currentTransferItem.hasSidecar()) {
+            lobRequests = currentTransferItem.getLobRequests(this.datastationName);
+        }
+        else {
+            log.debug("No valid metadata sidecar found for {}, reading metadata from DVE", item);
+            var dveMetadata = dveMetadataReader.readDveMetadata(currentTransferItem.getDveIndex());
+            lobRequests = currentTransferItem.getLobRequests(dveMetadata, this.datastationName);
+        }
         if (!lobRequests.isEmpty()) {
             lobStoreClient.requestTransfers(lobRequests);
         }
@@ -134,19 +139,54 @@ public class SendToVaultTask extends SourceDirItemProcessor implements Runnable
     }
 
     void addToObjectImportDirectory(@NonNull Path dvePath, int ocflObjectVersionNumber, @NonNull Path objectImportDirectory) throws IOException {
-        fileService.ensureDirectoryExists(objectImportDirectory);
+        var nbn = objectImportDirectory.getFileName().toString();
+        while (true) {
+            // Nothing may be added to a batch that was sealed before a restart or a failure
+            batchSealer.resumeSealedBatch();
+            var added = currentBatchLock.addingTo(nbn, () -> {
+                if (batchJournal.getSealedBatch().isPresent()) {
+                    // Sealed by another worker, but not completed
+                    return false;
+                }
+                extractToObjectImportDirectory(dvePath, ocflObjectVersionNumber, objectImportDirectory);
+                return true;
+            });
+            if (added) {
+                return;
+            }
+        }
+    }
+
+    private void extractToObjectImportDirectory(Path dvePath, int ocflObjectVersionNumber, Path objectImportDirectory) throws IOException {
         var versionDirectory = objectImportDirectory.resolve("v" + ocflObjectVersionNumber);
+        var versionInfoFile = objectImportDirectory.resolve("v" + ocflObjectVersionNumber + ".json");
+        var dveName = dvePath.getFileName().toString();
+        var nbn = objectImportDirectory.getFileName().toString();
+        if (batchJournal.isExtracted(dveName, nbn, ocflObjectVersionNumber)) {
+            log.info("DVE {} was already extracted to {} before it could be moved to the processed outbox, not extracting it again", dvePath, versionDirectory);
+            return;
+        }
+        batchJournal.startExtraction(dveName, nbn, ocflObjectVersionNumber);
+        fileService.ensureDirectoryExists(objectImportDirectory);
         log.debug("Extracting DVE {} to {}", dvePath, versionDirectory);
+        ZipExtractor.Result extracted;
         try {
-            ZipUtil.extractZipFile(dvePath, versionDirectory);
+            PayloadDeduplicator.ManifestSupplier manifestSha1 = () -> currentTransferItem.getDveIndex().getManifestSha1();
+            var deduplicator = currentTransferItem.isPayloadChecksumsVerified()
+                ? PayloadDeduplicator.forObject(objectImportDirectory, manifestSha1, fileService)
+                : PayloadDeduplicator.forUnverifiedObject(objectImportDirectory, manifestSha1, entry -> currentTransferItem.getDveIndex().getZipFile().getInputStream(entry), fileService);
+            extracted = zipExtractor.extract(currentTransferItem.getDveIndex(), versionDirectory, deduplicator);
+            if (extracted.getLinkedFileCount() > 0) {
+                log.info("Linked {} of {} files of DVE {} to identical files of earlier versions", extracted.getLinkedFileCount(), extracted.getFileCount(), dvePath);
+            }
+            createVersionInfoJson(versionDirectory, currentTransferItem.getContactName(), currentTransferItem.getContactEmail(), defaultMessage);
         }
         catch (Exception e) { // Any exception!
             log.error("Failed to extract DVE {}, deleting version directory {}", dvePath, versionDirectory, e);
             boolean objectImportDirIsEmptyOrHasOnlyThisVersion = false;
             if (Files.isDirectory(objectImportDirectory)) {
                 try (var entries = Files.list(objectImportDirectory)) {
-                    var entryList = entries.toList();
-                    objectImportDirIsEmptyOrHasOnlyThisVersion = (entryList.size() == 1 && entryList.get(0).equals(versionDirectory)) || entryList.isEmpty();
+                    objectImportDirIsEmptyOrHasOnlyThisVersion = entries.allMatch(entry -> entry.equals(versionDirectory) || entry.equals(versionInfoFile));
                 }
             }
             if (objectImportDirIsEmptyOrHasOnlyThisVersion) {
@@ -154,69 +194,29 @@ public class SendToVaultTask extends SourceDirItemProcessor implements Runnable
                 FileUtils.deleteQuietly(objectImportDirectory.toFile());
             }
             else {
-                log.info("Deleting version directory {} if present", versionDirectory);
+                log.info("Deleting version directory {} and its version info file if present", versionDirectory);
                 FileUtils.deleteQuietly(versionDirectory.toFile());
+                FileUtils.deleteQuietly(versionInfoFile.toFile());
+            }
+            try {
+                batchJournal.abortExtraction(dveName, nbn, ocflObjectVersionNumber);
+            }
+            catch (IOException journalException) {
+                e.addSuppressed(journalException);
             }
             throw e;
         }
-        createVersionInfoJson(versionDirectory, currentTransferItem.getContactName(), currentTransferItem.getContactEmail(), defaultMessage);
+        batchJournal.completeExtraction(dveName, nbn, ocflObjectVersionNumber, extracted.getByteCount(), extracted.getFileCount());
     }
 
     void createVersionInfoJson(@NonNull Path versionDirectory, @NonNull String user, @NonNull String email, @NonNull String message) throws IOException {
-        var versionInfoFile = versionDirectory.resolveSibling(versionDirectory.getFileName().toString() + ".json");
-        log.debug("Creating version info JSON file at {}", versionInfoFile);
-
-        var mapper = new ObjectMapper();
-        Map<String, Object> root = new HashMap<>();
-        Map<String, Object> versionInfo = new HashMap<>();
-        Map<String, Object> userObj = new HashMap<>();
-        userObj.put("name", user.replaceAll(NEWLINE_TAB_REGEX, "").trim());
-        userObj.put("email", email.replaceAll(NEWLINE_TAB_REGEX, "").trim());
-        versionInfo.put("user", userObj);
-        versionInfo.put("message", message);
-        root.put("version-info", versionInfo);
-
-        Map<String, Object> custom = new HashMap<>();
-        if (customProperties != null) {
-            for (var config : customProperties) {
-                var name = config.getName();
-                var value = config.getValue(currentTransferItem);
-                value.ifPresent(v -> custom.put(name, v));
-            }
-        }
-        try {
-            var lobs = currentTransferItem.getFetchSha1s();
-            if (lobs != null && !lobs.isEmpty()) {
-                Map<String, Object> externalLargeObjects = new HashMap<>();
-                externalLargeObjects.put("checksum-algorithm", "sha1");
-                externalLargeObjects.put("lobs", lobs);
-                custom.put("external-large-objects", externalLargeObjects);
-            }
-        }
-        catch (IOException e) {
-            log.error("Failed to read fetch SHA-1s from DVE", e);
-        }
-
-        if (!custom.isEmpty()) {
-            root.put("object-version-properties", custom);
-        }
-
-
-        try (var os = fileService.newOutputStream(versionInfoFile)) {
-            mapper.writerWithDefaultPrettyPrinter().writeValue(os, root);
-        }
+        versionInfoWriter.write(versionDirectory, currentTransferItem, user, email, message);
     }
 
     void importIfBatchThresholdReached() throws IOException {
-        if (sizeOfDirectory(this.currentBatchWorkDir.toFile()) > this.batchThreshold.toBytes()) {
-            var batch = dataVaultBatchRoot.resolve("batch-" + System.currentTimeMillis());
-            log.info("Batch threshold ({}) reached, sending batch {} to Data Vault", this.batchThreshold, batch);
-            log.info("Moving current batch directory {} to {}", currentBatchWorkDir, batch);
-            moveDirectory(currentBatchWorkDir.toFile(), batch.toFile());
-            log.info("Recreating empty current batch directory");
-            fileService.createDirectory(this.currentBatchWorkDir);
-            log.info("Calling Data Vault to process batch {}", batch);
-            dataVaultClient.sendBatchToVault(batch);
+        // Checked without the lock first, because sealIfDue waits for the other workers
+        if (batchSealPolicy.evaluate(batchJournal).isPresent()) {
+            batchSealer.sealIfDue(batchSealPolicy);
         }
     }
 }
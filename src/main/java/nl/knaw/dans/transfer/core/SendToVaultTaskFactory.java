@@ -15,12 +15,10 @@
  */
 package nl.knaw.dans.transfer.core;
 
-import io.dropwizard.util.DataSize;
 import lombok.Builder;
 import lombok.NonNull;
 import nl.knaw.dans.lib.util.healthcheck.DependenciesReadyCheck;
 import nl.knaw.dans.lib.util.inbox.InboxTaskFactory;
-import nl.knaw.dans.transfer.client.DataVaultClient;
 import nl.knaw.dans.transfer.client.LobStoreClient;
 import nl.knaw.dans.transfer.config.CustomPropertyConfig;
 
@@ -32,22 +30,26 @@ public class SendToVaultTaskFactory implements InboxTaskFactory {
     @NonNull
     private final Path currentBatchWorkDir;
     @NonNull
-    private final Path dataVaultBatchRoot;
+    private final BatchSealPolicy batchSealPolicy;
     @NonNull
-    private final DataSize batchThreshold;
+    private final BatchJournal batchJournal;
+    @NonNull
+    private final BatchSealer batchSealer;
+    @NonNull
+    private final CurrentBatchLock currentBatchLock;
     @NonNull
     private final Path outboxProcessed;
     @NonNull
     private final Path outboxFailed;
     @NonNull
-    private final DataVaultClient dataVaultClient;
-    @NonNull
     private final String defaultMessage;
     @NonNull
     private final List<CustomPropertyConfig> customProperties;
     @NonNull
     private final FileService fileService;
     @NonNull
+    private final ZipExtractor zipExtractor;
+    @NonNull
     private final DveMetadataReader dveMetadataReader;
     @NonNull
     private final LobStoreClient lobStoreClient;
@@ -59,7 +61,7 @@ public class SendToVaultTaskFactory implements InboxTaskFactory {
 
     @Override
     public Runnable createInboxTask(Path path) {
-        return new SendToVaultTask(path, currentBatchWorkDir, dataVaultBatchRoot, batchThreshold, outboxProcessed, outboxFailed, dataVaultClient, defaultMessage, customProperties, fileService,
-            dveMetadataReader, lobStoreClient, datastationName, readyCheck, delayBetweenProcessingRounds);
+        return new SendToVaultTask(path, currentBatchWorkDir, batchSealPolicy, batchJournal, batchSealer, currentBatchLock, outboxProcessed, outboxFailed, defaultMessage, customProperties,
+            fileService, zipExtractor, dveMetadataReader, lobStoreClient, datastationName, readyCheck, delayBetweenProcessingRounds);
     }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.zip.ZipEntry;
+
+/**
+ * Index of the STORED entries of a ZIP file, keyed by entry name, that finds the offset of their data in the file. {@link java.util.zip.ZipFile} does not expose that offset,
+ * so the central directory is read once more here, in one pass, to find the position of the local header of each STORED entry. The data offset itself is computed from the local
+ * header when it is asked for, because the extra field in the local header may differ from the one in the central directory.
+ *
+ * Encrypted entries and entries whose name occurs more than once are not indexed. The channel is only read with absolute positions, so the index can be used from multiple
+ * threads.
+ */
+public class StoredEntryIndex {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    private final FileChannel channel;
+    private final Map<String, Long> localHeaderOffsets = new HashMap<>();
+
+    /**
+     * Reads the central directory of the ZIP file.
+     *
+     * @param channel the channel of the ZIP file; it is not closed by the index
+     * @throws IOException if the central directory cannot be read or is not valid
+     */
+    public StoredEntryIndex(@NonNull FileChannel channel) throws IOException {
+        this.channel = channel;
+        readCentralDirectory();
+    }
+
+    /**
+     * Finds the offset of the data of a STORED entry.
+     *
+     * @param entry the entry, as found in the {@link java.util.zip.ZipFile} that was opened on the same file
+     * @return the offset of the first byte of the data, or an empty OptionalLong if the entry is not in the index
+     * @throws IOException if the local header cannot be read, or the data would lie outside the file
+     */
+    public OptionalLong findDataOffset(@NonNull ZipEntry entry) throws IOException {
+        var localHeaderOffset = localHeaderOffsets.get(entry.getName());
+        if (localHeaderOffset == null || entry.getMethod() != ZipEntry.STORED) {
+            return OptionalLong.empty();
+        }
+        var header = read(localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header for ZIP entry: " + entry.getName());
+        }
+        var dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + unsignedShort(header, 26) + unsignedShort(header, 28);
+        if (dataOffset + entry.getCompressedSize() > channel.size()) {
+            throw new IOException("Data of ZIP entry lies outside of the ZIP file: " + entry.getName());
+        }
+        return OptionalLong.of(dataOffset);
+    }
+
+    /**
+     * @return the number of STORED entries in the index
+     */
+    public int size() {
+        return localHeaderOffsets.size();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        var endOffset = findEnd();
+        var end = read(endOffset, END_SIZE);
+        long entryCount = unsignedShort(end, 10);
+        long directorySize = unsignedInt(end, 12);
+        long directoryOffset = unsignedInt(end, 16);
+        // The central directory ends where the (ZIP64) end record starts
+        var directoryEnd = endOffset;
+
+        if (entryCount == 0xffff || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+            var locatorOffset = endOffset - ZIP64_END_LOCATOR_SIZE;
+            if (locatorOffset >= 0 && read(locatorOffset, ZIP64_END_LOCATOR_SIZE).getInt(0) == ZIP64_END_LOCATOR_SIGNATURE) {
+                var zip64EndOffset = read(locatorOffset, ZIP64_END_LOCATOR_SIZE).getLong(8);
+                var zip64End = read(zip64EndOffset, ZIP64_END_SIZE);
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new IOException("Invalid ZIP64 end of central directory record");
+                }
+                entryCount = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+                directoryEnd = zip64EndOffset;
+            }
+        }
+        if (directorySize > Integer.MAX_VALUE || directorySize > directoryEnd) {
+            throw new IOException("Invalid central directory size: " + directorySize);
+        }
+        // Offsets in the ZIP file are relative to its start, unless data was prepended to it, as in self-extracting archives
+        var shift = directoryEnd - directorySize - directoryOffset;
+        var directory = read(directoryEnd - directorySize, (int) directorySize);
+
+        var duplicates = new HashSet<String>();
+        var names = new HashSet<String>();
+        var position = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directory.limit() || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory header at entry " + i);
+            }
+            var flags = unsignedShort(directory, position + 8);
+            var method = unsignedShort(directory, position + 10);
+            var compressedSize = unsignedInt(directory, position + 20);
+            var size = unsignedInt(directory, position + 24);
+            var nameLength = unsignedShort(directory, position + 28);
+            var extraLength = unsignedShort(directory, position + 30);
+            var commentLength = unsignedShort(directory, position + 32);
+            long localHeaderOffset = unsignedInt(directory, position + 42);
+            var next = position + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (next > directory.limit()) {
+                throw new IOException("Invalid central directory header at entry " + i);
+            }
+
+            var name = new String(directory.array(), position + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+            if (!names.add(name)) {
+                duplicates.add(name);
+            }
+            if (method == ZipEntry.STORED && (flags & 1) == 0) {
+                if (localHeaderOffset == ZIP64_MAGIC) {
+                    localHeaderOffset = readZip64LocalHeaderOffset(directory, position + CENTRAL_HEADER_SIZE + nameLength, extraLength, size == ZIP64_MAGIC,
+                        compressedSize == ZIP64_MAGIC);
+                }
+                localHeaderOffsets.put(name, localHeaderOffset + shift);
+            }
+            position = next;
+        }
+        duplicates.forEach(localHeaderOffsets::remove);
+    }
+
+    private long readZip64LocalHeaderOffset(ByteBuffer directory, int extraStart, int extraLength, boolean hasSize, boolean hasCompressedSize) throws IOException {
+        var position = extraStart;
+        while (position + 4 <= extraStart + extraLength) {
+            var id = unsignedShort(directory, position);
+            var length = unsignedShort(directory, position + 2);
+            if (id == ZIP64_EXTRA_ID) {
+                // The ZIP64 extra field only contains the values that did not fit in the header, in this order
+                var offset = position + 4 + (hasSize ? 8 : 0) + (hasCompressedSize ? 8 : 0);
+                if (offset + 8 > position + 4 + length) {
+                    break;
+                }
+                return directory.getLong(offset);
+            }
+            position += 4 + length;
+        }
+        throw new IOException("Missing ZIP64 local header offset in central directory");
+    }
+
+    private long findEnd() throws IOException {
+        var fileSize = channel.size();
+        var tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+        var tailOffset = fileSize - tailSize;
+        var tail = read(tailOffset, tailSize);
+        for (var position = tailSize - END_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_SIGNATURE) {
+                return tailOffset + position;
+            }
+        }
+        throw new IOException("End of central directory record not found");
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of ZIP file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int unsignedShort(ByteBuffer buffer, int position) {
+        return Short.toUnsignedInt(buffer.getShort(position));
+    }
+
+    private static long unsignedInt(ByteBuffer buffer, int position) {
+        return Integer.toUnsignedLong(buffer.getInt(position));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Reads the tag files that have a line per payload file, i.e. the payload manifests, fetch.txt and pid-mapping.txt. The files are read line by line, so that their content does
+ * not have to be held in memory as a whole. Lines are split on whitespace by scanning for it, rather than with a regular expression. File paths are kept as strings relative to
+ * the bag, e.g. <code>data/file.txt</code>.
+ */
+public class TagFileReader {
+
+    /**
+     * Reads a payload manifest.
+     *
+     * @param reader the manifest content
+     * @param name   the name of the manifest, for error messages
+     * @return the checksums keyed by path relative to the bag
+     * @throws IOException              if the manifest cannot be read
+     * @throws IllegalArgumentException if a line is not a checksum followed by a path
+     */
+    public Map<String, String> readManifest(BufferedReader reader, String name) throws IOException {
+        var manifest = new HashMap<String, String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            var parts = splitOnFirstWhitespace(line.trim());
+            if (parts == null) {
+                throw new IllegalArgumentException("Invalid line in " + name + ": " + line);
+            }
+            manifest.put(decodeFilename(parts[1]), parts[0]);
+        }
+        return manifest;
+    }
+
+    /**
+     * Reads fetch.txt.
+     *
+     * @param reader the content of fetch.txt
+     * @return the fetch entries, in the order in which they appear in fetch.txt
+     * @throws IOException              if fetch.txt cannot be read
+     * @throws IllegalArgumentException if a line is not a URL followed by a length and a path
+     */
+    public List<FetchEntry> readFetch(BufferedReader reader) throws IOException {
+        var entries = new ArrayList<FetchEntry>();
+        readFetch(reader, entries::add);
+        return entries;
+    }
+
+    /**
+     * Reads fetch.txt, passing each entry to the consumer as soon as it is read.
+     *
+     * @param reader   the content of fetch.txt
+     * @param consumer the consumer of the entries, called in the order in which they appear in fetch.txt
+     * @throws IOException              if fetch.txt cannot be read
+     * @throws IllegalArgumentException if a line is not a URL followed by a length and a path
+     */
+    public void readFetch(BufferedReader reader, Consumer<FetchEntry> consumer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            var urlAndRest = splitOnFirstWhitespace(line.trim());
+            var lengthAndPath = urlAndRest == null ? null : splitOnFirstWhitespace(urlAndRest[1]);
+            if (lengthAndPath == null) {
+                throw new IllegalArgumentException("Invalid line in " + DveIndex.FETCH_TXT + ": " + line);
+            }
+            var length = "-".equals(lengthAndPath[0]) ? null : Long.valueOf(lengthAndPath[0]);
+            consumer.accept(new FetchEntry(urlAndRest[0], length, decodeFilename(lengthAndPath[1])));
+        }
+    }
+
+    /**
+     * Reads pid-mapping.txt, passing each mapping to the consumer as soon as it is read. The mapping for the complete dataset, i.e. for <code>data/</code>, is skipped.
+     *
+     * @param reader   the content of pid-mapping.txt
+     * @param consumer the consumer of the path, relative to the bag, and the PID of each file
+     * @throws IOException              if pid-mapping.txt cannot be read
+     * @throws IllegalArgumentException if a line is not a PID followed by a path
+     */
+    public void readPidMapping(BufferedReader reader, BiConsumer<String, String> consumer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            var parts = splitOnFirstWhitespace(line.trim());
+            if (parts == null) {
+                throw new IllegalArgumentException("Invalid line in " + DveIndex.PID_MAPPING_TXT + ": " + line);
+            }
+            if (parts[1].equals("data/")) {
+                continue; // Entry for the complete dataset can be ignored
+            }
+            consumer.accept(parts[1], parts[0]);
+        }
+    }
+
+    /**
+     * Splits a trimmed line into the part before the first run of whitespace and the rest of the line. Equivalent to <code>line.split("\\s+", 2)</code> for lines that consist of at
+     * least two parts.
+     *
+     * @param line the line, without leading or trailing whitespace
+     * @return the two parts, or null if the line does not contain whitespace
+     */
+    static String[] splitOnFirstWhitespace(String line) {
+        var end = 0;
+        while (end < line.length() && !isWhitespace(line.charAt(end))) {
+            end++;
+        }
+        var start = end;
+        while (start < line.length() && isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        if (end == 0 || start == line.length()) {
+            return null;
+        }
+        return new String[] { line.substring(0, end), line.substring(start) };
+    }
+
+    // The characters that \s matches in a regular expression
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Decodes the percent-encoded characters that BagIt 1.0 requires to be encoded in file paths in manifests and fetch.txt.
+     */
+    static String decodeFilename(String path) {
+        if (path.indexOf('%') < 0) {
+            return path;
+        }
+        return path.replace("%0A", "\n")
+            .replace("%0a", "\n")
+            .replace("%0D", "\r")
+            .replace("%0d", "\r")
+            .replace("%25", "%");
+    }
+}
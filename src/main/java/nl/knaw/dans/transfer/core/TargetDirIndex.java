@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps track of the target directories in outboxes, so that {@link FileService#moveToTargetFor(Path, Path, String, boolean, String)} does not have to list the outbox for every
+ * DVE. A target directory is named after the NBN of the target dataset, followed by a dash and six random capital letters, e.g. <code>urn:nbn:nl:ui:13-abc-QWERTY</code>.
+ * <p>
+ * An outbox is listed when it is first used, and again when the reconcile interval has passed since the last listing. In between, the index is kept up to date by the file
+ * service itself, which registers the directories it creates and forgets the ones it deletes. Directories that are removed by others are only noticed at the next listing, or
+ * when a move into such a directory fails; the caller must then {@link #remove(Path) remove} it and create a new one.
+ */
+@Slf4j
+public class TargetDirIndex {
+    private static final Pattern TARGET_DIR_NAME = Pattern.compile("(.+)-[A-Z]{6}");
+
+    private static class Outbox {
+        private volatile Map<String, Path> dirs = new ConcurrentHashMap<>();
+        private volatile long reconciledAt;
+        private volatile boolean listed;
+    }
+
+    private final Duration reconcileInterval;
+    private final Clock clock;
+    private final Map<Path, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    public TargetDirIndex(@NonNull Duration reconcileInterval) {
+        this(reconcileInterval, Clock.systemUTC());
+    }
+
+    TargetDirIndex(Duration reconcileInterval, Clock clock) {
+        this.reconcileInterval = reconcileInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the target directory for the NBN in the outbox, if there is one.
+     *
+     * @param outbox the outbox
+     * @param nbn    the NBN of the target dataset
+     * @return the target directory, or an empty Optional if there is none
+     * @throws IllegalStateException if the outbox cannot be listed
+     */
+    public Optional<Path> find(@NonNull Path outbox, @NonNull String nbn) {
+        var state = getOutbox(outbox);
+        if (!state.listed || clock.millis() - state.reconciledAt >= reconcileInterval.toMillis()) {
+            reconcile(outbox, state);
+        }
+        return Optional.ofNullable(state.dirs.get(nbn));
+    }
+
+    /**
+     * Registers a target directory that was created in the outbox.
+     *
+     * @param outbox the outbox
+     * @param nbn    the NBN of the target dataset
+     * @param dir    the target directory
+     */
+    public void put(@NonNull Path outbox, @NonNull String nbn, @NonNull Path dir) {
+        var state = getOutbox(outbox);
+        synchronized (state) {
+            state.dirs.put(nbn, dir);
+        }
+    }
+
+    /**
+     * Forgets a target directory, because it was deleted. Paths that are not target directories in a known outbox are ignored.
+     *
+     * @param dir the deleted directory
+     */
+    public void remove(@NonNull Path dir) {
+        var outbox = dir.getParent();
+        if (outbox == null) {
+            return;
+        }
+        var state = outboxes.get(key(outbox));
+        var nbn = parseNbn(dir.getFileName().toString());
+        if (state == null || nbn.isEmpty()) {
+            return;
+        }
+        synchronized (state) {
+            state.dirs.computeIfPresent(nbn.get(), (k, indexed) -> indexed.getFileName().equals(dir.getFileName()) ? null : indexed);
+        }
+    }
+
+    static Optional<String> parseNbn(String dirName) {
+        var matcher = TARGET_DIR_NAME.matcher(dirName);
+        return matcher.matches() ? Optional.of(matcher.group(1)) : Optional.empty();
+    }
+
+    private Outbox getOutbox(Path outbox) {
+        return outboxes.computeIfAbsent(key(outbox), k -> new Outbox());
+    }
+
+    private static Path key(Path outbox) {
+        return outbox.toAbsolutePath().normalize();
+    }
+
+    private void reconcile(Path outbox, Outbox state) {
+        synchronized (state) {
+            // Another thread may have listed the outbox while this one was waiting
+            if (state.listed && clock.millis() - state.reconciledAt < reconcileInterval.toMillis()) {
+                return;
+            }
+            var dirs = new HashMap<String, Path>();
+            try (var stream = Files.list(outbox)) {
+                stream.forEach(path -> parseNbn(path.getFileName().toString())
+                    .filter(nbn -> Files.isDirectory(path))
+                    .ifPresent(nbn -> dirs.putIfAbsent(nbn, path)));
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Unable to list directories in destination root: " + outbox, e);
+            }
+            log.debug("Listed {} target directories in {}", dirs.size(), outbox);
+            state.dirs = new ConcurrentHashMap<>(dirs);
+            state.reconciledAt = clock.millis();
+            state.listed = true;
+        }
+    }
+}
@@ -15,71 +15,61 @@
  */
 package nl.knaw.dans.transfer.core;
 
-import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.PathNotFoundException;
 import lombok.extern.slf4j.Slf4j;
-import nl.knaw.dans.bagit.domain.Bag;
-import nl.knaw.dans.bagit.domain.FetchItem;
-import nl.knaw.dans.bagit.exceptions.InvalidBagMetadataException;
-import nl.knaw.dans.bagit.exceptions.InvalidBagitFileFormatException;
-import nl.knaw.dans.bagit.exceptions.MaliciousPathException;
-import nl.knaw.dans.bagit.exceptions.UnparsableVersionException;
-import nl.knaw.dans.bagit.exceptions.UnsupportedAlgorithmException;
-import nl.knaw.dans.bagit.hash.StandardSupportedAlgorithms;
-import nl.knaw.dans.bagit.reader.BagReader;
-
-import java.io.BufferedReader;
+import nl.knaw.dans.lobstore.client.api.TransferRequestDto;
+import nl.knaw.dans.transfer.core.oaiore.OaiOreDocument;
+
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Path;
-import java.nio.file.ProviderNotFoundException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.function.Function;
 import java.util.stream.Collectors;
-import nl.knaw.dans.lobstore.client.api.TransferRequestDto;
 
 /**
  * A Dataset Version Export (DVE) and auxiliary files. The DVE is the only mandatory file. The other files are searched next to the DVE or constructed from the DVE. This class is intended to provide
  * lightweight access to the DVE and its properties. It is not intended to be a full-fledged DVE reader or writer.
+ * <p>
+ * The DVE is opened at most once, through a {@link DveIndex} that is created on first use and shared with the readers that need it. The index is released by {@link #close()} and
+ * before the DVE is moved. It is reopened at the new location if it is needed again.
+ * <p>
+ * If the DVE has a valid {@link DveSidecar}, the properties are taken from the sidecar and the DVE is not opened to read them. The sidecar is moved, renamed and removed together with
+ * the DVE.
  */
 @Slf4j
-public class TransferItem {
-    private static final String METADATA_PATH = "metadata/oai-ore.jsonld";
-    private static final String NBN_JSON_PATH = "$['ore:describes']['dansDataVaultMetadata:dansNbn']";
-    private static final String DATAVERSE_PID_VERSION_JSON_PATH = "$['ore:describes']['dansDataVaultMetadata:dansDataversePidVersion']";
-    private static final String DATAVERSE_WORK_STATUS_JSON_PATH = "$['ore:describes']['schema:creativeWorkStatus']";
-    private static final String DATAVERSE_WORK_STATUS_NAME_JSON_PATH = DATAVERSE_WORK_STATUS_JSON_PATH + "['schema:name']";
-    private static final String DATAVERSE_DEACCESSIONED_REASON_JSON_PATH = DATAVERSE_WORK_STATUS_JSON_PATH + "['dvcore:reason']";
+public class TransferItem implements Closeable {
+    private static final String METADATA_PATH = DveIndex.OAI_ORE_JSONLD;
     private static final String HAS_ORGANIZATIONAL_IDENTIFIER_VERSION = "Has-Organizational-Identifier-Version";
-    private static final String FETCH_TXT = "fetch.txt";
-    private static final String MANIFEST_SHA1_TXT = "manifest-sha1.txt";
 
     private Path dve;
     private final FileService fileService;
 
     /**
-     * The NBN is included in the DVE metadata and thus considered an internal property. It is cached after the first read.
+     * The NBN, Dataverse PID version and deaccessioned reason are included in the DVE metadata and thus considered internal properties. The metadata is parsed once and cached.
      */
-    private String cachedNbn;
+    private OaiOreDocument cachedOaiOre;
 
     private String cachedContactName;
 
     private String cachedContactEmail;
 
-    private String cachedDataversePidVersion;
-
     private String cachedHasOrganizationalIdentifierVersion;
 
     private List<String> cachedFetchSha1s;
 
+    private DveIndex dveIndex;
+
+    private DveSidecar sidecar;
+
+    private boolean sidecarRead;
+
+    private boolean payloadChecksumsVerified;
+
     public TransferItem(Path dve, FileService fileService) {
         this.dve = dve;
         this.fileService = fileService;
@@ -100,12 +90,14 @@ public class TransferItem {
     }
 
     public void moveToTargetDirIn(Path outboxProcessed, boolean addTimestampToFileName) throws IOException {
-        fileService.moveToTargetFor(dve, outboxProcessed, getNbn(), addTimestampToFileName);
+        var nbn = getNbn();
+        close();
+        fileService.moveToTargetFor(dve, outboxProcessed, nbn, addTimestampToFileName, DveSidecar.FILE_NAME_SUFFIX);
     }
 
     public void moveToDir(Path dir) throws IOException {
-        var freeName = fileService.findFreeName(dir, dve.getFileName().toString());
-        fileService.move(dve, dir.resolve(freeName));
+        close();
+        fileService.moveToFreeName(dve, dir, dve.getFileName().toString(), DveSidecar.FILE_NAME_SUFFIX);
     }
 
     public void moveToDir(Path dir, boolean renameWithNbnAndVersion) throws IOException {
@@ -116,93 +108,136 @@ public class TransferItem {
         var nbn = getNbn();
         var version = getOcflObjectVersion();
         var baseName = nbn + "_v" + version + ".zip";
-        var freeName = fileService.findFreeName(dir, baseName);
-        fileService.move(dve, dir.resolve(freeName));
+        close();
+        fileService.moveToFreeName(dve, dir, baseName, DveSidecar.FILE_NAME_SUFFIX);
     }
 
     public void moveToErrorBox(Path dir, Exception e) throws IOException {
+        close();
+        // The sidecar is not moved to an error box, so that it cannot go stale there while the DVE is being fixed
+        var sidecarPath = DveSidecar.pathFor(dve);
+        if (fileService.exists(sidecarPath)) {
+            try {
+                fileService.delete(sidecarPath);
+            }
+            catch (IOException ioe) {
+                log.warn("Unable to delete sidecar {}", sidecarPath, ioe);
+            }
+        }
         fileService.moveAndWriteErrorLog(dve, dir, e);
     }
 
     public void setOcflObjectVersion(int ocflObjectVersion) {
         var newDve = new DveFileName(dve).withOcflObjectVersion(ocflObjectVersion).getPath();
+        close();
         try {
-            dve = fileService.move(dve, newDve);
+            dve = moveWithSidecar(newDve);
         }
         catch (IOException e) {
             throw new RuntimeException("Unable to rename DVE file to include OCFL object version", e);
         }
     }
 
-    // Helper: open zip filesystem and provide the discovered top-level dataset directory
-    private <T> T withTopLevelDir(Function<Path, T> action) throws IOException {
-        try (var zipFs = fileService.newFileSystem(dve)) {
-            var rootDir = zipFs.getRootDirectories().iterator().next();
-            try (var topLevelDirStream = fileService.list(rootDir)) {
-                var topLevelDir = topLevelDirStream
-                    .filter(fileService::isDirectory)
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalStateException("No top-level directory found in DVE"));
-                return action.apply(topLevelDir);
-            }
-        }
-        catch (ProviderNotFoundException e) {
-            throw new RuntimeException("The file system provider is not found. Probably not a ZIP file: " + dve, e);
+    // Helper: moves the sidecar, if any, before the DVE, so that the DVE is never seen at its new location without it
+    private Path moveWithSidecar(Path newDve) throws IOException {
+        var sidecarPath = DveSidecar.pathFor(dve);
+        if (fileService.exists(sidecarPath)) {
+            fileService.move(sidecarPath, DveSidecar.pathFor(newDve));
         }
+        return fileService.move(dve, newDve);
     }
 
-    // Helper: resolve metadata file path and ensure it exists
-    private Path resolveMetadataPath(Path topLevelDir) {
-        var metadataPath = topLevelDir.resolve(METADATA_PATH);
-        if (!fileService.exists(metadataPath)) {
-            throw new IllegalStateException("No metadata file found in DVE at " + metadataPath);
+    /**
+     * Returns the index over the DVE, opening the DVE if this has not been done yet. The index stays open until {@link #close()} is called or the DVE is moved.
+     *
+     * @return the index
+     * @throws IOException if the DVE cannot be opened
+     */
+    public DveIndex getDveIndex() throws IOException {
+        if (dveIndex == null) {
+            dveIndex = new DveIndex(dve, fileService);
         }
-        return metadataPath;
+        return dveIndex;
     }
 
-    // Helper: read metadata json into a JsonPath DocumentContext once, to avoid reopening streams
-    private DocumentContext readMetadata(Path metadataPath) {
-        try (var is = fileService.newInputStream(metadataPath)) {
-            return JsonPath.parse(is);
-        }
-        catch (IOException e) {
-            throw new IllegalStateException("Unable to read metadata file: " + metadataPath, e);
+    /**
+     * Releases the index over the DVE, if it is open. Cached properties are kept.
+     */
+    @Override
+    public void close() {
+        if (dveIndex != null) {
+            try {
+                dveIndex.close();
+            }
+            catch (IOException e) {
+                log.warn("Unable to close DVE {}", dve, e);
+            }
+            dveIndex = null;
         }
     }
 
-    // Helper: read a single JSON path value as String from metadata, returns Optional.empty on missing path
-    private Optional<String> readMetadataValue(DocumentContext json, String jsonPath) {
-        try {
-            var value = json.read(jsonPath, String.class);
-            return Optional.ofNullable(value);
-        }
-        catch (PathNotFoundException e) {
-            return Optional.empty();
-        }
-        catch (Exception e) {
-            throw new IllegalStateException("Unable to read value from metadata json path: " + jsonPath, e);
-        }
+    /**
+     * Returns whether the DVE has a sidecar that is not stale. The sidecar is read at most once.
+     *
+     * @return true if the properties are read from the sidecar
+     * @throws IOException if the sidecar exists but cannot be read
+     */
+    public boolean hasSidecar() throws IOException {
+        return getSidecar().isPresent();
     }
 
-    // Helper: read first value of a BagInfo key
-    private Optional<String> readBagInfoFirstValue(Path topLevelDir, String key) {
-        try {
-            var bag = new BagReader().read(topLevelDir);
-            var values = bag.getMetadata().get(key);
-            if (values != null && !values.isEmpty()) {
-                return Optional.ofNullable(values.get(0));
-            }
-            return Optional.empty();
-        }
-        catch (IOException e) {
-            throw new RuntimeException("Unable to read bag from DVE: " + dve, e);
-        }
-        catch (MaliciousPathException e) {
-            throw new RuntimeException(e);
+    private Optional<DveSidecar> getSidecar() throws IOException {
+        if (!sidecarRead) {
+            sidecar = DveSidecar.read(dve, fileService).orElse(null);
+            sidecarRead = true;
         }
-        catch (UnparsableVersionException | UnsupportedAlgorithmException | InvalidBagitFileFormatException e) {
-            throw new RuntimeException("Unable to read bag info from DVE: " + dve, e);
+        return Optional.ofNullable(sidecar);
+    }
+
+    /**
+     * Writes a sidecar next to the DVE with the properties that are needed in later processing stages, so that these stages do not have to read the DVE again.
+     *
+     * @param metadata the metadata read from the DVE
+     * @throws IOException if the DVE cannot be read or the sidecar cannot be written
+     */
+    public void saveSidecar(DveMetadata metadata) throws IOException {
+        var newSidecar = DveSidecar.builder()
+            .nbn(getNbn())
+            .contactName(getContactName())
+            .contactEmail(getContactEmail())
+            .dataversePidVersion(getDataversePidVersion().orElse(null))
+            .hasOrganizationalIdentifierVersion(getHasOrganizationalIdentifierVersion().orElse(null))
+            .deaccessionedReason(getDeaccessionedReason().orElse(null))
+            .fetchSha1s(getFetchSha1s())
+            .lobFiles(getLobFiles(metadata))
+            .payloadChecksumsVerified(isPayloadChecksumsVerified())
+            .build();
+        newSidecar.write(dve, fileService);
+        sidecar = newSidecar;
+        sidecarRead = true;
+    }
+
+    /**
+     * Returns whether the checksums of the payload files in the DVE have been verified against manifest-sha1.txt, in this processing stage or, according to the sidecar, in an
+     * earlier one.
+     *
+     * @return true if the payload checksums have been verified
+     * @throws IOException if the sidecar exists but cannot be read
+     */
+    public boolean isPayloadChecksumsVerified() throws IOException {
+        return payloadChecksumsVerified || getSidecar().map(DveSidecar::isPayloadChecksumsVerified).orElse(false);
+    }
+
+    public void setPayloadChecksumsVerified(boolean payloadChecksumsVerified) {
+        this.payloadChecksumsVerified = payloadChecksumsVerified;
+    }
+
+    // Helper: returns the parsed metadata, or Optional.empty if the DVE has no metadata file
+    private Optional<OaiOreDocument> readMetadata() throws IOException {
+        if (cachedOaiOre == null) {
+            cachedOaiOre = getDveIndex().getOaiOre().orElse(null);
         }
+        return Optional.ofNullable(cachedOaiOre);
     }
 
     /**
@@ -212,43 +247,15 @@ public class TransferItem {
      */
     public Optional<String> getDeaccessionedReason() {
         try {
-            return withTopLevelDir(topLevelDir -> {
-                Path metadataPath;
-                try {
-                    metadataPath = resolveMetadataPath(topLevelDir);
-                }
-                catch (IllegalStateException e) {
-                    log.warn(e.getMessage());
-                    return Optional.empty();
-                }
-                var json = readMetadata(metadataPath);
-
-                // Check if creativeWorkStatus exists
-                try {
-                    Object statusObj = json.read(DATAVERSE_WORK_STATUS_JSON_PATH);
-                    if (statusObj == null) {
-                        return Optional.empty();
-                    }
-                }
-                catch (PathNotFoundException e) {
-                    log.warn("No creativeWorkStatus found in DVE at {}", metadataPath);
-                    return Optional.empty();
-                }
-                catch (Exception e) {
-                    throw new IllegalStateException("Unable to read creativeWorkStatus from metadata file", e);
-                }
-
-                // Read name and reason
-                var statusNameOpt = readMetadataValue(json, DATAVERSE_WORK_STATUS_NAME_JSON_PATH);
-                if (statusNameOpt.isEmpty()) {
-                    return Optional.empty();
-                }
-                if ("DEACCESSIONED".equalsIgnoreCase(statusNameOpt.get())) {
-                    var reasonOpt = readMetadataValue(json, DATAVERSE_DEACCESSIONED_REASON_JSON_PATH);
-                    return Optional.of(reasonOpt.filter(s -> !s.isBlank()).orElse("N/a"));
-                }
+            if (getSidecar().isPresent()) {
+                return Optional.ofNullable(sidecar.getDeaccessionedReason());
+            }
+            var metadata = readMetadata();
+            if (metadata.isEmpty()) {
+                log.warn("No metadata file found in DVE at {}: {}", METADATA_PATH, dve);
                 return Optional.empty();
-            });
+            }
+            return metadata.get().getDeaccessionedReason();
         }
         catch (IOException e) {
             throw new RuntimeException(e);
@@ -270,56 +277,40 @@ public class TransferItem {
             return;
         }
 
-        var result = withTopLevelDir(topLevelDir -> {
-            var emailOpt = readBagInfoFirstValue(topLevelDir, "Contact-Email");
-            var nameOpt = readBagInfoFirstValue(topLevelDir, "Contact-Name");
-            return new String[] { emailOpt.orElse(null), nameOpt.orElse(null) };
-        });
-        cachedContactEmail = result[0];
+        if (getSidecar().isPresent()) {
+            cachedContactName = sidecar.getContactName();
+            cachedContactEmail = sidecar.getContactEmail();
+            return;
+        }
+
+        var index = getDveIndex();
+        cachedContactEmail = index.getBagInfoFirstValue("Contact-Email").orElse(null);
         // Fallback to contact email when contact name is not available
-        cachedContactName = (result[1] != null && !result[1].isBlank()) ? result[1] : cachedContactEmail;
+        cachedContactName = index.getBagInfoFirstValue("Contact-Name")
+            .filter(name -> !name.isBlank())
+            .orElse(cachedContactEmail);
     }
 
     public String getNbn() throws IOException {
-        readNbn();
-        return cachedNbn;
-    }
-
-    private void readNbn() throws IOException {
-        if (cachedNbn != null) {
-            return;
+        if (getSidecar().isPresent() && sidecar.getNbn() != null) {
+            return sidecar.getNbn();
         }
-
-        cachedNbn = withTopLevelDir(topLevelDir -> {
-            var metadataPath = resolveMetadataPath(topLevelDir);
-            var json = readMetadata(metadataPath);
-            var nbnOpt = readMetadataValue(json, NBN_JSON_PATH);
-            if (nbnOpt.isEmpty()) {
-                throw new IllegalStateException("No NBN found in DVE");
-            }
-            return nbnOpt.get();
-        });
+        var metadata = readMetadata()
+            .orElseThrow(() -> new IllegalStateException("No metadata file found in DVE at " + METADATA_PATH + ": " + dve));
+        return Optional.ofNullable(metadata.getNbn())
+            .orElseThrow(() -> new IllegalStateException("No NBN found in DVE"));
     }
 
     public Optional<String> getDataversePidVersion() throws IOException {
-        readDataversePidVersion();
-        return Optional.ofNullable(cachedDataversePidVersion);
-    }
-
-    private void readDataversePidVersion() throws IOException {
-        if (cachedDataversePidVersion != null) {
-            return;
+        if (getSidecar().isPresent()) {
+            return Optional.ofNullable(sidecar.getDataversePidVersion());
         }
-
-        cachedDataversePidVersion = withTopLevelDir(topLevelDir -> {
-            var metadataPath = topLevelDir.resolve(METADATA_PATH);
-            if (!fileService.exists(metadataPath)) {
-                log.warn("No metadata file found in DVE at {}", metadataPath);
-                return null;
-            }
-            var json = readMetadata(metadataPath);
-            return readMetadataValue(json, DATAVERSE_PID_VERSION_JSON_PATH).orElse(null);
-        });
+        var metadata = readMetadata();
+        if (metadata.isEmpty()) {
+            log.warn("No metadata file found in DVE at {}: {}", METADATA_PATH, dve);
+            return Optional.empty();
+        }
+        return Optional.ofNullable(metadata.get().getDataversePidVersion());
     }
 
     public Optional<String> getHasOrganizationalIdentifierVersion() throws IOException {
@@ -332,20 +323,55 @@ public class TransferItem {
             return;
         }
 
-        var opt = withTopLevelDir(topLevelDir ->
-            readBagInfoFirstValue(topLevelDir, HAS_ORGANIZATIONAL_IDENTIFIER_VERSION)
-        );
-        cachedHasOrganizationalIdentifierVersion = opt.orElse(null);
+        if (getSidecar().isPresent()) {
+            cachedHasOrganizationalIdentifierVersion = sidecar.getHasOrganizationalIdentifierVersion();
+            return;
+        }
+
+        cachedHasOrganizationalIdentifierVersion = getDveIndex().getBagInfoFirstValue(HAS_ORGANIZATIONAL_IDENTIFIER_VERSION).orElse(null);
     }
 
     public List<String> getFetchSha1s() throws IOException {
         if (cachedFetchSha1s == null) {
-            cachedFetchSha1s = withTopLevelDir(this::readFetchSha1sUsingBagitLib);
+            if (getSidecar().isPresent() && sidecar.getFetchSha1s() != null) {
+                cachedFetchSha1s = List.copyOf(sidecar.getFetchSha1s());
+            }
+            else {
+                cachedFetchSha1s = readFetchSha1s(getDveIndex());
+            }
         }
         return cachedFetchSha1s;
     }
 
     public List<TransferRequestDto> getLobRequests(DveMetadata metadata, String datastation) throws IOException {
+        return toLobRequests(getLobFiles(metadata), datastation);
+    }
+
+    /**
+     * Returns the LOB transfer requests for the files in fetch.txt, using the Dataverse file ids recorded in the sidecar.
+     *
+     * @param datastation the datastation to request the transfers for
+     * @return the transfer requests
+     * @throws IOException           if the sidecar cannot be read
+     * @throws IllegalStateException if the DVE has no valid sidecar
+     */
+    public List<TransferRequestDto> getLobRequests(String datastation) throws IOException {
+        var lobFiles = getSidecar()
+            .orElseThrow(() -> new IllegalStateException("No valid sidecar found for DVE: " + dve))
+            .getLobFiles();
+        return toLobRequests(lobFiles == null ? List.of() : lobFiles, datastation);
+    }
+
+    private List<TransferRequestDto> toLobRequests(List<DveSidecar.LobFile> lobFiles, String datastation) {
+        return lobFiles.stream()
+            .map(lobFile -> new TransferRequestDto()
+                .dataverseFileId(lobFile.getDataverseFileId())
+                .sha1Sum(lobFile.getSha1Checksum())
+                .datastation(datastation))
+            .toList();
+    }
+
+    private List<DveSidecar.LobFile> getLobFiles(DveMetadata metadata) throws IOException {
         var fetchSha1s = new HashSet<>(getFetchSha1s());
         if (fetchSha1s.isEmpty()) {
             return List.of();
@@ -366,11 +392,7 @@ public class TransferItem {
                     .orElseThrow(() -> new IllegalArgumentException("No fileId found in URI: " + uri));
 
                 try {
-                    var fileId = Long.parseLong(fileIdStr);
-                    return new TransferRequestDto()
-                        .dataverseFileId(fileId)
-                        .sha1Sum(attr.getSha1Checksum())
-                        .datastation(datastation);
+                    return new DveSidecar.LobFile(Long.parseLong(fileIdStr), attr.getSha1Checksum());
                 }
                 catch (NumberFormatException e) {
                     throw new IllegalArgumentException("Invalid fileId found in URI: " + uri, e);
@@ -379,31 +401,23 @@ public class TransferItem {
             .toList();
     }
 
-    private List<String> readFetchSha1sUsingBagitLib(Path topLevelDir) {
+    private List<String> readFetchSha1s(DveIndex index) {
         try {
-            BagReader reader = new BagReader();
-            Bag bag = reader.read(topLevelDir);
-
-            Set<Path> fetchPaths = bag.getItemsToFetch().stream()
-                .map(FetchItem::getPath)
+            Set<String> fetchPaths = index.getFetchEntries().stream()
+                .map(FetchEntry::getPath)
                 .collect(Collectors.toSet());
 
             if (fetchPaths.isEmpty()) {
                 return List.of();
             }
 
-            return bag.getPayLoadManifests().stream()
-                .filter(m -> m.getAlgorithm() == StandardSupportedAlgorithms.SHA1)
-                .findFirst()
-                .map(m -> m.getFileToChecksumMap().entrySet().stream()
-                    .filter(entry -> fetchPaths.contains(entry.getKey()))
-                    .map(Map.Entry::getValue)
-                    .collect(Collectors.toCollection(TreeSet::new)))
-                .map(List::copyOf)
-                .orElse(List.of());
+            return List.copyOf(index.getManifestSha1().entrySet().stream()
+                .filter(entry -> fetchPaths.contains(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toCollection(TreeSet::new)));
         }
         catch (Exception e) {
-            log.error("Error reading bag with BagReader", e);
+            log.error("Error reading fetch.txt and manifest-sha1.txt from DVE {}", dve, e);
             return List.of();
         }
     }
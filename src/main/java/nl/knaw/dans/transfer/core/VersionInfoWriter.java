@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.transfer.config.CustomPropertyConfig;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the version info JSON file that accompanies a version directory in the object import directory. The writer is created once for a set of custom properties. It plans which
+ * fields of the DVE these properties need, so that for each DVE the fields are read in a single pass into a {@link DveView}, and all properties are evaluated against that view.
+ */
+@Slf4j
+public class VersionInfoWriter {
+    private static final ObjectWriter WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    private final List<CustomPropertyConfig> customProperties;
+    private final FileService fileService;
+
+    @Getter
+    private final Set<DveView.Field> requiredFields;
+
+    public VersionInfoWriter(List<CustomPropertyConfig> customProperties, @NonNull FileService fileService) {
+        this.customProperties = customProperties == null ? List.of() : List.copyOf(customProperties);
+        this.fileService = fileService;
+        var fields = EnumSet.of(DveView.Field.FETCH_SHA1S);
+        for (var config : this.customProperties) {
+            fields.addAll(config.getRequiredFields());
+        }
+        this.requiredFields = Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * Writes the version info JSON file for the given version directory. The file is created next to the directory and named after it, e.g. {@code v1.json}.
+     *
+     * @param versionDirectory the version directory
+     * @param transferItem     the DVE from which the version directory was extracted
+     * @param user             the name of the user that created the version
+     * @param email            the email address of the user that created the version
+     * @param message          the version message
+     * @throws IOException if the DVE cannot be read or the file cannot be written
+     */
+    public void write(@NonNull Path versionDirectory, @NonNull TransferItem transferItem, @NonNull String user, @NonNull String email, @NonNull String message) throws IOException {
+        var versionInfoFile = versionDirectory.resolveSibling(versionDirectory.getFileName().toString() + ".json");
+        log.debug("Creating version info JSON file at {}", versionInfoFile);
+        var dve = DveView.read(transferItem, requiredFields);
+
+        Map<String, Object> root = new LinkedHashMap<>();
+        Map<String, Object> versionInfo = new LinkedHashMap<>();
+        versionInfo.put("user", Map.of(
+            "name", removeNewlinesAndTabs(user),
+            "email", removeNewlinesAndTabs(email)));
+        versionInfo.put("message", message);
+        root.put("version-info", versionInfo);
+
+        Map<String, Object> custom = new LinkedHashMap<>();
+        for (var config : customProperties) {
+            config.getValue(dve).ifPresent(v -> custom.put(config.getName(), v));
+        }
+        var lobs = dve.getFetchSha1s();
+        if (!lobs.isEmpty()) {
+            custom.put("external-large-objects", Map.of(
+                "checksum-algorithm", "sha1",
+                "lobs", lobs));
+        }
+        if (!custom.isEmpty()) {
+            root.put("object-version-properties", custom);
+        }
+
+        try (var os = fileService.newOutputStream(versionInfoFile)) {
+            WRITER.writeValue(os, root);
+        }
+    }
+
+    /**
+     * Removes newlines, carriage returns and tabs from the value and trims it. Equivalent to {@code value.replaceAll("[\n\t\r]", "").trim()}, without compiling a pattern.
+     *
+     * @param value the value
+     * @return the cleaned value
+     */
+    static String removeNewlinesAndTabs(String value) {
+        var sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\n' && c != '\t' && c != '\r') {
+                sb.append(c);
+            }
+        }
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import lombok.NonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of the file entries of a ZIP file that contains a single base folder, keyed by their path relative to that base folder, e.g. <code>metadata/oai-ore.jsonld</code>. The
+ * index is built in one pass over the central directory, so that looking up an entry does not require scanning all entries again. Directory entries are not indexed.
+ */
+public class ZipEntryIndex {
+    private final Map<String, ZipEntry> entries = new HashMap<>();
+    private final Set<String> duplicates = new HashSet<>();
+    private boolean hasBaseFolder;
+
+    public ZipEntryIndex(@NonNull ZipFile zipFile) {
+        zipFile.stream().forEach(entry -> {
+            var name = entry.getName();
+            var slash = name.indexOf('/');
+            if (slash <= 0) {
+                return; // Entries in the root of the ZIP file are not under the base folder
+            }
+            hasBaseFolder = true;
+            if (!entry.isDirectory()) {
+                var relativeName = name.substring(slash + 1);
+                if (entries.putIfAbsent(relativeName, entry) != null) {
+                    duplicates.add(relativeName);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the entry with the given path relative to the base folder.
+     *
+     * @param path the relative path, using '/' as separator
+     * @return the entry, or an empty Optional if there is no such entry
+     * @throws IllegalArgumentException if more than one entry matches the path
+     */
+    public Optional<ZipEntry> find(@NonNull String path) {
+        if (duplicates.contains(path)) {
+            throw new IllegalArgumentException("Multiple entries found for path: " + path);
+        }
+        return Optional.ofNullable(entries.get(path));
+    }
+
+    /**
+     * @return whether the ZIP file has at least one entry under a base folder
+     */
+    public boolean hasBaseFolder() {
+        return hasBaseFolder;
+    }
+}
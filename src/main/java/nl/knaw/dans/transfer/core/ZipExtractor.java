@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts ZIP files using a bounded fork-join pool. The entries are read from the {@link ZipFile} by random access, so that they can be inflated and written in parallel:
+ * <ul>
+ *     <li>all directories, including the parents of file entries, are created first, so that the file tasks do not race to create them;</li>
+ *     <li>each file of at least the large-file threshold is extracted by a task of its own, and these tasks are started first;</li>
+ *     <li>smaller files are grouped into tasks of up to the threshold in total, so that the tasks for thousands of small files do not cost more than the files themselves.</li>
+ * </ul>
+ * Only DEFLATED entries are inflated. The data of STORED entries, typically payload that was already compressed, such as video, images and archives, is copied from the ZIP
+ * file to the target file with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so that the operating system can copy it without passing it
+ * through a buffer on the heap. The offset of that data is found with a {@link StoredEntryIndex}; if the index cannot be read, all entries are extracted as streams.
+ * <p>
+ * If a {@link PayloadDeduplicator} finds a file with the same content that was already extracted, e.g., as part of an earlier version of the same object, a hard link to that
+ * file is created instead. If the link cannot be created, for example because the file system does not support hard links, the entry is extracted after all.
+ * <p>
+ * If an entry cannot be extracted, no new entries are started, and {@link #extract(Path, Path)} returns only after all tasks have stopped. It does not remove what has been
+ * extracted so far; that is left to the caller.
+ * <p>
+ * The pool is shut down when the extractor is stopped as a Dropwizard managed object.
+ */
+@Slf4j
+public class ZipExtractor implements Managed {
+    private static final int MAX_FILES_PER_TASK = 256;
+
+    private final FileService fileService;
+    private final ForkJoinPool pool;
+    private final long largeFileThreshold;
+    private final boolean transferStoredEntries;
+
+    /**
+     * Creates an extractor with its own fork-join pool.
+     *
+     * @param fileService        the file service to open the ZIP files with
+     * @param parallelism        the number of threads of the pool
+     * @param largeFileThreshold the size in bytes from which a file is extracted by a task of its own
+     */
+    public ZipExtractor(@NonNull FileService fileService, int parallelism, long largeFileThreshold) {
+        this(fileService, parallelism, largeFileThreshold, true);
+    }
+
+    // Streaming STORED entries as well is only useful as a baseline in benchmarks
+    ZipExtractor(@NonNull FileService fileService, int parallelism, long largeFileThreshold, boolean transferStoredEntries) {
+        this.fileService = fileService;
+        this.pool = new ForkJoinPool(parallelism);
+        this.largeFileThreshold = largeFileThreshold;
+        this.transferStoredEntries = transferStoredEntries;
+    }
+
+    /**
+     * Extracts all entries of the ZIP file into the target directory, which is created if it does not exist.
+     *
+     * @param zip       the ZIP file
+     * @param targetDir the directory to extract to
+     * @return the number of files and bytes written
+     * @throws IOException if the ZIP file cannot be read, an entry would be extracted outside the target directory, or a file cannot be written
+     */
+    public Result extract(@NonNull Path zip, @NonNull Path targetDir) throws IOException {
+        return extract(zip, targetDir, PayloadDeduplicator.NONE);
+    }
+
+    /**
+     * Extracts all entries of the ZIP file into the target directory, which is created if it does not exist, linking to identical files that were already extracted.
+     *
+     * @param zip          the ZIP file
+     * @param targetDir    the directory to extract to
+     * @param deduplicator finds files to link to instead of extracting the entry
+     * @return the number of files and bytes written, and the number of files linked
+     * @throws IOException if the ZIP file cannot be read, an entry would be extracted outside the target directory, or a file cannot be written
+     */
+    public Result extract(@NonNull Path zip, @NonNull Path targetDir, @NonNull PayloadDeduplicator deduplicator) throws IOException {
+        try (var zipFile = fileService.openZipFile(zip)) {
+            return extract(zip, zipFile, targetDir, deduplicator);
+        }
+    }
+
+    /**
+     * Extracts all entries of a DVE into the target directory, which is created if it does not exist, linking to identical files that were already extracted. The ZIP file
+     * that the index holds open is used, so that the DVE is not opened again.
+     *
+     * @param dveIndex     the index over the DVE
+     * @param targetDir    the directory to extract to
+     * @param deduplicator finds files to link to instead of extracting the entry
+     * @return the number of files and bytes written, and the number of files linked
+     * @throws IOException if the DVE cannot be read, an entry would be extracted outside the target directory, or a file cannot be written
+     */
+    public Result extract(@NonNull DveIndex dveIndex, @NonNull Path targetDir, @NonNull PayloadDeduplicator deduplicator) throws IOException {
+        return extract(dveIndex.getDve(), dveIndex.getZipFile(), targetDir, deduplicator);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+        pool.shutdown();
+    }
+
+    private Result extract(Path zip, ZipFile zipFile, Path targetDir, PayloadDeduplicator deduplicator) throws IOException {
+        var target = targetDir.toAbsolutePath().normalize();
+        try (var channel = fileService.newFileChannel(zip, StandardOpenOption.READ)) {
+            var directories = new TreeSet<Path>();
+            var files = new ArrayList<FileEntry>();
+            directories.add(target);
+            var entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                var entry = entries.nextElement();
+                var path = target.resolve(entry.getName()).normalize();
+                if (!path.startsWith(target) || path.equals(target)) {
+                    throw new IOException("ZIP entry is outside of the target directory: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    directories.add(path);
+                }
+                else {
+                    directories.add(path.getParent());
+                    files.add(new FileEntry(entry, path));
+                }
+            }
+
+            log.debug("Extracting {} files from {} into {} directories", files.size(), zip, directories.size());
+            for (var directory : directories) {
+                Files.createDirectories(directory);
+            }
+            var linked = new LongAdder();
+            var bytes = extractFiles(zipFile, channel, readStoredEntries(zip, channel), deduplicator, linked, files);
+            return new Result(files.size(), bytes, linked.sum());
+        }
+    }
+
+    private StoredEntryIndex readStoredEntries(Path zip, FileChannel channel) {
+        if (!transferStoredEntries) {
+            return null;
+        }
+        try {
+            var storedEntries = new StoredEntryIndex(channel);
+            log.debug("Found {} STORED entries in {}", storedEntries.size(), zip);
+            return storedEntries;
+        }
+        catch (IOException e) {
+            log.warn("Unable to read the STORED entries of {}, extracting all entries as streams: {}", zip, e.getMessage());
+            return null;
+        }
+    }
+
+    private long extractFiles(ZipFile zipFile, FileChannel channel, StoredEntryIndex storedEntries, PayloadDeduplicator deduplicator, LongAdder linked,
+        List<FileEntry> files) throws IOException {
+        var failure = new AtomicReference<Exception>();
+        var bytes = new LongAdder();
+        var tasks = new ArrayList<ForkJoinTask<?>>();
+        for (var group : groupFiles(files)) {
+            tasks.add(pool.submit(() -> {
+                for (var file : group) {
+                    if (failure.get() != null) {
+                        return;
+                    }
+                    try {
+                        if (linkToIdenticalFile(deduplicator, file.getEntry(), file.getPath())) {
+                            linked.increment();
+                        }
+                        else {
+                            bytes.add(extractEntry(zipFile, channel, storedEntries, file.getEntry(), file.getPath()));
+                        }
+                    }
+                    catch (IOException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+
+        // Wait for all tasks, also after a failure, so that nothing is written anymore when the caller starts cleaning up
+        for (var task : tasks) {
+            task.quietlyJoin();
+        }
+        var e = failure.get();
+        if (e instanceof IOException ioe) {
+            throw ioe;
+        }
+        if (e != null) {
+            throw (RuntimeException) e;
+        }
+        return bytes.sum();
+    }
+
+    // Large files (or files of unknown size) first, one per group; then the small files, grouped up to the threshold
+    private List<List<FileEntry>> groupFiles(List<FileEntry> files) {
+        var groups = new ArrayList<List<FileEntry>>();
+        var small = new ArrayList<FileEntry>();
+        for (var file : files) {
+            var size = file.getEntry().getSize();
+            if (size < 0 || size >= largeFileThreshold) {
+                groups.add(List.of(file));
+            }
+            else {
+                small.add(file);
+            }
+        }
+        groups.sort(Comparator.comparingLong((List<FileEntry> group) -> group.get(0).getEntry().getSize()).reversed());
+
+        var group = new ArrayList<FileEntry>();
+        long groupSize = 0;
+        for (var file : small) {
+            if (!group.isEmpty() && (groupSize + file.getEntry().getSize() > largeFileThreshold || group.size() == MAX_FILES_PER_TASK)) {
+                groups.add(group);
+                group = new ArrayList<>();
+                groupSize = 0;
+            }
+            group.add(file);
+            groupSize += file.getEntry().getSize();
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private boolean linkToIdenticalFile(PayloadDeduplicator deduplicator, ZipEntry entry, Path path) {
+        var identicalFile = deduplicator.findIdenticalFile(entry);
+        if (identicalFile.isEmpty()) {
+            return false;
+        }
+        try {
+            Files.createLink(path, identicalFile.get());
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            log.debug("Unable to link {} to {}, extracting it: {}", path, identicalFile.get(), e.getMessage());
+            return false;
+        }
+    }
+
+    private long extractEntry(ZipFile zipFile, FileChannel channel, StoredEntryIndex storedEntries, ZipEntry entry, Path path) throws IOException {
+        var dataOffset = storedEntries == null ? OptionalLong.empty() : storedEntries.findDataOffset(entry);
+        if (dataOffset.isPresent()) {
+            return transferEntry(channel, dataOffset.getAsLong(), entry, path);
+        }
+        try (var is = zipFile.getInputStream(entry)) {
+            return Files.copy(is, path);
+        }
+    }
+
+    private long transferEntry(FileChannel channel, long dataOffset, ZipEntry entry, Path path) throws IOException {
+        var size = entry.getSize();
+        try (var target = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long transferred = 0;
+            while (transferred < size) {
+                var count = channel.transferTo(dataOffset + transferred, size - transferred, target);
+                if (count <= 0) {
+                    throw new IOException("Unexpected end of ZIP file while extracting " + entry.getName());
+                }
+                transferred += count;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * What was written by {@link #extract(Path, Path)}. Directories are not counted. The file count includes the files that were linked; the byte count does not.
+     */
+    @Value
+    public static class Result {
+        long fileCount;
+        long byteCount;
+        long linkedFileCount;
+    }
+
+    @Value
+    private static class FileEntry {
+        ZipEntry entry;
+        Path path;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core.oaiore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Optional;
+
+/**
+ * An immutable view of oai-ore.jsonld, parsed once and then shared by all components that need values from it while processing a DVE. The values that are exposed directly are
+ * looked up by their compact names under <code>ore:describes</code>, as they appear in the document. The values for {@link nl.knaw.dans.transfer.core.DveMetadata} are derived
+ * from the same parse by {@link OaiOreMetadataReader}.
+ */
+@Getter
+public class OaiOreDocument {
+    private static final String DESCRIBES = "ore:describes";
+    private static final String NBN = "dansDataVaultMetadata:dansNbn";
+    private static final String DATAVERSE_PID_VERSION = "dansDataVaultMetadata:dansDataversePidVersion";
+    private static final String WORK_STATUS = "schema:creativeWorkStatus";
+    private static final String WORK_STATUS_NAME = "schema:name";
+    private static final String DEACCESSIONED_REASON = "dvcore:reason";
+
+    private final String json;
+    private final String nbn;
+    private final String dataversePidVersion;
+    private final String creativeWorkStatusName;
+    private final String deaccessionReason;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final StreamingOaiOreMetadataReader.ParsedDocument parsedDocument;
+
+    private OaiOreDocument(StreamingOaiOreMetadataReader.ParsedDocument parsedDocument) {
+        this.parsedDocument = parsedDocument;
+        this.json = parsedDocument.getJson();
+        this.nbn = parsedDocument.getLiteral(DESCRIBES, NBN);
+        this.dataversePidVersion = parsedDocument.getLiteral(DESCRIBES, DATAVERSE_PID_VERSION);
+        this.creativeWorkStatusName = parsedDocument.getLiteral(DESCRIBES, WORK_STATUS, WORK_STATUS_NAME);
+        this.deaccessionReason = parsedDocument.getLiteral(DESCRIBES, WORK_STATUS, DEACCESSIONED_REASON);
+    }
+
+    /**
+     * Parses the content of oai-ore.jsonld.
+     *
+     * @param json the content of oai-ore.jsonld
+     * @return the parsed document
+     * @throws IllegalStateException if the content is not valid JSON, or one of the values exposed by this class is not a single string
+     */
+    public static OaiOreDocument parse(@NonNull String json) {
+        try {
+            return new OaiOreDocument(StreamingOaiOreMetadataReader.parse(json));
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to parse oai-ore.jsonld", e);
+        }
+    }
+
+    /**
+     * Returns the reason for deaccessioning the dataset version if the dataset version is deaccessioned. If it is not deaccessioned, it returns an empty Optional.
+     *
+     * @return the reason for deaccessioning, or "N/a" if no reason was given, or empty if not deaccessioned
+     */
+    public Optional<String> getDeaccessionedReason() {
+        if (!"DEACCESSIONED".equalsIgnoreCase(creativeWorkStatusName)) {
+            return Optional.empty();
+        }
+        return Optional.of(Optional.ofNullable(deaccessionReason).filter(s -> !s.isBlank()).orElse("N/a"));
+    }
+}
@@ -15,94 +15,81 @@
  */
 package nl.knaw.dans.transfer.core.oaiore;
 
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.transfer.core.DveMetadata;
-import nl.knaw.dans.transfer.core.oaiore.vocabulary.DansDataVaultMetadata;
-import nl.knaw.dans.transfer.core.oaiore.vocabulary.DvCore;
-import nl.knaw.dans.transfer.core.oaiore.vocabulary.OaiOreMetadata;
-import nl.knaw.dans.transfer.core.oaiore.vocabulary.Schema;
-import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.Property;
-import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.vocabulary.DCTerms;
-import org.apache.jena.vocabulary.RDF;
-
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
 
+/**
+ * Reads the DVE metadata from oai-ore.jsonld. By default a streaming reader is used, which only keeps the handful of values that are needed. Documents that it does not support
+ * are read with Jena. See {@link OaiOreReaderMode} for the alternatives.
+ */
+@Slf4j
 public class OaiOreMetadataReader {
+    private final OaiOreReaderMode mode;
+    private final StreamingOaiOreMetadataReader streamingReader = new StreamingOaiOreMetadataReader();
+    private final JenaOaiOreMetadataReader jenaReader = new JenaOaiOreMetadataReader();
 
-    public DveMetadata readMetadata(String json) {
-        var model = ModelFactory.createDefaultModel();
-        model.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), null, "JSON-LD");
-
-        var builder = DveMetadata.builder();
-        var aggregations = model.listStatements(null, RDF.type, OaiOreMetadata.Aggregation);
-
-        if (aggregations.hasNext()) {
-            var theAggregation = aggregations.next().getSubject();
-
-            builder.bagId(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansBagId));
-            builder.nbn(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansNbn));
-            builder.swordToken(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansSwordToken));
-            builder.dataSupplier(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansDataSupplier));
-            builder.dataversePid(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansDataversePid));
-            builder.dataversePidVersion(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansDataversePidVersion));
-            builder.otherId(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansOtherId));
-            builder.otherIdVersion(getSingleValueProperty(theAggregation, DansDataVaultMetadata.dansOtherIdVersion));
-            builder.title(getSingleValueProperty(theAggregation, DCTerms.title));
-            builder.metadata(json);
-        }
-
-        var resourceMaps = model.listStatements(null, RDF.type, OaiOreMetadata.ResourceMap);
-
-        if (resourceMaps.hasNext()) {
-            var theResouceMap = resourceMaps.next().getSubject();
-            builder.exporter(getEmbeddedSingleValueProperty(theResouceMap, DvCore.generatedBy, Schema.name));
-            builder.exporterVersion(getEmbeddedSingleValueProperty(theResouceMap, DvCore.generatedBy, Schema.version));
-        }
-
-        return builder.build();
+    public OaiOreMetadataReader() {
+        this(OaiOreReaderMode.STREAMING);
     }
 
-    private String getSingleValueProperty(Resource resource, Property name) {
-        var results = new HashSet<String>();
-
-        resource.listProperties(name).forEachRemaining(item -> {
-            if (item.getObject().isLiteral()) {
-                results.add(item.getObject().asLiteral().getString());
-            }
-        });
+    public OaiOreMetadataReader(@NonNull OaiOreReaderMode mode) {
+        this.mode = mode;
+    }
 
-        if (results.isEmpty()) {
-            return null;
+    /**
+     * Reads the DVE metadata from the content of oai-ore.jsonld. In JENA mode the content goes to Jena directly. In the other modes it is parsed first; content that the
+     * streaming parser rejects is read with Jena.
+     *
+     * @param json the content of oai-ore.jsonld
+     * @return a new DveMetadata object
+     */
+    public DveMetadata readMetadata(@NonNull String json) {
+        if (mode == OaiOreReaderMode.JENA) {
+            return jenaReader.readMetadata(json);
         }
-        else if (results.size() > 1) {
-            throw new IllegalArgumentException("Expected a single value for property " + name + ", but found: " + results);
+        OaiOreDocument document;
+        try {
+            document = OaiOreDocument.parse(json);
         }
-
-        return results.iterator().next();
+        catch (IllegalStateException e) {
+            log.warn("Streaming parser rejected oai-ore.jsonld, reading it with Jena: {}", e.getMessage());
+            return jenaReader.readMetadata(json);
+        }
+        return readMetadata(document);
     }
 
-    private String getEmbeddedSingleValueProperty(Resource resource, Property parent, Property child) {
-        var results = new HashSet<String>();
-
-        resource.listProperties(parent)
-            .forEachRemaining(item -> {
-                var value = getSingleValueProperty(item.getObject().asResource(), child);
-                if (value != null) {
-                    results.add(value);
-                }
+    /**
+     * Reads the DVE metadata from a document that has already been parsed. In STREAMING mode the document is not parsed again, unless the fallback to Jena is needed.
+     *
+     * @param document the parsed oai-ore.jsonld
+     * @return a new DveMetadata object
+     */
+    public DveMetadata readMetadata(@NonNull OaiOreDocument document) {
+        return switch (mode) {
+            case JENA -> jenaReader.readMetadata(document.getJson());
+            case VERIFY -> readAndVerify(document);
+            case STREAMING -> streamingReader.readMetadata(document.getParsedDocument()).orElseGet(() -> {
+                log.debug("Falling back to Jena for reading oai-ore.jsonld");
+                return jenaReader.readMetadata(document.getJson());
             });
+        };
+    }
 
-        if (results.isEmpty()) {
-            return null;
+    private DveMetadata readAndVerify(OaiOreDocument document) {
+        var fromJena = jenaReader.readMetadata(document.getJson());
+        try {
+            var fromStreaming = streamingReader.readMetadata(document.getParsedDocument());
+            if (fromStreaming.isEmpty()) {
+                log.info("Streaming reader does not support document for {}; nothing to verify", fromJena.getNbn());
+            }
+            else if (!fromStreaming.get().equals(fromJena)) {
+                log.warn("Streaming reader result differs from Jena result. Streaming: {}, Jena: {}", fromStreaming.get(), fromJena);
+            }
         }
-        else if (results.size() > 1) {
-            throw new IllegalArgumentException("Expected a single value for property " + parent + ", but found: " + results);
+        catch (RuntimeException e) {
+            log.warn("Streaming reader failed where Jena succeeded for {}", fromJena.getNbn(), e);
         }
-
-        return results.iterator().next();
+        return fromJena;
     }
-
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core.oaiore;
+
+/**
+ * How {@link OaiOreMetadataReader} reads oai-ore.jsonld.
+ */
+public enum OaiOreReaderMode {
+    /**
+     * Use the streaming reader, falling back to Jena for documents it does not support.
+     */
+    STREAMING,
+    /**
+     * Always load the document into a Jena model.
+     */
+    JENA,
+    /**
+     * Use both readers, log any differences and return the result from Jena. Intended for checking the streaming reader against production data.
+     */
+    VERIFY
+}
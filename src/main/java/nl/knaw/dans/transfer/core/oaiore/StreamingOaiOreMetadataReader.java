@@ -0,0 +1,552 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core.oaiore;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.transfer.core.DveMetadata;
+import nl.knaw.dans.transfer.core.oaiore.vocabulary.DansDataVaultMetadata;
+import nl.knaw.dans.transfer.core.oaiore.vocabulary.DvCore;
+import nl.knaw.dans.transfer.core.oaiore.vocabulary.OaiOreMetadata;
+import nl.knaw.dans.transfer.core.oaiore.vocabulary.Schema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads the DVE metadata from oai-ore.jsonld in a single forward pass with a streaming JSON parser. Only the values that can end up in {@link DveMetadata} are kept; everything
+ * else, notably the list of aggregated files, is skipped without being materialized. Dataverse writes the <code>@context</code> after the data, so property names are kept in
+ * compact form during the pass and expanded when the whole document has been read. The result of the pass is kept by {@link OaiOreDocument}, so that each DVE is parsed only once.
+ * <p>
+ * Only the part of JSON-LD that occurs in practice is supported: one inline <code>@context</code> with prefixes and simple term definitions, and the aggregation as the value of
+ * <code>ore:describes</code> of the resource map at the top level. For any other document an empty Optional is returned, so that the caller can fall back to
+ * {@link JenaOaiOreMetadataReader}, which gives the same results for the supported documents.
+ */
+@Slf4j
+class StreamingOaiOreMetadataReader {
+    // The vocabulary NS fields are compile-time constants, so using them does not initialize Jena
+    private static final String ORE_DESCRIBES = OaiOreMetadata.NS + "describes";
+    private static final String ORE_AGGREGATION = OaiOreMetadata.NS + "Aggregation";
+    private static final String ORE_RESOURCE_MAP = OaiOreMetadata.NS + "ResourceMap";
+    private static final String DVCORE_GENERATED_BY = DvCore.NS + "generatedBy";
+    private static final String SCHEMA_NAME = Schema.NS + "name";
+    private static final String SCHEMA_VERSION = Schema.NS + "version";
+    private static final String SCHEMA_CREATIVE_WORK_STATUS = Schema.NS + "creativeWorkStatus";
+    private static final String DVCORE_REASON = DvCore.NS + "reason";
+    private static final String DCTERMS_TITLE = "http://purl.org/dc/terms/title";
+
+    private static final Map<String, BiConsumer<DveMetadata.DveMetadataBuilder, String>> AGGREGATION_PROPERTIES = new LinkedHashMap<>();
+
+    static {
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansBagId", DveMetadata.DveMetadataBuilder::bagId);
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansNbn", DveMetadata.DveMetadataBuilder::nbn);
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansSwordToken", DveMetadata.DveMetadataBuilder::swordToken);
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansDataSupplier", DveMetadata.DveMetadataBuilder::dataSupplier);
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansDataversePid", DveMetadata.DveMetadataBuilder::dataversePid);
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansDataversePidVersion", DveMetadata.DveMetadataBuilder::dataversePidVersion);
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansOtherId", DveMetadata.DveMetadataBuilder::otherId);
+        AGGREGATION_PROPERTIES.put(DansDataVaultMetadata.NS + "dansOtherIdVersion", DveMetadata.DveMetadataBuilder::otherIdVersion);
+        AGGREGATION_PROPERTIES.put(DCTERMS_TITLE, DveMetadata.DveMetadataBuilder::title);
+    }
+
+    /**
+     * Local names of all properties that are needed. Values of other properties are skipped during the pass. If after the pass it turns out that a skipped property expands to a
+     * needed IRI (e.g. a term "nbn" defined as dansNbn), the document is not supported.
+     */
+    private static final Set<String> NEEDED_LOCAL_NAMES = new HashSet<>();
+
+    static {
+        AGGREGATION_PROPERTIES.keySet().forEach(iri -> NEEDED_LOCAL_NAMES.add(localName(iri)));
+        // The work status and its reason are only looked up by compact name, see OaiOreDocument
+        for (var iri : List.of(ORE_DESCRIBES, DVCORE_GENERATED_BY, SCHEMA_NAME, SCHEMA_VERSION, SCHEMA_CREATIVE_WORK_STATUS, DVCORE_REASON)) {
+            NEEDED_LOCAL_NAMES.add(localName(iri));
+        }
+    }
+
+    // Nodes deeper than this (top level = 0) are only inspected for @value
+    private static final int MAX_NODE_DEPTH = 2;
+
+    private static final Object NON_STRING_LITERAL = new Object();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Reads the metadata.
+     *
+     * @param json the content of oai-ore.jsonld
+     * @return the metadata, or an empty Optional if the document uses JSON-LD features that this reader does not support, or is not valid JSON
+     * @throws IllegalArgumentException if a property that must be single-valued has more than one value
+     */
+    public Optional<DveMetadata> readMetadata(String json) {
+        try {
+            return readMetadata(parse(json));
+        }
+        catch (JsonProcessingException e) {
+            log.debug("Document could not be parsed by streaming reader", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads the metadata from a document that has already been parsed.
+     *
+     * @param document the parsed document
+     * @return the metadata, or an empty Optional if the document uses JSON-LD features that this reader does not support
+     * @throws IllegalArgumentException if a property that must be single-valued has more than one value
+     */
+    public Optional<DveMetadata> readMetadata(ParsedDocument document) {
+        try {
+            if (document.unsupportedReason != null) {
+                throw new UnsupportedDocumentException(document.unsupportedReason);
+            }
+            return Optional.of(toDveMetadata(document.root, document.context, document.json));
+        }
+        catch (UnsupportedDocumentException e) {
+            log.debug("Document not supported by streaming reader: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parses the document in a single pass, keeping only the values of the needed properties. Unsupported JSON-LD features do not end the pass, but are recorded in the result, so
+     * that values can still be looked up by their compact names.
+     *
+     * @param json the content of oai-ore.jsonld
+     * @return the parsed document
+     * @throws JsonProcessingException if the document is not valid JSON
+     */
+    static ParsedDocument parse(String json) throws JsonProcessingException {
+        var document = new ParsedDocument(json);
+        try (var parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                document.root = readNode(parser, 0, document);
+            }
+            else {
+                document.markUnsupported("top level is not a JSON object");
+            }
+        }
+        catch (JsonProcessingException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            // Reading from a String, so this should not happen
+            throw new IllegalStateException("Unable to read JSON-LD document", e);
+        }
+        return document;
+    }
+
+    private DveMetadata toDveMetadata(Node resourceMap, Context context, String json) throws UnsupportedDocumentException {
+        checkNoKeywordAliases(resourceMap, context);
+        var builder = DveMetadata.builder();
+
+        var describes = values(resourceMap, ORE_DESCRIBES, context);
+        if (describes.size() != 1 || !(describes.get(0) instanceof Node)) {
+            throw new UnsupportedDocumentException("expected exactly one aggregation as value of ore:describes");
+        }
+        var aggregation = (Node) describes.get(0);
+        checkNoKeywordAliases(aggregation, context);
+        if (!context.expandAll(aggregation.types).contains(ORE_AGGREGATION)) {
+            throw new UnsupportedDocumentException("the value of ore:describes is not an ore:Aggregation");
+        }
+        for (var property : AGGREGATION_PROPERTIES.entrySet()) {
+            property.getValue().accept(builder, getSingleValueProperty(aggregation, property.getKey(), context));
+        }
+        builder.metadata(json);
+
+        if (!context.expandAll(resourceMap.types).contains(ORE_RESOURCE_MAP)) {
+            throw new UnsupportedDocumentException("the top level object is not an ore:ResourceMap");
+        }
+        var generatedBy = new ArrayList<Node>();
+        for (var value : values(resourceMap, DVCORE_GENERATED_BY, context)) {
+            if (!(value instanceof Node)) {
+                throw new UnsupportedDocumentException("dvcore:generatedBy is a literal");
+            }
+            checkNoKeywordAliases((Node) value, context);
+            generatedBy.add((Node) value);
+        }
+        builder.exporter(getEmbeddedSingleValueProperty(generatedBy, DVCORE_GENERATED_BY, SCHEMA_NAME, context));
+        builder.exporterVersion(getEmbeddedSingleValueProperty(generatedBy, DVCORE_GENERATED_BY, SCHEMA_VERSION, context));
+
+        return builder.build();
+    }
+
+    private String getSingleValueProperty(Node node, String iri, Context context) throws UnsupportedDocumentException {
+        var results = new HashSet<String>();
+        for (var value : values(node, iri, context)) {
+            if (value == NON_STRING_LITERAL) {
+                // Jena would convert the lexical form of numbers and booleans
+                throw new UnsupportedDocumentException("non-string literal for " + iri);
+            }
+            if (value instanceof String) {
+                results.add((String) value);
+            }
+            else {
+                checkNoKeywordAliases((Node) value, context);
+            }
+        }
+
+        if (results.isEmpty()) {
+            return null;
+        }
+        else if (results.size() > 1) {
+            throw new IllegalArgumentException("Expected a single value for property " + iri + ", but found: " + results);
+        }
+
+        return results.iterator().next();
+    }
+
+    private String getEmbeddedSingleValueProperty(List<Node> parents, String parentIri, String childIri, Context context) throws UnsupportedDocumentException {
+        var results = new HashSet<String>();
+        for (var parent : parents) {
+            var value = getSingleValueProperty(parent, childIri, context);
+            if (value != null) {
+                results.add(value);
+            }
+        }
+
+        if (results.isEmpty()) {
+            return null;
+        }
+        else if (results.size() > 1) {
+            throw new IllegalArgumentException("Expected a single value for property " + parentIri + ", but found: " + results);
+        }
+
+        return results.iterator().next();
+    }
+
+    /**
+     * Returns the values of all keys of the node that expand to the given IRI.
+     */
+    private List<Object> values(Node node, String iri, Context context) throws UnsupportedDocumentException {
+        var result = new ArrayList<>();
+        for (var key : node.keys) {
+            if (!iri.equals(context.expand(key))) {
+                continue;
+            }
+            if (!node.values.containsKey(key)) {
+                throw new UnsupportedDocumentException("values of " + key + " were skipped, but it expands to " + iri);
+            }
+            context.checkSimpleTerm(key);
+            result.addAll(node.values.get(key));
+        }
+        return result;
+    }
+
+    private void checkNoKeywordAliases(Node node, Context context) throws UnsupportedDocumentException {
+        for (var key : node.keys) {
+            var expanded = context.expand(key);
+            if (expanded != null && expanded.startsWith("@")) {
+                throw new UnsupportedDocumentException("keyword alias " + key + " for " + expanded);
+            }
+        }
+    }
+
+    private static Node readNode(JsonParser parser, int depth, ParsedDocument document) throws IOException {
+        var node = new Node();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var key = parser.currentName();
+            var token = parser.nextToken();
+            switch (key) {
+                case "@context":
+                    if (depth != 0 || token != JsonToken.START_OBJECT) {
+                        document.markUnsupported("only a single inline @context at the top level is supported");
+                        parser.skipChildren();
+                    }
+                    else {
+                        readContext(parser, document);
+                    }
+                    break;
+                case "@type":
+                    readStrings(parser, token, node.types);
+                    break;
+                case "@value":
+                    node.hasValue = true;
+                    node.value = token == JsonToken.VALUE_STRING ? parser.getText() : NON_STRING_LITERAL;
+                    break;
+                case "@id":
+                case "@language":
+                case "@index":
+                    parser.skipChildren();
+                    break;
+                default:
+                    if (key.startsWith("@")) {
+                        document.markUnsupported("keyword " + key + " is not supported");
+                        parser.skipChildren();
+                    }
+                    else if (NEEDED_LOCAL_NAMES.contains(localName(key))) {
+                        node.keys.add(key);
+                        var values = node.values.computeIfAbsent(key, k -> new ArrayList<>());
+                        readValues(parser, token, depth, values, document);
+                    }
+                    else {
+                        node.keys.add(key);
+                        parser.skipChildren();
+                    }
+            }
+        }
+        return node;
+    }
+
+    private static void readValues(JsonParser parser, JsonToken token, int depth, List<Object> values, ParsedDocument document) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                values.add(parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                values.add(NON_STRING_LITERAL);
+                break;
+            case START_OBJECT:
+                if (depth < MAX_NODE_DEPTH) {
+                    var child = readNode(parser, depth + 1, document);
+                    values.add(child.hasValue ? child.value : child);
+                }
+                else {
+                    parser.skipChildren();
+                }
+                break;
+            case START_ARRAY:
+                JsonToken element;
+                while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (element == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                    }
+                    else {
+                        readValues(parser, element, depth, values, document);
+                    }
+                }
+                break;
+            default:
+                // null
+        }
+    }
+
+    private static void readStrings(JsonParser parser, JsonToken token, List<String> strings) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            strings.add(parser.getText());
+        }
+        else if (token == JsonToken.START_ARRAY) {
+            JsonToken element;
+            while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (element == JsonToken.VALUE_STRING) {
+                    strings.add(parser.getText());
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        else {
+            parser.skipChildren();
+        }
+    }
+
+    private static void readContext(JsonParser parser, ParsedDocument document) throws IOException {
+        var context = document.context;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var term = parser.currentName();
+            var token = parser.nextToken();
+            if (term.equals("@vocab") && token == JsonToken.VALUE_STRING) {
+                context.vocab = parser.getText();
+            }
+            else if (term.equals("@base") || term.equals("@version") || term.equals("@language")) {
+                parser.skipChildren();
+            }
+            else if (term.startsWith("@")) {
+                document.markUnsupported("context keyword " + term + " is not supported");
+                parser.skipChildren();
+            }
+            else if (token == JsonToken.VALUE_STRING) {
+                context.terms.put(term, parser.getText());
+            }
+            else if (token == JsonToken.VALUE_NULL) {
+                context.terms.put(term, null);
+            }
+            else if (token == JsonToken.START_OBJECT) {
+                readTermDefinition(parser, term, context);
+            }
+            else {
+                document.markUnsupported("unsupported definition of term " + term);
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readTermDefinition(JsonParser parser, String term, Context context) throws IOException {
+        String id = null;
+        var simple = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var key = parser.currentName();
+            var token = parser.nextToken();
+            if (key.equals("@id") && token == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            }
+            else if (key.equals("@type") && token == JsonToken.VALUE_STRING) {
+                // A datatype does not change the lexical form, but @id and @vocab turn the values into resources
+                var type = parser.getText();
+                simple = simple && !type.equals("@id") && !type.equals("@vocab");
+            }
+            else if (!key.equals("@language")) {
+                simple = false;
+                parser.skipChildren();
+            }
+        }
+        context.terms.put(term, id);
+        if (!simple) {
+            context.complexTerms.add(term);
+        }
+    }
+
+    private static String localName(String keyOrIri) {
+        var i = Math.max(keyOrIri.lastIndexOf(':'), Math.max(keyOrIri.lastIndexOf('/'), keyOrIri.lastIndexOf('#')));
+        return keyOrIri.substring(i + 1);
+    }
+
+    /**
+     * The result of the single pass over a document: the values of the needed properties, with their names in compact form, and the context to expand those names with.
+     */
+    static class ParsedDocument {
+        private final String json;
+        private final Context context = new Context();
+        private Node root = new Node();
+        private String unsupportedReason;
+
+        private ParsedDocument(String json) {
+            this.json = json;
+        }
+
+        String getJson() {
+            return json;
+        }
+
+        /**
+         * Looks up a literal by the property names as they appear in the document, without JSON-LD processing, like the JSON path
+         * <code>$['ore:describes']['dansDataVaultMetadata:dansNbn']</code> would. Only properties with a needed local name can be looked up.
+         *
+         * @param names the property names, from the top level down
+         * @return the literal, or null if there is no value at the path
+         * @throws IllegalStateException if the value at the path is not a single string
+         */
+        String getLiteral(String... names) {
+            var node = root;
+            for (var i = 0; i < names.length; i++) {
+                var values = node.values.getOrDefault(names[i], List.of());
+                if (values.isEmpty()) {
+                    return null;
+                }
+                if (values.size() > 1) {
+                    throw new IllegalStateException("Expected a single value at " + String.join("/", names) + ", but found " + values.size());
+                }
+                var value = values.get(0);
+                if (i == names.length - 1) {
+                    if (!(value instanceof String)) {
+                        throw new IllegalStateException("Expected a string value at " + String.join("/", names));
+                    }
+                    return (String) value;
+                }
+                if (!(value instanceof Node)) {
+                    return null;
+                }
+                node = (Node) value;
+            }
+            return null;
+        }
+
+        private void markUnsupported(String reason) {
+            if (unsupportedReason == null) {
+                unsupportedReason = reason;
+            }
+        }
+    }
+
+    private static class Node {
+        private final List<String> keys = new ArrayList<>();
+        private final Map<String, List<Object>> values = new HashMap<>();
+        private final List<String> types = new ArrayList<>();
+        private boolean hasValue;
+        private Object value;
+    }
+
+    private static class Context {
+        private final Map<String, String> terms = new HashMap<>();
+        private final Set<String> complexTerms = new HashSet<>();
+        private String vocab;
+
+        /**
+         * Expands a property name or type to an IRI, or returns null if it does not expand to anything (such properties are ignored by JSON-LD processors).
+         */
+        String expand(String key) {
+            if (key.startsWith("@")) {
+                return key;
+            }
+            if (terms.containsKey(key)) {
+                var iri = terms.get(key);
+                return iri == null ? null : expandPrefix(iri);
+            }
+            var expanded = expandPrefix(key);
+            if (expanded != null) {
+                return expanded;
+            }
+            return vocab == null ? null : vocab + key;
+        }
+
+        private String expandPrefix(String value) {
+            var colon = value.indexOf(':');
+            if (colon < 0) {
+                return value.startsWith("@") ? value : null;
+            }
+            var prefix = value.substring(0, colon);
+            var suffix = value.substring(colon + 1);
+            if (!suffix.startsWith("//") && terms.get(prefix) != null) {
+                return terms.get(prefix) + suffix;
+            }
+            return value; // An absolute IRI
+        }
+
+        List<String> expandAll(List<String> keys) {
+            var result = new ArrayList<String>();
+            for (var key : keys) {
+                result.add(expand(key));
+            }
+            return result;
+        }
+
+        void checkSimpleTerm(String key) throws UnsupportedDocumentException {
+            if (complexTerms.contains(key)) {
+                throw new UnsupportedDocumentException("term definition of " + key + " is not supported");
+            }
+        }
+    }
+
+    private static class UnsupportedDocumentException extends Exception {
+        UnsupportedDocumentException(String message) {
+            super(message);
+        }
+    }
+}
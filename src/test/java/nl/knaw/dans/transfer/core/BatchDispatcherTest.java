@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import nl.knaw.dans.transfer.client.DataVaultClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.timeout;
+
+public class BatchDispatcherTest extends TestDirFixture {
+
+    @Test
+    public void should_dispatch_submitted_batch_and_remove_marker() throws Exception {
+        var pendingDir = testDir.resolve("pending");
+        var batch = testDir.resolve("vault-inbox/batch-1");
+        var dataVaultClient = Mockito.mock(DataVaultClient.class);
+        var dispatcher = new BatchDispatcher(pendingDir, dataVaultClient, new FileServiceImpl(), 2, Duration.ofMillis(10), Duration.ofMillis(100), 5);
+        dispatcher.start();
+        try {
+            dispatcher.submit(batch);
+
+            Mockito.verify(dataVaultClient, timeout(5000)).sendBatchToVault(batch);
+            waitUntilNoneArePending(dispatcher);
+            assertThat(pendingDir).isEmptyDirectory();
+        }
+        finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void should_retry_failed_import_request() throws Exception {
+        var pendingDir = testDir.resolve("pending");
+        var batch = testDir.resolve("vault-inbox/batch-1");
+        var dataVaultClient = Mockito.mock(DataVaultClient.class);
+        Mockito.doThrow(new RuntimeException("Data Vault unavailable"))
+            .doThrow(new RuntimeException("Data Vault unavailable"))
+            .doNothing()
+            .when(dataVaultClient).sendBatchToVault(batch);
+        var dispatcher = new BatchDispatcher(pendingDir, dataVaultClient, new FileServiceImpl(), 2, Duration.ofMillis(10), Duration.ofMillis(100), 5);
+        dispatcher.start();
+        try {
+            dispatcher.submit(batch);
+
+            Mockito.verify(dataVaultClient, timeout(5000).times(3)).sendBatchToVault(batch);
+            waitUntilNoneArePending(dispatcher);
+            assertThat(pendingDir).isEmptyDirectory();
+        }
+        finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void should_park_rejected_batch_and_dispatch_the_next_one() throws Exception {
+        var pendingDir = testDir.resolve("pending");
+        var batch1 = testDir.resolve("vault-inbox/batch-1");
+        var batch2 = testDir.resolve("vault-inbox/batch-2");
+        var dataVaultClient = Mockito.mock(DataVaultClient.class);
+        Mockito.doThrow(new IllegalArgumentException("Data Vault rejected import")).when(dataVaultClient).sendBatchToVault(batch1);
+        var dispatcher = new BatchDispatcher(pendingDir, dataVaultClient, new FileServiceImpl(), 2, Duration.ofMillis(10), Duration.ofMillis(100), 5);
+        dispatcher.start();
+        try {
+            dispatcher.submit(batch1);
+            dispatcher.submit(batch2);
+
+            Mockito.verify(dataVaultClient, timeout(5000)).sendBatchToVault(batch2);
+            waitUntilNoneArePending(dispatcher);
+            Mockito.verify(dataVaultClient, Mockito.times(1)).sendBatchToVault(batch1);
+            try (var markers = Files.list(pendingDir)) {
+                assertThat(markers).containsExactly(pendingDir.resolve("batch-1" + BatchDispatcher.FAILED_SUFFIX));
+            }
+        }
+        finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void should_park_batch_after_max_attempts() throws Exception {
+        var pendingDir = testDir.resolve("pending");
+        var batch = testDir.resolve("vault-inbox/batch-1");
+        var dataVaultClient = Mockito.mock(DataVaultClient.class);
+        Mockito.doThrow(new RuntimeException("Data Vault unavailable")).when(dataVaultClient).sendBatchToVault(batch);
+        var dispatcher = new BatchDispatcher(pendingDir, dataVaultClient, new FileServiceImpl(), 2, Duration.ofMillis(10), Duration.ofMillis(10), 3);
+        dispatcher.start();
+        try {
+            dispatcher.submit(batch);
+
+            Mockito.verify(dataVaultClient, timeout(5000).times(3)).sendBatchToVault(batch);
+            waitUntilNoneArePending(dispatcher);
+            assertThat(pendingDir.resolve("batch-1" + BatchDispatcher.FAILED_SUFFIX)).exists();
+            assertThat(pendingDir.resolve("batch-1" + BatchDispatcher.MARKER_SUFFIX)).doesNotExist();
+        }
+        finally {
+            dispatcher.stop();
+        }
+
+        // A parked batch is not dispatched again at startup
+        var restarted = new BatchDispatcher(pendingDir, dataVaultClient, new FileServiceImpl(), 2, Duration.ofMillis(10), Duration.ofMillis(10), 3);
+        restarted.start();
+        try {
+            assertThat(restarted.getPendingCount()).isZero();
+            Mockito.verify(dataVaultClient, Mockito.times(3)).sendBatchToVault(batch);
+        }
+        finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    public void should_dispatch_pending_batches_in_order_at_start() throws Exception {
+        var pendingDir = testDir.resolve("pending");
+        var batch1 = testDir.resolve("vault-inbox/batch-1");
+        var batch2 = testDir.resolve("vault-inbox/batch-2");
+        Files.createDirectories(pendingDir);
+        Files.writeString(pendingDir.resolve("batch-2" + BatchDispatcher.MARKER_SUFFIX), batch2.toAbsolutePath().toString());
+        Files.writeString(pendingDir.resolve("batch-1" + BatchDispatcher.MARKER_SUFFIX), batch1.toAbsolutePath().toString());
+        var dataVaultClient = Mockito.mock(DataVaultClient.class);
+        var dispatcher = new BatchDispatcher(pendingDir, dataVaultClient, new FileServiceImpl(), 2, Duration.ofMillis(10), Duration.ofMillis(100), 5);
+
+        dispatcher.start();
+        try {
+            Mockito.verify(dataVaultClient, timeout(5000).times(2)).sendBatchToVault(Mockito.any());
+            InOrder inOrder = Mockito.inOrder(dataVaultClient);
+            inOrder.verify(dataVaultClient).sendBatchToVault(batch1.toAbsolutePath());
+            inOrder.verify(dataVaultClient).sendBatchToVault(batch2.toAbsolutePath());
+            waitUntilNoneArePending(dispatcher);
+            assertThat(pendingDir).isEmptyDirectory();
+        }
+        finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void start_should_not_wait_for_room_in_queue_when_more_batches_are_pending_than_fit() throws Exception {
+        var pendingDir = testDir.resolve("pending");
+        Files.createDirectories(pendingDir);
+        var batches = new ArrayList<Path>();
+        for (int i = 1; i <= 4; i++) {
+            var batch = testDir.resolve("vault-inbox/batch-" + i).toAbsolutePath();
+            Files.writeString(pendingDir.resolve("batch-" + i + BatchDispatcher.MARKER_SUFFIX), batch.toString());
+            batches.add(batch);
+        }
+        var dataVaultClient = Mockito.mock(DataVaultClient.class);
+        var dataVaultAvailable = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            dataVaultAvailable.await();
+            return null;
+        }).when(dataVaultClient).sendBatchToVault(Mockito.any());
+        var dispatcher = new BatchDispatcher(pendingDir, dataVaultClient, new FileServiceImpl(), 1, Duration.ofMillis(10), Duration.ofMillis(100), 5);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), dispatcher::start);
+        try {
+            assertThat(dispatcher.getPendingCount()).isEqualTo(4);
+            // A batch sealed after startup waits for the pending batches that did not fit in the queue
+            var batch5 = testDir.resolve("vault-inbox/batch-5").toAbsolutePath();
+            batches.add(batch5);
+            var submitter = new Thread(() -> {
+                try {
+                    dispatcher.submit(batch5);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            submitter.start();
+            dataVaultAvailable.countDown();
+            submitter.join(5000);
+
+            Mockito.verify(dataVaultClient, timeout(5000).times(5)).sendBatchToVault(Mockito.any());
+            InOrder inOrder = Mockito.inOrder(dataVaultClient);
+            for (var batch : batches) {
+                inOrder.verify(dataVaultClient).sendBatchToVault(batch);
+            }
+            waitUntilNoneArePending(dispatcher);
+            assertThat(pendingDir).isEmptyDirectory();
+        }
+        finally {
+            dataVaultAvailable.countDown();
+            dispatcher.stop();
+        }
+    }
+
+    private void waitUntilNoneArePending(BatchDispatcher dispatcher) throws InterruptedException {
+        for (int i = 0; i < 500 && dispatcher.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(dispatcher.getPendingCount()).isZero();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchJournalTest extends TestDirFixture {
+
+    @Test
+    public void should_recover_totals_and_dves_from_journal() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir);
+        var first = new BatchJournal(workDir, new FileServiceImpl());
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        first.completeExtraction("dve1.zip", "nbn1", 1, 1000, 10);
+        first.startExtraction("dve2.zip", "nbn2", 3);
+        first.completeExtraction("dve2.zip", "nbn2", 3, 500, 5);
+
+        // Files in the work directory are not counted again, because the journal is present
+        Files.writeString(workDir.resolve("file.txt"), "12345");
+        var second = new BatchJournal(workDir, new FileServiceImpl());
+
+        assertThat(second.getBytes()).isEqualTo(1500);
+        assertThat(second.getFiles()).isEqualTo(15);
+        assertThat(second.getDves()).containsExactly("dve1.zip", "dve2.zip");
+        assertThat(second.getStartTime()).isEqualTo(first.getStartTime()).isPositive();
+        assertThat(second.getSealedBatch()).isEmpty();
+    }
+
+    @Test
+    public void should_remove_incomplete_version_on_recovery() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir.resolve("nbn1/v1"));
+        Files.writeString(workDir.resolve("nbn1/v1/complete.txt"), "complete");
+        Files.writeString(workDir.resolve("nbn1/v1.json"), "{}");
+        Files.createDirectories(workDir.resolve("nbn1/v2"));
+        Files.writeString(workDir.resolve("nbn1/v2/partial.txt"), "partial");
+        Files.createDirectories(workDir.resolve("nbn2/v1"));
+        Files.writeString(workDir.resolve("nbn2/v1/partial.txt"), "partial");
+        var first = new BatchJournal(workDir, new FileServiceImpl());
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        first.completeExtraction("dve1.zip", "nbn1", 1, 8, 1);
+        first.startExtraction("dve2.zip", "nbn1", 2);
+        first.startExtraction("dve3.zip", "nbn2", 1);
+
+        var second = new BatchJournal(workDir, new FileServiceImpl());
+
+        assertThat(second.getDves()).containsExactly("dve1.zip");
+        assertThat(workDir.resolve("nbn1/v1/complete.txt")).exists();
+        assertThat(workDir.resolve("nbn1/v2")).doesNotExist();
+        assertThat(workDir.resolve("nbn2")).doesNotExist();
+    }
+
+    @Test
+    public void should_ignore_cut_off_last_entry() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir);
+        var first = new BatchJournal(workDir, new FileServiceImpl());
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        first.completeExtraction("dve1.zip", "nbn1", 1, 1000, 10);
+        Files.writeString(testDir.resolve("current-batch.journal"), "{\"type\":\"EXTRA", StandardOpenOption.APPEND);
+
+        var second = new BatchJournal(workDir, new FileServiceImpl());
+
+        assertThat(second.getBytes()).isEqualTo(1000);
+        assertThat(second.getDves()).containsExactly("dve1.zip");
+    }
+
+    @Test
+    public void should_write_read_and_fsync_journal_through_file_service() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir);
+        var journalFile = testDir.resolve("current-batch.journal");
+        var fileService = Mockito.spy(new FileServiceImpl());
+        var first = new BatchJournal(workDir, fileService);
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        Files.writeString(journalFile, "{\"type\":\"EXTRA", StandardOpenOption.APPEND);
+
+        Mockito.verify(fileService).newFileChannel(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Mockito.verify(fileService).fsyncFile(journalFile);
+        Mockito.verify(fileService).fsyncDirectory(testDir);
+
+        var second = new BatchJournal(workDir, fileService);
+        assertThat(second.getBytes()).isZero();
+
+        Mockito.verify(fileService).newInputStream(journalFile);
+        Mockito.verify(fileService).newFileChannel(journalFile, StandardOpenOption.WRITE);
+        // Once for the first entry, once for removing the cut-off entry and once for the entry that aborts the incomplete extraction
+        Mockito.verify(fileService, Mockito.times(3)).fsyncFile(journalFile);
+        Mockito.verify(fileService).deleteDirectory(workDir.resolve("nbn1/v1"));
+        Mockito.verify(fileService).exists(workDir.resolve("nbn1/v1.json"));
+    }
+
+    @Test
+    public void should_remember_completed_extractions_until_queued() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir);
+        var first = new BatchJournal(workDir, new FileServiceImpl());
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        first.completeExtraction("dve1.zip", "nbn1", 1, 1000, 10);
+
+        var second = new BatchJournal(workDir, new FileServiceImpl());
+        assertThat(second.isExtracted("dve1.zip", "nbn1", 1)).isTrue();
+        assertThat(second.isExtracted("dve1.zip", "nbn1", 2)).isFalse();
+        assertThat(second.isExtracted("other.zip", "nbn1", 1)).isFalse();
+
+        second.seal("batch-1");
+        second.markQueued("batch-1");
+        assertThat(second.isExtracted("dve1.zip", "nbn1", 1)).isFalse();
+    }
+
+    @Test
+    public void should_subtract_totals_when_completed_extraction_is_aborted() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir);
+        var first = new BatchJournal(workDir, new FileServiceImpl());
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        first.completeExtraction("dve1.zip", "nbn1", 1, 1000, 10);
+        first.startExtraction("dve2.zip", "nbn2", 1);
+        first.completeExtraction("dve2.zip", "nbn2", 1, 500, 5);
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        first.abortExtraction("dve1.zip", "nbn1", 1);
+
+        assertThat(first.getBytes()).isEqualTo(500);
+        assertThat(first.getFiles()).isEqualTo(5);
+        assertThat(first.getDves()).containsExactly("dve2.zip");
+        assertThat(first.isExtracted("dve1.zip", "nbn1", 1)).isFalse();
+
+        var second = new BatchJournal(workDir, new FileServiceImpl());
+        assertThat(second.getBytes()).isEqualTo(500);
+        assertThat(second.getDves()).containsExactly("dve2.zip");
+    }
+
+    @Test
+    public void should_remember_sealed_batch_until_sent() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir);
+        var first = new BatchJournal(workDir, new FileServiceImpl());
+        first.startExtraction("dve1.zip", "nbn1", 1);
+        first.completeExtraction("dve1.zip", "nbn1", 1, 1000, 10);
+        first.seal("batch-1");
+
+        var second = new BatchJournal(workDir, new FileServiceImpl());
+        assertThat(second.getSealedBatch()).contains("batch-1");
+        second.markQueued("batch-1");
+        assertThat(second.getBytes()).isZero();
+        assertThat(second.getDves()).isEmpty();
+        assertThat(testDir.resolve("current-batch.journal")).isEmptyFile();
+
+        var third = new BatchJournal(workDir, new FileServiceImpl());
+        assertThat(third.getSealedBatch()).isEmpty();
+        assertThat(third.getStartTime()).isZero();
+    }
+
+    @Test
+    public void should_rebuild_from_work_directory_when_there_is_no_journal() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir.resolve("nbn1/v1"));
+        Files.writeString(workDir.resolve("nbn1/v1/file1.txt"), "12345");
+        Files.writeString(workDir.resolve("nbn1/v1.json"), "123");
+
+        var journal = new BatchJournal(workDir, new FileServiceImpl());
+
+        assertThat(journal.getBytes()).isEqualTo(8);
+        assertThat(journal.getFiles()).isEqualTo(2);
+        assertThat(new BatchJournal(workDir, new FileServiceImpl()).getBytes()).isEqualTo(8);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+
+public class BatchSealTimerTest {
+
+    @Test
+    public void should_evaluate_policy_periodically() throws Exception {
+        var policy = Mockito.mock(BatchSealPolicy.class);
+        var sealer = Mockito.mock(BatchSealer.class);
+        var journal = Mockito.mock(BatchJournal.class);
+        Mockito.when(policy.evaluate(journal)).thenReturn(Optional.of(BatchSealReason.AGE));
+        var timer = new BatchSealTimer(sealer, journal, policy, Duration.ofMillis(10));
+
+        timer.start();
+        try {
+            Mockito.verify(sealer, timeout(5000).atLeast(2)).sealIfDue(policy);
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void should_keep_running_after_failed_evaluation() throws Exception {
+        var policy = Mockito.mock(BatchSealPolicy.class);
+        var sealer = Mockito.mock(BatchSealer.class);
+        var journal = Mockito.mock(BatchJournal.class);
+        Mockito.when(policy.evaluate(journal)).thenReturn(Optional.of(BatchSealReason.AGE));
+        Mockito.when(sealer.sealIfDue(policy)).thenThrow(new IOException("Journal unreadable"));
+        var timer = new BatchSealTimer(sealer, journal, policy, Duration.ofMillis(10));
+
+        timer.start();
+        try {
+            Mockito.verify(sealer, timeout(5000).atLeast(2)).sealIfDue(policy);
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void should_not_take_the_lock_while_no_limit_is_reached() throws Exception {
+        var policy = Mockito.mock(BatchSealPolicy.class);
+        var sealer = Mockito.mock(BatchSealer.class);
+        var journal = Mockito.mock(BatchJournal.class);
+        Mockito.when(policy.evaluate(journal)).thenReturn(Optional.empty());
+        var timer = new BatchSealTimer(sealer, journal, policy, Duration.ofMillis(10));
+
+        timer.start();
+        try {
+            Mockito.verify(policy, timeout(5000).atLeast(2)).evaluate(journal);
+            Mockito.verify(sealer, never()).sealIfDue(any());
+        }
+        finally {
+            timer.stop();
+        }
+    }
+}
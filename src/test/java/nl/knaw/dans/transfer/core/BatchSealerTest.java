@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchSealerTest extends TestDirFixture {
+
+    @Test
+    public void should_move_batch_recreate_work_dir_and_submit() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        var batchRoot = testDir.resolve("vault-inbox");
+        Files.createDirectories(workDir.resolve("nbn1/v1"));
+        Files.createDirectories(batchRoot);
+        var fileService = new FileServiceImpl();
+        var journal = new BatchJournal(workDir, fileService);
+        var dispatcher = Mockito.mock(BatchDispatcher.class);
+        var metricRegistry = new MetricRegistry();
+        var sealer = new BatchSealer(workDir, batchRoot, journal, dispatcher, fileService, metricRegistry, new CurrentBatchLock(1));
+
+        sealer.sealCurrentBatch(BatchSealReason.AGE);
+
+        assertThat(workDir).isEmptyDirectory();
+        try (var batches = Files.list(batchRoot)) {
+            var batch = batches.findFirst().orElseThrow();
+            assertThat(batch.resolve("nbn1/v1")).isDirectory();
+            Mockito.verify(dispatcher).submit(batch);
+        }
+        assertThat(journal.getSealedBatch()).isEmpty();
+        assertThat(metricRegistry.counter("nl.knaw.dans.transfer.core.BatchSealer.sealed.age").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_resume_sealed_batch_that_was_already_moved() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        var batchRoot = testDir.resolve("vault-inbox");
+        Files.createDirectories(batchRoot.resolve("batch-1/nbn1/v1"));
+        var fileService = new FileServiceImpl();
+        var journal = new BatchJournal(workDir, fileService);
+        journal.seal("batch-1");
+        var dispatcher = Mockito.mock(BatchDispatcher.class);
+        var sealer = new BatchSealer(workDir, batchRoot, new BatchJournal(workDir, fileService), dispatcher, fileService, new MetricRegistry(), new CurrentBatchLock(1));
+
+        assertThat(sealer.resumeSealedBatch()).isTrue();
+
+        assertThat(workDir).isEmptyDirectory();
+        Mockito.verify(dispatcher).submit(batchRoot.resolve("batch-1"));
+        assertThat(sealer.resumeSealedBatch()).isFalse();
+    }
+
+    @Test
+    public void should_keep_sealed_batch_when_recording_dispatch_fails() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        var batchRoot = testDir.resolve("vault-inbox");
+        Files.createDirectories(workDir.resolve("nbn1/v1"));
+        Files.createDirectories(batchRoot);
+        var fileService = new FileServiceImpl();
+        var journal = new BatchJournal(workDir, fileService);
+        var dispatcher = Mockito.mock(BatchDispatcher.class);
+        Mockito.doThrow(new IOException("Disk full")).when(dispatcher).markPending(Mockito.any());
+        var sealer = new BatchSealer(workDir, batchRoot, journal, dispatcher, fileService, new MetricRegistry(), new CurrentBatchLock(1));
+
+        assertThatThrownBy(() -> sealer.sealCurrentBatch(BatchSealReason.BYTES)).hasMessage("Disk full");
+        var sealedBatch = journal.getSealedBatch().orElseThrow();
+
+        // Retrying submits the same batch
+        Mockito.reset(dispatcher);
+        sealer.sealCurrentBatch(BatchSealReason.BYTES);
+        Mockito.verify(dispatcher).markPending(batchRoot.resolve(sealedBatch));
+        Mockito.verify(dispatcher).submit(batchRoot.resolve(sealedBatch));
+        try (var batches = Files.list(batchRoot)) {
+            assertThat(batches).containsExactly(batchRoot.resolve(sealedBatch));
+        }
+    }
+
+    @Test
+    public void should_not_seal_empty_batch() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        var batchRoot = testDir.resolve("vault-inbox");
+        Files.createDirectories(workDir);
+        Files.createDirectories(batchRoot);
+        var fileService = new FileServiceImpl();
+        var journal = new BatchJournal(workDir, fileService);
+        var dispatcher = Mockito.mock(BatchDispatcher.class);
+        var sealer = new BatchSealer(workDir, batchRoot, journal, dispatcher, fileService, new MetricRegistry(), new CurrentBatchLock(1));
+
+        sealer.sealCurrentBatch(BatchSealReason.FLUSH);
+
+        Mockito.verifyNoInteractions(dispatcher);
+        assertThat(batchRoot).isEmptyDirectory();
+        assertThat(journal.getSealedBatch()).isEmpty();
+    }
+
+    @Test
+    public void should_seal_only_once_when_due() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        var batchRoot = testDir.resolve("vault-inbox");
+        Files.createDirectories(workDir.resolve("nbn1/v1"));
+        Files.createDirectories(batchRoot);
+        var fileService = new FileServiceImpl();
+        var journal = new BatchJournal(workDir, fileService);
+        journal.startExtraction("dve1.zip", "nbn1", 1);
+        journal.completeExtraction("dve1.zip", "nbn1", 1, 10, 1);
+        var dispatcher = Mockito.mock(BatchDispatcher.class);
+        var sealer = new BatchSealer(workDir, batchRoot, journal, dispatcher, fileService, new MetricRegistry(), new CurrentBatchLock(1));
+        var policy = new LimitsBatchSealPolicy(null, null, 1, null);
+
+        assertThat(sealer.sealIfDue(policy)).contains(BatchSealReason.DVES);
+        // The journal was started afresh, so the policy is not reached anymore
+        assertThat(sealer.sealIfDue(policy)).isEmpty();
+
+        Mockito.verify(dispatcher, Mockito.times(1)).submit(Mockito.any());
+    }
+
+    @Test
+    public void should_submit_batch_after_releasing_the_lock() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        var batchRoot = testDir.resolve("vault-inbox");
+        Files.createDirectories(workDir.resolve("nbn1/v1"));
+        Files.createDirectories(batchRoot);
+        var fileService = new FileServiceImpl();
+        var journal = new BatchJournal(workDir, fileService);
+        var lock = new CurrentBatchLock(1);
+        var dispatcher = Mockito.mock(BatchDispatcher.class);
+        // A worker must be able to add to the next batch while the dispatch queue is full
+        Mockito.doAnswer(invocation -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return lock.addingTo("nbn2", () -> journal.getSealedBatch().isEmpty());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).get(5, TimeUnit.SECONDS)).when(dispatcher).submit(Mockito.any());
+        var sealer = new BatchSealer(workDir, batchRoot, journal, dispatcher, fileService, new MetricRegistry(), lock);
+
+        sealer.sealCurrentBatch(BatchSealReason.AGE);
+
+        var inOrder = Mockito.inOrder(dispatcher);
+        inOrder.verify(dispatcher).markPending(Mockito.any());
+        inOrder.verify(dispatcher).submit(Mockito.any());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CurrentBatchLockTest {
+
+    @Test
+    public void should_let_workers_add_to_different_objects_at_the_same_time() throws Exception {
+        var lock = new CurrentBatchLock(16);
+        var bothInside = new CountDownLatch(2);
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            // Each addition only completes when the other one has started as well
+            var first = executor.submit(() -> lock.addingTo("nbn1", () -> {
+                bothInside.countDown();
+                return await(bothInside);
+            }));
+            var second = executor.submit(() -> lock.addingTo("nbn2", () -> {
+                bothInside.countDown();
+                return await(bothInside);
+            }));
+
+            assertThat(first.get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(second.get(10, TimeUnit.SECONDS)).isTrue();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_seal_only_after_additions_in_progress_have_completed() throws Exception {
+        var lock = new CurrentBatchLock(16);
+        var adding = new CountDownLatch(1);
+        var mayComplete = new CountDownLatch(1);
+        var completed = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var addition = executor.submit(() -> lock.addingTo("nbn1", () -> {
+                adding.countDown();
+                await(mayComplete);
+                return completed.incrementAndGet();
+            }));
+            await(adding);
+            var seal = executor.submit(() -> lock.sealing(completed::get));
+            Thread.sleep(100);
+            assertThat(seal).isNotDone();
+
+            mayComplete.countDown();
+
+            assertThat(addition.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(seal.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
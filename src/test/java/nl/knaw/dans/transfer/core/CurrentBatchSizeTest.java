@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CurrentBatchSizeTest extends TestDirFixture {
+
+    @Test
+    public void measure_should_add_up_files_in_work_directory() throws Exception {
+        var workDir = testDir.resolve("current-batch");
+        Files.createDirectories(workDir.resolve("nbn1/v1"));
+        Files.writeString(workDir.resolve("nbn1/v1/file1.txt"), "12345");
+        Files.writeString(workDir.resolve("nbn1/v1.json"), "123");
+
+        var currentBatchSize = CurrentBatchSize.measure(workDir, new FileServiceImpl());
+
+        assertThat(currentBatchSize.getBytes()).isEqualTo(8);
+        assertThat(currentBatchSize.getFiles()).isEqualTo(2);
+    }
+
+    @Test
+    public void measure_should_return_zero_when_work_directory_does_not_exist() throws Exception {
+        var currentBatchSize = CurrentBatchSize.measure(testDir.resolve("current-batch"), new FileServiceImpl());
+
+        assertThat(currentBatchSize.getBytes()).isZero();
+        assertThat(currentBatchSize.getFiles()).isZero();
+    }
+
+    @Test
+    public void should_keep_running_total() {
+        var currentBatchSize = new CurrentBatchSize();
+        currentBatchSize.add(1000, 10);
+        currentBatchSize.add(500, 5);
+        currentBatchSize.subtract(1000, 10);
+
+        assertThat(currentBatchSize.getBytes()).isEqualTo(500);
+        assertThat(currentBatchSize.getFiles()).isEqualTo(5);
+
+        currentBatchSize.reset();
+        assertThat(currentBatchSize.getBytes()).isZero();
+        assertThat(currentBatchSize.getFiles()).isZero();
+    }
+}
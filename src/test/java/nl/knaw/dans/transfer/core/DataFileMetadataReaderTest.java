@@ -114,4 +114,39 @@ public class DataFileMetadataReaderTest extends TestDirFixture  {
         assertThat(result.get(0).getSize()).isEqualTo(17L);
         assertThat(result.get(0).getFilepath().toString()).isEqualTo("data/file1.txt");
     }
+
+    @Test
+    void readDataFileAttributes_should_use_last_pid_of_path_listed_twice_in_pid_mapping() throws IOException {
+        // Arrange
+        var reader = new DataFileMetadataReader(new FileServiceImpl());
+        var dveZip = testDir.resolve("dve_duplicate_pid.zip");
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(dveZip))) {
+            zos.putNextEntry(new ZipEntry("base/metadata/pid-mapping.txt"));
+            zos.write(("doi:10.5072/FK2/OLD data/file1.txt\n"
+                + "doi:10.5072/FK2/FILE2 data/file2.txt\n"
+                + "doi:10.5072/FK2/NEW data/file1.txt\n").getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+
+            zos.putNextEntry(new ZipEntry("base/manifest-sha1.txt"));
+            zos.write("sha1-file1 data/file1.txt\nsha1-file2 data/file2.txt\n".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+
+            zos.putNextEntry(new ZipEntry("base/data/file1.txt"));
+            zos.write("content of file 1".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+
+            zos.putNextEntry(new ZipEntry("base/data/file2.txt"));
+            zos.write("file 2".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        // Act
+        List<DataFileMetadata> result = reader.readDataFileAttributes(dveZip);
+
+        // Assert
+        assertThat(result).containsExactly(
+            new DataFileMetadata("data/file1.txt", URI.create("doi:10.5072/FK2/NEW"), "sha1-file1", 17L),
+            new DataFileMetadata("data/file2.txt", URI.create("doi:10.5072/FK2/FILE2"), "sha1-file2", 6L));
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataFileTableTest {
+    private static final String SHA1 = "ce336eefc302ac8f5a447a67ea4d894e9960a589";
+
+    @Test
+    public void should_restore_all_values_sorted_by_path() {
+        var files = List.of(
+            new DataFileMetadata("data/b.txt", URI.create("https://ds.example.org/file.xhtml?fileId=42"), SHA1, 10L),
+            new DataFileMetadata("data/a.txt", URI.create("urn:uuid:6f080531-b7f0-4bd8-8c37-448ae8bdbe1f"), "not-a-sha1", -1L),
+            new DataFileMetadata("data/c.txt", URI.create("https://doi.org/10.5072/FK2/ABC/007"), SHA1.toUpperCase(), 0L));
+
+        var table = DataFileTable.of(files);
+
+        assertThat(table).containsExactly(files.get(1), files.get(0), files.get(2));
+        assertThat(table.get(1)).isEqualTo(files.get(0));
+        assertThat(table.getSha1Checksum(1)).isEqualTo(SHA1);
+        assertThat(table.stream().map(DataFileMetadata::getFilepath)).containsExactly("data/a.txt", "data/b.txt", "data/c.txt");
+    }
+
+    @Test
+    public void should_decode_front_coded_paths_across_blocks() {
+        var files = new ArrayList<DataFileMetadata>();
+        for (var i = 0; i < 100; i++) {
+            files.add(new DataFileMetadata("data/dir-%02d/file-%03d.txt".formatted(i / 7, i), URI.create("https://ds.example.org/file.xhtml?fileId=" + i), SHA1, i));
+        }
+
+        var table = DataFileTable.of(files);
+
+        assertThat(table).containsExactlyElementsOf(files);
+        for (var i = 0; i < files.size(); i++) {
+            assertThat(table.get(i)).isEqualTo(files.get(i));
+        }
+    }
+
+    @Test
+    public void builder_should_sort_files_added_in_any_order() {
+        var table = DataFileTable.builder()
+            .add("data/z.txt", "https://ds.example.org/file.xhtml?fileId=2", SHA1, 2L)
+            .add("data/a.txt", null, SHA1, -1L)
+            .add("data/m.txt", "urn:uuid:6f080531-b7f0-4bd8-8c37-448ae8bdbe1f", SHA1, 1L)
+            .build();
+
+        assertThat(table).containsExactly(
+            new DataFileMetadata("data/a.txt", null, SHA1, -1L),
+            new DataFileMetadata("data/m.txt", URI.create("urn:uuid:6f080531-b7f0-4bd8-8c37-448ae8bdbe1f"), SHA1, 1L),
+            new DataFileMetadata("data/z.txt", URI.create("https://ds.example.org/file.xhtml?fileId=2"), SHA1, 2L));
+    }
+
+    @Test
+    public void buildKeepingLastPerPath_should_keep_file_added_last_for_each_path() {
+        var table = DataFileTable.builder()
+            .add("data/b.txt", "https://ds.example.org/file.xhtml?fileId=1", SHA1, 1L)
+            .add("data/a.txt", null, SHA1, -1L)
+            .add("data/b.txt", "https://ds.example.org/file.xhtml?fileId=2", SHA1, 1L)
+            .add("data/c.txt", "https://ds.example.org/file.xhtml?fileId=3", SHA1, 3L)
+            .add("data/b.txt", "https://ds.example.org/file.xhtml?fileId=4", SHA1, 1L)
+            .buildKeepingLastPerPath();
+
+        assertThat(table).containsExactly(
+            new DataFileMetadata("data/a.txt", null, SHA1, -1L),
+            new DataFileMetadata("data/b.txt", URI.create("https://ds.example.org/file.xhtml?fileId=4"), SHA1, 1L),
+            new DataFileMetadata("data/c.txt", URI.create("https://ds.example.org/file.xhtml?fileId=3"), SHA1, 3L));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DveIndexTest extends TestDirFixture {
+    private static final Path DVE = Path.of("src/test/resources/test-dves/valid/doi-10-5072-dar-os2nwkv1.0.zip");
+
+    @Test
+    public void should_read_tag_files_relative_to_base_folder() throws Exception {
+        try (var index = new DveIndex(DVE, new FileServiceImpl())) {
+            assertThat(index.readTagFile(DveIndex.OAI_ORE_JSONLD)).hasValueSatisfying(content -> assertThat(content).contains("dansNbn"));
+            assertThat(index.readTagFile(DveIndex.FETCH_TXT)).isEmpty();
+            assertThat(index.findEntry("data/Archeology-site-cal-poly-humboldt.jpg")).hasValueSatisfying(entry -> assertThat(entry.getSize()).isEqualTo(1240972L));
+        }
+    }
+
+    @Test
+    public void should_read_bag_info_with_continuation_lines() throws Exception {
+        try (var index = new DveIndex(DVE, new FileServiceImpl())) {
+            assertThat(index.getBagInfoFirstValue("Contact-Email")).contains("user001@dans.knaw.nl");
+            assertThat(index.getBagInfoFirstValue("Organization-Address")).contains("DANS, Anna van Saksenlaan 51, 2593 HW Den Haag, The Netherlands");
+            assertThat(index.getBagInfoFirstValue("No-Such-Key")).isEmpty();
+        }
+    }
+
+    @Test
+    public void should_read_manifest_sha1() throws Exception {
+        try (var index = new DveIndex(DVE, new FileServiceImpl())) {
+            assertThat(index.getManifestSha1()).containsEntry("data/Archeology-site-cal-poly-humboldt.jpg", "ce336eefc302ac8f5a447a67ea4d894e9960a589");
+            assertThat(index.getFetchEntries()).isEmpty();
+        }
+    }
+
+    @Test
+    public void should_parse_oai_ore_only_once() throws Exception {
+        try (var index = new DveIndex(DVE, new FileServiceImpl())) {
+            var oaiOre = index.getOaiOre();
+            assertThat(oaiOre).hasValueSatisfying(document -> {
+                assertThat(document.getNbn()).isEqualTo("urn:nbn:nl:ui:13-79dad5ff-458b-49c4-abf2-fcbc9867abb5");
+                assertThat(document.getDeaccessionedReason()).isEmpty();
+            });
+            assertThat(index.getOaiOre().get()).isSameAs(oaiOre.get());
+        }
+    }
+
+    @Test
+    public void should_open_zip_file_only_once() throws Exception {
+        var fileService = spy(new FileServiceImpl());
+        try (var index = new DveIndex(DVE, fileService)) {
+            index.readTagFile(DveIndex.OAI_ORE_JSONLD);
+            index.readTagFile(DveIndex.OAI_ORE_JSONLD);
+            index.getBagInfo();
+            index.getManifestSha1();
+        }
+        verify(fileService, times(1)).openZipFile(DVE);
+    }
+
+    @Test
+    public void should_reject_duplicate_entries() throws Exception {
+        var dve = testDir.resolve("dve.zip");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(dve))) {
+            for (var base : new String[] { "base1", "base2" }) {
+                zos.putNextEntry(new ZipEntry(base + "/bag-info.txt"));
+                zos.write("Contact-Name: someone\n".getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+
+        try (var index = new DveIndex(dve, new FileServiceImpl())) {
+            assertThatThrownBy(() -> index.readTagFile(DveIndex.BAG_INFO_TXT))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Multiple entries found for path: bag-info.txt");
+        }
+    }
+
+    @Test
+    public void should_fail_when_there_is_no_top_level_directory() throws Exception {
+        var dve = testDir.resolve("dve.zip");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(dve))) {
+            zos.putNextEntry(new ZipEntry("bag-info.txt"));
+            zos.closeEntry();
+        }
+
+        assertThatThrownBy(() -> new DveIndex(dve, new FileServiceImpl()))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("No top-level directory found in DVE");
+    }
+
+    @Test
+    public void should_fail_when_file_is_not_a_zip_file() throws Exception {
+        var dve = testDir.resolve("dve.zip");
+        Files.writeString(dve, "not a zip file");
+
+        assertThatThrownBy(() -> new DveIndex(dve, new FileServiceImpl()))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Probably not a ZIP file: " + dve);
+    }
+}
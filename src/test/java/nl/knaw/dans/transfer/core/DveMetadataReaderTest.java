@@ -15,24 +15,22 @@
  */
 package nl.knaw.dans.transfer.core;
 
+import nl.knaw.dans.transfer.core.oaiore.OaiOreDocument;
 import nl.knaw.dans.transfer.core.oaiore.OaiOreMetadataReader;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.List;
-import java.util.zip.ZipFile;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -48,12 +46,12 @@ public class DveMetadataReaderTest {
         var reader = new DveMetadataReader(fileService, oaiReader, dataFileReaderSpy);
 
         var path = Path.of("dataset_1735689600000_v2-1.zip"); // 2025-01-01T00:00:00Z
-        var zip = mock(ZipFile.class);
-        when(fileService.openZipFile(path)).thenReturn(zip);
+        var dveIndex = mock(DveIndex.class);
+        when(dveIndex.getDve()).thenReturn(path);
 
         var oaiOreJson = "{ }";
-        when(fileService.getEntryUnderBaseFolder(zip, Path.of("metadata/oai-ore.jsonld")))
-            .thenReturn(new ByteArrayInputStream(oaiOreJson.getBytes(StandardCharsets.UTF_8)));
+        var oaiOre = OaiOreDocument.parse(oaiOreJson);
+        when(dveIndex.getOaiOre()).thenReturn(Optional.of(oaiOre));
 
         var baseMetadata = DveMetadata.builder()
             .dataversePid("doi:10.5072/FK2/ABC")
@@ -69,7 +67,7 @@ public class DveMetadataReaderTest {
             .exporter("exporter")
             .exporterVersion("1.0")
             .build();
-        when(oaiReader.readMetadata(anyString())).thenReturn(baseMetadata);
+        when(oaiReader.readMetadata(oaiOre)).thenReturn(baseMetadata);
 
         var dfList = List.of(new DataFileMetadata(
             "data/file1.txt",
@@ -77,10 +75,10 @@ public class DveMetadataReaderTest {
             "abc123",
             123L
         ));
-        Mockito.doReturn(dfList).when(dataFileReaderSpy).readDataFileAttributes(path);
+        Mockito.doReturn(dfList).when(dataFileReaderSpy).readDataFileAttributes(dveIndex);
 
         // Act
-        var result = reader.readDveMetadata(path);
+        var result = reader.readDveMetadata(dveIndex);
 
         // Assert
         assertThat(result.getDataFileAttributes()).containsExactlyElementsOf(dfList);
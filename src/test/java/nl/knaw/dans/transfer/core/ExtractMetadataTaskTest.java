@@ -55,7 +55,7 @@ public class ExtractMetadataTaskTest extends TestDirFixture {
         var task = new ExtractMetadataTask(
             srcDir, null, outboxProcessed, outboxFailed, outboxRejected,
             nbnRegistrationInbox, vaultCatalogBaseUri, dveMetadataReader, fileService,
-            vaultCatalogClient, validateBagPackClient, readyCheck, 100
+            vaultCatalogClient, validateBagPackClient, readyCheck, null, 100
         ) {
             @Override
             protected TransferItem createTransferItem(Path item) {
@@ -75,4 +75,34 @@ public class ExtractMetadataTaskTest extends TestDirFixture {
             .isInstanceOf(IllegalArgumentException.class)
             .hasMessage("Holey bags (with fetch.txt) are not supported for VaaS customers yet.");
     }
+
+    @Test
+    public void processItem_should_reject_dve_with_corrupt_payload_before_calling_validator() throws Exception {
+        // Given
+        var srcDir = testDir.resolve("src");
+        var validateBagPackClient = Mockito.mock(ValidateBagPackClient.class);
+        var payloadChecksumVerifier = Mockito.mock(PayloadChecksumVerifier.class);
+        var transferItem = Mockito.mock(TransferItem.class);
+        var dveIndex = Mockito.mock(DveIndex.class);
+        Mockito.when(transferItem.getDveIndex()).thenReturn(dveIndex);
+        Mockito.when(payloadChecksumVerifier.verify(dveIndex)).thenThrow(new IllegalArgumentException("SHA-1 checksum mismatch for data/file1.txt"));
+
+        var task = new ExtractMetadataTask(
+            srcDir, "ds1", testDir.resolve("processed"), testDir.resolve("failed"), testDir.resolve("rejected"),
+            testDir.resolve("nbn-inbox"), URI.create("http://localhost/catalog"), Mockito.mock(DveMetadataReader.class), Mockito.mock(FileService.class),
+            Mockito.mock(VaultCatalogClient.class), validateBagPackClient, Mockito.mock(DependenciesReadyCheck.class), payloadChecksumVerifier, 100
+        ) {
+            @Override
+            protected TransferItem createTransferItem(Path item) {
+                return transferItem;
+            }
+        };
+
+        // When / Then
+        assertThatThrownBy(() -> task.processItem(srcDir.resolve("dataset.zip")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("SHA-1 checksum mismatch for data/file1.txt");
+        Mockito.verifyNoInteractions(validateBagPackClient);
+        Mockito.verify(transferItem, Mockito.never()).setPayloadChecksumsVerified(true);
+    }
 }
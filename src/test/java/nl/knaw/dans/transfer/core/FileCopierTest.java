@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileCopierTest extends TestDirFixture {
+    private static final int BUFFER_SIZE = 1000;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void copy_should_copy_small_file_and_return_its_sha1() throws Exception {
+        var content = randomBytes(10_000);
+        var from = Files.write(testDir.resolve("from.zip"), content);
+        var copier = new FileCopier(BUFFER_SIZE, Long.MAX_VALUE, 2, executor, metricRegistry);
+
+        var checksum = copier.copy(from, testDir.resolve("to.zip"));
+
+        assertThat(testDir.resolve("to.zip")).hasBinaryContent(content);
+        assertThat(checksum).isEqualTo(new FileChecksum("SHA-1", content.length, sha1(content)));
+    }
+
+    @Test
+    public void copy_should_give_same_result_for_parallel_chunks() throws Exception {
+        var content = randomBytes(100 * BUFFER_SIZE + 123);
+        var from = Files.write(testDir.resolve("from.zip"), content);
+        var serial = new FileCopier(BUFFER_SIZE, Long.MAX_VALUE, 4, executor, metricRegistry);
+        var parallel = new FileCopier(BUFFER_SIZE, 0, 4, executor, metricRegistry);
+
+        var serialChecksum = serial.copy(from, testDir.resolve("serial.zip"));
+        var parallelChecksum = parallel.copy(from, testDir.resolve("parallel.zip"));
+
+        assertThat(testDir.resolve("parallel.zip")).hasBinaryContent(content);
+        assertThat(parallelChecksum).isEqualTo(serialChecksum);
+        assertThat(parallelChecksum.getValue()).isEqualTo(sha1(content));
+    }
+
+    @Test
+    public void copy_should_replace_longer_target_and_copy_empty_file() throws Exception {
+        var from = Files.write(testDir.resolve("from.zip"), new byte[0]);
+        var to = Files.write(testDir.resolve("to.zip"), randomBytes(5000));
+        var copier = new FileCopier(BUFFER_SIZE, Long.MAX_VALUE, 1, executor, metricRegistry);
+
+        var checksum = copier.copy(from, to);
+
+        assertThat(to).isEmptyFile();
+        assertThat(checksum.getSize()).isZero();
+        assertThat(checksum.getValue()).isEqualTo(sha1(new byte[0]));
+    }
+
+    @Test
+    public void copy_should_report_copied_bytes() throws Exception {
+        var from = Files.write(testDir.resolve("from.zip"), randomBytes(3 * BUFFER_SIZE));
+        var copier = new FileCopier(BUFFER_SIZE, 0, 2, executor, metricRegistry);
+
+        copier.copy(from, testDir.resolve("to1.zip"));
+        copier.copy(from, testDir.resolve("to2.zip"));
+
+        assertThat(metricRegistry.meter(MetricRegistry.name(FileCopier.class, "bytes")).getCount()).isEqualTo(6L * BUFFER_SIZE);
+        assertThat(metricRegistry.histogram(MetricRegistry.name(FileCopier.class, "throughput")).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void copy_should_share_its_buffers_between_more_concurrent_copies_than_there_are_buffers() throws Exception {
+        // Parallelism 1 gives a pool of two buffers for the eight copies
+        var copier = new FileCopier(BUFFER_SIZE, 5 * BUFFER_SIZE, 1, executor, metricRegistry);
+        var callers = Executors.newFixedThreadPool(8);
+        try {
+            var copies = new ArrayList<Future<FileChecksum>>();
+            var contents = new ArrayList<byte[]>();
+            for (int i = 0; i < 8; i++) {
+                // Half of the files are copied serially, the other half in parallel chunks
+                var content = randomBytes((i % 2 == 0 ? 3 : 20) * BUFFER_SIZE + i);
+                var from = Files.write(testDir.resolve("from" + i + ".zip"), content);
+                var to = testDir.resolve("to" + i + ".zip");
+                contents.add(content);
+                copies.add(callers.submit(() -> copier.copy(from, to)));
+            }
+            for (int i = 0; i < 8; i++) {
+                assertThat(copies.get(i).get(10, TimeUnit.SECONDS).getValue()).isEqualTo(sha1(contents.get(i)));
+                assertThat(testDir.resolve("to" + i + ".zip")).hasBinaryContent(contents.get(i));
+            }
+        }
+        finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        var bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha1(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(content));
+    }
+}
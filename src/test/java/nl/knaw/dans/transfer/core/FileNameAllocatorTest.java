@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileNameAllocatorTest extends TestDirFixture {
+    private final AtomicLong millis = new AtomicLong(1_000_000L);
+    private final Clock clock = new Clock() {
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+    };
+
+    @Test
+    public void allocate_should_return_desired_name_if_free() throws Exception {
+        var dir = Files.createDirectories(testDir.resolve("dir"));
+        Files.createFile(dir.resolve("other.zip"));
+        var allocator = new FileNameAllocator(Duration.ofMinutes(1), clock);
+
+        assertThat(allocator.allocate(dir, "urn:nbn:nl:ui:13-abc_v2.zip")).isEqualTo("urn:nbn:nl:ui:13-abc_v2.zip");
+    }
+
+    @Test
+    public void allocate_should_return_next_index_after_highest_one_in_use() throws Exception {
+        var dir = Files.createDirectories(testDir.resolve("dir"));
+        Files.createFile(dir.resolve("dataset_1710000000000_v1.zip"));
+        Files.createFile(dir.resolve("dataset_1710000000000_v1-3.zip"));
+        Files.createFile(dir.resolve("dataset_1710000000000_v1-7.zip-metadata.json"));
+        Files.createFile(dir.resolve("dataset_1710000000000_v2.zip"));
+        var allocator = new FileNameAllocator(Duration.ofMinutes(1), clock);
+
+        assertThat(allocator.allocate(dir, "dataset_1710000000000_v1.zip")).isEqualTo("dataset_1710000000000_v1-4.zip");
+        assertThat(allocator.allocate(dir, "dataset_1710000000000_v1-3.zip")).isEqualTo("dataset_1710000000000_v1-5.zip");
+        assertThat(allocator.allocate(dir, "dataset_1710000000000_v2.zip")).isEqualTo("dataset_1710000000000_v2-1.zip");
+    }
+
+    @Test
+    public void allocate_should_reserve_names_until_after_next_listing() throws Exception {
+        var dir = Files.createDirectories(testDir.resolve("dir"));
+        var allocator = new FileNameAllocator(Duration.ofMinutes(1), clock);
+
+        assertThat(allocator.allocate(dir, "dataset.zip")).isEqualTo("dataset.zip");
+        assertThat(allocator.allocate(dir, "dataset.zip")).isEqualTo("dataset-1.zip");
+        // Nothing was moved into the directory yet, but the reservations survive the next listing
+        millis.addAndGet(Duration.ofMinutes(1).toMillis());
+        assertThat(allocator.allocate(dir, "dataset.zip")).isEqualTo("dataset-2.zip");
+        // Created by someone else: picked up at the next listing
+        Files.createFile(dir.resolve("dataset-9.zip"));
+        millis.addAndGet(Duration.ofMinutes(1).toMillis());
+        assertThat(allocator.allocate(dir, "dataset.zip")).isEqualTo("dataset-10.zip");
+    }
+
+    @Test
+    public void allocate_should_never_return_the_same_name_to_concurrent_callers() throws Exception {
+        var dir = Files.createDirectories(testDir.resolve("dir"));
+        var allocator = new FileNameAllocator(Duration.ZERO, clock);
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit((Callable<String>) () -> allocator.allocate(dir, "dataset.zip")));
+            }
+            var names = new HashSet<String>();
+            for (var future : futures) {
+                names.add(future.get());
+            }
+            assertThat(names).hasSize(100).contains("dataset.zip", "dataset-99.zip");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void allocate_should_reject_non_dve_file_names() {
+        var allocator = new FileNameAllocator(Duration.ofMinutes(1), clock);
+
+        assertThatThrownBy(() -> allocator.allocate(testDir, "dataset.txt"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Not a DVE file name");
+    }
+}
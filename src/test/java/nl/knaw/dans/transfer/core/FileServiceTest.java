@@ -15,18 +15,34 @@
  */
 package nl.knaw.dans.transfer.core;
 
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
 
 public class FileServiceTest {
 
@@ -210,4 +226,209 @@ public class FileServiceTest {
             assertThat(result).isFalse();
         }
     }
+
+    @Test
+    void move_should_move_files_concurrently_in_group_commit_mode(@TempDir Path tempDir) throws Exception {
+        var fileService = new FileServiceImpl(FsyncMode.GROUP_COMMIT, Duration.ofMillis(20), new FileSystemIdentityCache(Duration.ofMinutes(1), Duration.ofSeconds(10), new MetricRegistry()),
+            new TargetDirIndex(Duration.ofMinutes(1)), new FileNameAllocator(Duration.ofMinutes(10)), fileCopier());
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        var target = Files.createDirectories(tempDir.resolve("target"));
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var futures = new ArrayList<Future<Path>>();
+            for (int i = 0; i < 8; i++) {
+                var file = Files.writeString(source.resolve("file" + i), "content" + i);
+                futures.add(executor.submit(() -> fileService.move(file, target.resolve(file.getFileName()))));
+            }
+            for (var future : futures) {
+                assertThat(future.get()).exists();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        try (var files = Files.list(source)) {
+            assertThat(files).isEmpty();
+        }
+        assertThat(target.resolve("file3")).hasContent("content3");
+    }
+
+    @Test
+    void moveToTargetFor_should_create_new_target_dir_if_indexed_dir_was_removed(@TempDir Path tempDir) throws Exception {
+        var fileService = new FileServiceImpl(FsyncMode.STRICT, Duration.ZERO, new FileSystemIdentityCache(Duration.ZERO, Duration.ZERO, new MetricRegistry()),
+            new TargetDirIndex(Duration.ofMinutes(1)), new FileNameAllocator(Duration.ofMinutes(10)), fileCopier());
+        var inbox = Files.createDirectories(tempDir.resolve("inbox"));
+        var outbox = Files.createDirectories(tempDir.resolve("outbox"));
+        var nbn = "urn:nbn:nl:ui:13-abc";
+
+        fileService.moveToTargetFor(Files.writeString(inbox.resolve("dve1.zip"), "1"), outbox, nbn, false);
+        fileService.moveToTargetFor(Files.writeString(inbox.resolve("dve2.zip"), "2"), outbox, nbn, false);
+        Path firstDir;
+        try (var dirs = Files.list(outbox)) {
+            firstDir = dirs.toList().get(0);
+        }
+        assertThat(firstDir.resolve("dve1.zip")).exists();
+        assertThat(firstDir.resolve("dve2.zip")).exists();
+
+        // Removed behind the back of the file service
+        FileUtils.deleteDirectory(firstDir.toFile());
+        fileService.moveToTargetFor(Files.writeString(inbox.resolve("dve3.zip"), "3"), outbox, nbn, false);
+
+        try (var dirs = Files.list(outbox)) {
+            var list = dirs.toList();
+            assertThat(list).hasSize(1);
+            assertThat(list.get(0).getFileName().toString()).startsWith(nbn + "-");
+            assertThat(list.get(0).resolve("dve3.zip")).exists();
+        }
+    }
+
+    @Test
+    void moveToFreeName_should_not_replace_file_created_after_listing(@TempDir Path tempDir) throws Exception {
+        var fileService = new FileServiceImpl(FsyncMode.STRICT, Duration.ZERO, new FileSystemIdentityCache(Duration.ZERO, Duration.ZERO, new MetricRegistry()),
+            new TargetDirIndex(Duration.ZERO), new FileNameAllocator(Duration.ofMinutes(10)), fileCopier());
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        var target = Files.createDirectories(tempDir.resolve("target"));
+
+        assertThat(fileService.moveToFreeName(Files.writeString(source.resolve("a.zip"), "a"), target, "dataset.zip", "-metadata.json"))
+            .isEqualTo(target.resolve("dataset.zip"));
+        // Created behind the back of the file service, after the target was listed
+        Files.writeString(target.resolve("dataset-1.zip"), "other");
+        var dve = Files.writeString(source.resolve("b.zip"), "b");
+        Files.writeString(source.resolve("b.zip-metadata.json"), "{}");
+
+        var moved = fileService.moveToFreeName(dve, target, "dataset.zip", "-metadata.json");
+
+        assertThat(moved).isEqualTo(target.resolve("dataset-2.zip")).hasContent("b");
+        assertThat(target.resolve("dataset-2.zip-metadata.json")).hasContent("{}");
+        assertThat(target.resolve("dataset-1.zip")).hasContent("other");
+        assertThat(target.resolve("dataset-1.zip-metadata.json")).doesNotExist();
+        try (var files = Files.list(source)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void move_should_copy_to_other_file_system_and_keep_checksum_next_to_copy(@TempDir Path tempDir) throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        var target = Files.createDirectories(tempDir.resolve("target"));
+        var fileService = fileServiceWithTargetOnOtherFileSystem(source, target);
+        var dve = Files.writeString(source.resolve("dve.zip"), "content");
+
+        fileService.move(dve, target.resolve("dve.zip"));
+
+        assertThat(target.resolve("dve.zip")).hasContent("content");
+        assertThat(target.resolve("dve.zip.tmp")).doesNotExist();
+        assertThat(dve).doesNotExist();
+        var checksum = FileChecksum.read(target.resolve("dve.zip"), fileService).orElseThrow();
+        // sha1sum of "content"
+        assertThat(checksum).isEqualTo(new FileChecksum("SHA-1", 7, "040f06fd774092478d450774f5ba30c5da78acc8"));
+
+        // The checksum moves along with the DVE
+        fileService.move(target.resolve("dve.zip"), target.resolve("renamed.zip"));
+        assertThat(FileChecksum.read(target.resolve("renamed.zip"), fileService)).contains(checksum);
+        assertThat(FileChecksum.pathFor(target.resolve("dve.zip"))).doesNotExist();
+    }
+
+    @Test
+    void move_should_fail_if_checksum_differs_from_the_one_recorded_before(@TempDir Path tempDir) throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        var target = Files.createDirectories(tempDir.resolve("target"));
+        var fileService = fileServiceWithTargetOnOtherFileSystem(source, target);
+        var dve = Files.writeString(source.resolve("dve.zip"), "content");
+        new FileChecksum("SHA-1", 7, "0".repeat(40)).write(dve, fileService);
+
+        assertThatThrownBy(() -> fileService.move(dve, target.resolve("dve.zip")))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("differs from the one recorded");
+
+        assertThat(dve).hasContent("content");
+        try (var files = Files.list(target)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void moveToFreeName_should_not_replace_file_that_took_the_name_on_other_file_system(@TempDir Path tempDir) throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        var target = Files.createDirectories(tempDir.resolve("target"));
+        var fileService = spy(fileServiceWithTargetOnOtherFileSystem(source, target));
+        var dve = Files.writeString(source.resolve("dve.zip"), "content");
+        // Another process created dve.zip after it was found to be free
+        var other = Files.writeString(target.resolve("dve.zip"), "other");
+        var otherChecksum = new FileChecksum("SHA-1", 5, "1".repeat(40));
+        otherChecksum.write(other, fileService);
+        doReturn("dve.zip", "dve-1.zip").when(fileService).findFreeName(target, "dve.zip");
+
+        var moved = fileService.moveToFreeName(dve, target, "dve.zip", null);
+
+        assertThat(moved).isEqualTo(target.resolve("dve-1.zip"));
+        assertThat(moved).hasContent("content");
+        assertThat(FileChecksum.read(moved, fileService)).isPresent();
+        assertThat(other).hasContent("other");
+        assertThat(FileChecksum.read(other, fileService)).contains(otherChecksum);
+        assertThat(dve).doesNotExist();
+        try (var files = Files.list(target)) {
+            assertThat(files).noneMatch(f -> f.getFileName().toString().contains(".tmp"));
+        }
+    }
+
+    private static FileServiceImpl fileServiceWithTargetOnOtherFileSystem(Path source, Path target) throws IOException {
+        var fileSystemIdentityCache = mock(FileSystemIdentityCache.class);
+        when(fileSystemIdentityCache.getIdentity(source)).thenReturn("source");
+        when(fileSystemIdentityCache.getIdentity(target)).thenReturn("target");
+        return new FileServiceImpl(FsyncMode.STRICT, Duration.ZERO, fileSystemIdentityCache, new TargetDirIndex(Duration.ZERO), new FileNameAllocator(Duration.ZERO),
+            fileCopier());
+    }
+
+    private static FileCopier fileCopier() {
+        return new FileCopier(4, 4, 2, ForkJoinPool.commonPool(), new MetricRegistry());
+    }
+
+    @Test
+    void getEntryUnderBaseFolder_should_return_entry_under_base_folder(@TempDir Path tempDir) throws Exception {
+        var fileService = new FileServiceImpl();
+        var zip = createZip(tempDir.resolve("test.zip"), "base/", "base/metadata/oai-ore.jsonld", "base/bag-info.txt");
+
+        try (var zipFile = fileService.openZipFile(zip); var is = fileService.getEntryUnderBaseFolder(zipFile, Path.of("metadata/oai-ore.jsonld"))) {
+            assertThat(IOUtils.toString(is, StandardCharsets.UTF_8)).isEqualTo("base/metadata/oai-ore.jsonld");
+            assertThat(fileService.getEntryIndex(zipFile)).isSameAs(fileService.getEntryIndex(zipFile));
+        }
+    }
+
+    @Test
+    void getEntryUnderBaseFolder_should_throw_when_entry_is_missing(@TempDir Path tempDir) throws Exception {
+        var fileService = new FileServiceImpl();
+        var zip = createZip(tempDir.resolve("test.zip"), "base/bag-info.txt");
+
+        try (var zipFile = fileService.openZipFile(zip)) {
+            assertThatThrownBy(() -> fileService.getEntryUnderBaseFolder(zipFile, Path.of("metadata/oai-ore.jsonld")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("No entry found for path: metadata/oai-ore.jsonld");
+        }
+    }
+
+    @Test
+    void getEntryUnderBaseFolder_should_throw_when_multiple_base_folders_contain_entry(@TempDir Path tempDir) throws Exception {
+        var fileService = new FileServiceImpl();
+        var zip = createZip(tempDir.resolve("test.zip"), "base1/metadata/oai-ore.jsonld", "base2/metadata/oai-ore.jsonld");
+
+        try (var zipFile = fileService.openZipFile(zip)) {
+            assertThatThrownBy(() -> fileService.getEntryUnderBaseFolder(zipFile, Path.of("metadata/oai-ore.jsonld")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Multiple entries found for path: metadata/oai-ore.jsonld");
+        }
+    }
+
+    private static Path createZip(Path zip, String... entryNames) throws IOException {
+        try (var zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (var name : entryNames) {
+                zos.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) {
+                    zos.write(name.getBytes(StandardCharsets.UTF_8));
+                }
+                zos.closeEntry();
+            }
+        }
+        return zip;
+    }
 }
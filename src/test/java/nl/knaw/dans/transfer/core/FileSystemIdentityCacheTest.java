@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileSystemIdentityCacheTest extends TestDirFixture {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final AtomicLong millis = new AtomicLong(1_000_000L);
+    private final Clock clock = new Clock() {
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+    };
+
+    private long hits() {
+        return metricRegistry.counter(MetricRegistry.name(FileSystemIdentityCache.class, "hits")).getCount();
+    }
+
+    private long misses() {
+        return metricRegistry.counter(MetricRegistry.name(FileSystemIdentityCache.class, "misses")).getCount();
+    }
+
+    @Test
+    public void should_return_the_same_identity_for_directories_on_the_same_file_system() throws Exception {
+        var cache = new FileSystemIdentityCache(Duration.ofMinutes(1), Duration.ofSeconds(10), metricRegistry, clock, testDir.resolve("mountinfo"));
+        var dir1 = Files.createDirectories(testDir.resolve("dir1"));
+        var dir2 = Files.createDirectories(testDir.resolve("dir2"));
+
+        assertThat(cache.getIdentity(dir1)).isEqualTo(cache.getIdentity(dir2));
+    }
+
+    @Test
+    public void should_count_hits_and_misses_and_expire_entries_after_ttl() throws Exception {
+        var cache = new FileSystemIdentityCache(Duration.ofMinutes(1), Duration.ofSeconds(10), metricRegistry, clock, testDir.resolve("mountinfo"));
+        var dir = Files.createDirectories(testDir.resolve("dir"));
+
+        cache.getIdentity(dir);
+        cache.getIdentity(dir);
+        cache.getIdentity(dir.resolve("sub").resolve(".."));
+        assertThat(misses()).isEqualTo(1);
+        assertThat(hits()).isEqualTo(2);
+
+        millis.addAndGet(Duration.ofMinutes(1).toMillis());
+        cache.getIdentity(dir);
+        assertThat(misses()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_drop_entries_when_mount_table_changes() throws Exception {
+        var mountTable = Files.writeString(testDir.resolve("mountinfo"), "1 0 8:1 / / rw - ext4 /dev/sda1 rw\n");
+        var cache = new FileSystemIdentityCache(Duration.ofMinutes(10), Duration.ofSeconds(10), metricRegistry, clock, mountTable);
+        var dir = Files.createDirectories(testDir.resolve("dir"));
+        cache.getIdentity(dir);
+
+        // Not checked again before the interval has passed
+        Files.writeString(mountTable, "1 0 8:1 / / rw - ext4 /dev/sda1 rw\n2 1 0:50 / /mnt rw - nfs server:/export rw\n");
+        cache.getIdentity(dir);
+        assertThat(misses()).isEqualTo(1);
+
+        millis.addAndGet(Duration.ofSeconds(10).toMillis());
+        cache.getIdentity(dir);
+        assertThat(misses()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_not_cache_when_ttl_is_zero() throws Exception {
+        var cache = new FileSystemIdentityCache(Duration.ZERO, Duration.ZERO, metricRegistry, clock, testDir.resolve("mountinfo"));
+        var dir = Files.createDirectories(testDir.resolve("dir"));
+
+        cache.getIdentity(dir);
+        cache.getIdentity(dir);
+
+        assertThat(misses()).isEqualTo(2);
+        assertThat(hits()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_throw_and_not_cache_if_directory_does_not_exist() throws Exception {
+        var cache = new FileSystemIdentityCache(Duration.ofMinutes(1), Duration.ofSeconds(10), metricRegistry, clock, testDir.resolve("mountinfo"));
+        var dir = testDir.resolve("does-not-exist");
+
+        assertThatThrownBy(() -> cache.getIdentity(dir)).isInstanceOf(NoSuchFileException.class);
+        Files.createDirectories(dir);
+        cache.getIdentity(dir);
+        assertThat(misses()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GroupCommitDirectorySyncTest {
+
+    @Test
+    public void should_share_one_fsync_between_requests_for_the_same_directory_within_the_window() throws Exception {
+        var fsyncs = new AtomicInteger();
+        var sync = new GroupCommitDirectorySync(dir -> fsyncs.incrementAndGet(), Duration.ofMillis(500));
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    sync.fsync(Path.of("dir"));
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(fsyncs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_not_share_fsyncs_between_directories() throws Exception {
+        var fsyncs = new AtomicInteger();
+        var sync = new GroupCommitDirectorySync(dir -> fsyncs.incrementAndGet(), Duration.ZERO);
+
+        sync.fsync(Path.of("dir1"));
+        sync.fsync(Path.of("dir2"));
+        sync.fsync(Path.of("dir1"));
+
+        assertThat(fsyncs.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void should_sync_requests_that_arrive_during_an_fsync_together_in_a_next_fsync() throws Exception {
+        var fsyncs = new AtomicInteger();
+        var firstStarted = new CountDownLatch(1);
+        var firstMayComplete = new CountDownLatch(1);
+        var sync = new GroupCommitDirectorySync(dir -> {
+            if (fsyncs.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                await(firstMayComplete);
+            }
+        }, Duration.ZERO);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            futures.add(executor.submit(() -> {
+                sync.fsync(Path.of("dir"));
+                return null;
+            }));
+            await(firstStarted);
+
+            // Changes made while the first fsync is running may not be covered by it
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> {
+                    sync.fsync(Path.of("dir"));
+                    return null;
+                }));
+            }
+            Thread.sleep(200);
+            assertThat(fsyncs.get()).isEqualTo(1);
+
+            firstMayComplete.countDown();
+            for (var future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(fsyncs.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_report_a_failed_fsync_to_every_member_of_the_group() throws Exception {
+        var sync = new GroupCommitDirectorySync(dir -> {
+            throw new NoSuchFileException(dir.toString());
+        }, Duration.ofMillis(500));
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var first = executor.submit(() -> {
+                sync.fsync(Path.of("dir"));
+                return null;
+            });
+            var second = executor.submit(() -> {
+                sync.fsync(Path.of("dir"));
+                return null;
+            });
+
+            for (var future : new Future<?>[] { first, second }) {
+                assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(NoSuchFileException.class);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import io.dropwizard.util.DataSize;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LimitsBatchSealPolicyTest {
+    private static final Instant NOW = Instant.parse("2025-01-01T12:00:00Z");
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+    private final BatchJournal journal = Mockito.mock(BatchJournal.class);
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Mockito.when(journal.getBytes()).thenReturn(500L);
+        Mockito.when(journal.getFiles()).thenReturn(5L);
+        Mockito.when(journal.getDves()).thenReturn(List.of("dve1.zip", "dve2.zip"));
+        Mockito.when(journal.getStartTime()).thenReturn(NOW.minusSeconds(60).toEpochMilli());
+    }
+
+    @Test
+    public void should_not_seal_when_no_limit_is_reached() throws Exception {
+        var policy = new LimitsBatchSealPolicy(DataSize.bytes(500), 6L, 3, Duration.ofMinutes(2), clock);
+
+        assertThat(policy.evaluate(journal)).isEmpty();
+    }
+
+    @Test
+    public void should_seal_when_size_exceeds_threshold() throws Exception {
+        var policy = new LimitsBatchSealPolicy(DataSize.bytes(499), 6L, 3, Duration.ofMinutes(2), clock);
+
+        assertThat(policy.evaluate(journal)).contains(BatchSealReason.BYTES);
+    }
+
+    @Test
+    public void should_seal_when_file_or_dve_count_is_reached() throws Exception {
+        assertThat(new LimitsBatchSealPolicy(null, 5L, null, null, clock).evaluate(journal)).contains(BatchSealReason.FILES);
+        assertThat(new LimitsBatchSealPolicy(null, null, 2, null, clock).evaluate(journal)).contains(BatchSealReason.DVES);
+    }
+
+    @Test
+    public void should_seal_when_batch_is_older_than_max_age() throws Exception {
+        var policy = new LimitsBatchSealPolicy(null, null, null, Duration.ofMinutes(1), clock);
+
+        assertThat(policy.evaluate(journal)).contains(BatchSealReason.AGE);
+    }
+
+    @Test
+    public void should_never_seal_empty_batch() throws Exception {
+        Mockito.when(journal.getBytes()).thenReturn(0L);
+        Mockito.when(journal.getFiles()).thenReturn(0L);
+        Mockito.when(journal.getDves()).thenReturn(List.of());
+        Mockito.when(journal.getStartTime()).thenReturn(NOW.minusSeconds(3600).toEpochMilli());
+        var policy = new LimitsBatchSealPolicy(DataSize.bytes(0), 1L, 1, Duration.ZERO, clock);
+
+        assertThat(policy.evaluate(journal)).isEmpty();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PayloadChecksumVerifierTest extends TestDirFixture {
+    // SHA-1 of "hello"
+    private static final String HELLO_SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+
+    private final PayloadChecksumVerifier verifier = new PayloadChecksumVerifier(2);
+
+    @Test
+    public void verify_should_return_checksums_of_valid_test_dve() throws Exception {
+        try (var index = new DveIndex(Path.of("src/test/resources/test-dves/valid/doi-10-5072-dar-os2nwkv1.0.zip"), new FileServiceImpl())) {
+            assertThat(verifier.verify(index)).containsExactly(Map.entry("data/Archeology-site-cal-poly-humboldt.jpg", "ce336eefc302ac8f5a447a67ea4d894e9960a589"));
+        }
+    }
+
+    @Test
+    public void verify_should_skip_files_in_fetch_txt() throws Exception {
+        var dve = createDve(Map.of(
+            "data/file1.txt", "hello",
+            "manifest-sha1.txt", HELLO_SHA1 + "  data/file1.txt\n" + HELLO_SHA1 + "  data/fetched.txt\n",
+            "fetch.txt", "http://example.com/fetched 5 data/fetched.txt\n"));
+
+        try (var index = new DveIndex(dve, new FileServiceImpl())) {
+            assertThat(verifier.verify(index)).containsExactly(Map.entry("data/file1.txt", HELLO_SHA1));
+        }
+    }
+
+    @Test
+    public void verify_should_reject_checksum_mismatch() throws Exception {
+        var dve = createDve(Map.of(
+            "data/file1.txt", "hello, corrupted",
+            "manifest-sha1.txt", HELLO_SHA1 + "  data/file1.txt\n"));
+
+        try (var index = new DveIndex(dve, new FileServiceImpl())) {
+            assertThatThrownBy(() -> verifier.verify(index))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("SHA-1 checksum mismatch for data/file1.txt: expected " + HELLO_SHA1);
+        }
+    }
+
+    @Test
+    public void verify_should_reject_missing_payload_file() throws Exception {
+        var dve = createDve(Map.of(
+            "data/file1.txt", "hello",
+            "manifest-sha1.txt", HELLO_SHA1 + "  data/file1.txt\n" + HELLO_SHA1 + "  data/missing.txt\n"));
+
+        try (var index = new DveIndex(dve, new FileServiceImpl())) {
+            assertThatThrownBy(() -> verifier.verify(index))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Payload file in manifest-sha1.txt not found in DVE: data/missing.txt");
+        }
+    }
+
+    private Path createDve(Map<String, String> files) throws IOException {
+        var dve = testDir.resolve("dve.zip");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(dve))) {
+            for (var file : files.entrySet()) {
+                zos.putNextEntry(new ZipEntry("bag/" + file.getKey()));
+                zos.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+        return dve;
+    }
+}
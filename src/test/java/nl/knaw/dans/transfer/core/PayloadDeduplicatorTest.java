@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PayloadDeduplicatorTest extends TestDirFixture {
+    private static final String SHA1_A = "a9993e364706816aba3e25717850c26c9cd0d89d";
+    private static final String SHA1_B = "924f61661a3472da74307a35f2c8d22e07e84a4d";
+    private static final String SHA1_C = "5af13954a67eab2973b4ade01186602dd8739787";
+
+    private Path createEarlierVersion(Path objectDir) throws Exception {
+        var bag = objectDir.resolve("v1/base");
+        Files.createDirectories(bag.resolve("data"));
+        Files.writeString(bag.resolve("data/a.txt"), "abc");
+        Files.writeString(bag.resolve("data/b.txt"), "bcd");
+        Files.writeString(bag.resolve("manifest-sha1.txt"), SHA1_A + "  data/a.txt\n" + SHA1_B + "  data/b.txt\n");
+        return bag;
+    }
+
+    private static ZipEntry entry(String name, long size) {
+        var entry = new ZipEntry(name);
+        entry.setSize(size);
+        return entry;
+    }
+
+    @Test
+    public void should_find_identical_file_of_earlier_version() throws Exception {
+        var objectDir = testDir.resolve("nbn1");
+        var bag = createEarlierVersion(objectDir);
+
+        var deduplicator = PayloadDeduplicator.forObject(objectDir, () -> Map.of("data/renamed.txt", SHA1_A, "data/c.txt", SHA1_C), new FileServiceImpl());
+
+        assertThat(deduplicator.findIdenticalFile(entry("other-base/data/renamed.txt", 3))).contains(bag.resolve("data/a.txt"));
+        assertThat(deduplicator.findIdenticalFile(entry("other-base/data/c.txt", 3))).isEmpty();
+        // A size that does not match means that the content is not the same after all
+        assertThat(deduplicator.findIdenticalFile(entry("other-base/data/renamed.txt", 4))).isEmpty();
+    }
+
+    @Test
+    public void should_check_sha1_of_entry_before_linking_when_manifest_was_not_verified() throws Exception {
+        var objectDir = testDir.resolve("nbn1");
+        var bag = createEarlierVersion(objectDir);
+        var content = Map.of("base/data/a.txt", "abc", "base/data/wrong.txt", "xyz");
+
+        // The manifest claims that wrong.txt is identical to a.txt, but its content is different
+        var deduplicator = PayloadDeduplicator.forUnverifiedObject(objectDir, () -> Map.of("data/a.txt", SHA1_A, "data/wrong.txt", SHA1_A),
+            entry -> new ByteArrayInputStream(content.get(entry.getName()).getBytes(StandardCharsets.UTF_8)), new FileServiceImpl());
+
+        assertThat(deduplicator.findIdenticalFile(entry("base/data/a.txt", 3))).contains(bag.resolve("data/a.txt"));
+        assertThat(deduplicator.findIdenticalFile(entry("base/data/wrong.txt", 3))).isEmpty();
+    }
+
+    @Test
+    public void should_find_nothing_without_earlier_versions() throws Exception {
+        var deduplicator = PayloadDeduplicator.forObject(testDir.resolve("nbn1"), () -> Map.of("data/a.txt", SHA1_A), new FileServiceImpl());
+
+        assertThat(deduplicator).isSameAs(PayloadDeduplicator.NONE);
+    }
+
+    @Test
+    public void should_not_read_manifest_of_dve_without_earlier_versions() throws Exception {
+        var objectDir = Files.createDirectories(testDir.resolve("nbn1"));
+
+        var deduplicator = PayloadDeduplicator.forObject(objectDir, () -> {
+            throw new IllegalStateException("Manifest should not be read");
+        }, new FileServiceImpl());
+
+        assertThat(deduplicator).isSameAs(PayloadDeduplicator.NONE);
+    }
+
+    @Test
+    public void should_let_extractor_link_identical_files() throws Exception {
+        var objectDir = testDir.resolve("nbn1");
+        var bag = createEarlierVersion(objectDir);
+        var zip = testDir.resolve("v2.zip");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            zos.putNextEntry(new ZipEntry("base/data/a.txt"));
+            zos.write("abc".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("base/data/c.txt"));
+            zos.write("cde".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        var fileService = new FileServiceImpl();
+        var deduplicator = PayloadDeduplicator.forObject(objectDir, () -> Map.of("data/a.txt", SHA1_A, "data/c.txt", SHA1_C), fileService);
+
+        var result = new ZipExtractor(fileService, 2, 1000).extract(zip, objectDir.resolve("v2"), deduplicator);
+
+        assertThat(result.getFileCount()).isEqualTo(2);
+        assertThat(result.getLinkedFileCount()).isEqualTo(1);
+        assertThat(result.getByteCount()).isEqualTo(3);
+        var linked = objectDir.resolve("v2/base/data/a.txt");
+        assertThat(linked).hasContent("abc");
+        assertThat(Files.readAttributes(linked, BasicFileAttributes.class).fileKey())
+            .isEqualTo(Files.readAttributes(bag.resolve("data/a.txt"), BasicFileAttributes.class).fileKey());
+        assertThat(objectDir.resolve("v2/base/data/c.txt")).hasContent("cde");
+    }
+}
@@ -15,29 +15,32 @@
  */
 package nl.knaw.dans.transfer.core;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.util.DataSize;
-import nl.knaw.dans.lib.util.ZipUtil;
 import nl.knaw.dans.lib.util.healthcheck.DependenciesReadyCheck;
 import nl.knaw.dans.lobstore.client.api.TransferRequestDto;
 import nl.knaw.dans.transfer.TestDirFixture;
-import nl.knaw.dans.transfer.client.DataVaultClient;
 import nl.knaw.dans.transfer.client.LobStoreClient;
 import nl.knaw.dans.transfer.config.CustomPropertyConfig;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class SendToVaultTaskTest extends TestDirFixture {
     @Test
@@ -45,20 +48,21 @@ public class SendToVaultTaskTest extends TestDirFixture {
         // Given
         var dve = testDir.resolve("fail.zip");
         var currentBatchWorkDir = testDir.resolve("batch");
-        var dataVaultBatchRoot = testDir.resolve("vault");
         var outboxProcessed = testDir.resolve("processed");
         var outboxFailed = testDir.resolve("failed");
-        var dataVaultClient = Mockito.mock(DataVaultClient.class);
         var fileService = new FileServiceImpl();
         var dveMetadataReader = Mockito.mock(DveMetadataReader.class);
         var lobStoreClient = Mockito.mock(LobStoreClient.class);
         var readyCheck = Mockito.mock(DependenciesReadyCheck.class);
+        var zipExtractor = Mockito.mock(ZipExtractor.class);
+        var batchJournal = Mockito.mock(BatchJournal.class);
+        var batchSealer = Mockito.mock(BatchSealer.class);
         var defaultMessage = "msg";
         var customProperties = new ArrayList<CustomPropertyConfig>();
 
         var task = new SendToVaultTask(
-            dve, currentBatchWorkDir, dataVaultBatchRoot, DataSize.bytes(0), outboxProcessed, outboxFailed,
-            dataVaultClient, defaultMessage, customProperties, fileService, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
+            dve, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(0), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), outboxProcessed, outboxFailed,
+            defaultMessage, customProperties, fileService, zipExtractor, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
         );
 
         // Prepare object import directory with two versions
@@ -76,31 +80,29 @@ public class SendToVaultTaskTest extends TestDirFixture {
         Mockito.when(transferItem.getNbn()).thenReturn("nbn123");
         Mockito.when(transferItem.getContactName()).thenReturn("user");
         Mockito.when(transferItem.getContactEmail()).thenReturn("email");
+        Mockito.when(transferItem.getDveIndex()).thenReturn(Mockito.mock(DveIndex.class));
         // Set currentTransferItem via reflection (private field)
         var field = SendToVaultTask.class.getDeclaredField("currentTransferItem");
         field.setAccessible(true);
         field.set(task, transferItem);
 
         // When / Then
-        try (MockedStatic<ZipUtil> zipUtilMock = Mockito.mockStatic(ZipUtil.class)) {
-            zipUtilMock.when(() -> ZipUtil.extractZipFile(Mockito.any(), Mockito.any()))
-                .thenThrow(new RuntimeException("Extraction failed"));
-            var method = task.getClass().getDeclaredMethod("addToObjectImportDirectory", Path.class, int.class, Path.class);
-            method.setAccessible(true);
-            Throwable thrown = null;
-            try {
-                method.invoke(task, dve, version, objectImportDirectory);
-            } catch (InvocationTargetException e) {
-                thrown = e.getCause();
-            }
-            assertThat(thrown)
-                .isInstanceOf(RuntimeException.class)
-                .hasMessage("Extraction failed");
-            // Only the failed version directory should be deleted, not the parent or other version
-            assertThat(Files.exists(objectImportDirectory)).isTrue();
-            assertThat(Files.exists(versionDirectory)).isFalse();
-            assertThat(Files.exists(otherVersionDirectory)).isTrue();
+        Mockito.doThrow(new RuntimeException("Extraction failed")).when(zipExtractor).extract(Mockito.any(DveIndex.class), Mockito.any(), Mockito.any());
+        var method = task.getClass().getDeclaredMethod("addToObjectImportDirectory", Path.class, int.class, Path.class);
+        method.setAccessible(true);
+        Throwable thrown = null;
+        try {
+            method.invoke(task, dve, version, objectImportDirectory);
+        } catch (InvocationTargetException e) {
+            thrown = e.getCause();
         }
+        assertThat(thrown)
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("Extraction failed");
+        // Only the failed version directory should be deleted, not the parent or other version
+        assertThat(Files.exists(objectImportDirectory)).isTrue();
+        assertThat(Files.exists(versionDirectory)).isFalse();
+        assertThat(Files.exists(otherVersionDirectory)).isTrue();
     }
 
     @Test
@@ -108,20 +110,21 @@ public class SendToVaultTaskTest extends TestDirFixture {
         // Given
         Path dve = testDir.resolve("test.zip");
         Path currentBatchWorkDir = testDir.resolve("batch");
-        Path dataVaultBatchRoot = testDir.resolve("vault");
         Path outboxProcessed = testDir.resolve("processed");
         Path outboxFailed = testDir.resolve("failed");
-        DataVaultClient dataVaultClient = Mockito.mock(DataVaultClient.class);
         FileService fileService = new FileServiceImpl();
         DveMetadataReader dveMetadataReader = Mockito.mock(DveMetadataReader.class);
         LobStoreClient lobStoreClient = Mockito.mock(LobStoreClient.class);
         DependenciesReadyCheck readyCheck = Mockito.mock(DependenciesReadyCheck.class);
+        ZipExtractor zipExtractor = Mockito.mock(ZipExtractor.class);
+        BatchJournal batchJournal = Mockito.mock(BatchJournal.class);
+        BatchSealer batchSealer = Mockito.mock(BatchSealer.class);
         String defaultMessage = "Default message with\nnewline";
         List<CustomPropertyConfig> customProperties = new ArrayList<>();
 
         var task = new SendToVaultTask(
-            dve, currentBatchWorkDir, dataVaultBatchRoot, DataSize.bytes(0), outboxProcessed, outboxFailed,
-            dataVaultClient, defaultMessage, customProperties, fileService, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
+            dve, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(0), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), outboxProcessed, outboxFailed,
+            defaultMessage, customProperties, fileService, zipExtractor, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
         );
 
         // Set up a TransferItem
@@ -162,20 +165,21 @@ public class SendToVaultTaskTest extends TestDirFixture {
         // Given
         Path dve = testDir.resolve("fail.zip");
         Path currentBatchWorkDir = testDir.resolve("batch");
-        Path dataVaultBatchRoot = testDir.resolve("vault");
         Path outboxProcessed = testDir.resolve("processed");
         Path outboxFailed = testDir.resolve("failed");
-        DataVaultClient dataVaultClient = Mockito.mock(DataVaultClient.class);
         FileService fileService = new FileServiceImpl();
         DveMetadataReader dveMetadataReader = Mockito.mock(DveMetadataReader.class);
         LobStoreClient lobStoreClient = Mockito.mock(LobStoreClient.class);
         DependenciesReadyCheck readyCheck = Mockito.mock(DependenciesReadyCheck.class);
+        ZipExtractor zipExtractor = Mockito.mock(ZipExtractor.class);
+        BatchJournal batchJournal = Mockito.mock(BatchJournal.class);
+        BatchSealer batchSealer = Mockito.mock(BatchSealer.class);
         String defaultMessage = "msg";
         List<CustomPropertyConfig> customProperties = new ArrayList<>();
 
         var task = new SendToVaultTask(
-            dve, currentBatchWorkDir, dataVaultBatchRoot, DataSize.bytes(0), outboxProcessed, outboxFailed,
-            dataVaultClient, defaultMessage, customProperties, fileService, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
+            dve, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(0), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), outboxProcessed, outboxFailed,
+            defaultMessage, customProperties, fileService, zipExtractor, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
         );
 
         // Prepare version directory
@@ -191,49 +195,48 @@ public class SendToVaultTaskTest extends TestDirFixture {
         Mockito.when(transferItem.getNbn()).thenReturn("nbn123");
         Mockito.when(transferItem.getContactName()).thenReturn("user");
         Mockito.when(transferItem.getContactEmail()).thenReturn("email");
+        Mockito.when(transferItem.getDveIndex()).thenReturn(Mockito.mock(DveIndex.class));
         // Set currentTransferItem via reflection (private field)
         var field = SendToVaultTask.class.getDeclaredField("currentTransferItem");
         field.setAccessible(true);
         field.set(task, transferItem);
 
         // When / Then
-        try (MockedStatic<ZipUtil> zipUtilMock = Mockito.mockStatic(ZipUtil.class)) {
-            zipUtilMock.when(() -> ZipUtil.extractZipFile(Mockito.any(), Mockito.any()))
-                .thenThrow(new RuntimeException("Extraction failed"));
-            var method = task.getClass().getDeclaredMethod("addToObjectImportDirectory", Path.class, int.class, Path.class);
-            method.setAccessible(true);
-            Throwable thrown = null;
-            try {
-                method.invoke(task, dve, version, objectImportDirectory);
-            } catch (InvocationTargetException e) {
-                thrown = e.getCause();
-            }
-            assertThat(thrown)
-                .isInstanceOf(RuntimeException.class)
-                .hasMessage("Extraction failed");
-            // Directory should be deleted (parent or version dir)
-            assertThat(Files.exists(objectImportDirectory)).isFalse();
+        Mockito.doThrow(new RuntimeException("Extraction failed")).when(zipExtractor).extract(Mockito.any(DveIndex.class), Mockito.any(), Mockito.any());
+        var method = task.getClass().getDeclaredMethod("addToObjectImportDirectory", Path.class, int.class, Path.class);
+        method.setAccessible(true);
+        Throwable thrown = null;
+        try {
+            method.invoke(task, dve, version, objectImportDirectory);
+        } catch (InvocationTargetException e) {
+            thrown = e.getCause();
         }
+        assertThat(thrown)
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("Extraction failed");
+        // Directory should be deleted (parent or version dir)
+        assertThat(Files.exists(objectImportDirectory)).isFalse();
     }
     @Test
     public void createVersionInfoJson_should_include_external_large_objects_when_fetch_sha1s_present() throws Exception {
         // Given
         Path dve = testDir.resolve("test.zip");
         Path currentBatchWorkDir = testDir.resolve("batch");
-        Path dataVaultBatchRoot = testDir.resolve("vault");
         Path outboxProcessed = testDir.resolve("processed");
         Path outboxFailed = testDir.resolve("failed");
-        DataVaultClient dataVaultClient = Mockito.mock(DataVaultClient.class);
         FileService fileService = new FileServiceImpl();
         DveMetadataReader dveMetadataReader = Mockito.mock(DveMetadataReader.class);
         LobStoreClient lobStoreClient = Mockito.mock(LobStoreClient.class);
         DependenciesReadyCheck readyCheck = Mockito.mock(DependenciesReadyCheck.class);
+        ZipExtractor zipExtractor = Mockito.mock(ZipExtractor.class);
+        BatchJournal batchJournal = Mockito.mock(BatchJournal.class);
+        BatchSealer batchSealer = Mockito.mock(BatchSealer.class);
         String defaultMessage = "msg";
         List<CustomPropertyConfig> customProperties = new ArrayList<>();
 
         var task = new SendToVaultTask(
-            dve, currentBatchWorkDir, dataVaultBatchRoot, DataSize.bytes(0), outboxProcessed, outboxFailed,
-            dataVaultClient, defaultMessage, customProperties, fileService, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
+            dve, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(0), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), outboxProcessed, outboxFailed,
+            defaultMessage, customProperties, fileService, zipExtractor, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
         );
 
         Path versionDirectory = testDir.resolve("v1");
@@ -274,19 +277,20 @@ public class SendToVaultTaskTest extends TestDirFixture {
         Files.createFile(item);
         Path currentBatchWorkDir = testDir.resolve("batch");
         Files.createDirectories(currentBatchWorkDir);
-        Path dataVaultBatchRoot = testDir.resolve("vault");
         Path outboxProcessed = testDir.resolve("processed");
         Files.createDirectories(outboxProcessed);
         Path outboxFailed = testDir.resolve("failed");
-        DataVaultClient dataVaultClient = Mockito.mock(DataVaultClient.class);
         FileService fileService = Mockito.mock(FileService.class);
         DveMetadataReader dveMetadataReader = Mockito.mock(DveMetadataReader.class);
         LobStoreClient lobStoreClient = Mockito.mock(LobStoreClient.class);
         DependenciesReadyCheck readyCheck = Mockito.mock(DependenciesReadyCheck.class);
+        ZipExtractor zipExtractor = Mockito.mock(ZipExtractor.class);
+        BatchJournal batchJournal = Mockito.mock(BatchJournal.class);
+        BatchSealer batchSealer = Mockito.mock(BatchSealer.class);
 
         var task = Mockito.spy(new SendToVaultTask(
-            testDir, currentBatchWorkDir, dataVaultBatchRoot, DataSize.bytes(1000), outboxProcessed, outboxFailed,
-            dataVaultClient, "msg", List.of(), fileService, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
+            testDir, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(1000), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), outboxProcessed, outboxFailed,
+            "msg", List.of(), fileService, zipExtractor, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
         ));
 
         DveMetadata metadata = Mockito.mock(DveMetadata.class);
@@ -295,13 +299,15 @@ public class SendToVaultTaskTest extends TestDirFixture {
         Mockito.when(attr.getUri()).thenReturn(new URI("http://dv.com/file/?fileId=123"));
         Mockito.when(metadata.getDataFileAttributes()).thenReturn(List.of(attr));
 
-        Mockito.when(dveMetadataReader.readDveMetadata(item)).thenReturn(metadata);
+        DveIndex dveIndex = Mockito.mock(DveIndex.class);
+        Mockito.when(dveMetadataReader.readDveMetadata(dveIndex)).thenReturn(metadata);
 
         // Mock TransferItem
         TransferItem transferItem = Mockito.mock(TransferItem.class);
         Mockito.when(transferItem.getNbn()).thenReturn("nbn1");
         Mockito.when(transferItem.getOcflObjectVersion()).thenReturn(1);
         Mockito.when(transferItem.getFetchSha1s()).thenReturn(List.of("sha1"));
+        Mockito.when(transferItem.getDveIndex()).thenReturn(dveIndex);
 
         // Use the real getLobRequests but with mocked metadata
         Mockito.when(transferItem.getLobRequests(Mockito.any(), Mockito.anyString())).thenCallRealMethod();
@@ -331,18 +337,19 @@ public class SendToVaultTaskTest extends TestDirFixture {
         Files.createFile(item);
         Path currentBatchWorkDir = testDir.resolve("batch");
         Files.createDirectories(currentBatchWorkDir);
-        Path dataVaultBatchRoot = testDir.resolve("vault");
         Path outboxProcessed = testDir.resolve("processed");
         Path outboxFailed = testDir.resolve("failed");
-        DataVaultClient dataVaultClient = Mockito.mock(DataVaultClient.class);
         FileService fileService = Mockito.mock(FileService.class);
         DveMetadataReader dveMetadataReader = Mockito.mock(DveMetadataReader.class);
         LobStoreClient lobStoreClient = Mockito.mock(LobStoreClient.class);
         DependenciesReadyCheck readyCheck = Mockito.mock(DependenciesReadyCheck.class);
+        ZipExtractor zipExtractor = Mockito.mock(ZipExtractor.class);
+        BatchJournal batchJournal = Mockito.mock(BatchJournal.class);
+        BatchSealer batchSealer = Mockito.mock(BatchSealer.class);
 
         var task = Mockito.spy(new SendToVaultTask(
-            testDir, currentBatchWorkDir, dataVaultBatchRoot, DataSize.bytes(1000), outboxProcessed, outboxFailed,
-            dataVaultClient, "msg", List.of(), fileService, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
+            testDir, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(1000), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), outboxProcessed, outboxFailed,
+            "msg", List.of(), fileService, zipExtractor, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
         ));
 
         DveMetadata metadata = Mockito.mock(DveMetadata.class);
@@ -351,12 +358,14 @@ public class SendToVaultTaskTest extends TestDirFixture {
         Mockito.when(attr.getUri()).thenReturn(new URI("http://dv.com/file/?otherId=123"));
         Mockito.when(metadata.getDataFileAttributes()).thenReturn(List.of(attr));
 
-        Mockito.when(dveMetadataReader.readDveMetadata(item)).thenReturn(metadata);
+        DveIndex dveIndex = Mockito.mock(DveIndex.class);
+        Mockito.when(dveMetadataReader.readDveMetadata(dveIndex)).thenReturn(metadata);
 
         TransferItem transferItem = Mockito.mock(TransferItem.class);
         Mockito.when(transferItem.getNbn()).thenReturn("nbn1");
         Mockito.when(transferItem.getOcflObjectVersion()).thenReturn(1);
         Mockito.when(transferItem.getFetchSha1s()).thenReturn(List.of("sha1"));
+        Mockito.when(transferItem.getDveIndex()).thenReturn(dveIndex);
         Mockito.when(transferItem.getLobRequests(Mockito.any(), Mockito.anyString())).thenCallRealMethod();
 
         Mockito.doReturn(transferItem).when(task).createTransferItem(item);
@@ -372,4 +381,227 @@ public class SendToVaultTaskTest extends TestDirFixture {
         // Then
         Mockito.verify(transferItem).moveToErrorBox(Mockito.eq(outboxFailed), Mockito.any(IllegalArgumentException.class));
     }
+
+    @Test
+    public void processItem_should_take_lob_requests_from_sidecar_without_reading_dve_metadata() throws Exception {
+        // Given
+        Path item = testDir.resolve("test.zip");
+        Files.createFile(item);
+        Path currentBatchWorkDir = testDir.resolve("batch");
+        Files.createDirectories(currentBatchWorkDir);
+        Path outboxProcessed = testDir.resolve("processed");
+        Files.createDirectories(outboxProcessed);
+        Path outboxFailed = testDir.resolve("failed");
+        FileService fileService = Mockito.mock(FileService.class);
+        DveMetadataReader dveMetadataReader = Mockito.mock(DveMetadataReader.class);
+        LobStoreClient lobStoreClient = Mockito.mock(LobStoreClient.class);
+        DependenciesReadyCheck readyCheck = Mockito.mock(DependenciesReadyCheck.class);
+        ZipExtractor zipExtractor = Mockito.mock(ZipExtractor.class);
+        BatchJournal batchJournal = Mockito.mock(BatchJournal.class);
+        BatchSealer batchSealer = Mockito.mock(BatchSealer.class);
+
+        var task = Mockito.spy(new SendToVaultTask(
+            testDir, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(1000), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), outboxProcessed, outboxFailed,
+            "msg", List.of(), fileService, zipExtractor, dveMetadataReader, lobStoreClient, "ds1", readyCheck, 100
+        ));
+
+        var request = new TransferRequestDto().dataverseFileId(123L).sha1Sum("sha1").datastation("ds1");
+        TransferItem transferItem = Mockito.mock(TransferItem.class);
+        Mockito.when(transferItem.getNbn()).thenReturn("nbn1");
+        Mockito.when(transferItem.getOcflObjectVersion()).thenReturn(1);
+        Mockito.when(transferItem.hasSidecar()).thenReturn(true);
+        Mockito.when(transferItem.getLobRequests("ds1")).thenReturn(List.of(request));
+
+        Mockito.doReturn(transferItem).when(task).createTransferItem(item);
+        Mockito.doNothing().when(task).addToObjectImportDirectory(Mockito.any(), Mockito.anyInt(), Mockito.any());
+        Mockito.doNothing().when(task).importIfBatchThresholdReached();
+
+        // When
+        task.processItem(item);
+
+        // Then
+        Mockito.verify(lobStoreClient).requestTransfers(List.of(request));
+        Mockito.verifyNoInteractions(dveMetadataReader);
+        Mockito.verify(transferItem, Mockito.never()).getDveIndex();
+    }
+
+    @Test
+    public void processItem_should_not_extract_dve_again_that_was_extracted_before_a_crash() throws Exception {
+        // Given
+        Path item = testDir.resolve("test.zip");
+        Files.createFile(item);
+        Path currentBatchWorkDir = testDir.resolve("batch");
+        Path outboxProcessed = Files.createDirectories(testDir.resolve("processed"));
+        var fileService = new FileServiceImpl();
+        // The DVE was extracted completely, but the service stopped before the DVE was moved to the processed outbox
+        Files.createDirectories(currentBatchWorkDir.resolve("nbn1/v1"));
+        Files.writeString(currentBatchWorkDir.resolve("nbn1/v1/file.txt"), "abc");
+        Files.writeString(currentBatchWorkDir.resolve("nbn1/v1.json"), "{}");
+        var journalBeforeCrash = new BatchJournal(currentBatchWorkDir, fileService);
+        journalBeforeCrash.startExtraction("test.zip", "nbn1", 1);
+        journalBeforeCrash.completeExtraction("test.zip", "nbn1", 1, 3, 1);
+
+        var batchJournal = new BatchJournal(currentBatchWorkDir, fileService);
+        var zipExtractor = Mockito.mock(ZipExtractor.class);
+        var lobStoreClient = Mockito.mock(LobStoreClient.class);
+        var task = Mockito.spy(new SendToVaultTask(
+            testDir, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(1000), null, null, null), batchJournal, Mockito.mock(BatchSealer.class), new CurrentBatchLock(1),
+            outboxProcessed, testDir.resolve("failed"), "msg", List.of(), fileService, zipExtractor, Mockito.mock(DveMetadataReader.class), lobStoreClient, "ds1",
+            Mockito.mock(DependenciesReadyCheck.class), 100
+        ));
+        var request = new TransferRequestDto().dataverseFileId(123L).sha1Sum("sha1").datastation("ds1");
+        TransferItem transferItem = Mockito.mock(TransferItem.class);
+        Mockito.when(transferItem.getNbn()).thenReturn("nbn1");
+        Mockito.when(transferItem.getOcflObjectVersion()).thenReturn(1);
+        Mockito.when(transferItem.hasSidecar()).thenReturn(true);
+        Mockito.when(transferItem.getLobRequests("ds1")).thenReturn(List.of(request));
+        Mockito.doReturn(transferItem).when(task).createTransferItem(item);
+        Mockito.doNothing().when(task).importIfBatchThresholdReached();
+
+        // When
+        task.processItem(item);
+
+        // Then
+        Mockito.verifyNoInteractions(zipExtractor);
+        Mockito.verify(lobStoreClient).requestTransfers(List.of(request));
+        Mockito.verify(transferItem).moveToDir(outboxProcessed, true);
+        assertThat(currentBatchWorkDir.resolve("nbn1/v1/file.txt")).hasContent("abc");
+        assertThat(currentBatchWorkDir.resolve("nbn1/v1.json")).exists();
+        assertThat(batchJournal.getBytes()).isEqualTo(3);
+        assertThat(batchJournal.getFiles()).isEqualTo(1);
+        assertThat(batchJournal.getDves()).containsExactly("test.zip");
+    }
+
+    @Test
+    void addToObjectImportDirectory_should_not_read_manifest_of_dve_with_sidecar_for_first_version_of_object() throws Exception {
+        // Given
+        var dve = testDir.resolve("dataset_v1.zip");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(dve))) {
+            zos.putNextEntry(new ZipEntry("bag/bag-info.txt"));
+            zos.write("Contact-Email: contact@example.org\n".getBytes(StandardCharsets.UTF_8));
+            zos.putNextEntry(new ZipEntry("bag/manifest-sha1.txt"));
+            zos.write("a9993e364706816aba3e25717850c26c9cd0d89d  data/a.txt\n".getBytes(StandardCharsets.UTF_8));
+            zos.putNextEntry(new ZipEntry("bag/metadata/oai-ore.jsonld"));
+            zos.write("{ \"ore:describes\": { \"dansDataVaultMetadata:dansNbn\": \"urn:nbn:nl:ui:13-abc\" } }".getBytes(StandardCharsets.UTF_8));
+        }
+        var fileService = new FileServiceImpl();
+        new TransferItem(dve, fileService).saveSidecar(DveMetadata.builder().dataFileAttributes(List.of()).build());
+        var zipExtractor = Mockito.mock(ZipExtractor.class);
+        Mockito.when(zipExtractor.extract(Mockito.any(DveIndex.class), Mockito.any(), Mockito.any())).thenReturn(new ZipExtractor.Result(1, 3, 0));
+        var batchJournal = Mockito.mock(BatchJournal.class);
+        var currentBatchWorkDir = testDir.resolve("batch");
+
+        var task = new SendToVaultTask(
+            dve, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(1000), null, null, null), batchJournal, Mockito.mock(BatchSealer.class), new CurrentBatchLock(1),
+            testDir.resolve("processed"), testDir.resolve("failed"), "msg", List.of(), fileService, zipExtractor, Mockito.mock(DveMetadataReader.class),
+            Mockito.mock(LobStoreClient.class), "ds1", Mockito.mock(DependenciesReadyCheck.class), 100
+        );
+        var transferItem = Mockito.spy(new TransferItem(dve, fileService));
+        assertThat(transferItem.hasSidecar()).isTrue();
+        // The extraction needs the DVE to be open, but not its manifest
+        var dveIndex = Mockito.spy(new DveIndex(dve, fileService));
+        Mockito.doReturn(dveIndex).when(transferItem).getDveIndex();
+        var field = SendToVaultTask.class.getDeclaredField("currentTransferItem");
+        field.setAccessible(true);
+        field.set(task, transferItem);
+        var objectImportDirectory = currentBatchWorkDir.resolve("urn:nbn:nl:ui:13-abc");
+
+        // When
+        task.addToObjectImportDirectory(dve, 1, objectImportDirectory);
+
+        // Then
+        Mockito.verify(zipExtractor).extract(Mockito.same(dveIndex), Mockito.eq(objectImportDirectory.resolve("v1")), Mockito.same(PayloadDeduplicator.NONE));
+        Mockito.verify(dveIndex, Mockito.never()).getManifestSha1();
+        Mockito.verify(dveIndex, Mockito.never()).readTagFile(Mockito.any());
+        Mockito.verify(dveIndex, Mockito.never()).openTagFile(Mockito.any());
+        dveIndex.close();
+        Mockito.verify(batchJournal).completeExtraction("dataset_v1.zip", "urn:nbn:nl:ui:13-abc", 1, 3, 1);
+        assertThat(currentBatchWorkDir.resolve("urn:nbn:nl:ui:13-abc/v1.json")).exists();
+    }
+
+    @Test
+    void addToObjectImportDirectory_should_abort_extraction_when_version_info_cannot_be_written() throws Exception {
+        // Given
+        var dve = testDir.resolve("dataset_v1.zip");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(dve))) {
+            zos.putNextEntry(new ZipEntry("bag/bag-info.txt"));
+            zos.write("Contact-Email: contact@example.org\n".getBytes(StandardCharsets.UTF_8));
+        }
+        var fileService = new FileServiceImpl();
+        new TransferItem(dve, fileService).saveSidecar(DveMetadata.builder().dataFileAttributes(List.of()).build());
+        var currentBatchWorkDir = testDir.resolve("batch");
+        var objectImportDirectory = currentBatchWorkDir.resolve("urn:nbn:nl:ui:13-abc");
+        var zipExtractor = Mockito.mock(ZipExtractor.class);
+        Mockito.when(zipExtractor.extract(Mockito.any(DveIndex.class), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            Files.createDirectories(objectImportDirectory.resolve("v1"));
+            Files.writeString(objectImportDirectory.resolve("v1/a.txt"), "abc");
+            return new ZipExtractor.Result(1, 3, 0);
+        });
+        var batchJournal = Mockito.mock(BatchJournal.class);
+
+        var task = Mockito.spy(new SendToVaultTask(
+            dve, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(1000), null, null, null), batchJournal, Mockito.mock(BatchSealer.class), new CurrentBatchLock(1),
+            testDir.resolve("processed"), testDir.resolve("failed"), "msg", List.of(), fileService, zipExtractor, Mockito.mock(DveMetadataReader.class),
+            Mockito.mock(LobStoreClient.class), "ds1", Mockito.mock(DependenciesReadyCheck.class), 100
+        ));
+        Mockito.doAnswer(invocation -> {
+            Files.writeString(objectImportDirectory.resolve("v1.json"), "{ \"version-");
+            throw new IOException("No space left on device");
+        }).when(task).createVersionInfoJson(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        var transferItem = new TransferItem(dve, fileService);
+        var field = SendToVaultTask.class.getDeclaredField("currentTransferItem");
+        field.setAccessible(true);
+        field.set(task, transferItem);
+
+        // When / Then
+        assertThatThrownBy(() -> task.addToObjectImportDirectory(dve, 1, objectImportDirectory))
+            .isInstanceOf(IOException.class)
+            .hasMessage("No space left on device");
+        transferItem.close();
+        Mockito.verify(batchJournal).abortExtraction("dataset_v1.zip", "urn:nbn:nl:ui:13-abc", 1);
+        Mockito.verify(batchJournal, Mockito.never()).completeExtraction(Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong());
+        assertThat(objectImportDirectory).doesNotExist();
+    }
+
+    @Test
+    public void importIfBatchThresholdReached_should_send_batch_when_threshold_exceeded() throws Exception {
+        // Given
+        Path currentBatchWorkDir = testDir.resolve("batch");
+        Files.createDirectories(currentBatchWorkDir.resolve("nbn1/v1"));
+        Files.writeString(currentBatchWorkDir.resolve("nbn1/v1/file.txt"), "content");
+        Path dataVaultBatchRoot = testDir.resolve("vault");
+        Files.createDirectories(dataVaultBatchRoot);
+        BatchDispatcher batchDispatcher = Mockito.mock(BatchDispatcher.class);
+        FileService fileService = new FileServiceImpl();
+        var batchJournal = new BatchJournal(currentBatchWorkDir, fileService);
+        var metricRegistry = new MetricRegistry();
+        var batchSealer = new BatchSealer(currentBatchWorkDir, dataVaultBatchRoot, batchJournal, batchDispatcher, fileService, metricRegistry, new CurrentBatchLock(1));
+
+        var task = new SendToVaultTask(
+            testDir, currentBatchWorkDir, new LimitsBatchSealPolicy(DataSize.bytes(1000), null, null, null), batchJournal, batchSealer, new CurrentBatchLock(1), testDir.resolve("processed"), testDir.resolve("failed"),
+            "msg", List.of(), fileService, Mockito.mock(ZipExtractor.class), Mockito.mock(DveMetadataReader.class), Mockito.mock(LobStoreClient.class), "ds1",
+            Mockito.mock(DependenciesReadyCheck.class), 100
+        );
+
+        // When
+        batchJournal.startExtraction("dve1.zip", "nbn2", 1);
+        batchJournal.completeExtraction("dve1.zip", "nbn2", 1, 600, 1);
+        task.importIfBatchThresholdReached();
+
+        // Then
+        Mockito.verifyNoInteractions(batchDispatcher);
+
+        // When
+        batchJournal.startExtraction("dve2.zip", "nbn3", 1);
+        batchJournal.completeExtraction("dve2.zip", "nbn3", 1, 600, 1);
+        task.importIfBatchThresholdReached();
+
+        // Then
+        Mockito.verify(batchDispatcher).submit(Mockito.any());
+        assertThat(currentBatchWorkDir).isEmptyDirectory();
+        assertThat(batchJournal.getBytes()).isZero();
+        assertThat(batchJournal.getDves()).isEmpty();
+        assertThat(batchJournal.getSealedBatch()).isEmpty();
+        assertThat(metricRegistry.counter("nl.knaw.dans.transfer.core.BatchSealer.sealed.bytes").getCount()).isEqualTo(1);
+    }
 }
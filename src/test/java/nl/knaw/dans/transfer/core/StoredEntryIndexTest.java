@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StoredEntryIndexTest extends TestDirFixture {
+
+    @Test
+    public void should_find_data_offset_of_stored_entries_only() throws Exception {
+        var zip = testDir.resolve("dve.zip");
+        try (var out = Files.newOutputStream(zip)) {
+            // Data before the ZIP file, as in self-extracting archives, shifts all offsets
+            out.write("prefix".getBytes(StandardCharsets.UTF_8));
+            try (var zos = new ZipOutputStream(out)) {
+                writeEntry(zos, "base/deflated.txt", "deflated content", false);
+                writeEntry(zos, "base/stored.txt", "stored content", true);
+            }
+        }
+
+        try (var zipFile = new ZipFile(zip.toFile()); var channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+            var index = new StoredEntryIndex(channel);
+            assertThat(index.size()).isEqualTo(1);
+            assertThat(index.findDataOffset(zipFile.getEntry("base/deflated.txt"))).isEmpty();
+
+            var stored = zipFile.getEntry("base/stored.txt");
+            var dataOffset = index.findDataOffset(stored);
+            assertThat(dataOffset).isPresent();
+            var data = ByteBuffer.allocate((int) stored.getSize());
+            channel.read(data, dataOffset.getAsLong());
+            assertThat(new String(data.array(), StandardCharsets.UTF_8)).isEqualTo("stored content");
+        }
+    }
+
+    @Test
+    public void should_fail_when_there_is_no_central_directory() throws Exception {
+        var file = testDir.resolve("not-a-zip");
+        Files.writeString(file, "not a zip file");
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThatThrownBy(() -> new StoredEntryIndex(channel))
+                .isInstanceOf(IOException.class)
+                .hasMessage("End of central directory record not found");
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream zos, String name, String content, boolean stored) throws IOException {
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        var entry = new ZipEntry(name);
+        if (stored) {
+            var crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        zos.putNextEntry(entry);
+        zos.write(bytes);
+        zos.closeEntry();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+public class TagFileReaderTest {
+
+    @Test
+    public void readManifest_should_key_checksums_by_decoded_path() throws Exception {
+        var manifest = new TagFileReader().readManifest(reader("""
+            sha1-file1  data/file 1.txt\r
+            
+            sha1-file2 data/100%25%0Ad.txt
+            """), "manifest-sha1.txt");
+
+        assertThat(manifest)
+            .hasSize(2)
+            .containsEntry("data/file 1.txt", "sha1-file1")
+            .containsEntry("data/100%\nd.txt", "sha1-file2");
+    }
+
+    @Test
+    public void readManifest_should_reject_line_without_path() {
+        assertThatThrownBy(() -> new TagFileReader().readManifest(reader("sha1-file1\n"), "manifest-sha1.txt"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Invalid line in manifest-sha1.txt: sha1-file1");
+    }
+
+    @Test
+    public void readFetch_should_keep_order_and_unknown_lengths() throws Exception {
+        var entries = new TagFileReader().readFetch(reader("""
+            http://example.com/file2 100 data/file2.txt
+            http://example.com/file1 - data/file1.txt
+            """));
+
+        assertThat(entries).containsExactly(
+            new FetchEntry("http://example.com/file2", 100L, "data/file2.txt"),
+            new FetchEntry("http://example.com/file1", null, "data/file1.txt"));
+    }
+
+    @Test
+    public void readPidMapping_should_stream_mappings_and_skip_dataset_entry() throws Exception {
+        var mappings = new LinkedHashMap<String, String>();
+        new TagFileReader().readPidMapping(reader("""
+            doi:10.5072/FK2/ABCDEF data/
+            https://ds.example.org/file.xhtml?fileId=3 data/file 1.txt
+            
+            urn:uuid:6f080531-b7f0-4bd8-8c37-448ae8bdbe1f		data/subdir/file2.txt
+            """), mappings::put);
+
+        assertThat(mappings).containsExactly(
+            entry("data/file 1.txt", "https://ds.example.org/file.xhtml?fileId=3"),
+            entry("data/subdir/file2.txt", "urn:uuid:6f080531-b7f0-4bd8-8c37-448ae8bdbe1f"));
+    }
+
+    @Test
+    public void readPidMapping_should_reject_line_without_path() {
+        assertThatThrownBy(() -> new TagFileReader().readPidMapping(reader("urn:uuid:6f080531-b7f0-4bd8-8c37-448ae8bdbe1f\n"), (path, pid) -> {
+        }))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Invalid line in metadata/pid-mapping.txt: urn:uuid:6f080531-b7f0-4bd8-8c37-448ae8bdbe1f");
+    }
+
+    private static BufferedReader reader(String content) {
+        return new BufferedReader(new StringReader(content));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TargetDirIndexTest extends TestDirFixture {
+    private static final String NBN = "urn:nbn:nl:ui:13-abc-def";
+
+    private final AtomicLong millis = new AtomicLong(1_000_000L);
+    private final Clock clock = new Clock() {
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+    };
+
+    @Test
+    public void parseNbn_should_strip_random_suffix() {
+        assertThat(TargetDirIndex.parseNbn(NBN + "-QWERTY")).contains(NBN);
+        assertThat(TargetDirIndex.parseNbn(NBN + "-QWERTY.tmp")).isEmpty();
+        assertThat(TargetDirIndex.parseNbn(NBN + "-qwerty")).isEmpty();
+        assertThat(TargetDirIndex.parseNbn("dve.zip")).isEmpty();
+    }
+
+    @Test
+    public void should_find_directories_that_exist_when_outbox_is_first_listed() throws Exception {
+        var outbox = Files.createDirectories(testDir.resolve("outbox"));
+        var dir = Files.createDirectories(outbox.resolve(NBN + "-QWERTY"));
+        Files.createDirectories(outbox.resolve("urn:nbn:nl:ui:13-other-ASDFGH.tmp"));
+        Files.createFile(outbox.resolve("urn:nbn:nl:ui:13-file-ZXCVBN"));
+        var index = new TargetDirIndex(Duration.ofMinutes(1), clock);
+
+        assertThat(index.find(outbox, NBN)).contains(dir);
+        assertThat(index.find(outbox, "urn:nbn:nl:ui:13-other")).isEmpty();
+        assertThat(index.find(outbox, "urn:nbn:nl:ui:13-file")).isEmpty();
+        assertThat(index.find(outbox, "urn:nbn:nl:ui:13-abc")).isEmpty();
+    }
+
+    @Test
+    public void should_track_own_changes_and_pick_up_other_changes_after_reconcile_interval() throws Exception {
+        var outbox = Files.createDirectories(testDir.resolve("outbox"));
+        var index = new TargetDirIndex(Duration.ofMinutes(1), clock);
+        assertThat(index.find(outbox, NBN)).isEmpty();
+
+        var own = Files.createDirectories(outbox.resolve(NBN + "-QWERTY"));
+        index.put(outbox, NBN, own);
+        assertThat(index.find(outbox, NBN)).contains(own);
+        index.remove(own);
+        assertThat(index.find(outbox, NBN)).isEmpty();
+
+        // Created by someone else: not seen until the outbox is listed again
+        var other = Files.createDirectories(outbox.resolve(NBN + "-ASDFGH"));
+        assertThat(index.find(outbox, NBN)).isEmpty();
+        millis.addAndGet(Duration.ofMinutes(1).toMillis());
+        assertThat(index.find(outbox, NBN)).contains(other);
+    }
+
+    @Test
+    public void remove_should_not_forget_another_directory_for_the_same_nbn() throws Exception {
+        var outbox = Files.createDirectories(testDir.resolve("outbox"));
+        var index = new TargetDirIndex(Duration.ofMinutes(1), clock);
+        var current = Files.createDirectories(outbox.resolve(NBN + "-QWERTY"));
+        index.put(outbox, NBN, current);
+
+        index.remove(outbox.resolve(NBN + "-ASDFGH"));
+
+        assertThat(index.find(outbox, NBN)).contains(current);
+    }
+
+    @Test
+    public void find_should_throw_if_outbox_cannot_be_listed() {
+        var index = new TargetDirIndex(Duration.ofMinutes(1), clock);
+
+        assertThatThrownBy(() -> index.find(testDir.resolve("does-not-exist"), NBN))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("Unable to list directories");
+    }
+}
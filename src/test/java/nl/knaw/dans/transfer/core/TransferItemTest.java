@@ -24,10 +24,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 public class TransferItemTest extends TestDirFixture {
     private final FileService fileService = new FileServiceImpl();
@@ -343,6 +349,113 @@ public class TransferItemTest extends TestDirFixture {
     }
 
 
+    @Test
+    public void saveSidecar_should_write_properties_that_are_read_back_without_opening_the_dve() throws Exception {
+        // Given
+        var sourceDir = testDir.resolve("transfer-item-sidecar");
+        Files.createDirectories(sourceDir);
+        var dve = sourceDir.resolve("dataset_v1.zip");
+        var fetchTxt = "http://example.com/file1 100 data/file1\n";
+        var manifestSha1 = "sha1-value-1  data/file1\n" +
+                           "sha1-value-2  data/file2\n";
+        createDveZip(dve, "Contact Name", "contact@example.org", "urn:nbn:nl:ui:13-sidecar", "doi:10.5072/FK2/ABCDEF:1.0", "2.1", null, null, fetchTxt, manifestSha1);
+        var metadata = DveMetadata.builder()
+            .dataFileAttributes(List.of(
+                new DataFileMetadata("data/file1", URI.create("https://dv.example.org/file.xhtml?fileId=11"), "sha1-value-1", 100),
+                new DataFileMetadata("data/file2", URI.create("https://dv.example.org/file.xhtml?fileId=12"), "sha1-value-2", 200)))
+            .build();
+        new TransferItem(dve, fileService).saveSidecar(metadata);
+
+        // When
+        var spiedFileService = spy(new FileServiceImpl());
+        var item = new TransferItem(dve, spiedFileService);
+
+        // Then
+        assertThat(item.hasSidecar()).isTrue();
+        assertThat(item.getNbn()).isEqualTo("urn:nbn:nl:ui:13-sidecar");
+        assertThat(item.getContactName()).isEqualTo("Contact Name");
+        assertThat(item.getContactEmail()).isEqualTo("contact@example.org");
+        assertThat(item.getDataversePidVersion()).contains("doi:10.5072/FK2/ABCDEF:1.0");
+        assertThat(item.getHasOrganizationalIdentifierVersion()).contains("2.1");
+        assertThat(item.getDeaccessionedReason()).isEmpty();
+        assertThat(item.getFetchSha1s()).containsExactly("sha1-value-1");
+        assertThat(item.getLobRequests("ds1")).singleElement().satisfies(request -> {
+            assertThat(request.getDataverseFileId()).isEqualTo(11L);
+            assertThat(request.getSha1Sum()).isEqualTo("sha1-value-1");
+            assertThat(request.getDatastation()).isEqualTo("ds1");
+        });
+        verify(spiedFileService, never()).openZipFile(any());
+    }
+
+    @Test
+    public void hasSidecar_should_return_false_when_sidecar_is_stale() throws Exception {
+        // Given
+        var sourceDir = testDir.resolve("transfer-item-stale-sidecar");
+        Files.createDirectories(sourceDir);
+        var dve = sourceDir.resolve("dataset_v1.zip");
+        createDveZip(dve, null, "contact@example.org", "urn:nbn:nl:ui:13-old", null, null);
+        new TransferItem(dve, fileService).saveSidecar(DveMetadata.builder().dataFileAttributes(List.of()).build());
+
+        // Replace the DVE with one of a different size
+        Files.delete(dve);
+        createDveZip(dve, null, "contact@example.org", "urn:nbn:nl:ui:13-replaced-by-a-longer-nbn", null, null);
+
+        // When
+        var item = new TransferItem(dve, fileService);
+
+        // Then
+        assertThat(item.hasSidecar()).isFalse();
+        assertThat(item.getNbn()).isEqualTo("urn:nbn:nl:ui:13-replaced-by-a-longer-nbn");
+    }
+
+    @Test
+    public void hasSidecar_should_return_false_when_dve_was_replaced_by_one_of_the_same_size() throws Exception {
+        // Given
+        var sourceDir = testDir.resolve("transfer-item-same-size-sidecar");
+        Files.createDirectories(sourceDir);
+        var dve = sourceDir.resolve("dataset_v1.zip");
+        createDveZip(dve, null, "contact@example.org", "urn:nbn:nl:ui:13-old", null, null);
+        new TransferItem(dve, fileService).saveSidecar(DveMetadata.builder().dataFileAttributes(List.of()).build());
+        var size = Files.size(dve);
+        var lastModified = Files.getLastModifiedTime(dve);
+
+        // Replace the DVE with one of the same size
+        Files.delete(dve);
+        createDveZip(dve, null, "contact@example.org", "urn:nbn:nl:ui:13-new", null, null);
+        Files.setLastModifiedTime(dve, FileTime.fromMillis(lastModified.toMillis() + 1000));
+
+        // When
+        var item = new TransferItem(dve, fileService);
+
+        // Then
+        assertThat(Files.size(dve)).isEqualTo(size);
+        assertThat(item.hasSidecar()).isFalse();
+        assertThat(item.getNbn()).isEqualTo("urn:nbn:nl:ui:13-new");
+    }
+
+    @Test
+    public void moveToDir_should_move_sidecar_along_with_dve() throws Exception {
+        // Given
+        var sourceDir = testDir.resolve("transfer-item-move-sidecar");
+        var targetDir = testDir.resolve("transfer-item-move-sidecar-target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        var dve = sourceDir.resolve("dataset_v1.zip");
+        createDveZip(dve, null, "contact@example.org", "urn:nbn:nl:ui:13-move", null, null);
+        new TransferItem(dve, fileService).saveSidecar(DveMetadata.builder().dataFileAttributes(List.of()).build());
+        var item = new TransferItem(dve, fileService);
+
+        // When
+        item.moveToDir(targetDir, true);
+
+        // Then
+        var movedDve = targetDir.resolve("urn:nbn:nl:ui:13-move_v1.zip");
+        assertThat(movedDve).exists();
+        assertThat(DveSidecar.pathFor(movedDve)).exists();
+        assertThat(DveSidecar.pathFor(dve)).doesNotExist();
+        assertThat(new TransferItem(movedDve, fileService).hasSidecar()).isTrue();
+    }
+
     /**
      * Helper method to create a DVE zip file for testing purposes. Creates a minimal BagIt structure with bag-info.txt containing contact information and optionally an oai-ore.jsonld metadata file
      * with NBN information.
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.transfer.TestDirFixture;
+import nl.knaw.dans.transfer.config.CustomPropertyConfig;
+import nl.knaw.dans.transfer.config.DatasetVersionCustomPropertyConfig;
+import nl.knaw.dans.transfer.config.DeaccessionedCustomPropertyConfig;
+import nl.knaw.dans.transfer.config.FixedValueCustomPropertyConfig;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VersionInfoWriterTest extends TestDirFixture {
+
+    private static FixedValueCustomPropertyConfig packagingFormat() {
+        var config = new FixedValueCustomPropertyConfig();
+        config.setName("packaging-format");
+        config.setValue("DANS RDA BagPack Profile/1.0.0");
+        return config;
+    }
+
+    private static DatasetVersionCustomPropertyConfig datasetVersion(String source, boolean failIfMissing) {
+        var config = new DatasetVersionCustomPropertyConfig();
+        config.setName("dataset-version");
+        config.setSource(source);
+        config.setFailIfMissing(failIfMissing);
+        return config;
+    }
+
+    private static DeaccessionedCustomPropertyConfig deaccessioned() {
+        var config = new DeaccessionedCustomPropertyConfig();
+        config.setName("deaccessioned");
+        return config;
+    }
+
+    private Map<?, ?> readJson(Path file) throws Exception {
+        try (var is = Files.newInputStream(file)) {
+            return new ObjectMapper().readValue(is, Map.class);
+        }
+    }
+
+    @Test
+    public void should_plan_only_the_fields_needed_by_the_configured_properties() {
+        var writer = new VersionInfoWriter(List.of(packagingFormat(), datasetVersion("dansDataversePidVersion", false)), new FileServiceImpl());
+
+        assertThat(writer.getRequiredFields()).containsExactlyInAnyOrder(DveView.Field.FETCH_SHA1S, DveView.Field.DATAVERSE_PID_VERSION);
+    }
+
+    @Test
+    public void should_not_read_metadata_that_no_property_needs() throws Exception {
+        var writer = new VersionInfoWriter(List.of(packagingFormat()), new FileServiceImpl());
+        var transferItem = Mockito.mock(TransferItem.class);
+        Mockito.when(transferItem.getFetchSha1s()).thenReturn(List.of());
+        var versionDirectory = Files.createDirectories(testDir.resolve("v1"));
+
+        writer.write(versionDirectory, transferItem, "user", "email", "message");
+
+        Mockito.verify(transferItem, Mockito.never()).getDataversePidVersion();
+        Mockito.verify(transferItem, Mockito.never()).getHasOrganizationalIdentifierVersion();
+        Mockito.verify(transferItem, Mockito.never()).getDeaccessionedReason();
+        var properties = (Map<?, ?>) readJson(testDir.resolve("v1.json")).get("object-version-properties");
+        assertThat(properties).containsOnly(Map.entry("packaging-format", "DANS RDA BagPack Profile/1.0.0"));
+    }
+
+    @Test
+    public void should_evaluate_all_properties_against_one_view() throws Exception {
+        var writer = new VersionInfoWriter(List.<CustomPropertyConfig> of(
+            packagingFormat(),
+            datasetVersion("dansDataversePidVersion", true),
+            deaccessioned()), new FileServiceImpl());
+        var transferItem = Mockito.mock(TransferItem.class);
+        Mockito.when(transferItem.getDataversePidVersion()).thenReturn(Optional.of("3.1"));
+        Mockito.when(transferItem.getDeaccessionedReason()).thenReturn(Optional.of("Legal issue"));
+        Mockito.when(transferItem.getFetchSha1s()).thenReturn(List.of("sha1-1"));
+        var versionDirectory = Files.createDirectories(testDir.resolve("v2"));
+
+        writer.write(versionDirectory, transferItem, "\tJohn Doe\n", " john@example.com\r\n", "message");
+
+        Mockito.verify(transferItem, Mockito.times(1)).getDataversePidVersion();
+        Mockito.verify(transferItem, Mockito.times(1)).getDeaccessionedReason();
+        Mockito.verify(transferItem, Mockito.times(1)).getFetchSha1s();
+        var root = readJson(testDir.resolve("v2.json"));
+        var user = (Map<?, ?>) ((Map<?, ?>) root.get("version-info")).get("user");
+        assertThat(user.get("name")).isEqualTo("John Doe");
+        assertThat(user.get("email")).isEqualTo("john@example.com");
+        var properties = (Map<?, ?>) root.get("object-version-properties");
+        assertThat(properties.get("dataset-version")).isEqualTo("3.1");
+        assertThat(properties.get("deaccessioned")).isEqualTo(Map.of("reason", "Legal issue"));
+        assertThat(((Map<?, ?>) properties.get("external-large-objects")).get("lobs")).isEqualTo(List.of("sha1-1"));
+    }
+
+    @Test
+    public void should_fail_if_required_property_is_missing() throws Exception {
+        var writer = new VersionInfoWriter(List.of(datasetVersion("Has-Organizational-Identifier-Version", true)), new FileServiceImpl());
+        var transferItem = Mockito.mock(TransferItem.class);
+        Mockito.when(transferItem.getHasOrganizationalIdentifierVersion()).thenReturn(Optional.empty());
+        Mockito.when(transferItem.getFetchSha1s()).thenReturn(List.of());
+        var versionDirectory = Files.createDirectories(testDir.resolve("v1"));
+
+        assertThatThrownBy(() -> writer.write(versionDirectory, transferItem, "user", "email", "message"))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("Has-Organizational-Identifier-Version");
+    }
+
+    @Test
+    public void removeNewlinesAndTabs_should_match_regex_replacement() {
+        for (var value : List.of("", "plain", "  a\tb\nc\r  ", "\n\t\r", " x \n y ")) {
+            assertThat(VersionInfoWriter.removeNewlinesAndTabs(value)).isEqualTo(value.replaceAll("[\\n\\t\\r]", "").trim());
+        }
+    }
+}
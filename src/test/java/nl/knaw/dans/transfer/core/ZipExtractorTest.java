@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2025 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.transfer.core;
+
+import nl.knaw.dans.transfer.TestDirFixture;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ZipExtractorTest extends TestDirFixture {
+
+    @Test
+    public void should_extract_large_and_small_files() throws Exception {
+        var zip = testDir.resolve("dve.zip");
+        var large = new byte[10_000];
+        Arrays.fill(large, (byte) 'x');
+        try (var zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            zos.putNextEntry(new ZipEntry("base/"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("base/data/large.bin"));
+            zos.write(large);
+            zos.closeEntry();
+            for (int i = 0; i < 20; i++) {
+                zos.putNextEntry(new ZipEntry("base/data/sub/small-" + i + ".txt"));
+                zos.write(("file " + i).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry("base/empty/"));
+            zos.closeEntry();
+        }
+
+        var target = testDir.resolve("v1");
+        new ZipExtractor(new FileServiceImpl(), 4, 1000).extract(zip, target);
+
+        assertThat(target.resolve("base/data/large.bin")).hasBinaryContent(large);
+        for (int i = 0; i < 20; i++) {
+            assertThat(target.resolve("base/data/sub/small-" + i + ".txt")).hasContent("file " + i);
+        }
+        assertThat(target.resolve("base/empty")).isEmptyDirectory();
+    }
+
+    @Test
+    public void should_extract_stored_and_deflated_files() throws Exception {
+        var zip = testDir.resolve("dve.zip");
+        var content = new byte[5000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        try (var zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (int i = 0; i < 10; i++) {
+                var entry = new ZipEntry("base/data/file-" + i + ".bin");
+                if (i % 2 == 0) {
+                    var crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCompressedSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zos.putNextEntry(entry);
+                zos.write(content);
+                zos.closeEntry();
+            }
+        }
+
+        var target = testDir.resolve("v1");
+        new ZipExtractor(new FileServiceImpl(), 3, 4096).extract(zip, target);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(target.resolve("base/data/file-" + i + ".bin")).hasBinaryContent(content);
+        }
+    }
+
+    @Test
+    public void should_extract_test_dve() throws Exception {
+        var dve = Path.of("src/test/resources/test-dves/valid/doi-10-5072-dar-os2nwkv1.0.zip");
+        var target = testDir.resolve("v1");
+
+        new ZipExtractor(new FileServiceImpl(), 2, 1024).extract(dve, target);
+
+        try (var index = new DveIndex(dve, new FileServiceImpl())) {
+            var entry = index.findEntry("data/Archeology-site-cal-poly-humboldt.jpg").orElseThrow();
+            assertThat(target.resolve(entry.getName())).hasSize(1240972L);
+        }
+    }
+
+    @Test
+    public void should_extract_dve_through_zip_file_of_its_index() throws Exception {
+        var dve = Path.of("src/test/resources/test-dves/valid/doi-10-5072-dar-os2nwkv1.0.zip");
+        var target = testDir.resolve("v1");
+        var fileService = Mockito.spy(new FileServiceImpl());
+
+        try (var index = new DveIndex(dve, fileService)) {
+            var result = new ZipExtractor(fileService, 2, 1024).extract(index, target, PayloadDeduplicator.NONE);
+
+            var entry = index.findEntry("data/Archeology-site-cal-poly-humboldt.jpg").orElseThrow();
+            assertThat(target.resolve(entry.getName())).hasSize(1240972L);
+            assertThat(result.getFileCount()).isPositive();
+        }
+        Mockito.verify(fileService, Mockito.times(1)).openZipFile(dve);
+    }
+
+    @Test
+    public void should_reject_entry_outside_of_target_directory() throws Exception {
+        var zip = testDir.resolve("dve.zip");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            zos.putNextEntry(new ZipEntry("base/../../evil.txt"));
+            zos.write("evil".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        var target = testDir.resolve("v1");
+        assertThatThrownBy(() -> new ZipExtractor(new FileServiceImpl(), 2, 1000).extract(zip, target))
+            .isInstanceOf(IOException.class)
+            .hasMessage("ZIP entry is outside of the target directory: base/../../evil.txt");
+        assertThat(testDir.resolve("evil.txt")).doesNotExist();
+    }
+}
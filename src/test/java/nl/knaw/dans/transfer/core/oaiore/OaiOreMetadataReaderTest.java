@@ -15,116 +15,126 @@
  */
 package nl.knaw.dans.transfer.core.oaiore;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipFile;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class OaiOreMetadataReaderTest {
+    private static final String MANUAL_TEST_JSON = """
+        {
+          "dcterms:modified": "2025-05-19",
+          "dcterms:creator": "DANS Data Station Archaeology (dev)",
+          "@type": "ore:ResourceMap",
+          "schema:additionalType": "Dataverse OREMap Format v1.0.0",
+          "dvcore:generatedBy": {
+            "@type": "schema:SoftwareApplication",
+            "schema:name": "Dataverse",
+            "schema:version": "6.3 build DANS-DataStation-PATCH-10",
+            "schema:url": "https://github.com/iqss/dataverse"
+          },
+          "@id": "https://dev.archaeology.datastations.nl/api/datasets/export?exporter=OAI_ORE&persistentId=https://doi.org/10.5072/DAR/ZZJH97",
+          "ore:describes": {
+            "citation:datasetContact": {
+              "citation:datasetContactName": "Admin, Dataverse",
+              "citation:datasetContactAffiliation": "Dataverse.org",
+              "citation:datasetContactEmail": "dataverse@mailinator.com"
+            },
+            "author": {
+              "citation:authorName": "Admin, Dataverse",
+              "citation:authorAffiliation": "Dataverse.org"
+            },
+            "citation:dsDescription": {
+              "citation:dsDescriptionValue": "Test"
+            },
+            "dansDataVaultMetadata:dansBagId": "urn:uuid:8f3a31bb-90c2-4c34-a101-3e5028845596",
+            "dansRelationMetadata:dansAudience": {
+              "@id": "https://www.narcis.nl/classification/D37000",
+              "termName": [
+                {
+                  "lang": "nl",
+                  "value": "Archeologie"
+                },
+                {
+                  "lang": "en",
+                  "value": "Archaeology"
+                }
+              ],
+              "vocabularyUri": "https://www.narcis.nl/classification/"
+            },
+            "dansDataVaultMetadata:dansNbn": "urn:nbn:nl:ui:13-307ab602-abfa-44c0-b35b-fd75e97105a4",
+            "dateOfDeposit": "2025-04-08",
+            "citation:depositor": "Admin, Dataverse",
+            "dansRights:dansRightsHolder": "DANS",
+            "dansRights:dansMetadataLanguage": "Abkhaz",
+            "citation:subtitle": "y",
+            "subject": [
+              "Agricultural Sciences",
+              "Arts and Humanities"
+            ],
+            "dansRights:dansPersonalDataPresent": "No",
+            "dansDataVaultMetadata:dansDataversePid": "doi:10.5072/DAR/ZZJH97",
+            "dansDataVaultMetadata:dansDataversePidVersion": "2.0",
+            "title": "Manual Test",
+            "@id": "https://doi.org/10.5072/DAR/ZZJH97",
+            "@type": [
+              "ore:Aggregation",
+              "schema:Dataset"
+            ],
+            "schema:version": "2.0",
+            "schema:name": "Manual Test",
+            "schema:dateModified": "2025-05-19 16:33:04.309",
+            "schema:datePublished": "2025-04-08",
+            "schema:creativeWorkStatus": "RELEASED",
+            "schema:license": "http://creativecommons.org/publicdomain/zero/1.0",
+            "dvcore:fileTermsOfAccess": {
+              "dvcore:fileRequestAccess": true
+            },
+            "schema:includedInDataCatalog": "DANS Data Station Archaeology (dev)",
+            "schema:isPartOf": {
+              "schema:name": "DANS Data Station Archaeology (dev)",
+              "@id": "https://dev.archaeology.datastations.nl/dataverse/root",
+              "schema:description": "<p>This Data Station allows you to deposit and search for data within the field of Archaeology.<BR> If you want to deposit data, please consult <a href=\\"https://dans.knaw.nl/en/selection-policy-dans-data-stations/\\">the selection policy</a> of the DANS Data Stations.</p>"
+            },
+            "ore:aggregates": [],
+            "schema:hasPart": []
+          },
+          "@context": {
+            "author": "http://purl.org/dc/terms/creator",
+            "citation": "https://dataverse.org/schema/citation/",
+            "content": "@value",
+            "dansDataVaultMetadata": "https://schemas.dans.knaw.nl/metadatablock/dansDataVaultMetadata#",
+            "dansRelationMetadata": "https://schemas.dans.knaw.nl/metadatablock/dansRelationMetadata#",
+            "dansRights": "https://dev.archaeology.datastations.nl/schema/dansRights#",
+            "dateOfDeposit": "http://purl.org/dc/terms/dateSubmitted",
+            "dcterms": "http://purl.org/dc/terms/",
+            "dvcore": "https://dataverse.org/schema/core#",
+            "lang": "@language",
+            "ore": "http://www.openarchives.org/ore/terms/",
+            "schema": "http://schema.org/",
+            "scheme": "http://www.w3.org/2004/02/skos/core#inScheme",
+            "subject": "http://purl.org/dc/terms/subject",
+            "termName": "https://schema.org/name",
+            "title": "http://purl.org/dc/terms/title",
+            "value": "@value",
+            "vocabularyName": "https://dataverse.org/schema/vocabularyName",
+            "vocabularyUri": "https://dataverse.org/schema/vocabularyUri"
+          }
+        }
+        """;
 
     @Test
     public void testReadMetadata() throws Exception {
         var reader = new OaiOreMetadataReader();
-        String json = """
-            {
-              "dcterms:modified": "2025-05-19",
-              "dcterms:creator": "DANS Data Station Archaeology (dev)",
-              "@type": "ore:ResourceMap",
-              "schema:additionalType": "Dataverse OREMap Format v1.0.0",
-              "dvcore:generatedBy": {
-                "@type": "schema:SoftwareApplication",
-                "schema:name": "Dataverse",
-                "schema:version": "6.3 build DANS-DataStation-PATCH-10",
-                "schema:url": "https://github.com/iqss/dataverse"
-              },
-              "@id": "https://dev.archaeology.datastations.nl/api/datasets/export?exporter=OAI_ORE&persistentId=https://doi.org/10.5072/DAR/ZZJH97",
-              "ore:describes": {
-                "citation:datasetContact": {
-                  "citation:datasetContactName": "Admin, Dataverse",
-                  "citation:datasetContactAffiliation": "Dataverse.org",
-                  "citation:datasetContactEmail": "dataverse@mailinator.com"
-                },
-                "author": {
-                  "citation:authorName": "Admin, Dataverse",
-                  "citation:authorAffiliation": "Dataverse.org"
-                },
-                "citation:dsDescription": {
-                  "citation:dsDescriptionValue": "Test"
-                },
-                "dansDataVaultMetadata:dansBagId": "urn:uuid:8f3a31bb-90c2-4c34-a101-3e5028845596",
-                "dansRelationMetadata:dansAudience": {
-                  "@id": "https://www.narcis.nl/classification/D37000",
-                  "termName": [
-                    {
-                      "lang": "nl",
-                      "value": "Archeologie"
-                    },
-                    {
-                      "lang": "en",
-                      "value": "Archaeology"
-                    }
-                  ],
-                  "vocabularyUri": "https://www.narcis.nl/classification/"
-                },
-                "dansDataVaultMetadata:dansNbn": "urn:nbn:nl:ui:13-307ab602-abfa-44c0-b35b-fd75e97105a4",
-                "dateOfDeposit": "2025-04-08",
-                "citation:depositor": "Admin, Dataverse",
-                "dansRights:dansRightsHolder": "DANS",
-                "dansRights:dansMetadataLanguage": "Abkhaz",
-                "citation:subtitle": "y",
-                "subject": [
-                  "Agricultural Sciences",
-                  "Arts and Humanities"
-                ],
-                "dansRights:dansPersonalDataPresent": "No",
-                "dansDataVaultMetadata:dansDataversePid": "doi:10.5072/DAR/ZZJH97",
-                "dansDataVaultMetadata:dansDataversePidVersion": "2.0",
-                "title": "Manual Test",
-                "@id": "https://doi.org/10.5072/DAR/ZZJH97",
-                "@type": [
-                  "ore:Aggregation",
-                  "schema:Dataset"
-                ],
-                "schema:version": "2.0",
-                "schema:name": "Manual Test",
-                "schema:dateModified": "2025-05-19 16:33:04.309",
-                "schema:datePublished": "2025-04-08",
-                "schema:creativeWorkStatus": "RELEASED",
-                "schema:license": "http://creativecommons.org/publicdomain/zero/1.0",
-                "dvcore:fileTermsOfAccess": {
-                  "dvcore:fileRequestAccess": true
-                },
-                "schema:includedInDataCatalog": "DANS Data Station Archaeology (dev)",
-                "schema:isPartOf": {
-                  "schema:name": "DANS Data Station Archaeology (dev)",
-                  "@id": "https://dev.archaeology.datastations.nl/dataverse/root",
-                  "schema:description": "<p>This Data Station allows you to deposit and search for data within the field of Archaeology.<BR> If you want to deposit data, please consult <a href=\\"https://dans.knaw.nl/en/selection-policy-dans-data-stations/\\">the selection policy</a> of the DANS Data Stations.</p>"
-                },
-                "ore:aggregates": [],
-                "schema:hasPart": []
-              },
-              "@context": {
-                "author": "http://purl.org/dc/terms/creator",
-                "citation": "https://dataverse.org/schema/citation/",
-                "content": "@value",
-                "dansDataVaultMetadata": "https://schemas.dans.knaw.nl/metadatablock/dansDataVaultMetadata#",
-                "dansRelationMetadata": "https://schemas.dans.knaw.nl/metadatablock/dansRelationMetadata#",
-                "dansRights": "https://dev.archaeology.datastations.nl/schema/dansRights#",
-                "dateOfDeposit": "http://purl.org/dc/terms/dateSubmitted",
-                "dcterms": "http://purl.org/dc/terms/",
-                "dvcore": "https://dataverse.org/schema/core#",
-                "lang": "@language",
-                "ore": "http://www.openarchives.org/ore/terms/",
-                "schema": "http://schema.org/",
-                "scheme": "http://www.w3.org/2004/02/skos/core#inScheme",
-                "subject": "http://purl.org/dc/terms/subject",
-                "termName": "https://schema.org/name",
-                "title": "http://purl.org/dc/terms/title",
-                "value": "@value",
-                "vocabularyName": "https://dataverse.org/schema/vocabularyName",
-                "vocabularyUri": "https://dataverse.org/schema/vocabularyUri"
-              }
-            }
-            """;
+        String json = MANUAL_TEST_JSON;
         var attributes = reader.readMetadata(json);
 
         assertThat(attributes.getMetadata()).isEqualTo(json);
@@ -137,5 +147,117 @@ public class OaiOreMetadataReaderTest {
         assertThat(attributes.getExporterVersion()).isEqualTo("6.3 build DANS-DataStation-PATCH-10");
     }
 
+    @Test
+    public void document_should_expose_values_by_compact_name() {
+        var document = OaiOreDocument.parse(MANUAL_TEST_JSON);
+
+        assertThat(document.getNbn()).isEqualTo("urn:nbn:nl:ui:13-307ab602-abfa-44c0-b35b-fd75e97105a4");
+        assertThat(document.getDataversePidVersion()).isEqualTo("2.0");
+        assertThat(document.getDeaccessionedReason()).isEmpty();
+    }
+
+    @Test
+    public void document_should_expose_deaccessioned_reason() {
+        var deaccessioned = OaiOreDocument.parse(MANUAL_TEST_JSON.replace("\"schema:creativeWorkStatus\": \"RELEASED\"",
+            "\"schema:creativeWorkStatus\": { \"schema:name\": \"DEACCESSIONED\", \"dvcore:reason\": \"Duplicate\" }"));
+        var withoutReason = OaiOreDocument.parse(MANUAL_TEST_JSON.replace("\"schema:creativeWorkStatus\": \"RELEASED\"",
+            "\"schema:creativeWorkStatus\": { \"schema:name\": \"DEACCESSIONED\" }"));
+
+        assertThat(deaccessioned.getDeaccessionedReason()).contains("Duplicate");
+        assertThat(withoutReason.getDeaccessionedReason()).contains("N/a");
+    }
+
+    @Test
+    public void reading_from_parsed_document_should_give_same_result_as_reading_from_json() {
+        var reader = new OaiOreMetadataReader();
+
+        assertThat(reader.readMetadata(OaiOreDocument.parse(MANUAL_TEST_JSON))).isEqualTo(reader.readMetadata(MANUAL_TEST_JSON));
+    }
+
+    @Test
+    public void streaming_reader_should_give_same_result_as_jena_for_test_dves() throws Exception {
+        List<Path> dves;
+        try (var files = Files.list(Path.of("src/test/resources/test-dves/valid"))) {
+            dves = files.filter(p -> p.getFileName().toString().endsWith(".zip")).sorted().toList();
+        }
+        assertThat(dves).isNotEmpty();
+
+        for (var dve : dves) {
+            var json = readOaiOre(dve);
+
+            var fromStreaming = new StreamingOaiOreMetadataReader().readMetadata(json);
+
+            assertThat(fromStreaming).as(dve.toString()).contains(new JenaOaiOreMetadataReader().readMetadata(json));
+            assertThat(fromStreaming.get().getNbn()).startsWith("urn:nbn:nl:ui:13-");
+        }
+    }
 
+    @Test
+    public void streaming_reader_should_give_same_result_as_jena_for_manual_test_json() {
+        var fromStreaming = new StreamingOaiOreMetadataReader().readMetadata(MANUAL_TEST_JSON);
+
+        assertThat(fromStreaming).contains(new JenaOaiOreMetadataReader().readMetadata(MANUAL_TEST_JSON));
+    }
+
+    @Test
+    public void streaming_reader_should_not_support_term_that_is_not_recognizable_by_its_local_name() {
+        var json = MANUAL_TEST_JSON
+            .replace("\"dansDataVaultMetadata:dansNbn\":", "\"nbn\":")
+            .replace("\"author\": \"http://purl.org/dc/terms/creator\",", "\"author\": \"http://purl.org/dc/terms/creator\", \"nbn\": \"dansDataVaultMetadata:dansNbn\",");
+
+        assertThat(new StreamingOaiOreMetadataReader().readMetadata(json)).isEmpty();
+        // Falls back to Jena
+        assertThat(new OaiOreMetadataReader().readMetadata(json).getNbn()).isEqualTo("urn:nbn:nl:ui:13-307ab602-abfa-44c0-b35b-fd75e97105a4");
+    }
+
+    @Test
+    public void streaming_reader_should_not_support_remote_context() {
+        var json = "{ \"@context\": \"https://example.org/context.jsonld\", \"@type\": \"ore:ResourceMap\" }";
+
+        assertThat(new StreamingOaiOreMetadataReader().readMetadata(json)).isEmpty();
+    }
+
+    @Test
+    public void streaming_reader_should_reject_multiple_values_like_jena() {
+        var json = MANUAL_TEST_JSON.replace("\"title\": \"Manual Test\",", "\"title\": [\"Manual Test\", \"Other Title\"],");
+
+        assertThatThrownBy(() -> new StreamingOaiOreMetadataReader().readMetadata(json))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Expected a single value for property http://purl.org/dc/terms/title");
+        assertThatThrownBy(() -> new JenaOaiOreMetadataReader().readMetadata(json))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Expected a single value for property http://purl.org/dc/terms/title");
+    }
+
+    @Test
+    public void all_modes_should_give_same_result_for_manual_test_json() {
+        var expected = new JenaOaiOreMetadataReader().readMetadata(MANUAL_TEST_JSON);
+
+        for (var mode : OaiOreReaderMode.values()) {
+            assertThat(new OaiOreMetadataReader(mode).readMetadata(MANUAL_TEST_JSON)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void all_modes_should_read_json_that_streaming_parser_rejects_with_jena() {
+        var json = MANUAL_TEST_JSON.replace("\"schema:creativeWorkStatus\": \"RELEASED\"", "\"schema:creativeWorkStatus\": [\"RELEASED\", \"DEACCESSIONED\"]");
+        assertThatThrownBy(() -> OaiOreDocument.parse(json)).isInstanceOf(IllegalStateException.class);
+        var expected = new JenaOaiOreMetadataReader().readMetadata(json);
+
+        for (var mode : OaiOreReaderMode.values()) {
+            assertThat(new OaiOreMetadataReader(mode).readMetadata(json)).as(mode.name()).isEqualTo(expected);
+        }
+    }
+
+    private static String readOaiOre(Path dve) throws IOException {
+        try (var zipFile = new ZipFile(dve.toFile())) {
+            var entry = zipFile.stream()
+                .filter(e -> e.getName().endsWith("/metadata/oai-ore.jsonld"))
+                .findFirst()
+                .orElseThrow();
+            try (var is = zipFile.getInputStream(entry)) {
+                return IOUtils.toString(is, StandardCharsets.UTF_8);
+            }
+        }
+    }
 }